@@ -0,0 +1,233 @@
+package com.example.cloud_spring_load_zip.admission;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Контроль допуска перед контроллерами API:
+ * <ul>
+ *     <li>token bucket на клиента и класс маршрута - 429 и Retry-After при превышении;</li>
+ *     <li>адаптивный лимит одновременных запросов на класс маршрута - 503 и Retry-After,
+ *     когда задержка начинает расти (запрос отклоняется сразу, а не ждет в очереди Tomcat).</li>
+ * </ul>
+ * Отклонение происходит до чтения тела, поэтому отказ в загрузке не стоит ни диска, ни heap.
+ * <p>
+ * Потоки событий (SSE) живут минутами и почти не нагружают сервис - они не занимают слот лимита.
+ * Длинные ответы слот занимают, но их время не попадает в оценку задержки, иначе одно
+ * медленное скачивание урезало бы лимит для всех быстрых чтений.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    private final AdmissionProperties properties;
+    private final ObjectMapper objectMapper;
+    private final Map<RouteClass, AdaptiveLimiter> limiters = new EnumMap<>(RouteClass.class);
+    private final Map<RouteClass, Timer> latency = new EnumMap<>(RouteClass.class);
+    private final Map<RouteClass, Counter> rateRejected = new EnumMap<>(RouteClass.class);
+    private final Map<RouteClass, Counter> overloadRejected = new EnumMap<>(RouteClass.class);
+    private final Cache<String, RateBucket> buckets;
+
+    public AdmissionFilter(AdmissionProperties properties, ObjectMapper objectMapper, MeterRegistry registry) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(properties.getClientIdleTimeout())
+                .maximumSize(properties.getMaxClients())
+                .build();
+
+        for (RouteClass route : RouteClass.values()) {
+            AdmissionProperties.Route config = route(route);
+            AdaptiveLimiter limiter = new AdaptiveLimiter(config.getInitialLimit(), config.getMinLimit(),
+                    config.getMaxLimit(), properties.getTolerance(), properties.getSmoothing());
+            limiters.put(route, limiter);
+
+            Gauge.builder("admission.limit", limiter, AdaptiveLimiter::getLimit)
+                    .description("Current adaptive concurrency limit")
+                    .tag("route", route.tag())
+                    .register(registry);
+            Gauge.builder("admission.inflight", limiter, AdaptiveLimiter::getInFlight)
+                    .description("Requests currently admitted")
+                    .tag("route", route.tag())
+                    .register(registry);
+            latency.put(route, Timer.builder("admission.latency")
+                    .description("Latency of admitted requests")
+                    .tag("route", route.tag())
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry));
+            rateRejected.put(route, Counter.builder("admission.rejected")
+                    .description("Requests rejected before reaching a controller")
+                    .tag("route", route.tag())
+                    .tag("reason", "rate")
+                    .register(registry));
+            overloadRejected.put(route, Counter.builder("admission.rejected")
+                    .description("Requests rejected before reaching a controller")
+                    .tag("route", route.tag())
+                    .tag("reason", "overload")
+                    .register(registry));
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // Служебные эндпоинты (actuator, swagger) должны отвечать и под перегрузкой
+        return !properties.isEnabled() || !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        RouteClass route = RouteClass.of(request);
+
+        long waitNanos = bucket(client(request), route).tryAcquire();
+        if (waitNanos > 0) {
+            rateRejected.get(route).increment();
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, waitNanos, "Слишком много запросов, повторите позже");
+            return;
+        }
+
+        if (isEventStream(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        AdaptiveLimiter limiter = limiters.get(route);
+        if (!limiter.tryAcquire()) {
+            overloadRejected.get(route).increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, limiter.getShortRttNanos(), "Сервис перегружен, повторите позже");
+            return;
+        }
+        long start = System.nanoTime();
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            // Работа ушла в пул (bulkhead) - слот держится до завершения асинхронного ответа
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        release(limiter, route, start, response);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                release(limiter, route, start, response);
+            }
+        }
+    }
+
+    private void release(AdaptiveLimiter limiter, RouteClass route, long start, HttpServletResponse response) {
+        long elapsed = System.nanoTime() - start;
+        if (isLongResponse(response)) {
+            limiter.releaseUnsampled();
+        } else {
+            limiter.release(elapsed);
+        }
+        latency.get(route).record(elapsed, TimeUnit.NANOSECONDS);
+    }
+
+    private static boolean isEventStream(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        return request.getRequestURI().endsWith("/events")
+                || (accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE));
+    }
+
+    private boolean isLongResponse(HttpServletResponse response) {
+        String contentType = response.getContentType();
+        if (contentType != null && contentType.startsWith(MediaType.TEXT_EVENT_STREAM_VALUE)) {
+            return true;
+        }
+        String length = response.getHeader(HttpHeaders.CONTENT_LENGTH);
+        try {
+            return length != null && Long.parseLong(length) > properties.getSampleMaxBytes().toBytes();
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    private RateBucket bucket(String client, RouteClass route) {
+        AdmissionProperties.Route config = route(route);
+        if (config.getRatePerClient() <= 0) {
+            return UNLIMITED;
+        }
+        return buckets.get(client + "|" + route, key -> new RateBucket(config.getRatePerClient(), config.getBurst()));
+    }
+
+    private String client(HttpServletRequest request) {
+        String address = request.getRemoteAddr();
+        if (!properties.getTrustedProxies().contains(address)) {
+            return address;
+        }
+        String header = request.getHeader(properties.getClientHeader());
+        return header != null && !header.isBlank() ? header : address;
+    }
+
+    private AdmissionProperties.Route route(RouteClass route) {
+        switch (route) {
+            case WRITE:
+                return properties.getWrite();
+            case UPLOAD:
+                return properties.getUpload();
+            case ARCHIVE:
+                return properties.getArchive();
+            default:
+                return properties.getRead();
+        }
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, long retryAfterNanos, String message)
+            throws IOException {
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos + 999_999_999L));
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+        // Тело не читалось - без закрытия соединения Tomcat стал бы дочитывать загрузку
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        objectMapper.writeValue(response.getOutputStream(), Map.of("error", message));
+    }
+
+    private static final RateBucket UNLIMITED = new RateBucket(Double.MAX_VALUE, Integer.MAX_VALUE) {
+        @Override
+        synchronized long tryAcquire() {
+            return 0;
+        }
+    };
+}
@@ -0,0 +1,61 @@
+package com.example.cloud_spring_load_zip.admission;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.admission")
+public class AdmissionProperties {
+
+    private boolean enabled = true;
+    // Клиент определяется по адресу; этот заголовок учитывается только от trusted-proxies -
+    // иначе клиент получал бы новую корзину, просто меняя значение
+    private String clientHeader = "X-Client-Id";
+    // Адреса прокси или балансировщиков, которые сами выставляют client-header
+    private List<String> trustedProxies = new ArrayList<>();
+    // Корзины клиентов, которые давно не приходили, вытесняются
+    private Duration clientIdleTimeout = Duration.ofMinutes(10);
+    private long maxClients = 100_000;
+    // Допустимый рост задержки относительно долгого среднего, прежде чем лимит начнет снижаться
+    private double tolerance = 1.5;
+    private double smoothing = 0.2;
+    // Более длинные ответы не входят в оценку задержки: их время задает скорость клиента, а не очередь
+    private DataSize sampleMaxBytes = DataSize.ofMegabytes(1);
+
+    private Route read = new Route(200, 400, 64, 4, 512);
+    private Route write = new Route(50, 100, 32, 2, 128);
+    private Route upload = new Route(5, 10, 8, 1, 32);
+    private Route archive = new Route(2, 4, 4, 1, 16);
+
+    @Getter
+    @Setter
+    public static class Route {
+        // Запросов в секунду на одного клиента и запас на всплеск, 0 - без ограничения
+        private double ratePerClient;
+        private int burst;
+        // Границы адаптивного лимита одновременных запросов класса
+        private int initialLimit;
+        private int minLimit;
+        private int maxLimit;
+
+        public Route() {
+        }
+
+        Route(double ratePerClient, int burst, int initialLimit, int minLimit, int maxLimit) {
+            this.ratePerClient = ratePerClient;
+            this.burst = burst;
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+        }
+    }
+}
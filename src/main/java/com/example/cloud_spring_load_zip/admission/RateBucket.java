@@ -0,0 +1,33 @@
+package com.example.cloud_spring_load_zip.admission;
+
+/**
+ * Token bucket без ожидания: запрос либо берет токен, либо сразу узнает,
+ * через сколько токен появится (для Retry-After).
+ */
+class RateBucket {
+
+    private final double perSecond;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    RateBucket(double perSecond, int burst) {
+        this.perSecond = perSecond;
+        this.capacity = Math.max(1, burst);
+        this.tokens = capacity;
+    }
+
+    /**
+     * @return 0, если токен взят, иначе наносекунды до появления следующего
+     */
+    synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * perSecond / 1e9);
+        lastRefill = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) * 1e9 / perSecond);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.cloud_spring_load_zip.admission;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Класс маршрута: у загрузок и архивации свои лимиты, чтобы всплеск тяжелых запросов
+ * не занимал слоты быстрых чтений.
+ */
+public enum RouteClass {
+    READ, WRITE, UPLOAD, ARCHIVE;
+
+    public static RouteClass of(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        String method = request.getMethod();
+        if ("GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method)) {
+            return READ;
+        }
+        // Дозапись в архив стоит как загрузка новых файлов, а не как пересборка архива
+        if (path.startsWith("/api/files/upload") || path.startsWith("/api/files/items")
+                || path.startsWith("/api/files/append") || path.startsWith("/api/files/stream/upload")
+                || (path.startsWith("/api/v1/products/") && path.endsWith("/image"))) {
+            return UPLOAD;
+        }
+        if (path.startsWith("/api/files/compress") || path.startsWith("/api/files/extract")
+                || path.startsWith("/api/files/merge") || path.startsWith("/api/files/verify")
+                || path.startsWith("/api/files/delta") || path.startsWith("/api/files/stream/compress")
+                || path.startsWith("/api/files/jobs/compress") || path.startsWith("/api/files/jobs/extract")) {
+            return ARCHIVE;
+        }
+        return WRITE;
+    }
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.cloud_spring_load_zip.backup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Персистентная очередь задач репликации: журнал строк "+ key" / "- key" / "! key",
+ * который проигрывается при старте. Запись в журнал на пути запроса - только append
+ * в page cache; fsync делает воркер один раз на пачку (group commit).
+ */
+class BackupQueue implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackupQueue.class);
+    private static final long COMPACT_THRESHOLD = 1024 * 1024;
+
+    static class Task {
+        final String key;
+        final long enqueuedAt;
+        long version;
+        int attempts;
+        long notBefore;
+        boolean inFlight;
+
+        Task(String key, long enqueuedAt) {
+            this.key = key;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private final Path journal;
+    private final LinkedHashMap<String, Task> pending = new LinkedHashMap<>();
+    private FileChannel channel;
+    // Строк в журнале; живых из них - pending.size(), остальные уже отработаны
+    private long journalLines;
+    private long deadLettered;
+
+    BackupQueue(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        this.journal = dir.resolve("journal.log");
+        replay();
+        this.channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void replay() throws IOException {
+        if (!Files.exists(journal)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (String line : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+            journalLines++;
+            if (line.length() < 3) {
+                continue; // недописанная строка после сбоя
+            }
+            String key = URLDecoder.decode(line.substring(2), StandardCharsets.UTF_8);
+            switch (line.charAt(0)) {
+                case '+' -> pending.putIfAbsent(key, new Task(key, now));
+                case '-', '!' -> pending.remove(key);
+                default -> logger.warn("Skipping malformed backup journal line: {}", line);
+            }
+        }
+        logger.info("Backup queue restored, {} pending tasks", pending.size());
+    }
+
+    synchronized void enqueue(String key) throws IOException {
+        Task task = pending.get(key);
+        if (task == null) {
+            task = new Task(key, System.currentTimeMillis());
+            pending.put(key, task);
+        }
+        // Новая версия файла: копия, которая сейчас в работе, не снимет задачу
+        task.version++;
+        task.attempts = 0;
+        task.notBefore = 0;
+        append('+', key);
+    }
+
+    /**
+     * Задачи, готовые к выполнению. Возвращает снимки (key, version).
+     */
+    synchronized List<Task> poll(int max, long now) {
+        List<Task> batch = new ArrayList<>();
+        for (Task task : pending.values()) {
+            if (batch.size() >= max) {
+                break;
+            }
+            if (!task.inFlight && task.notBefore <= now) {
+                task.inFlight = true;
+                Task snapshot = new Task(task.key, task.enqueuedAt);
+                snapshot.version = task.version;
+                snapshot.attempts = task.attempts;
+                batch.add(snapshot);
+            }
+        }
+        return batch;
+    }
+
+    synchronized void ack(Task snapshot) throws IOException {
+        Task task = pending.get(snapshot.key);
+        if (task == null) {
+            return;
+        }
+        task.inFlight = false;
+        if (task.version == snapshot.version) {
+            pending.remove(snapshot.key);
+            append('-', snapshot.key);
+        }
+    }
+
+    synchronized void retry(Task snapshot, long notBefore) {
+        Task task = pending.get(snapshot.key);
+        if (task != null) {
+            task.inFlight = false;
+            if (task.version == snapshot.version) {
+                task.attempts = snapshot.attempts + 1;
+                task.notBefore = notBefore;
+            }
+        }
+    }
+
+    synchronized void deadLetter(Task snapshot) throws IOException {
+        Task task = pending.get(snapshot.key);
+        if (task != null && task.version == snapshot.version) {
+            pending.remove(snapshot.key);
+            append('!', snapshot.key);
+            deadLettered++;
+        } else if (task != null) {
+            task.inFlight = false;
+        }
+    }
+
+    /**
+     * Сбрасывает журнал на диск. Когда журнал вырос и отработанных строк в нем больше,
+     * чем живых задач, он переписывается одними живыми задачами - и под постоянной
+     * нагрузкой, когда очередь не пустеет никогда.
+     */
+    synchronized void sync() throws IOException {
+        if (channel.size() > COMPACT_THRESHOLD && journalLines > 2L * pending.size()) {
+            compact();
+            return;
+        }
+        channel.force(false);
+    }
+
+    // Новый журнал пишется рядом и подменяет старый переименованием: сбой посередине оставляет старый
+    private void compact() throws IOException {
+        Path temp = journal.resolveSibling(journal.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (String key : pending.keySet()) {
+                write(out, '+', key);
+            }
+            out.force(false);
+        }
+        channel.force(false);
+        channel.close();
+        try {
+            Files.move(temp, journal, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        logger.debug("Backup journal compacted from {} to {} lines", journalLines, pending.size());
+        journalLines = pending.size();
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+    synchronized long deadLettered() {
+        return deadLettered;
+    }
+
+    synchronized long oldestAgeMillis(long now) {
+        return pending.isEmpty() ? 0 : now - pending.values().iterator().next().enqueuedAt;
+    }
+
+    synchronized Map<String, Integer> attemptsSnapshot() {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        pending.values().stream().filter(task -> task.attempts > 0).limit(100)
+                .forEach(task -> result.put(task.key, task.attempts));
+        return result;
+    }
+
+    private void append(char op, String key) throws IOException {
+        write(channel, op, key);
+        journalLines++;
+    }
+
+    private static void write(FileChannel target, char op, String key) throws IOException {
+        String line = op + " " + URLEncoder.encode(key, StandardCharsets.UTF_8) + "\n";
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+}
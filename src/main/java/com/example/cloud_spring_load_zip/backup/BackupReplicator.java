@@ -0,0 +1,257 @@
+package com.example.cloud_spring_load_zip.backup;
+
+import com.example.cloud_spring_load_zip.service.AppFileProperties;
+import com.example.cloud_spring_load_zip.service.FileStoredEvent;
+import com.example.cloud_spring_load_zip.storage.BlobInfo;
+import com.example.cloud_spring_load_zip.storage.LocalStorageBackend;
+import com.example.cloud_spring_load_zip.storage.S3StorageBackend;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import com.example.cloud_spring_load_zip.storage.StorageLayout;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновая репликация загруженных файлов во второе хранилище (app.file.storage.backup-enabled).
+ * Запрос пользователя только ставит ключ в персистентную очередь; копирование, проверка
+ * контрольной суммы и повторы с экспоненциальной задержкой идут в отдельном потоке пачками
+ * и с ограничением скорости, чтобы не конкурировать с загрузками за диск и сеть.
+ */
+@Service
+public class BackupReplicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackupReplicator.class);
+
+    private final StorageBackend primary;
+    private final AppFileProperties.Backup properties;
+    private final boolean enabled;
+    private final MeterRegistry registry;
+
+    private StorageBackend target;
+    private BackupQueue queue;
+    private ByteRateLimiter rateLimiter;
+    private ScheduledExecutorService executor;
+
+    private Counter replicatedCounter;
+    private Counter retryCounter;
+    private Counter deadCounter;
+    private Counter bytesCounter;
+    private volatile String lastError;
+
+    public BackupReplicator(StorageBackend storageBackend, AppFileProperties appFileProperties, MeterRegistry registry) {
+        this.primary = storageBackend;
+        this.properties = appFileProperties.getStorage().getBackup();
+        this.enabled = appFileProperties.getStorage().isBackupEnabled();
+        this.registry = registry;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        this.target = createTarget();
+        this.queue = new BackupQueue(Paths.get(properties.getQueueDir()).toAbsolutePath().normalize());
+        this.rateLimiter = new ByteRateLimiter(properties.getRateLimit().toBytes());
+
+        this.replicatedCounter = Counter.builder("backup.replicated")
+                .description("Files copied to the backup storage")
+                .register(registry);
+        this.retryCounter = Counter.builder("backup.retries")
+                .description("Failed backup attempts that were scheduled for retry")
+                .register(registry);
+        this.deadCounter = Counter.builder("backup.dead")
+                .description("Files that exhausted backup attempts")
+                .register(registry);
+        this.bytesCounter = Counter.builder("backup.bytes")
+                .description("Bytes copied to the backup storage")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("backup.queue.pending", queue, BackupQueue::size)
+                .description("Files waiting to be copied to the backup storage")
+                .register(registry);
+        Gauge.builder("backup.queue.oldest.age", queue, q -> q.oldestAgeMillis(System.currentTimeMillis()) / 1000.0)
+                .description("Age of the oldest pending backup task")
+                .baseUnit("seconds")
+                .register(registry);
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "backup-replicator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(properties.getPollInterval().toMillis(), 10);
+        executor.scheduleWithFixedDelay(this::drain, interval, interval, TimeUnit.MILLISECONDS);
+        logger.info("Backup replication to '{}' storage enabled, {} tasks pending", properties.getTargetType(), queue.size());
+    }
+
+    private StorageBackend createTarget() throws IOException {
+        switch (properties.getTargetType()) {
+            case "local":
+                return new LocalStorageBackend(new StorageLayout(Paths.get(properties.getDir()), true, 2));
+            case "s3":
+                return new S3StorageBackend(properties.getS3());
+            default:
+                throw new IllegalStateException("Unknown app.file.storage.backup.target-type: " + properties.getTargetType());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+            queue.close();
+            target.close();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            logger.warn("Could not close backup queue", ex);
+        }
+    }
+
+    @EventListener
+    public void onFileStored(FileStoredEvent event) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            queue.enqueue(event.getKey());
+        } catch (IOException ex) {
+            // Загрузка уже прошла успешно - потеря задачи не должна ронять запрос
+            lastError = event.getKey() + ": " + ex.getMessage();
+            logger.error("Could not enqueue {} for backup", event.getKey(), ex);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        if (!enabled) {
+            return status;
+        }
+        status.put("target", properties.getTargetType());
+        status.put("pending", queue.size());
+        status.put("oldestAgeMs", queue.oldestAgeMillis(System.currentTimeMillis()));
+        status.put("replicated", (long) replicatedCounter.count());
+        status.put("retries", (long) retryCounter.count());
+        status.put("dead", (long) deadCounter.count());
+        status.put("retrying", queue.attemptsSnapshot());
+        if (lastError != null) {
+            status.put("lastError", lastError);
+        }
+        return status;
+    }
+
+    void drain() {
+        try {
+            List<BackupQueue.Task> batch;
+            while (!(batch = queue.poll(properties.getBatchSize(), System.currentTimeMillis())).isEmpty()) {
+                for (BackupQueue.Task task : batch) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        queue.retry(task, 0);
+                        continue;
+                    }
+                    process(task);
+                }
+                // Один fsync журнала на пачку
+                queue.sync();
+            }
+        } catch (IOException ex) {
+            lastError = ex.getMessage();
+            logger.error("Backup queue journal failure", ex);
+        } catch (RuntimeException ex) {
+            // Исключение из задачи остановило бы scheduleWithFixedDelay
+            lastError = ex.getMessage();
+            logger.error("Unexpected backup failure", ex);
+        }
+    }
+
+    private void process(BackupQueue.Task task) throws IOException {
+        try {
+            Optional<BlobInfo> info = primary.stat(task.key);
+            if (info.isEmpty() || info.get().isDirectory()) {
+                // Файл удален до репликации - копировать нечего
+                queue.ack(task);
+                return;
+            }
+            copy(task.key, info.get().getSize());
+            replicatedCounter.increment();
+            queue.ack(task);
+        } catch (NoSuchFileException ex) {
+            queue.ack(task);
+        } catch (IOException | RuntimeException ex) {
+            lastError = task.key + ": " + ex.getMessage();
+            if (task.attempts + 1 >= properties.getMaxAttempts()) {
+                deadCounter.increment();
+                logger.error("Giving up backup of {} after {} attempts", task.key, task.attempts + 1, ex);
+                queue.deadLetter(task);
+            } else {
+                retryCounter.increment();
+                long delay = properties.getRetryBackoff().toMillis() << Math.min(task.attempts, 16);
+                logger.warn("Backup of {} failed, retrying in {} ms: {}", task.key, delay, ex.getMessage());
+                queue.retry(task, System.currentTimeMillis() + delay);
+            }
+        }
+    }
+
+    private void copy(String key, long size) throws IOException {
+        MessageDigest sourceDigest = sha256();
+        try (InputStream in = new DigestInputStream(rateLimiter.wrap(primary.get(key)), sourceDigest)) {
+            target.put(key, in, size);
+        }
+        bytesCounter.increment(size);
+
+        if (properties.isVerifyChecksum()) {
+            MessageDigest targetDigest = sha256();
+            try (InputStream in = new DigestInputStream(target.get(key), targetDigest)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            byte[] expected = sourceDigest.digest();
+            byte[] actual = targetDigest.digest();
+            if (!Arrays.equals(expected, actual)) {
+                throw new IOException("Checksum mismatch for " + key + ": "
+                        + HexFormat.of().formatHex(expected) + " != " + HexFormat.of().formatHex(actual));
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.cloud_spring_load_zip.bulkhead;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Изолированный пул одного класса нагрузки: свое число потоков, ограниченная очередь
+ * с приоритетами (внутри приоритета - FIFO) и метрики насыщения. Переполненная очередь
+ * отклоняет задачу сразу через {@link RejectedExecutionException}, а не растет.
+ */
+public class Bulkhead {
+
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    private final String name;
+    private final int threads;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Counter rejected;
+    private final Timer queueWait;
+
+    Bulkhead(String name, BulkheadProperties.Pool pool, MeterRegistry registry) {
+        this.name = name;
+        this.threads = Math.max(1, pool.getThreads());
+        this.queueCapacity = Math.max(0, pool.getQueueCapacity());
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "bulkhead-" + name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("bulkhead.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Tasks running in the bulkhead")
+                .tag("bulkhead", name)
+                .register(registry);
+        Gauge.builder("bulkhead.queued", waiting, AtomicInteger::get)
+                .description("Tasks waiting for a bulkhead thread")
+                .tag("bulkhead", name)
+                .register(registry);
+        Gauge.builder("bulkhead.saturation", this, Bulkhead::saturation)
+                .description("Share of threads and queue slots in use")
+                .tag("bulkhead", name)
+                .register(registry);
+        this.rejected = Counter.builder("bulkhead.rejected")
+                .description("Tasks rejected because the bulkhead queue was full")
+                .tag("bulkhead", name)
+                .register(registry);
+        this.queueWait = Timer.builder("bulkhead.queue.wait")
+                .description("Time tasks spent waiting for a bulkhead thread")
+                .tag("bulkhead", name)
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Задача для контроллера: результат - CompletableFuture, поток Tomcat освобождается сразу.
+     */
+    public <T> CompletableFuture<T> supply(Priority priority, Callable<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // Контекст запроса переносится в рабочий поток: сервисы строят ссылки от текущего URL
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        submit(priority, () -> {
+            RequestContextHolder.setRequestAttributes(request);
+            try {
+                result.complete(work.call());
+            } catch (Throwable ex) {
+                result.completeExceptionally(ex);
+            } finally {
+                RequestContextHolder.resetRequestAttributes();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return Future для отмены задачи, которая еще ждет в очереди (см. {@link #remove(Future)})
+     */
+    public Future<?> submit(Priority priority, Runnable work) {
+        if (waiting.incrementAndGet() > queueCapacity && executor.getActiveCount() >= threads) {
+            waiting.decrementAndGet();
+            rejected.increment();
+            throw new RejectedExecutionException("Bulkhead '" + name + "' is full");
+        }
+        PrioritizedTask task = new PrioritizedTask(priority, sequence.incrementAndGet(), work);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            waiting.decrementAndGet();
+            rejected.increment();
+            throw ex;
+        }
+        return task;
+    }
+
+    /**
+     * Снимает ожидающую задачу с очереди, освобождая место.
+     */
+    public boolean remove(Future<?> future) {
+        future.cancel(false);
+        if (future instanceof PrioritizedTask task && executor.remove(task)) {
+            waiting.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    double saturation() {
+        return (double) (executor.getActiveCount() + waiting.get()) / (threads + queueCapacity);
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private final class PrioritizedTask extends FutureTask<Void> implements Comparable<PrioritizedTask> {
+        private final Priority priority;
+        private final long seq;
+        private final long queuedAt = System.nanoTime();
+        private boolean started;
+
+        PrioritizedTask(Priority priority, long seq, Runnable work) {
+            super(work, null);
+            this.priority = priority;
+            this.seq = seq;
+        }
+
+        @Override
+        public void run() {
+            if (!started) {
+                started = true;
+                waiting.decrementAndGet();
+                queueWait.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+            }
+            super.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(seq, other.seq);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.cloud_spring_load_zip.bulkhead;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.bulkheads")
+public class BulkheadProperties {
+
+    // Упаковка/распаковка упирается в CPU - потоков по числу ядер
+    private Pool archive = new Pool(Runtime.getRuntime().availableProcessors(), 64);
+    // Запись загрузок в хранилище ждет диск или сеть - потоков больше
+    private Pool fileIo = new Pool(16, 256);
+    // Тяжелые операции каталога: аналитика, диапазонные запросы, пакетная запись
+    private Pool catalog = new Pool(4, 128);
+    // Проверка CRC архивов: куски записей одного архива проверяются параллельно
+    private Pool verify = new Pool(Runtime.getRuntime().availableProcessors(), 1024);
+    // Генерация превью: декодирование и масштабирование картинок, тоже CPU
+    private Pool image = new Pool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 64);
+
+    @Getter
+    @Setter
+    public static class Pool {
+        private int threads;
+        // Сколько задач может ждать; сверх этого - отказ сразу (503)
+        private int queueCapacity;
+
+        public Pool() {
+        }
+
+        Pool(int threads, int queueCapacity) {
+            this.threads = threads;
+            this.queueCapacity = queueCapacity;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.cloud_spring_load_zip.bulkhead;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Пулы по классам нагрузки. Тяжелая работа уходит из потоков Tomcat в свой пул,
+ * поэтому всплеск упаковок не отнимает потоки у дешевых запросов каталога.
+ */
+@Component
+public class Bulkheads {
+
+    private final Bulkhead archive;
+    private final Bulkhead fileIo;
+    private final Bulkhead catalog;
+    private final Bulkhead verify;
+    private final Bulkhead image;
+
+    public Bulkheads(BulkheadProperties properties, MeterRegistry registry) {
+        this.archive = new Bulkhead("archive", properties.getArchive(), registry);
+        this.fileIo = new Bulkhead("file-io", properties.getFileIo(), registry);
+        this.catalog = new Bulkhead("catalog", properties.getCatalog(), registry);
+        this.verify = new Bulkhead("verify", properties.getVerify(), registry);
+        this.image = new Bulkhead("image", properties.getImage(), registry);
+    }
+
+    public Bulkhead archive() {
+        return archive;
+    }
+
+    public Bulkhead fileIo() {
+        return fileIo;
+    }
+
+    public Bulkhead catalog() {
+        return catalog;
+    }
+
+    public Bulkhead verify() {
+        return verify;
+    }
+
+    public Bulkhead image() {
+        return image;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        archive.shutdown();
+        fileIo.shutdown();
+        catalog.shutdown();
+        verify.shutdown();
+        image.shutdown();
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.cloud_spring_load_zip.controllers;
+
+import com.example.cloud_spring_load_zip.lifecycle.ArtifactLifecycleManager;
+import com.example.cloud_spring_load_zip.service.ArchiveJob;
+import com.example.cloud_spring_load_zip.service.ArchiveJobService;
+import com.example.cloud_spring_load_zip.service.FileArchiveService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/api/files/jobs")
+public class ArchiveJobController {
+
+    private final ArchiveJobService archiveJobService;
+
+    private final ArtifactLifecycleManager artifactLifecycle;
+
+    @Autowired
+    public ArchiveJobController(ArchiveJobService archiveJobService, ArtifactLifecycleManager artifactLifecycle) {
+        this.archiveJobService = archiveJobService;
+        this.artifactLifecycle = artifactLifecycle;
+    }
+
+    @PostMapping(value = "/compress", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Map<String, Object>> compress(@RequestParam List<MultipartFile> files,
+                                                        @RequestParam(value = "zipName", required = false, defaultValue = "archive") String zipName) {
+        if (files.isEmpty() || files.stream().allMatch(MultipartFile::isEmpty)) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Необходимо загрузить хотя бы один файл"));
+        }
+        try {
+            return accepted(archiveJobService.submitCompress(files, zipName, baseUri()));
+        } catch (RejectedExecutionException e) {
+            return busy();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Ошибка при постановке задания: " + e.getMessage()));
+        }
+    }
+
+    @PostMapping("/extract/{zipFileName}")
+    public ResponseEntity<Map<String, Object>> extract(@PathVariable String zipFileName) {
+        artifactLifecycle.touch(zipFileName);
+        artifactLifecycle.touch(FileArchiveService.extractDirName(zipFileName));
+        try {
+            return accepted(archiveJobService.submitExtract(zipFileName, baseUri()));
+        } catch (RejectedExecutionException e) {
+            return busy();
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> status(@PathVariable String id) {
+        return archiveJobService.get(id)
+                .map(job -> ResponseEntity.ok(job.snapshot()))
+                .orElseGet(() -> notFound(id));
+    }
+
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> events(@PathVariable String id) {
+        return archiveJobService.get(id)
+                .map(job -> ResponseEntity.ok(archiveJobService.subscribe(job)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> cancel(@PathVariable String id) {
+        return archiveJobService.cancel(id)
+                .map(job -> ResponseEntity.ok(job.snapshot()))
+                .orElseGet(() -> notFound(id));
+    }
+
+    private ResponseEntity<Map<String, Object>> accepted(ArchiveJob job) {
+        URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/files/jobs/{id}")
+                .buildAndExpand(job.getId())
+                .toUri();
+        return ResponseEntity.accepted()
+                .location(location)
+                .body(Map.of(
+                        "jobId", job.getId(),
+                        "statusUri", location.toString(),
+                        "eventsUri", location + "/events"
+                ));
+    }
+
+    private ResponseEntity<Map<String, Object>> busy() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(Map.of("error", "Очередь заданий заполнена, повторите позже"));
+    }
+
+    private static ResponseEntity<Map<String, Object>> notFound(String id) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("error", "Задание не найдено: " + id));
+    }
+
+    private static String baseUri() {
+        // Контекст запроса недоступен в рабочем потоке - базовый URL фиксируется при постановке
+        return ServletUriComponentsBuilder.fromCurrentContextPath().toUriString();
+    }
+}
@@ -1,6 +1,17 @@
 package com.example.cloud_spring_load_zip.controllers;
 
+import com.example.cloud_spring_load_zip.bulkhead.Bulkhead;
+import com.example.cloud_spring_load_zip.bulkhead.Bulkheads;
+import com.example.cloud_spring_load_zip.integrity.ArchiveVerifier;
+import com.example.cloud_spring_load_zip.integrity.VerificationReport;
+import com.example.cloud_spring_load_zip.lifecycle.ArtifactLifecycleManager;
+import com.example.cloud_spring_load_zip.model.FilePage;
+import com.example.cloud_spring_load_zip.service.ArchiveAppendService;
+import com.example.cloud_spring_load_zip.service.ArchiveMergeService;
+import com.example.cloud_spring_load_zip.service.DeltaArchiveService;
 import com.example.cloud_spring_load_zip.service.FileArchiveService;
+import com.example.cloud_spring_load_zip.upload.StreamingUploadService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
@@ -9,11 +20,16 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/files")
@@ -21,19 +37,48 @@ public class FileArchiveController {
 
     private final FileArchiveService fileArchiveService;
 
+    private final ArchiveAppendService archiveAppendService;
+
+    private final ArchiveMergeService archiveMergeService;
+
+    private final ArchiveVerifier archiveVerifier;
+
+    private final DeltaArchiveService deltaArchiveService;
+
+    private final StreamingUploadService streamingUploadService;
+
+    private final ArtifactLifecycleManager artifactLifecycle;
+
+    private final Bulkhead archiveBulkhead;
+
     @Autowired
-    public FileArchiveController(FileArchiveService fileArchiveService) {
+    public FileArchiveController(FileArchiveService fileArchiveService, ArchiveAppendService archiveAppendService,
+                                 ArchiveMergeService archiveMergeService, ArchiveVerifier archiveVerifier,
+                                 DeltaArchiveService deltaArchiveService,
+                                 StreamingUploadService streamingUploadService,
+                                 ArtifactLifecycleManager artifactLifecycle, Bulkheads bulkheads) {
         this.fileArchiveService = fileArchiveService;
+        this.archiveAppendService = archiveAppendService;
+        this.archiveMergeService = archiveMergeService;
+        this.archiveVerifier = archiveVerifier;
+        this.deltaArchiveService = deltaArchiveService;
+        this.streamingUploadService = streamingUploadService;
+        this.artifactLifecycle = artifactLifecycle;
+        // Упаковка и распаковка идут в пуле архивации, поток Tomcat освобождается сразу
+        this.archiveBulkhead = bulkheads.archive();
     }
 
     @PostMapping(value = "/compress", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<Map<String, String>> compressFile(@RequestParam("file") MultipartFile file) {
-        try {
-            if (file.isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(Map.of("error", "Файл не может быть пустым"));
-            }
+    public CompletableFuture<ResponseEntity<Map<String, String>>> compressFile(@RequestParam("file") MultipartFile file) {
+        if (file.isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(Map.of("error", "Файл не может быть пустым")));
+        }
+        return archiveBulkhead.supply(Bulkhead.Priority.NORMAL, () -> compress(file));
+    }
 
+    private ResponseEntity<Map<String, String>> compress(MultipartFile file) {
+        try {
             String zipFileUri = fileArchiveService.compressFileToZip(file);
             return ResponseEntity.ok()
                     .body(Map.of(
@@ -47,22 +92,25 @@ public class FileArchiveController {
     }
 
     @PostMapping(value = "/compress-multiple-alt", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<Map<String, Object>> compressMultipleFilesAlternative(
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> compressMultipleFilesAlternative(
             @RequestParam("file1") MultipartFile file1,
             @RequestParam(value = "file2", required = false) MultipartFile file2,
             @RequestParam(value = "file3", required = false) MultipartFile file3,
             @RequestParam(value = "zipName", required = false, defaultValue = "archive") String zipName) {
-        try {
-            List<MultipartFile> files = new ArrayList<>();
-            files.add(file1);
-            if (file2 != null && !file2.isEmpty()) files.add(file2);
-            if (file3 != null && !file3.isEmpty()) files.add(file3);
-
-            if (files.isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(Map.of("error", "Необходимо загрузить хотя бы один файл"));
-            }
+        List<MultipartFile> files = new ArrayList<>();
+        files.add(file1);
+        if (file2 != null && !file2.isEmpty()) files.add(file2);
+        if (file3 != null && !file3.isEmpty()) files.add(file3);
+
+        if (files.isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(Map.of("error", "Необходимо загрузить хотя бы один файл")));
+        }
+        return archiveBulkhead.supply(Bulkhead.Priority.NORMAL, () -> compressMultiple(files, zipName));
+    }
 
+    private ResponseEntity<Map<String, Object>> compressMultiple(List<MultipartFile> files, String zipName) {
+        try {
             String zipFileUri = fileArchiveService.compressMultipleFilesToZip(
                     files.toArray(new MultipartFile[0]), zipName);
 
@@ -78,8 +126,41 @@ public class FileArchiveController {
         }
     }
 
+    // Потоковая упаковка: части multipart идут прямо в поток архива. Параметры тела не читаются
+    // через getParameter - это заставило бы контейнер разобрать все тело заранее
+    @PostMapping(value = "/stream/compress", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> compressStreaming(HttpServletRequest request) {
+        String zipName = UriComponentsBuilder.newInstance().query(request.getQueryString()).build()
+                .getQueryParams().getFirst("zipName");
+        String name = zipName == null || zipName.isBlank() ? "archive" : UriUtils.decode(zipName, StandardCharsets.UTF_8);
+        return archiveBulkhead.supply(Bulkhead.Priority.NORMAL, () -> compressStreaming(request, name));
+    }
+
+    private ResponseEntity<Map<String, Object>> compressStreaming(HttpServletRequest request, String zipName) {
+        try {
+            StreamingUploadService.CompressResult result = streamingUploadService.compress(request.getInputStream(),
+                    request.getContentType(), request.getContentLengthLong(), zipName);
+            return ResponseEntity.ok()
+                    .body(Map.of(
+                            "message", "Файлы успешно сжаты",
+                            "zipUri", fileArchiveService.generateFileUri(result.getZipFileName()),
+                            "fileCount", result.getFileCount()
+                    ));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Ошибка при сжатии файлов: " + e.getMessage()));
+        }
+    }
+
     @PostMapping("/extract/{zipFileName}")
-    public ResponseEntity<Map<String, String>> extractZipArchive(@PathVariable String zipFileName) {
+    public CompletableFuture<ResponseEntity<Map<String, String>>> extractZipArchive(@PathVariable String zipFileName) {
+        return archiveBulkhead.supply(Bulkhead.Priority.NORMAL, () -> extract(zipFileName));
+    }
+
+    private ResponseEntity<Map<String, String>> extract(String zipFileName) {
+        // Повторная распаковка отдает готовый каталог - это доступ и к нему, и к архиву
+        artifactLifecycle.touch(zipFileName);
+        artifactLifecycle.touch(FileArchiveService.extractDirName(zipFileName));
         try {
             String extractedUri = fileArchiveService.extractZipArchive(zipFileName);
             return ResponseEntity.ok()
@@ -93,23 +174,182 @@ public class FileArchiveController {
         }
     }
 
-    @GetMapping("/download/zip/list")
-    public ResponseEntity<Map<String, Object>> getFilesList() {
+    // Дозапись в существующий архив: старые записи не пересжимаются
+    @PostMapping(value = "/append/{zipFileName}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> appendToArchive(
+            @PathVariable String zipFileName,
+            @RequestParam("files") List<MultipartFile> files) {
+        if (files.isEmpty() || files.stream().allMatch(MultipartFile::isEmpty)) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(Map.of("error", "Необходимо загрузить хотя бы один файл")));
+        }
+        return archiveBulkhead.supply(Bulkhead.Priority.NORMAL, () -> append(zipFileName, files));
+    }
+
+    private ResponseEntity<Map<String, Object>> append(String zipFileName, List<MultipartFile> files) {
+        List<FileArchiveService.Source> sources = new ArrayList<>(files.size());
+        for (MultipartFile file : files) {
+            sources.add(new FileArchiveService.Source(file.getOriginalFilename(), file, file.getSize()));
+        }
         try {
-            List<String> fileUris = fileArchiveService.getFilesList();
+            int entryCount = archiveAppendService.append(zipFileName, sources);
             return ResponseEntity.ok()
                     .body(Map.of(
-                            "files", fileUris,
-                            "totalFiles", fileUris.size()
+                            "message", "Файлы дописаны в архив",
+                            "zipUri", fileArchiveService.generateFileUri(zipFileName),
+                            "appended", files.size(),
+                            "entryCount", entryCount
                     ));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", e.getMessage()));
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("error", "Ошибка при получении списка файлов: " + e.getMessage()));
+                    .body(Map.of("error", "Ошибка при дозаписи в архив: " + e.getMessage()));
+        }
+    }
+
+    // Слияние сохраненных архивов: записи копируются без распаковки
+    @PostMapping("/merge")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> mergeArchives(
+            @RequestParam("archives") List<String> archives,
+            @RequestParam(value = "zipName", required = false, defaultValue = "merged") String zipName,
+            @RequestParam(value = "onConflict", required = false, defaultValue = "rename") String onConflict) {
+        if (archives.size() < 2) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(Map.of("error", "Для слияния нужно хотя бы два архива")));
         }
+        ArchiveMergeService.ConflictPolicy policy = ArchiveMergeService.ConflictPolicy.parse(onConflict);
+        return archiveBulkhead.supply(Bulkhead.Priority.NORMAL, () -> merge(archives, zipName, policy));
+    }
+
+    private ResponseEntity<Map<String, Object>> merge(List<String> archives, String zipName,
+                                                      ArchiveMergeService.ConflictPolicy policy) {
+        try {
+            ArchiveMergeService.MergeResult result = archiveMergeService.merge(archives, zipName, policy);
+            return ResponseEntity.ok()
+                    .body(Map.of(
+                            "message", "Архивы объединены",
+                            "zipUri", fileArchiveService.generateFileUri(result.getZipFileName()),
+                            "entryCount", result.getEntryCount(),
+                            "conflicts", result.getConflicts(),
+                            "copiedBytes", result.getCopiedBytes()
+                    ));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Ошибка при слиянии архивов: " + e.getMessage()));
+        }
+    }
+
+    // Разностный архив каталога: только изменившиеся с base файлы и список удаленных
+    @PostMapping("/delta")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> createDeltaArchive(
+            @RequestParam("directory") String directory,
+            @RequestParam(value = "base", required = false) String base,
+            @RequestParam("zipName") String zipName) {
+        return archiveBulkhead.supply(Bulkhead.Priority.NORMAL, () -> delta(directory, base, zipName));
+    }
+
+    private ResponseEntity<Map<String, Object>> delta(String directory, String base, String zipName) {
+        try {
+            DeltaArchiveService.DeltaResult result = deltaArchiveService.create(directory, base, zipName);
+            return ResponseEntity.ok()
+                    .body(Map.of(
+                            "message", result.getBase() == null ? "Создан полный снимок каталога" : "Создан разностный архив",
+                            "zipUri", fileArchiveService.generateFileUri(result.getZipFileName()),
+                            "changed", result.getChanged(),
+                            "deleted", result.getDeleted(),
+                            "unchanged", result.getUnchanged()
+                    ));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Ошибка при создании разностного архива: " + e.getMessage()));
+        }
+    }
+
+    // Полное дерево по цепочке разностных архивов
+    @PostMapping("/delta/restore/{zipFileName}")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> restoreDeltaChain(@PathVariable String zipFileName) {
+        return archiveBulkhead.supply(Bulkhead.Priority.NORMAL, () -> restore(zipFileName));
+    }
+
+    private ResponseEntity<Map<String, Object>> restore(String zipFileName) {
+        try {
+            DeltaArchiveService.RestoreResult result = deltaArchiveService.restore(zipFileName);
+            return ResponseEntity.ok()
+                    .body(Map.of(
+                            "message", "Каталог восстановлен",
+                            "restoredUri", fileArchiveService.generateFileUri(result.getDirectory()),
+                            "files", result.getFiles(),
+                            "chainLength", result.getChainLength()
+                    ));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Ошибка при восстановлении каталога: " + e.getMessage()));
+        }
+    }
+
+    // Проверка целостности: CRC всех записей и SHA-256 по манифесту; без force - из кеша, если архив не менялся
+    @PostMapping("/verify/{zipFileName}")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> verifyArchive(
+            @PathVariable String zipFileName,
+            @RequestParam(value = "force", required = false, defaultValue = "false") boolean force) {
+        return archiveBulkhead.supply(Bulkhead.Priority.NORMAL, () -> verify(zipFileName, force));
+    }
+
+    private ResponseEntity<Map<String, Object>> verify(String zipFileName, boolean force) {
+        try {
+            VerificationReport report = archiveVerifier.verify(zipFileName, force);
+            return ResponseEntity.ok()
+                    .body(Map.of(
+                            "message", report.isOk() ? "Архив цел" : "В архиве найдены повреждения",
+                            "report", report
+                    ));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Ошибка при проверке архива: " + e.getMessage()));
+        }
+    }
+
+    // Архивы, в которых последняя проверка (по запросу или фоновая) нашла ошибки
+    @GetMapping("/verify/corrupt")
+    public ResponseEntity<Map<String, Object>> corruptArchives() {
+        List<VerificationReport> corrupt = archiveVerifier.corrupt();
+        return ResponseEntity.ok(Map.of("count", corrupt.size(), "reports", corrupt));
+    }
+
+    @GetMapping("/download/zip/list")
+    public ResponseEntity<Map<String, Object>> getFilesList(
+            @RequestParam(value = "q", required = false) String query,
+            @RequestParam(value = "sort", required = false, defaultValue = "name") String sort,
+            @RequestParam(value = "order", required = false, defaultValue = "asc") String order,
+            @RequestParam(value = "page", required = false, defaultValue = "0") int page,
+            @RequestParam(value = "size", required = false, defaultValue = "0") int size) {
+        FilePage<String> fileUris = fileArchiveService.getFilesList(query, sort, "desc".equalsIgnoreCase(order), page, size);
+        return ResponseEntity.ok()
+                .body(Map.of(
+                        "files", fileUris.getItems(),
+                        "totalFiles", fileUris.getTotal(),
+                        "page", fileUris.getPage(),
+                        "size", fileUris.getSize()
+                ));
     }
 
     @GetMapping("/download/zip/{fileName:.+}")
     public ResponseEntity<Resource> downloadFile(@PathVariable String fileName) {
+        artifactLifecycle.touch(fileName);
         try {
             Resource resource = fileArchiveService.loadFileAsResource(fileName);
 
@@ -132,13 +372,16 @@ public class FileArchiveController {
     }
 
     @PostMapping(value="/items", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<Map<String,String>> getItems(@RequestParam List<MultipartFile> files, @RequestParam String zipName) {
-        try {
-            if (files.isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(Map.of("error", "Необходимо загрузить хотя бы один файл"));
-            }
+    public CompletableFuture<ResponseEntity<Map<String,String>>> getItems(@RequestParam List<MultipartFile> files, @RequestParam String zipName) {
+        if (files.isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(Map.of("error", "Необходимо загрузить хотя бы один файл")));
+        }
+        return archiveBulkhead.supply(Bulkhead.Priority.NORMAL, () -> compressItems(files, zipName));
+    }
 
+    private ResponseEntity<Map<String,String>> compressItems(List<MultipartFile> files, String zipName) {
+        try {
             String zipFileUri = fileArchiveService.compressMultipleFilesToZip(
                     files.toArray(new MultipartFile[0]), zipName);
 
@@ -2,23 +2,46 @@ package com.example.cloud_spring_load_zip.controllers;
 
 import io.micrometer.core.instrument.*;
 import jakarta.servlet.http.HttpServletRequest;
+import com.example.cloud_spring_load_zip.backup.BackupReplicator;
+import com.example.cloud_spring_load_zip.bulkhead.Bulkhead;
+import com.example.cloud_spring_load_zip.bulkhead.Bulkheads;
+import com.example.cloud_spring_load_zip.exception.MyFileNotFoundException;
+import com.example.cloud_spring_load_zip.image.DerivativeImageService;
+import com.example.cloud_spring_load_zip.image.ProductImageService;
+import com.example.cloud_spring_load_zip.lifecycle.ArtifactLifecycleManager;
+import com.example.cloud_spring_load_zip.model.FileEntry;
+import com.example.cloud_spring_load_zip.model.FilePage;
 import com.example.cloud_spring_load_zip.model.Product;
+import com.example.cloud_spring_load_zip.model.StoredFile;
 import com.example.cloud_spring_load_zip.service.FileStorageService;
+import com.example.cloud_spring_load_zip.service.HotFileCache;
+import com.example.cloud_spring_load_zip.service.StorageLayoutMigrator;
+import com.example.cloud_spring_load_zip.storage.StorageLayout;
+import com.example.cloud_spring_load_zip.upload.BatchUploadService;
+import com.example.cloud_spring_load_zip.upload.StreamingUploadService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
 
 import java.io.IOException;
-import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -29,6 +52,30 @@ public class FileController {
     @Autowired
     private FileStorageService fileStorageService;
 
+    @Autowired
+    private StorageLayoutMigrator layoutMigrator;
+
+    @Autowired
+    private BackupReplicator backupReplicator;
+
+    @Autowired
+    private Bulkheads bulkheads;
+
+    @Autowired
+    private StreamingUploadService streamingUploadService;
+
+    @Autowired
+    private BatchUploadService batchUploadService;
+
+    @Autowired
+    private HotFileCache hotFileCache;
+
+    @Autowired
+    private DerivativeImageService derivativeImageService;
+
+    @Autowired
+    private ArtifactLifecycleManager artifactLifecycle;
+
     private final Counter requestCounter;
     private final Timer processingTimer;
     private final DistributionSummary responseSizeSummary;
@@ -70,46 +117,238 @@ public class FileController {
     }
 
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<String> uploadFile(@RequestParam("file") MultipartFile file) {
-        String fileName = fileStorageService.storeFile(file);
-        return ResponseEntity.ok("File uploaded successfully: " + fileName);
+    public CompletableFuture<ResponseEntity<String>> uploadFile(@RequestParam("file") MultipartFile file) {
+        // Запись в хранилище (диск или S3) - в пуле файлового ввода-вывода
+        return bulkheads.fileIo().supply(Bulkhead.Priority.NORMAL, () -> {
+            StoredFile stored = fileStorageService.store(file);
+            return ResponseEntity.ok()
+                    .header("X-Checksum-SHA256", stored.getSha256())
+                    .body("File uploaded successfully: " + stored.getName());
+        });
+    }
+
+    // Пакетная загрузка: любое число частей с любыми именами, файлы пишутся параллельно.
+    // Ошибка одного файла не отменяет остальные: 200 - все сохранены, 207 - есть ошибки
+    @PostMapping(value = "/upload/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> uploadBatch(MultipartHttpServletRequest request) {
+        List<MultipartFile> files = request.getMultiFileMap().values().stream()
+                .flatMap(List::stream)
+                .filter(file -> StringUtils.hasText(file.getOriginalFilename()))
+                .collect(Collectors.toList());
+        return batchUploadService.upload(files).thenApply(results -> {
+            long stored = results.stream().filter(BatchUploadService.FileResult::isStored).count();
+            return ResponseEntity.status(stored == results.size() ? HttpStatus.OK : HttpStatus.MULTI_STATUS)
+                    .body(Map.<String, Object>of(
+                            "stored", stored,
+                            "failed", results.size() - stored,
+                            "files", results
+                    ));
+        });
+    }
+
+    // Потоковая загрузка: части multipart пишутся сразу в хранилище, без временных файлов контейнера
+    @PostMapping(value = "/stream/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> uploadStreaming(HttpServletRequest request) {
+        return bulkheads.fileIo().supply(Bulkhead.Priority.NORMAL, () -> {
+            List<StoredFile> stored = streamingUploadService.upload(request.getInputStream(),
+                    request.getContentType(), request.getContentLengthLong());
+            return ResponseEntity.ok(Map.<String, Object>of(
+                    "message", "Файлы загружены",
+                    "files", stored
+            ));
+        });
     }
 
     @GetMapping("/download/{fileName:.+}")
     public ResponseEntity<Resource> downloadFile(@PathVariable String fileName, 
                                                HttpServletRequest request) {
+        // Скачивание продлевает жизнь сгенерированного архива или каталога
+        artifactLifecycle.touch(fileName);
+        // Маленькие часто скачиваемые файлы отдаются из памяти без открытия файла
+        if (!fileName.contains("..") && !StorageLayout.isInternalKey(fileName)) {
+            Optional<HotFileCache.Entry> cached = hotFileCache.get(fileName);
+            if (cached.isPresent()) {
+                HotFileCache.Entry entry = cached.get();
+                Resource resource = entry.resource(fileName);
+                return download(resource, entry.getEtag(), entry.getLastModified(), request)
+                        .header(HttpHeaders.CONTENT_DISPOSITION, attachment(fileName))
+                        .body(resource);
+            }
+        }
+
         // Загружаем файл как Resource
         Resource resource = fileStorageService.loadFileAsResource(fileName);
+        ResponseEntity.BodyBuilder response;
+        try {
+            long lastModified = resource.lastModified();
+            response = download(resource, HotFileCache.etag(resource.contentLength(), lastModified), lastModified, request);
+        } catch (IOException ex) {
+            // Без метаданных отдаем файл без валидаторов
+            response = download(resource, null, -1, request);
+        }
+        return response.header(HttpHeaders.CONTENT_DISPOSITION, attachment(resource.getFilename()))
+                .body(resource);
+    }
 
-        // Определяем Content-Type
-        String contentType = null;
+    // Картинки продуктов по адресу из хеша содержимого: байты по URL не меняются никогда,
+    // поэтому браузеры и прокси кешируют их на год без перепроверки
+    @GetMapping("/images/{fileName:.+}")
+    public ResponseEntity<Resource> downloadImage(@PathVariable String fileName, HttpServletRequest request) {
+        if (!ProductImageService.isImageName(fileName)) {
+            throw new MyFileNotFoundException("File not found: " + fileName);
+        }
+        String key = ProductImageService.IMAGE_DIR + "/" + fileName;
+        Resource resource = hotFileCache.get(key)
+                .<Resource>map(entry -> entry.resource(key))
+                .orElseGet(() -> fileStorageService.loadFileAsResource(key));
+        return download(resource, ProductImageService.etag(fileName), -1, request)
+                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable())
+                .body(resource);
+    }
+
+    // Превью картинки из хранилища (в том числе из распакованных каталогов): ?w=&h= - вписать
+    // в рамку без увеличения, format=png|jpg. Генерируется один раз в пуле image, дальше
+    // отдается из дискового кеша
+    @GetMapping("/thumbnails/{*fileName}")
+    public CompletableFuture<ResponseEntity<Resource>> downloadThumbnail(
+            @PathVariable String fileName,
+            @RequestParam(value = "w", required = false) Integer width,
+            @RequestParam(value = "h", required = false) Integer height,
+            @RequestParam(value = "format", required = false) String format,
+            HttpServletRequest request) {
+        String key = fileName.startsWith("/") ? fileName.substring(1) : fileName;
+        artifactLifecycle.touch(key);
+        ServletWebRequest webRequest = new ServletWebRequest(request);
+        return derivativeImageService.render(key, width, height, format).thenApply(derivative -> {
+            // Превью картинки продукта неизменно, как и сама картинка
+            String imagePrefix = ProductImageService.IMAGE_DIR + "/";
+            boolean immutable = key.startsWith(imagePrefix)
+                    && ProductImageService.isImageName(key.substring(imagePrefix.length()));
+            CacheControl cacheControl = immutable
+                    ? CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable()
+                    : CacheControl.empty();
+            HttpHeaders headers = new HttpHeaders();
+            headers.setETag(derivative.getEtag());
+            headers.setCacheControl(cacheControl);
+            if (!immutable) {
+                headers.setLastModified(derivative.getLastModified());
+            }
+            // Превью уже открыто, а 304 уходит без тела - файл закрываем здесь
+            // (запрос без ответа: checkNotModified только проверяет условия)
+            if (webRequest.checkNotModified(derivative.getEtag(), immutable ? -1 : derivative.getLastModified())) {
+                closeQuietly(derivative);
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+            }
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .contentType(MediaType.parseMediaType(derivative.getContentType()))
+                    .body(derivative.getResource());
+        });
+    }
+
+    private static void closeQuietly(DerivativeImageService.Derivative derivative) {
         try {
-            contentType = request.getServletContext().getMimeType(resource.getFile().getAbsolutePath());
+            derivative.close();
         } catch (IOException ex) {
-            // Если не можем определить тип, используем по умолчанию
+            logger.debug("Could not close derivative", ex);
+        }
+    }
+
+    // ETag одинаков для ответа из кеша и из хранилища; 304 на If-None-Match
+    // отвечает HttpEntityMethodProcessor
+    private ResponseEntity.BodyBuilder download(Resource resource, String etag, long lastModified,
+                                                HttpServletRequest request) {
+        // Определяем Content-Type по имени файла
+        String contentType = request.getServletContext().getMimeType(resource.getFilename());
+        if (contentType == null) {
             contentType = "application/octet-stream";
         }
 
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(contentType))
-                .header(HttpHeaders.CONTENT_DISPOSITION, 
-                       "attachment; filename=\"" + resource.getFilename() + "\"")
-                .body(resource);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(contentType));
+        if (etag != null) {
+            response.eTag(etag);
+        }
+        if (lastModified > 0) {
+            response.lastModified(lastModified);
+        }
+        return response;
+    }
+
+    private static String attachment(String fileName) {
+        int slash = fileName.lastIndexOf('/');
+        return "attachment; filename=\"" + (slash < 0 ? fileName : fileName.substring(slash + 1)) + "\"";
     }
 
     @GetMapping("/files")
-    public ResponseEntity<List<String>> getListFiles() {
-        // Получаем список файлов безопасно
-        List<Path> paths = fileStorageService.loadAll(); // теперь возвращает List<Path>
+    public ResponseEntity<List<String>> getListFiles(
+            @RequestParam(value = "q", required = false) String query,
+            @RequestParam(value = "type", required = false) String type,
+            @RequestParam(value = "sort", required = false, defaultValue = "name") String sort,
+            @RequestParam(value = "order", required = false, defaultValue = "asc") String order,
+            @RequestParam(value = "page", required = false) Integer page,
+            @RequestParam(value = "size", required = false) Integer size) {
+        // Список берется из каталога в памяти, директория не сканируется.
+        // Без page и size отдается весь список, как и раньше; постранично с total - /files/catalog
+        boolean descending = "desc".equalsIgnoreCase(order);
+        List<FileEntry> entries = page == null && size == null
+                ? fileStorageService.listAllFiles(query, type, sort, descending)
+                : fileStorageService.listFiles(query, type, sort, descending,
+                        page == null ? 0 : page, size == null ? 0 : size).getItems();
 
-        List<String> fileInfos = paths.stream()
-                .map(path -> path.getFileName().toString())
+        List<String> fileInfos = entries.stream()
+                .map(FileEntry::getName)
                 .map(s->"http://localhost:8081/api/files/download/"+s)
                 .collect(Collectors.toList());
 
         return ResponseEntity.ok(fileInfos);
     }
 
+    @GetMapping("/files/catalog")
+    public ResponseEntity<FilePage<FileEntry>> getFilesCatalog(
+            @RequestParam(value = "q", required = false) String query,
+            @RequestParam(value = "type", required = false) String type,
+            @RequestParam(value = "sort", required = false, defaultValue = "name") String sort,
+            @RequestParam(value = "order", required = false, defaultValue = "asc") String order,
+            @RequestParam(value = "page", required = false, defaultValue = "0") int page,
+            @RequestParam(value = "size", required = false, defaultValue = "0") int size) {
+        return ResponseEntity.ok(fileStorageService.listFiles(query, type, sort, "desc".equalsIgnoreCase(order), page, size));
+    }
+
+    @PostMapping("/admin/layout/migrate")
+    public ResponseEntity<Map<String, Object>> migrateLayout() {
+        // Перенос плоской директории в шарды идет в фоне, прогресс - через GET
+        boolean started = layoutMigrator.start();
+        return ResponseEntity.status(started ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT)
+                .body(layoutMigrator.status());
+    }
+
+    @GetMapping("/admin/layout/migrate")
+    public ResponseEntity<Map<String, Object>> getLayoutMigrationStatus() {
+        return ResponseEntity.ok(layoutMigrator.status());
+    }
+
+    @GetMapping("/admin/artifacts")
+    public ResponseEntity<Map<String, Object>> getArtifactsStatus() {
+        // Сгенерированные архивы и каталоги: объем против квоты, сколько освобождено
+        return ResponseEntity.ok(artifactLifecycle.status());
+    }
+
+    @PostMapping("/admin/artifacts/sweep")
+    public ResponseEntity<Map<String, Object>> sweepArtifacts() {
+        if (!artifactLifecycle.sweepNow()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", "Уборка сгенерированных файлов выключена"));
+        }
+        return ResponseEntity.accepted().body(artifactLifecycle.status());
+    }
+
+    @GetMapping("/admin/backup")
+    public ResponseEntity<Map<String, Object>> getBackupStatus() {
+        // Отставание репликации: размер очереди, возраст самой старой задачи, повторы
+        return ResponseEntity.ok(backupReplicator.status());
+    }
+
 //    @PostMapping(value = "/uploadWithURI", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
 //    @Tag(name = "изменение/добавление/удаление")
 //    @Operation(summary = "Добавить новый продукт", description = "В ответе возвращается объект Product c полями id, name, quantity и price.")
@@ -10,20 +10,34 @@ import jakarta.validation.Valid;
 import jakarta.validation.constraints.Max;
 import lombok.Getter;
 import lombok.Setter;
+import com.example.cloud_spring_load_zip.bulkhead.Bulkhead;
+import com.example.cloud_spring_load_zip.bulkhead.Bulkheads;
 import com.example.cloud_spring_load_zip.exception.ProductException;
+import com.example.cloud_spring_load_zip.image.ProductImageService;
 import com.example.cloud_spring_load_zip.model.Product;
+import com.example.cloud_spring_load_zip.model.ProductAggregates;
+import com.example.cloud_spring_load_zip.model.ProductQuery;
+import com.example.cloud_spring_load_zip.service.ProductAnalyticsService;
+import com.example.cloud_spring_load_zip.service.ProductCodecs;
+import com.example.cloud_spring_load_zip.service.ProductFormat;
+import com.example.cloud_spring_load_zip.service.ProductQueryService;
+import com.example.cloud_spring_load_zip.service.ProductResponseCache;
 import com.example.cloud_spring_load_zip.service.ProductService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -34,6 +48,21 @@ public class ProductController {
 
     private ProductService service;
 
+    private final ProductAnalyticsService analyticsService;
+
+    private final ProductQueryService queryService;
+
+    private final ProductResponseCache responseCache;
+
+    private final ProductCodecs codecs;
+
+    private final ProductImageService imageService;
+
+    // Сканы каталога и пакетная запись не занимают потоки Tomcat, нужные для точечного CRUD
+    private final Bulkhead catalogBulkhead;
+
+    private final Bulkhead fileIoBulkhead;
+
     private final Counter requestCounter;
     private final Timer processingTimer;
     private final DistributionSummary responseSizeSummary;
@@ -42,8 +71,18 @@ public class ProductController {
 
     private static final Logger logger = LoggerFactory.getLogger(ProductController.class);
 
-    public ProductController(ProductService service, MeterRegistry registry) {
+    public ProductController(ProductService service, ProductAnalyticsService analyticsService,
+                             ProductQueryService queryService, ProductResponseCache responseCache,
+                             ProductCodecs codecs, ProductImageService imageService, Bulkheads bulkheads,
+                             MeterRegistry registry) {
         this.service = service;
+        this.analyticsService = analyticsService;
+        this.queryService = queryService;
+        this.responseCache = responseCache;
+        this.codecs = codecs;
+        this.imageService = imageService;
+        this.catalogBulkhead = bulkheads.catalog();
+        this.fileIoBulkhead = bulkheads.fileIo();
 
         // Инициализация счетчика запросов
         this.requestCounter = Counter.builder("api.requests")
@@ -109,6 +148,44 @@ public class ProductController {
         return ResponseEntity.status(HttpStatus.CREATED).body(service.saveProduct(product).orElseThrow(() -> new ProductException("Error while saving product "+product) ));
     }
 
+    @PostMapping("/bulk")
+    @Tag(name = "изменение/добавление/удаление")
+    @Operation(summary = "Добавить список продуктов", description = "Тело - список Product в JSON, Smile, CBOR или protobuf (сообщение ProductList). Список сохраняется, только если все продукты корректны.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "201", description = "Продукты успешно созданы"),
+            @ApiResponse(responseCode = "400", description = "Некорректные данные продукта")
+    })
+    public CompletableFuture<ResponseEntity<?>> addProducts(@Parameter(description = "Добавляемые продукты", required = true)
+                                                            @RequestBody List<@Valid Product> products) {
+        requestCounter.increment();
+        return catalogBulkhead.supply(Bulkhead.Priority.NORMAL, () -> service.saveProducts(products)
+                .<ResponseEntity<?>>map(saved -> ResponseEntity.status(HttpStatus.CREATED).body(saved))
+                .orElseGet(() -> ResponseEntity.badRequest()
+                        .body(Map.of("error", "Список содержит некорректные продукты"))));
+    }
+
+    @PostMapping(value = "/{id}/image", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Tag(name = "изменение/добавление/удаление")
+    @Operation(summary = "Загрузить картинку продукта", description = "imageURI продукта заменяется постоянным URL вида /api/files/images/<sha256>.<ext>: новая картинка всегда получает новый адрес.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Картинка сохранена, в ответе обновленный продукт"),
+            @ApiResponse(responseCode = "404", description = "Не найден продукт с таким id"),
+            @ApiResponse(responseCode = "415", description = "Недопустимый тип файла")
+    })
+    public CompletableFuture<ResponseEntity<Product>> uploadProductImage(
+            @Parameter(description = "ID продукта", required = true) @PathVariable int id,
+            @RequestParam("file") MultipartFile file) {
+        requestCounter.increment();
+        return fileIoBulkhead.supply(Bulkhead.Priority.NORMAL, () -> ResponseEntity.ok(imageService.attach(id, file)));
+    }
+
+    @Tag(name = "get", description = "GET-методы Employee API")
+    @GetMapping(value = "/schema.proto", produces = "text/plain")
+    @Operation(summary = "Protobuf-схема продуктов", description = "Схема для Accept/Content-Type application/x-protobuf: продукт и список продуктов ProductList.")
+    public ResponseEntity<String> getProtoSchema() {
+        return ResponseEntity.ok(codecs.protoSchema());
+    }
+
     @Tag(name = "get", description = "GET-методы Employee API")
     @GetMapping
     @Operation(summary = "Получить список продуктов", description = "В ответе возвращается список объектов Product c полями id, name, quantity и price.")
@@ -118,7 +195,15 @@ public class ProductController {
             @ApiResponse(responseCode = "500", description = "Внутренняя ошибка сервера"),
             @ApiResponse(responseCode = "403", description = "Некорректный путь запроса")
     })
-    public ResponseEntity<List<Product>> findAllProducts() {
+    public ResponseEntity<byte[]> findAllProducts(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        // Версия не изменилась - отвечаем 304, не трогая репозиторий
+        ProductFormat format = codecs.negotiate(accept, true);
+        String etag = responseCache.listingEtag("all", format);
+        if (responseCache.notModified(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
         activeRequests.incrementAndGet();
         requestCounter.increment();
 
@@ -134,8 +219,10 @@ public class ProductController {
         });
         responseSizeSummary.record(result.getBytes(StandardCharsets.UTF_8).length);
         activeRequests.decrementAndGet();
-        logger.debug("Returning list of products {}", service.getProducts());
-        return ResponseEntity.status(HttpStatus.FOUND).body(service.getProducts().orElseThrow(() -> new ProductException("No products in list")));
+        ProductResponseCache.Encoded body = responseCache.listing("all", format,
+                () -> service.getProducts().orElseThrow(() -> new ProductException("No products in list")));
+        logger.debug("Returning list of products, {} bytes", body.getBytes().length);
+        return encoded(HttpStatus.FOUND, format, body);
     }
 
     @Tag(name = "get", description = "GET-методы Employee API")
@@ -148,9 +235,16 @@ public class ProductController {
             @ApiResponse(responseCode = "500", description = "Внутренняя ошибка сервера"),
             @ApiResponse(responseCode = "403", description = "Некорректный путь запроса")
     })
-    public ResponseEntity<Product> findProductById(@Parameter(
+    public ResponseEntity<byte[]> findProductById(@Parameter(
             description = "ID продукта, данные по которому запрашиваются",
-            required = true)@PathVariable @Valid @Max(100) int id) {
+            required = true)@PathVariable @Valid @Max(100) int id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        ProductFormat format = codecs.negotiate(accept, true);
+        String etag = responseCache.productEtag(id, format);
+        if (responseCache.notModified(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
         activeRequests.incrementAndGet();
         requestCounter.increment();
 
@@ -167,7 +261,8 @@ public class ProductController {
         });
         responseSizeSummary.record(result.getBytes(StandardCharsets.UTF_8).length);
         activeRequests.decrementAndGet();
-        return ResponseEntity.status(HttpStatus.FOUND).body(service.getProductById(id).orElseThrow(() -> new ProductException("No product with such id "+id) ));
+        return encoded(HttpStatus.FOUND, format, responseCache.product(id, format,
+                () -> service.getProductById(id).orElseThrow(() -> new ProductException("No product with such id "+id))));
     }
 
 
@@ -271,24 +366,34 @@ public class ProductController {
     }
 
     @Tag(name = "get", description = "GET-методы Employee API")
-    @RequestMapping(method = RequestMethod.GET, value = "/byname", produces = "application/json")
+    @RequestMapping(method = RequestMethod.GET, value = "/byname", produces = {"application/json", "application/x-jackson-smile", "application/cbor", "application/x-protobuf"})
     @Operation(summary = "Список продуктов с сортировкой по имени", description = "В ответе возвращается список объектов Product c полями id, name, quantity и price.")
     @ApiResponses({
             @ApiResponse(responseCode = "302", description = "Сортировка прошла успешно"),
             @ApiResponse(responseCode = "404", description = "Что-то пошло не так")
     })
-    public ResponseEntity<Map<String, List<Product>>> getProductsByName() {
+    public ResponseEntity<byte[]> getProductsByName(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        // Группировки с ключами-числами в protobuf-схему не ложатся
+        ProductFormat format = codecs.negotiate(accept, false);
+        String etag = responseCache.listingEtag("byName", format);
+        if (responseCache.notModified(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
         logger.debug("Getting products by name");
         try{
             Thread.sleep(100);
-            if (service.getProductsByName().isEmpty()) {
-                logger.debug("No products found");
-                throw new ProductException("No products in list");
-            }
-            else {
-                logger.debug("Products sorted by name");
-                return ResponseEntity.status(HttpStatus.FOUND).body(service.getProductsByName());
-            }
+            ProductResponseCache.Encoded body = responseCache.listing("byName", format, () -> {
+                Map<?, List<Product>> grouped = service.getProductsByName();
+                if (grouped.isEmpty()) {
+                    logger.debug("No products found");
+                    throw new ProductException("No products in list");
+                }
+                return grouped;
+            });
+            logger.debug("Products sorted by name");
+            return encoded(HttpStatus.FOUND, format, body);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             logger.error("Error while getting products by name", e);
@@ -297,24 +402,34 @@ public class ProductController {
     }
 
     @Tag(name = "get", description = "GET-методы Employee API")
-    @RequestMapping(method = RequestMethod.GET, value = "/byprice", produces = "application/json")
+    @RequestMapping(method = RequestMethod.GET, value = "/byprice", produces = {"application/json", "application/x-jackson-smile", "application/cbor", "application/x-protobuf"})
     @Operation(summary = "Список продуктов с сортировкой по цене", description = "В ответе возвращается список объектов Product c полями id, name, quantity и price.")
     @ApiResponses({
             @ApiResponse(responseCode = "302", description = "Сортировка прошла успешно"),
             @ApiResponse(responseCode = "404", description = "Что-то пошло не так")
     })
-    public ResponseEntity<Map<Double, List<Product>>> getProductsByPrice() {
+    public ResponseEntity<byte[]> getProductsByPrice(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        // Группировки с ключами-числами в protobuf-схему не ложатся
+        ProductFormat format = codecs.negotiate(accept, false);
+        String etag = responseCache.listingEtag("byPrice", format);
+        if (responseCache.notModified(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
         try{
             logger.debug("Getting products by price");
             Thread.sleep(100);
-            if (service.getProductByPrice().isEmpty()) {
-                logger.debug("No products found");
-                throw new ProductException("No products in list");
-            }
-            else {
-                logger.debug("Products sorted by price");
-                return ResponseEntity.status(HttpStatus.FOUND).body(service.getProductByPrice());
-            }
+            ProductResponseCache.Encoded body = responseCache.listing("byPrice", format, () -> {
+                Map<?, List<Product>> grouped = service.getProductByPrice();
+                if (grouped.isEmpty()) {
+                    logger.debug("No products found");
+                    throw new ProductException("No products in list");
+                }
+                return grouped;
+            });
+            logger.debug("Products sorted by price");
+            return encoded(HttpStatus.FOUND, format, body);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             logger.error("Error while getting products by price", e);
@@ -323,23 +438,34 @@ public class ProductController {
     }
 
     @Tag(name = "get", description = "GET-методы Employee API")
-    @RequestMapping(method = RequestMethod.GET, value = "/byquantity", produces = "application/json")
+    @RequestMapping(method = RequestMethod.GET, value = "/byquantity", produces = {"application/json", "application/x-jackson-smile", "application/cbor", "application/x-protobuf"})
     @Operation(summary = "Список продуктов с сортировкой по количеству", description = "В ответе возвращается список объектов Product c полями id, name, quantity и price.")
     @ApiResponses({
             @ApiResponse(responseCode = "302", description = "Сортировка прошла успешно"),
             @ApiResponse(responseCode = "404", description = "Что-то пошло не так")
     })
-    public ResponseEntity<Map<Integer, List<Product>>> getProductsByQuantity() {
+    public ResponseEntity<byte[]> getProductsByQuantity(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        // Группировки с ключами-числами в protobuf-схему не ложатся
+        ProductFormat format = codecs.negotiate(accept, false);
+        String etag = responseCache.listingEtag("byQuantity", format);
+        if (responseCache.notModified(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
         logger.debug("Getting products by quantity");
         try {
             Thread.sleep(100);
-            if (service.getProductsByQuantity().isEmpty()) {
-                logger.debug("No products found");
-                throw new ProductException("No products in list");
-            } else {
-                logger.debug("Products sorted by quantity");
-                return ResponseEntity.status(HttpStatus.FOUND).body(service.getProductsByQuantity());
-            }
+            ProductResponseCache.Encoded body = responseCache.listing("byQuantity", format, () -> {
+                Map<?, List<Product>> grouped = service.getProductsByQuantity();
+                if (grouped.isEmpty()) {
+                    logger.debug("No products found");
+                    throw new ProductException("No products in list");
+                }
+                return grouped;
+            });
+            logger.debug("Products sorted by quantity");
+            return encoded(HttpStatus.FOUND, format, body);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             logger.error("Error while getting products by quantity", e);
@@ -348,24 +474,34 @@ public class ProductController {
     }
 
     @Tag(name = "get", description = "GET-методы Employee API")
-    @RequestMapping(method = RequestMethod.GET, value = "/byid", produces = "application/json")
+    @RequestMapping(method = RequestMethod.GET, value = "/byid", produces = {"application/json", "application/x-jackson-smile", "application/cbor", "application/x-protobuf"})
     @Operation(summary = "Список продуктов с сортировкой по id", description = "В ответе возвращается список объектов Product c полями id, name, quantity и price.")
     @ApiResponses({
             @ApiResponse(responseCode = "302", description = "Сортировка прошла успешно"),
             @ApiResponse(responseCode = "404", description = "Что-то пошло не так")
     })
-    public ResponseEntity<Map<Integer, List<Product>>> getProductsById() {
+    public ResponseEntity<byte[]> getProductsById(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        // Группировки с ключами-числами в protobuf-схему не ложатся
+        ProductFormat format = codecs.negotiate(accept, false);
+        String etag = responseCache.listingEtag("byId", format);
+        if (responseCache.notModified(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
         logger.debug("Getting products by id");
         try{
             Thread.sleep(100);
-            if (service.getProductsById().isEmpty()) {
-                logger.debug("No products found");
-                throw new ProductException("No products in list");
-            }
-            else {
-                logger.debug("Products sorted by id");
-                return ResponseEntity.status(HttpStatus.FOUND).body(service.getProductsById());
-            }
+            ProductResponseCache.Encoded body = responseCache.listing("byId", format, () -> {
+                Map<?, List<Product>> grouped = service.getProductsById();
+                if (grouped.isEmpty()) {
+                    logger.debug("No products found");
+                    throw new ProductException("No products in list");
+                }
+                return grouped;
+            });
+            logger.debug("Products sorted by id");
+            return encoded(HttpStatus.FOUND, format, body);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             logger.error("Error while getting products by id", e);
@@ -374,6 +510,73 @@ public class ProductController {
     }
 
 
+    @Tag(name = "get", description = "GET-методы Employee API")
+    @GetMapping("/analytics")
+    @Operation(summary = "Агрегаты по каталогу", description = "Суммарная стоимость склада, гистограмма цен, средняя цена по полосам количества и число продуктов с низким остатком. Считается по колоночному представлению каталога.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Агрегаты посчитаны"),
+            @ApiResponse(responseCode = "400", description = "Некорректные параметры")
+    })
+    public CompletableFuture<ResponseEntity<ProductAggregates>> getAnalytics(
+            @Parameter(description = "Префикс имени продукта") @RequestParam(value = "name", required = false) String name,
+            @Parameter(description = "Порог низкого остатка") @RequestParam(value = "lowStock", defaultValue = "10") int lowStock,
+            @Parameter(description = "Число бинов гистограммы цен") @RequestParam(value = "bins", defaultValue = "10") int bins,
+            @Parameter(description = "Границы полос количества") @RequestParam(value = "bands", defaultValue = "0,10,50,100") int[] bands) {
+        requestCounter.increment();
+        // Полный проход по колонкам - фоновый приоритет, запросы страниц идут вперед
+        return catalogBulkhead.supply(Bulkhead.Priority.LOW,
+                () -> ResponseEntity.ok(analyticsService.aggregate(name, lowStock, bins, bands)));
+    }
+
+    @Tag(name = "get", description = "GET-методы Employee API")
+    @GetMapping("/query")
+    @Operation(summary = "Запрос по диапазонам цены и количества",
+            description = "Фильтры по диапазонам и префиксу имени, сортировка и постраничный вывод. Top-N (\"10 самых дешевых\") - это sort=price&size=10. В поле plan возвращается выбранный индекс.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Страница продуктов"),
+            @ApiResponse(responseCode = "400", description = "Некорректное поле сортировки")
+    })
+    public CompletableFuture<ResponseEntity<?>> queryProducts(
+            @Parameter(description = "Минимальная цена") @RequestParam(value = "minPrice", required = false) Double minPrice,
+            @Parameter(description = "Максимальная цена") @RequestParam(value = "maxPrice", required = false) Double maxPrice,
+            @Parameter(description = "Минимальное количество") @RequestParam(value = "minQuantity", required = false) Integer minQuantity,
+            @Parameter(description = "Максимальное количество") @RequestParam(value = "maxQuantity", required = false) Integer maxQuantity,
+            @Parameter(description = "Префикс имени продукта") @RequestParam(value = "name", required = false) String name,
+            @Parameter(description = "Поле сортировки: price | quantity | id | name") @RequestParam(value = "sort", defaultValue = "price") String sort,
+            @Parameter(description = "Порядок: asc | desc") @RequestParam(value = "order", defaultValue = "asc") String order,
+            @Parameter(description = "Номер страницы с нуля") @RequestParam(value = "page", defaultValue = "0") int page,
+            @Parameter(description = "Размер страницы") @RequestParam(value = "size", defaultValue = "20") int size) {
+        requestCounter.increment();
+        if (!ProductQueryService.SORT_FIELDS.contains(sort)) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(Map.of("error", "Неизвестное поле сортировки: " + sort)));
+        }
+        ProductQuery query = new ProductQuery();
+        query.setMinPrice(minPrice);
+        query.setMaxPrice(maxPrice);
+        query.setMinQuantity(minQuantity);
+        query.setMaxQuantity(maxQuantity);
+        query.setName(name);
+        query.setSort(sort);
+        query.setDescending("desc".equalsIgnoreCase(order));
+        query.setPage(page);
+        query.setSize(size);
+        return catalogBulkhead.supply(Bulkhead.Priority.HIGH, () -> ResponseEntity.ok(queryService.query(query)));
+    }
+
+    // Готовое тело из кеша ответов отдается как есть, без повторной сериализации
+    private ResponseEntity<byte[]> encoded(HttpStatus status, ProductFormat format, ProductResponseCache.Encoded body) {
+        return ResponseEntity.status(status)
+                .eTag(body.getEtag())
+                .varyBy(HttpHeaders.ACCEPT)
+                .contentType(format.getMediaType())
+                .body(body.getBytes());
+    }
+
+    private static ResponseEntity<byte[]> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).varyBy(HttpHeaders.ACCEPT).build();
+    }
+
     // Вспомогательный класс для статистики
     @Setter
     @Getter
@@ -0,0 +1,74 @@
+package com.example.cloud_spring_load_zip.controllers;
+
+import com.example.cloud_spring_load_zip.model.Product;
+import com.example.cloud_spring_load_zip.service.ProductCodecs;
+import com.example.cloud_spring_load_zip.service.ProductFormat;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Тела запросов и ответов application/x-protobuf для продукта и списка продуктов.
+ * Регистрируется в {@link ProductWebConfiguration}.
+ */
+public class ProductProtobufMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    private final ProductCodecs codecs;
+
+    public ProductProtobufMessageConverter(ProductCodecs codecs) {
+        super(ProductFormat.PROTOBUF.getMediaType());
+        this.codecs = codecs;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Product.class == clazz || List.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, @Nullable Class<?> contextClass, @Nullable MediaType mediaType) {
+        return isProductType(type) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(@Nullable Type type, Class<?> clazz, @Nullable MediaType mediaType) {
+        return (type == null ? supports(clazz) : isProductType(type)) && canWrite(mediaType);
+    }
+
+    @Override
+    public Object read(Type type, @Nullable Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        JavaType javaType = codecs.mapper(ProductFormat.PROTOBUF).constructType(type);
+        try {
+            return codecs.decode(ProductFormat.PROTOBUF, inputMessage.getBody().readAllBytes(), javaType);
+        } catch (IOException ex) {
+            throw new HttpMessageNotReadableException("Invalid protobuf body: " + ex.getMessage(), ex, inputMessage);
+        }
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return read(clazz, null, inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object value, @Nullable Type type, HttpOutputMessage outputMessage) throws IOException {
+        outputMessage.getBody().write(codecs.encode(ProductFormat.PROTOBUF, value));
+    }
+
+    private static boolean isProductType(Type type) {
+        if (type == Product.class) {
+            return true;
+        }
+        JavaType javaType = TypeFactory.defaultInstance().constructType(type);
+        return javaType.isCollectionLikeType() && javaType.getContentType().getRawClass() == Product.class;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.cloud_spring_load_zip.controllers;
+
+import com.example.cloud_spring_load_zip.service.ProductCodecs;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class ProductWebConfiguration implements WebMvcConfigurer {
+
+    private final ProductCodecs codecs;
+
+    public ProductWebConfiguration(ProductCodecs codecs) {
+        this.codecs = codecs;
+    }
+
+    // Protobuf - в конец списка: на Accept */* первым подходит JSON, а не бинарный формат
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new ProductProtobufMessageConverter(codecs));
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.cloud_spring_load_zip.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Загрузка отклонена проверкой содержимого: недопустимый тип, подмена расширения или превышение размера.
+ */
+public class FileValidationException extends FileStorageException {
+
+    private final HttpStatus status;
+
+    public FileValidationException(String message, HttpStatus status) {
+        super(message);
+        this.status = status;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+}
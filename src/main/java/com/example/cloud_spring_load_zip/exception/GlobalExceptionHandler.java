@@ -1,11 +1,14 @@
 package com.example.cloud_spring_load_zip.exception;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.servlet.NoHandlerFoundException;
 
+import java.util.concurrent.RejectedExecutionException;
+
 @ControllerAdvice
 public class GlobalExceptionHandler {
     @ExceptionHandler(ProductException.class)
@@ -16,8 +19,19 @@ public class GlobalExceptionHandler {
         public ResponseEntity<String> handleNoHandlerFoundException(Exception ex) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ex.getMessage());
     }
+    @ExceptionHandler(FileValidationException.class)
+    public ResponseEntity<String> handleFileValidationException(FileValidationException ex) {
+        return ResponseEntity.status(ex.getStatus()).body(ex.getMessage());
+    }
     @ExceptionHandler(InvalidIDException.class)
     public ResponseEntity<String> handleInvalidURLException(InvalidIDException ex) {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
     }
+    // Очередь пула переполнена - клиенту стоит повторить позже
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> handleRejectedExecutionException(RejectedExecutionException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ex.getMessage());
+    }
 }
@@ -0,0 +1,7 @@
+package com.example.cloud_spring_load_zip.exception;
+
+public class ProductStorageException extends RuntimeException {
+    public ProductStorageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.cloud_spring_load_zip.image;
+
+import com.example.cloud_spring_load_zip.service.AppFileProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Кеш сгенерированных превью на локальном диске с ограничением объема.
+ * Вытеснение - LRU: порядок доступа ведется в памяти, а после рестарта восстанавливается
+ * по времени изменения файлов, которое попадания обновляют не чаще раза в минуту.
+ * Превью пишется во временный файл и публикуется переименованием, поэтому читатели
+ * никогда не видят недописанный файл, а получают его уже открытым - вытеснение
+ * во время отдачи ответа удаляет только имя.
+ */
+@Component
+public class DerivativeCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DerivativeCache.class);
+    private static final String TEMP_PREFIX = ".tmp-";
+    private static final long TOUCH_INTERVAL_MS = 60_000;
+
+    private final Path dir;
+    private final long maxBytes;
+    // Порядок доступа: первым идет давно не запрошенное превью
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    /**
+     * Получает путь, по которому нужно записать превью.
+     */
+    @FunctionalInterface
+    public interface Writer {
+        void write(Path target) throws IOException;
+    }
+
+    private static final class Entry {
+        private final long size;
+        private long touchedAt;
+
+        Entry(long size, long touchedAt) {
+            this.size = size;
+            this.touchedAt = touchedAt;
+        }
+    }
+
+    @Autowired
+    public DerivativeCache(AppFileProperties appFileProperties, MeterRegistry registry) {
+        this(Paths.get(appFileProperties.getDerivatives().getDir()),
+                appFileProperties.getDerivatives().getMaxBytes().toBytes(), registry);
+    }
+
+    public DerivativeCache(Path dir, long maxBytes, MeterRegistry registry) {
+        this.dir = dir.toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+        this.hits = Counter.builder("images.derivatives.cache.requests")
+                .description("Derivative image lookups in the disk cache")
+                .tag("result", "hit")
+                .register(registry);
+        this.misses = Counter.builder("images.derivatives.cache.requests")
+                .description("Derivative image lookups in the disk cache")
+                .tag("result", "miss")
+                .register(registry);
+        this.evictions = Counter.builder("images.derivatives.cache.evictions")
+                .description("Derivative images removed to stay under the size limit")
+                .register(registry);
+        Gauge.builder("images.derivatives.cache.bytes", this, DerivativeCache::totalBytes)
+                .description("Disk space used by cached derivative images")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("images.derivatives.cache.entries", this, DerivativeCache::size)
+                .description("Derivative images held in the disk cache")
+                .register(registry);
+    }
+
+    /**
+     * Загружает учет по файлам, оставшимся с прошлого запуска; недописанные удаляются.
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(dir);
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> list = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) list::iterator) {
+                if (path.getFileName().toString().startsWith(TEMP_PREFIX)) {
+                    Files.deleteIfExists(path);
+                } else if (Files.isRegularFile(path)) {
+                    files.add(path);
+                }
+            }
+        }
+        files.sort(Comparator.comparingLong(DerivativeCache::lastModified));
+        synchronized (this) {
+            for (Path path : files) {
+                long size = Files.size(path);
+                entries.put(path.getFileName().toString(), new Entry(size, lastModified(path)));
+                totalBytes += size;
+            }
+            evict(null);
+        }
+        logger.info("Derivative cache {}: {} files, {} bytes", dir, entries.size(), totalBytes);
+    }
+
+    /**
+     * Открывает готовое превью. Файл открывается под блокировкой, поэтому вытеснение,
+     * случившееся после возврата, не мешает дочитать его; закрывает открытое читатель.
+     */
+    public Optional<OpenedDerivative> open(String key) {
+        Path path = path(key);
+        OpenedDerivative opened;
+        boolean touch = false;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            opened = null;
+            if (entry != null) {
+                try {
+                    opened = openFile(path, key);
+                } catch (NoSuchFileException ex) {
+                    // Файл удалили в обход кеша
+                    entries.remove(key);
+                    totalBytes -= entry.size;
+                } catch (IOException ex) {
+                    logger.warn("Could not open derivative {}", key, ex);
+                }
+            }
+            if (opened == null) {
+                misses.increment();
+                return Optional.empty();
+            }
+            long now = System.currentTimeMillis();
+            if (now - entry.touchedAt > TOUCH_INTERVAL_MS) {
+                entry.touchedAt = now;
+                touch = true;
+            }
+        }
+        hits.increment();
+        if (touch) {
+            try {
+                Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException ex) {
+                // Порядок после рестарта будет чуть менее точным
+                logger.debug("Could not touch derivative {}", key, ex);
+            }
+        }
+        return Optional.of(opened);
+    }
+
+    public Path path(String key) {
+        return dir.resolve(key);
+    }
+
+    public synchronized boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Записывает превью и вытесняет давно не запрошенные, пока объем не уложится в предел.
+     */
+    public Path put(String key, Writer writer) throws IOException {
+        Path target = dir.resolve(key);
+        Path temp = dir.resolve(TEMP_PREFIX + UUID.randomUUID());
+        try {
+            writer.write(temp);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException ex) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException deleteEx) {
+                ex.addSuppressed(deleteEx);
+            }
+            throw ex;
+        }
+        long size = Files.size(target);
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(size, System.currentTimeMillis()));
+            if (previous != null) {
+                totalBytes -= previous.size;
+            }
+            totalBytes += size;
+            // Удаление под блокировкой: иначе параллельная запись того же ключа
+            // могла бы потерять только что опубликованный файл
+            evict(key);
+        }
+        return target;
+    }
+
+    public synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Entry>> oldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && oldest.hasNext()) {
+            Map.Entry<String, Entry> candidate = oldest.next();
+            if (candidate.getKey().equals(keep)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(dir.resolve(candidate.getKey()));
+            } catch (IOException ex) {
+                logger.warn("Could not delete derivative {}", candidate.getKey(), ex);
+                continue;
+            }
+            oldest.remove();
+            totalBytes -= candidate.getValue().size;
+            evictions.increment();
+        }
+    }
+
+    private static OpenedDerivative openFile(Path path, String key) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new OpenedDerivative(channel, channel.size(), key);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.example.cloud_spring_load_zip.image;
+
+import com.example.cloud_spring_load_zip.bulkhead.Bulkhead;
+import com.example.cloud_spring_load_zip.bulkhead.Bulkheads;
+import com.example.cloud_spring_load_zip.exception.FileStorageException;
+import com.example.cloud_spring_load_zip.exception.FileValidationException;
+import com.example.cloud_spring_load_zip.exception.MyFileNotFoundException;
+import com.example.cloud_spring_load_zip.service.AppFileProperties;
+import com.example.cloud_spring_load_zip.storage.BlobInfo;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Превью картинок из хранилища: вписать в рамку w x h с сохранением пропорций, без увеличения.
+ * Генерация средствами JDK (ImageIO + Java2D) в пуле image; каждое превью строится один раз -
+ * параллельные запросы одного превью ждут одну генерацию (single-flight), дальше оно отдается
+ * из {@link DerivativeCache}. Ключ кеша включает размер и время изменения исходника,
+ * поэтому перезаписанная картинка получает новые превью, а старые уходят по LRU.
+ */
+@Service
+public class DerivativeImageService {
+
+    // Расширение в запросе -> имя формата ImageIO
+    private static final Map<String, String> FORMATS = Map.of(
+            "png", "png",
+            "jpg", "jpeg",
+            "jpeg", "jpeg"
+    );
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            "png", "image/png",
+            "jpeg", "image/jpeg"
+    );
+
+    private final StorageBackend storageBackend;
+    private final DerivativeCache cache;
+    private final Bulkhead bulkhead;
+    private final AppFileProperties.Derivatives properties;
+    // Генерации в процессе: параллельные запросы того же превью ждут одну и ту же
+    private final ConcurrentMap<String, CompletableFuture<Void>> renders = new ConcurrentHashMap<>();
+    private final Counter generatedCounter;
+    private final Counter sharedCounter;
+    private final Timer renderTimer;
+
+    /**
+     * Готовое превью, уже открытое в дисковом кеше. Тело ответа закрывает его после отдачи,
+     * ответ без тела должен закрыть сам.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class Derivative implements Closeable {
+        private final OpenedDerivative resource;
+        private final String contentType;
+        // Сильный ETag: байты превью однозначно определяются ключом
+        private final String etag;
+        // Время изменения исходника
+        private final long lastModified;
+
+        @Override
+        public void close() throws IOException {
+            resource.close();
+        }
+    }
+
+    public DerivativeImageService(StorageBackend storageBackend, DerivativeCache cache, Bulkheads bulkheads,
+                                  AppFileProperties appFileProperties, MeterRegistry registry) {
+        this.storageBackend = storageBackend;
+        this.cache = cache;
+        this.bulkhead = bulkheads.image();
+        this.properties = appFileProperties.getDerivatives();
+        this.generatedCounter = Counter.builder("images.derivatives.renders")
+                .description("Derivative image requests that needed rendering")
+                .tag("outcome", "generated")
+                .register(registry);
+        this.sharedCounter = Counter.builder("images.derivatives.renders")
+                .description("Derivative image requests that needed rendering")
+                .tag("outcome", "shared")
+                .register(registry);
+        this.renderTimer = Timer.builder("images.derivatives.render.time")
+                .description("Time to decode, scale and encode a derivative image")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+    }
+
+    /**
+     * Превью файла fileName. Готовое возвращается сразу, иначе - после генерации в пуле image
+     * (переполненный пул - {@link RejectedExecutionException}, т.е. 503).
+     *
+     * @param format png или jpg; по умолчанию jpg для jpeg-исходников и png для остальных
+     */
+    public CompletableFuture<Derivative> render(String fileName, Integer width, Integer height, String format) {
+        if (fileName.contains("..")) {
+            throw new MyFileNotFoundException("Invalid file name: " + fileName);
+        }
+        if (width == null && height == null) {
+            throw new FileValidationException("Укажите ширину (w) или высоту (h) превью", HttpStatus.BAD_REQUEST);
+        }
+        checkDimension(width);
+        checkDimension(height);
+        String writerFormat = FORMATS.get(requestedFormat(fileName, format));
+        if (writerFormat == null) {
+            throw new FileValidationException("Формат превью не поддерживается: " + format
+                    + ". Допустимые: " + FORMATS.keySet(), HttpStatus.BAD_REQUEST);
+        }
+        BlobInfo source = stat(fileName);
+
+        String fingerprint = fingerprint(fileName + "\n" + source.getSize() + "\n" + source.getLastModified()
+                + "\n" + width + "x" + height + "\n" + writerFormat);
+        String key = fingerprint + ("jpeg".equals(writerFormat) ? ".jpg" : ".png");
+        String contentType = CONTENT_TYPES.get(writerFormat);
+        String etag = "\"" + fingerprint + "\"";
+        Optional<OpenedDerivative> cached = cache.open(key);
+        if (cached.isPresent()) {
+            return CompletableFuture.completedFuture(
+                    new Derivative(cached.get(), contentType, etag, source.getLastModified()));
+        }
+
+        CompletableFuture<Void> own = new CompletableFuture<>();
+        CompletableFuture<Void> running = renders.putIfAbsent(key, own);
+        if (running != null) {
+            sharedCounter.increment();
+        } else if (cache.contains(key)) {
+            // Генерация могла закончиться между проверкой кеша и регистрацией
+            renders.remove(key, own);
+            own.complete(null);
+        } else {
+            try {
+                bulkhead.supply(Bulkhead.Priority.NORMAL, () -> {
+                    generate(fileName, key, width, height, writerFormat);
+                    return null;
+                }).whenComplete((result, ex) -> {
+                    renders.remove(key, own);
+                    if (ex != null) {
+                        own.completeExceptionally(ex);
+                    } else {
+                        own.complete(null);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                renders.remove(key, own);
+                own.completeExceptionally(ex);
+                throw ex;
+            }
+        }
+        // Каждый запрос открывает превью сам; если его успели вытеснить - строим заново
+        return (running != null ? running : own).thenCompose(done -> cache.open(key)
+                .map(opened -> CompletableFuture.completedFuture(
+                        new Derivative(opened, contentType, etag, source.getLastModified())))
+                .orElseGet(() -> render(fileName, width, height, format)));
+    }
+
+    private void generate(String fileName, String key, Integer width, Integer height, String writerFormat) {
+        long started = System.nanoTime();
+        BufferedImage image;
+        // Исходник читается потоком из хранилища (локального или S3), без временных файлов ImageIO
+        try (InputStream in = storageBackend.get(fileName);
+             ImageInputStream input = new MemoryCacheImageInputStream(in)) {
+            image = decode(input, fileName, width, height, !"jpeg".equals(writerFormat));
+        } catch (NoSuchFileException ex) {
+            throw new MyFileNotFoundException("File not found: " + fileName);
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not read image " + fileName, ex);
+        }
+        try {
+            cache.put(key, target -> write(image, writerFormat, target));
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not write thumbnail for " + fileName, ex);
+        }
+        generatedCounter.increment();
+        renderTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    private BufferedImage decode(ImageInputStream input, String fileName, Integer width, Integer height,
+                                 boolean keepAlpha) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new FileValidationException("Файл не является картинкой: " + fileName,
+                    HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            int sourceWidth = reader.getWidth(0);
+            int sourceHeight = reader.getHeight(0);
+            // Размер известен из заголовка - огромные картинки отсекаются до декодирования
+            if ((long) sourceWidth * sourceHeight > properties.getMaxSourcePixels()) {
+                throw new FileValidationException("Картинка слишком большая для превью: "
+                        + sourceWidth + "x" + sourceHeight, HttpStatus.PAYLOAD_TOO_LARGE);
+            }
+            double scale = 1.0;
+            if (width != null) {
+                scale = Math.min(scale, (double) width / sourceWidth);
+            }
+            if (height != null) {
+                scale = Math.min(scale, (double) height / sourceHeight);
+            }
+            int targetWidth = (int) Math.max(1, Math.round(sourceWidth * scale));
+            int targetHeight = (int) Math.max(1, Math.round(sourceHeight * scale));
+
+            // Прореживание при чтении: декодируем не больше чем вдвое крупнее результата,
+            // это экономит память и время, а сглаживание дает масштабирование ниже
+            ImageReadParam param = reader.getDefaultReadParam();
+            int step = Math.max(1, Math.min(sourceWidth / (2 * targetWidth), sourceHeight / (2 * targetHeight)));
+            if (step > 1) {
+                param.setSourceSubsampling(step, step, 0, 0);
+            }
+            return scale(reader.read(0, param), targetWidth, targetHeight, keepAlpha);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    // Уменьшение шагами не больше чем вдвое с билинейной интерполяцией: по качеству близко
+    // к бикубическому за один проход, но заметно быстрее. Один проход выполняется всегда -
+    // он же приводит картинку к RGB (прозрачность заливается белым) для JPEG
+    private static BufferedImage scale(BufferedImage source, int targetWidth, int targetHeight, boolean keepAlpha) {
+        boolean alpha = keepAlpha && source.getColorModel().hasAlpha();
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                if (!alpha) {
+                    graphics.setColor(Color.WHITE);
+                    graphics.fillRect(0, 0, width, height);
+                }
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private void write(BufferedImage image, String writerFormat, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(writerFormat).next();
+        try (FileImageOutputStream out = new FileImageOutputStream(target.toFile())) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpeg".equals(writerFormat)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(properties.getJpegQuality());
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private void checkDimension(Integer value) {
+        if (value != null && (value < 1 || value > properties.getMaxDimension())) {
+            throw new FileValidationException("Размер превью должен быть от 1 до " + properties.getMaxDimension(),
+                    HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    private static String requestedFormat(String fileName, String format) {
+        if (StringUtils.hasText(format)) {
+            return format.toLowerCase(Locale.ROOT);
+        }
+        String source = StringUtils.getFilenameExtension(fileName);
+        return source != null && "jpeg".equals(FORMATS.get(source.toLowerCase(Locale.ROOT))) ? "jpg" : "png";
+    }
+
+    private BlobInfo stat(String fileName) {
+        Optional<BlobInfo> info;
+        try {
+            info = storageBackend.stat(fileName);
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not read file attributes: " + fileName, ex);
+        } catch (FileStorageException ex) {
+            // Имя выходит за пределы хранилища
+            info = Optional.empty();
+        }
+        return info.filter(blob -> !blob.isDirectory())
+                .orElseThrow(() -> new MyFileNotFoundException("File not found: " + fileName));
+    }
+
+    private static String fingerprint(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.cloud_spring_load_zip.image;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+/**
+ * Превью, открытое в {@link DerivativeCache}. Вытеснение удаляет только имя файла:
+ * открытый дескриптор держит данные, пока ответ не дочитает их и не закроет поток.
+ * Как и {@link org.springframework.core.io.InputStreamResource}, читается один раз.
+ */
+public final class OpenedDerivative extends AbstractResource implements Closeable {
+
+    private final FileChannel channel;
+    private final long size;
+    private final String filename;
+    private boolean read;
+
+    OpenedDerivative(FileChannel channel, long size, String filename) {
+        this.channel = channel;
+        this.size = size;
+        this.filename = filename;
+    }
+
+    @Override
+    public synchronized InputStream getInputStream() throws IOException {
+        if (read) {
+            throw new IllegalStateException("Derivative " + filename + " has already been read");
+        }
+        read = true;
+        // Закрытие потока закрывает и канал
+        return Channels.newInputStream(channel);
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return size;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public String getDescription() {
+        return "derivative [" + filename + "]";
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.cloud_spring_load_zip.image;
+
+import com.example.cloud_spring_load_zip.exception.FileStorageException;
+import com.example.cloud_spring_load_zip.exception.FileValidationException;
+import com.example.cloud_spring_load_zip.exception.ProductException;
+import com.example.cloud_spring_load_zip.model.Product;
+import com.example.cloud_spring_load_zip.service.FileStorageService;
+import com.example.cloud_spring_load_zip.service.ProductService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Картинки продуктов с адресом по содержимому: ключ images/&lt;sha256&gt;.&lt;ext&gt;.
+ * Байты по такому адресу никогда не меняются, поэтому их можно кешировать навсегда
+ * (Cache-Control: immutable), а новая картинка продукта автоматически получает новый URL.
+ * Старые версии остаются доступны: страницы, закешированные со старой ссылкой, не ломаются.
+ */
+@Service
+public class ProductImageService {
+
+    public static final String IMAGE_DIR = "images";
+    public static final String URL_PATH = "/api/files/images/";
+    // 128 бит SHA-256 - коллизия случайных картинок практически невозможна
+    private static final int FINGERPRINT_LENGTH = 32;
+    private static final Pattern IMAGE_NAME = Pattern.compile("[0-9a-f]{" + FINGERPRINT_LENGTH + "}\\.[a-z0-9]{1,10}");
+
+    private final FileStorageService fileStorageService;
+    private final ProductService productService;
+    private final Counter storedCounter;
+    private final Counter deduplicatedCounter;
+
+    public ProductImageService(FileStorageService fileStorageService, ProductService productService,
+                               MeterRegistry registry) {
+        this.fileStorageService = fileStorageService;
+        this.productService = productService;
+        this.storedCounter = Counter.builder("products.images")
+                .description("Product images attached")
+                .tag("outcome", "stored")
+                .register(registry);
+        this.deduplicatedCounter = Counter.builder("products.images")
+                .description("Product images attached")
+                .tag("outcome", "deduplicated")
+                .register(registry);
+    }
+
+    /**
+     * Сохраняет картинку и записывает ее постоянный URL в imageURI продукта.
+     */
+    public Product attach(int productId, MultipartFile file) {
+        if (productService.getProductById(productId).isEmpty()) {
+            throw new ProductException("No product with such id " + productId);
+        }
+        String key = store(file);
+        return productService.updateImage(productId, url(key))
+                .orElseThrow(() -> new ProductException("No product with such id " + productId));
+    }
+
+    /**
+     * Ключ в хранилище; одинаковое содержимое пишется один раз.
+     */
+    public String store(MultipartFile file) {
+        if (file.isEmpty()) {
+            throw new FileValidationException("Файл картинки пуст", HttpStatus.BAD_REQUEST);
+        }
+        String original = StringUtils.cleanPath(file.getOriginalFilename() == null ? "" : file.getOriginalFilename());
+        String extension = StringUtils.getFilenameExtension(original);
+        if (extension == null || extension.isEmpty()) {
+            throw new FileValidationException("У файла картинки нет расширения: " + original,
+                    HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+        }
+
+        // Multipart уже лежит во временном файле - хеш считается первым проходом, чтобы
+        // знать итоговый ключ до записи. Проверка типа и размера - при записи, как у обычной загрузки
+        String fingerprint = fingerprint(file);
+        String key = IMAGE_DIR + "/" + fingerprint + "." + extension.toLowerCase(Locale.ROOT);
+        if (fileStorageService.fileExists(key)) {
+            deduplicatedCounter.increment();
+            return key;
+        }
+        // При записи хеш считается снова и сверяется с ключом до публикации
+        try (InputStream in = file.getInputStream()) {
+            fileStorageService.storeContentAddressed(key, in, file.getSize(), fingerprint);
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not store image " + original, ex);
+        }
+        storedCounter.increment();
+        return key;
+    }
+
+    /**
+     * Имя в {@link #URL_PATH} похоже на адрес по содержимому.
+     */
+    public static boolean isImageName(String name) {
+        return IMAGE_NAME.matcher(name).matches();
+    }
+
+    /**
+     * Сильный ETag - сам отпечаток содержимого.
+     */
+    public static String etag(String name) {
+        return "\"" + name.substring(0, FINGERPRINT_LENGTH) + "\"";
+    }
+
+    private static String url(String key) {
+        return ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path(URL_PATH)
+                .path(key.substring(IMAGE_DIR.length() + 1))
+                .toUriString();
+    }
+
+    private static String fingerprint(MultipartFile file) {
+        try (DigestInputStream in = new DigestInputStream(file.getInputStream(), MessageDigest.getInstance("SHA-256"))) {
+            in.transferTo(OutputStream.nullOutputStream());
+            return HexFormat.of().formatHex(in.getMessageDigest().digest()).substring(0, FINGERPRINT_LENGTH);
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not read image " + file.getOriginalFilename(), ex);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.cloud_spring_load_zip.integrity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Манифест архива: SHA-256, CRC-32 и размер каждой записи на момент упаковки.
+ * Хранится рядом с архивом служебным файлом ".<архив>.sha256", по строке на запись:
+ * {@code <sha256> <crc32> <size> <name>}.
+ * <p>
+ * CRC и размер нужны, чтобы отличить испорченную запись от устаревшего манифеста:
+ * если архив перезаписан другим способом (загрузка, слияние), строки манифеста
+ * не совпадут с центральным каталогом и SHA-256 по ним не проверяется.
+ */
+public final class ArchiveManifest {
+
+    static final String SUFFIX = ".sha256";
+
+    @Getter
+    @AllArgsConstructor
+    public static final class Line {
+        private final String sha256;
+        private final long crc;
+        private final long size;
+    }
+
+    private final Map<String, Line> entries = new LinkedHashMap<>();
+
+    /**
+     * Ключ манифеста для архива: "dir/a.zip" -> "dir/.a.zip.sha256".
+     */
+    public static String key(String zipFileName) {
+        int slash = zipFileName.lastIndexOf('/');
+        return zipFileName.substring(0, slash + 1) + "." + zipFileName.substring(slash + 1) + SUFFIX;
+    }
+
+    public void add(String name, String sha256, long crc, long size) {
+        // Перевод строки сломал бы формат - такая запись просто не попадет в манифест
+        if (name.indexOf('\n') < 0 && name.indexOf('\r') < 0) {
+            entries.put(name, new Line(sha256, crc, size));
+        }
+    }
+
+    public Map<String, Line> getEntries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public byte[] format() {
+        StringBuilder text = new StringBuilder();
+        entries.forEach((name, line) -> text.append(line.sha256).append(' ')
+                .append(String.format("%08x", line.crc)).append(' ')
+                .append(line.size).append(' ')
+                .append(name).append('\n'));
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Некорректные строки пропускаются: манифест - дополнительная проверка, а не источник истины.
+     */
+    public static ArchiveManifest parse(byte[] bytes) {
+        ArchiveManifest manifest = new ArchiveManifest();
+        for (String line : new String(bytes, StandardCharsets.UTF_8).split("\n")) {
+            String[] parts = line.split(" ", 4);
+            if (parts.length != 4 || parts[0].length() != 64) {
+                continue;
+            }
+            try {
+                manifest.add(parts[3], parts[0], Long.parseLong(parts[1], 16), Long.parseLong(parts[2]));
+            } catch (NumberFormatException ignored) {
+                // Пропускаем строку
+            }
+        }
+        return manifest;
+    }
+}
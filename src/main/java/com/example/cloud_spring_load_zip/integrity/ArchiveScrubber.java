@@ -0,0 +1,125 @@
+package com.example.cloud_spring_load_zip.integrity;
+
+import com.example.cloud_spring_load_zip.backup.ByteRateLimiter;
+import com.example.cloud_spring_load_zip.model.FileEntry;
+import com.example.cloud_spring_load_zip.service.AppFileProperties;
+import com.example.cloud_spring_load_zip.service.FileCatalog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновая проверка всех архивов каталога по кругу (app.file.verify.scrub-enabled).
+ * Порча на диске не меняет время изменения файла, поэтому архивы перечитываются заново,
+ * кроме проверенных недавно (в пределах интервала). Чтение ограничено по скорости, а куски
+ * записей идут в пул проверки с низким приоритетом, чтобы не мешать запросам.
+ */
+@Service
+public class ArchiveScrubber {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveScrubber.class);
+
+    private final ArchiveVerifier verifier;
+    private final FileCatalog fileCatalog;
+    private final AppFileProperties.Verify properties;
+    private final MeterRegistry registry;
+
+    private ScheduledExecutorService executor;
+    private ByteRateLimiter rateLimiter;
+    private Counter scrubbedCounter;
+    private volatile long lastPassFinished;
+
+    public ArchiveScrubber(ArchiveVerifier verifier, FileCatalog fileCatalog,
+                           AppFileProperties appFileProperties, MeterRegistry registry) {
+        this.verifier = verifier;
+        this.fileCatalog = fileCatalog;
+        this.properties = appFileProperties.getVerify();
+        this.registry = registry;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!properties.isScrubEnabled()) {
+            return;
+        }
+        this.rateLimiter = new ByteRateLimiter(properties.getScrubRateLimit().toBytes());
+        this.lastPassFinished = System.currentTimeMillis();
+        this.scrubbedCounter = Counter.builder("archive.scrub.archives")
+                .description("Archives re-read by the background scrubber")
+                .register(registry);
+        Gauge.builder("archive.scrub.last.pass.age", this, s -> (System.currentTimeMillis() - s.lastPassFinished) / 1000.0)
+                .description("Time since the background scrubber finished a full pass")
+                .baseUnit("seconds")
+                .register(registry);
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "archive-scrubber");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::scrub, properties.getScrubInitialDelay().toMillis(),
+                Math.max(properties.getScrubInterval().toMillis(), 1000), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void scrub() {
+        long passStart = System.currentTimeMillis();
+        long freshAfter = passStart - properties.getScrubInterval().toMillis();
+        int scrubbed = 0;
+        int corrupt = 0;
+        for (FileEntry entry : fileCatalog.all()) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            if (!"zip".equals(entry.getType())) {
+                continue;
+            }
+            try {
+                Optional<VerificationReport> recent = verifier.cached(entry.getName())
+                        .filter(report -> report.getVerifiedAt() >= freshAfter);
+                if (recent.isPresent()) {
+                    continue;
+                }
+                VerificationReport report = verifier.verify(entry.getName(), true, ArchiveVerifier.Mode.SCRUB, rateLimiter);
+                scrubbed++;
+                scrubbedCounter.increment();
+                if (!report.isOk()) {
+                    corrupt++;
+                }
+            } catch (FileNotFoundException ex) {
+                // Удален после снимка каталога
+                verifier.forget(entry.getName());
+            } catch (IOException | RuntimeException ex) {
+                // Ошибка одного архива не останавливает проход
+                logger.warn("Scrubber could not verify {}", entry.getName(), ex);
+            }
+        }
+        lastPassFinished = System.currentTimeMillis();
+        logger.info("Archive scrub pass finished in {} ms: {} archives verified, {} corrupt",
+                lastPassFinished - passStart, scrubbed, corrupt);
+    }
+}
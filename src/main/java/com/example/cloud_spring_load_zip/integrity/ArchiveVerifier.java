@@ -0,0 +1,438 @@
+package com.example.cloud_spring_load_zip.integrity;
+
+import com.example.cloud_spring_load_zip.backup.ByteRateLimiter;
+import com.example.cloud_spring_load_zip.bulkhead.Bulkhead;
+import com.example.cloud_spring_load_zip.bulkhead.Bulkheads;
+import com.example.cloud_spring_load_zip.service.AppFileProperties;
+import com.example.cloud_spring_load_zip.storage.BlobInfo;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import com.example.cloud_spring_load_zip.zip.ZipDirectory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Проверка целостности сохраненных архивов: каждая запись распаковывается в никуда,
+ * CRC-32 и размер сверяются с центральным каталогом, а при наличии манифеста
+ * ({@link ArchiveManifest}) - еще и SHA-256.
+ * <p>
+ * Записи большого архива делятся на куски примерно равного сжатого объема и проверяются
+ * параллельно в пуле "verify": распаковка упирается в процессор, а каждая запись читается
+ * своим диапазоном. Результат кешируется по имени архива и действителен, пока не изменились
+ * время изменения и размер.
+ */
+@Component
+public class ArchiveVerifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveVerifier.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int FLAG_ENCRYPTED = 1;
+    // Меньшие архивы проверяются в вызывающем потоке: раздача по пулу дороже самой проверки
+    static final long PARALLEL_THRESHOLD = 4L * 1024 * 1024;
+
+    public enum Mode {
+        ON_DEMAND("on-demand", Bulkhead.Priority.NORMAL),
+        SCRUB("scrub", Bulkhead.Priority.LOW);
+
+        private final String tag;
+        private final Bulkhead.Priority priority;
+
+        Mode(String tag, Bulkhead.Priority priority) {
+            this.tag = tag;
+            this.priority = priority;
+        }
+    }
+
+    private final StorageBackend storageBackend;
+    private final Bulkhead verifyBulkhead;
+    private final Cache<String, VerificationReport> reports;
+    private final MeterRegistry registry;
+    private final Counter cacheHits;
+    private final Counter bytesCounter;
+
+    public ArchiveVerifier(StorageBackend storageBackend, Bulkheads bulkheads,
+                           AppFileProperties appFileProperties, MeterRegistry registry) {
+        this.storageBackend = storageBackend;
+        this.verifyBulkhead = bulkheads.verify();
+        this.registry = registry;
+        this.reports = Caffeine.newBuilder()
+                .maximumSize(appFileProperties.getVerify().getCacheMaximumSize())
+                .build();
+        this.cacheHits = Counter.builder("archive.verify.cache.hits")
+                .description("Verification requests answered from the cached report")
+                .register(registry);
+        this.bytesCounter = Counter.builder("archive.verify.bytes")
+                .description("Compressed bytes read while verifying archives")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("archive.verify.corrupt", this, verifier -> verifier.corrupt().size())
+                .description("Archives whose last verification found problems")
+                .register(registry);
+    }
+
+    /**
+     * Проверка по запросу; без force повторно не читает архив, если он не менялся.
+     */
+    public VerificationReport verify(String zipFileName, boolean force) throws IOException {
+        return verify(zipFileName, force, Mode.ON_DEMAND, null);
+    }
+
+    /**
+     * @param limiter ограничение скорости чтения (фоновая проверка) или null
+     */
+    public VerificationReport verify(String zipFileName, boolean force, Mode mode, ByteRateLimiter limiter)
+            throws IOException {
+        BlobInfo info = stat(zipFileName);
+        if (!force) {
+            VerificationReport cached = cachedReport(zipFileName, info);
+            if (cached != null) {
+                cacheHits.increment();
+                return cached.fromCache();
+            }
+        }
+
+        long start = System.nanoTime();
+        Tally tally = new Tally();
+        int entryCount = 0;
+        try {
+            ZipDirectory directory = ZipDirectory.read((offset, length) -> readRange(zipFileName, offset, length),
+                    info.getSize());
+            entryCount = directory.getEntries().size();
+            Map<String, ArchiveManifest.Line> manifest = readManifest(zipFileName)
+                    .map(ArchiveManifest::getEntries).orElse(Map.of());
+            checkManifestCoverage(directory, manifest, tally);
+            verifyEntries(zipFileName, directory.getEntries(), manifest, mode, limiter, tally);
+        } catch (ZipException | EOFException ex) {
+            // Каталог не читается - дальше проверять нечего
+            tally.fail("", ex.getMessage());
+        }
+        long durationNanos = System.nanoTime() - start;
+
+        VerificationReport report = new VerificationReport(zipFileName, info.getLastModified(), info.getSize(),
+                entryCount, tally.digests, tally.skipped, System.currentTimeMillis(),
+                TimeUnit.NANOSECONDS.toMillis(durationNanos), List.copyOf(tally.failures), false);
+        // Архив изменился во время проверки (дозапись) - результат относится к старой версии
+        if (sameVersion(report, stat(zipFileName))) {
+            reports.put(zipFileName, report);
+        }
+        record(mode, report, durationNanos, tally.bytes);
+        if (!report.isOk()) {
+            logger.warn("Archive {} failed verification: {} problems, first: {} {}", zipFileName,
+                    report.getFailures().size(), report.getFailures().get(0).getEntry(),
+                    report.getFailures().get(0).getProblem());
+        }
+        return report;
+    }
+
+    /**
+     * Последний результат, если архив с тех пор не менялся.
+     */
+    public Optional<VerificationReport> cached(String zipFileName) throws IOException {
+        return Optional.ofNullable(cachedReport(zipFileName, stat(zipFileName))).map(VerificationReport::fromCache);
+    }
+
+    /**
+     * Архивы, в которых последняя проверка нашла ошибки.
+     */
+    public List<VerificationReport> corrupt() {
+        return reports.asMap().values().stream()
+                .filter(report -> !report.isOk())
+                .sorted(Comparator.comparing(VerificationReport::getArchive))
+                .toList();
+    }
+
+    public void forget(String zipFileName) {
+        reports.invalidate(zipFileName);
+    }
+
+    private VerificationReport cachedReport(String zipFileName, BlobInfo info) {
+        VerificationReport cached = reports.getIfPresent(zipFileName);
+        return cached != null && sameVersion(cached, info) ? cached : null;
+    }
+
+    private static boolean sameVersion(VerificationReport report, BlobInfo info) {
+        return report.getLastModified() == info.getLastModified() && report.getSize() == info.getSize();
+    }
+
+    // Манифест от того же архива, но без записи - запись пропала из каталога
+    private static void checkManifestCoverage(ZipDirectory directory, Map<String, ArchiveManifest.Line> manifest,
+                                              Tally tally) {
+        if (manifest.isEmpty()) {
+            return;
+        }
+        Map<String, ZipDirectory.Entry> byName = new HashMap<>();
+        for (ZipDirectory.Entry entry : directory.getEntries()) {
+            byName.put(entry.getName(), entry);
+        }
+        boolean belongs = manifest.entrySet().stream().anyMatch(line -> matches(byName.get(line.getKey()), line.getValue()));
+        if (!belongs) {
+            // Архив перезаписан чем-то другим - манифест устарел целиком
+            return;
+        }
+        manifest.keySet().stream()
+                .filter(name -> !byName.containsKey(name))
+                .forEach(name -> tally.fail(name, "listed in manifest but missing from archive"));
+    }
+
+    private static boolean matches(ZipDirectory.Entry entry, ArchiveManifest.Line line) {
+        return entry != null && entry.getCrc() == line.getCrc() && entry.getSize() == line.getSize();
+    }
+
+    private void verifyEntries(String zipFileName, List<ZipDirectory.Entry> entries,
+                               Map<String, ArchiveManifest.Line> manifest, Mode mode, ByteRateLimiter limiter,
+                               Tally tally) throws IOException {
+        List<List<ZipDirectory.Entry>> chunks = chunks(entries, verifyBulkhead.getThreads());
+        if (chunks.size() <= 1) {
+            for (List<ZipDirectory.Entry> chunk : chunks) {
+                verifyChunk(zipFileName, chunk, manifest, limiter, tally);
+            }
+            return;
+        }
+        List<CompletableFuture<Tally>> running = new ArrayList<>(chunks.size());
+        for (List<ZipDirectory.Entry> chunk : chunks) {
+            try {
+                running.add(verifyBulkhead.supply(mode.priority, () -> {
+                    Tally part = new Tally();
+                    verifyChunk(zipFileName, chunk, manifest, limiter, part);
+                    return part;
+                }));
+            } catch (RejectedExecutionException ex) {
+                // Пул занят - кусок проверяется здесь же, проверка не отклоняется целиком
+                Tally part = new Tally();
+                verifyChunk(zipFileName, chunk, manifest, limiter, part);
+                running.add(CompletableFuture.completedFuture(part));
+            }
+        }
+        for (CompletableFuture<Tally> part : running) {
+            tally.add(await(part));
+        }
+    }
+
+    /**
+     * Раскладка записей по кускам: самые большие по сжатому размеру - в наименее загруженный кусок.
+     */
+    static List<List<ZipDirectory.Entry>> chunks(List<ZipDirectory.Entry> entries, int parallelism) {
+        long total = 0;
+        List<ZipDirectory.Entry> files = new ArrayList<>(entries.size());
+        for (ZipDirectory.Entry entry : entries) {
+            if (!entry.isDirectory()) {
+                files.add(entry);
+                total += entry.getCompressedSize();
+            }
+        }
+        int count = total < PARALLEL_THRESHOLD ? 1 : Math.max(1, Math.min(parallelism, files.size()));
+        List<List<ZipDirectory.Entry>> chunks = new ArrayList<>(count);
+        long[] loads = new long[count];
+        for (int i = 0; i < count; i++) {
+            chunks.add(new ArrayList<>());
+        }
+        files.sort(Comparator.comparingLong(ZipDirectory.Entry::getCompressedSize).reversed());
+        for (ZipDirectory.Entry entry : files) {
+            int lightest = 0;
+            for (int i = 1; i < count; i++) {
+                if (loads[i] < loads[lightest]) {
+                    lightest = i;
+                }
+            }
+            chunks.get(lightest).add(entry);
+            loads[lightest] += entry.getCompressedSize();
+        }
+        chunks.removeIf(List::isEmpty);
+        return chunks;
+    }
+
+    private void verifyChunk(String zipFileName, List<ZipDirectory.Entry> chunk,
+                             Map<String, ArchiveManifest.Line> manifest, ByteRateLimiter limiter,
+                             Tally tally) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (ZipDirectory.Entry entry : chunk) {
+            if ((entry.getFlags() & FLAG_ENCRYPTED) != 0
+                    || (entry.getMethod() != METHOD_STORED && entry.getMethod() != METHOD_DEFLATED)) {
+                tally.skipped++;
+                continue;
+            }
+            ArchiveManifest.Line expected = manifest.get(entry.getName());
+            if (expected != null && !matches(entry, expected)) {
+                // Запись заменена после упаковки - манифест для нее устарел
+                expected = null;
+            }
+            try {
+                verifyEntry(zipFileName, entry, expected, limiter, buffer, tally);
+            } catch (ZipException | EOFException ex) {
+                tally.fail(entry.getName(), ex.getMessage() == null ? "truncated data" : ex.getMessage());
+            }
+        }
+    }
+
+    private void verifyEntry(String zipFileName, ZipDirectory.Entry entry, ArchiveManifest.Line expected,
+                             ByteRateLimiter limiter, byte[] buffer, Tally tally) throws IOException {
+        long dataOffset = ZipDirectory.dataOffset((offset, length) -> readRange(zipFileName, offset, length), entry);
+        CRC32 crc = new CRC32();
+        MessageDigest digest = expected != null ? sha256Digest() : null;
+        long size = 0;
+        Inflater inflater = entry.getMethod() == METHOD_DEFLATED ? new Inflater(true) : null;
+        InputStream raw = storageBackend.getRange(zipFileName, dataOffset, entry.getCompressedSize());
+        if (limiter != null) {
+            raw = limiter.wrap(raw);
+        }
+        // Inflater без заголовка zlib может запросить лишний байт после конца данных
+        try (InputStream in = inflater == null ? raw
+                : new InflaterInputStream(new SequenceInputStream(raw, new ByteArrayInputStream(new byte[1])),
+                inflater, BUFFER_SIZE)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+                if (digest != null) {
+                    digest.update(buffer, 0, n);
+                }
+                size += n;
+            }
+            if (inflater != null && inflater.getBytesRead() != entry.getCompressedSize()) {
+                tally.fail(entry.getName(), "compressed size " + inflater.getBytesRead()
+                        + " does not match directory " + entry.getCompressedSize());
+                return;
+            }
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+            tally.bytes += entry.getCompressedSize();
+        }
+        if (size != entry.getSize()) {
+            tally.fail(entry.getName(), "size " + size + " does not match directory " + entry.getSize());
+        } else if (crc.getValue() != entry.getCrc()) {
+            tally.fail(entry.getName(), String.format("CRC %08x does not match directory %08x",
+                    crc.getValue(), entry.getCrc()));
+        } else if (digest != null) {
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            if (!sha256.equals(expected.getSha256())) {
+                tally.fail(entry.getName(), "SHA-256 " + sha256 + " does not match manifest " + expected.getSha256());
+            } else {
+                tally.digests++;
+            }
+        }
+    }
+
+    private Optional<ArchiveManifest> readManifest(String zipFileName) {
+        try (InputStream in = storageBackend.get(ArchiveManifest.key(zipFileName))) {
+            ArchiveManifest manifest = ArchiveManifest.parse(in.readAllBytes());
+            return manifest.isEmpty() ? Optional.empty() : Optional.of(manifest);
+        } catch (IOException | RuntimeException ex) {
+            // Манифеста нет (архив загружен, а не упакован здесь) - проверяется только CRC
+            return Optional.empty();
+        }
+    }
+
+    private void record(Mode mode, VerificationReport report, long durationNanos, long bytes) {
+        Counter.builder("archive.verify.runs")
+                .description("Archive verifications by mode and result")
+                .tag("mode", mode.tag)
+                .tag("result", report.isOk() ? "ok" : "corrupt")
+                .register(registry)
+                .increment();
+        Timer.builder("archive.verify.time")
+                .description("Time to verify one archive")
+                .tag("mode", mode.tag)
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        bytesCounter.increment(bytes);
+    }
+
+    private BlobInfo stat(String zipFileName) throws IOException {
+        return storageBackend.stat(zipFileName)
+                .filter(info -> !info.isDirectory())
+                .orElseThrow(() -> new FileNotFoundException("ZIP файл не найден: " + zipFileName));
+    }
+
+    private byte[] readRange(String key, long offset, int length) throws IOException {
+        try (InputStream in = storageBackend.getRange(key, offset, length)) {
+            byte[] bytes = in.readNBytes(length);
+            if (bytes.length != length) {
+                throw new EOFException("Unexpected end of archive at offset " + (offset + bytes.length));
+            }
+            return bytes;
+        } catch (NoSuchFileException ex) {
+            throw new FileNotFoundException("ZIP файл не найден: " + key);
+        }
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static Tally await(CompletableFuture<Tally> part) throws IOException {
+        try {
+            return part.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while verifying archive");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    // Итоги куска записей; куски считаются независимо и складываются в конце
+    private static final class Tally {
+        private final List<VerificationReport.Failure> failures = new ArrayList<>();
+        private int digests;
+        private int skipped;
+        private long bytes;
+
+        void fail(String entry, String problem) {
+            failures.add(new VerificationReport.Failure(entry, problem));
+        }
+
+        void add(Tally other) {
+            failures.addAll(other.failures);
+            digests += other.digests;
+            skipped += other.skipped;
+            bytes += other.bytes;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.cloud_spring_load_zip.integrity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Результат проверки архива. Действителен, пока у архива те же время изменения и размер.
+ */
+@Getter
+@AllArgsConstructor
+public class VerificationReport {
+
+    @Getter
+    @AllArgsConstructor
+    public static class Failure {
+        // Имя записи; пусто для ошибок структуры архива
+        private final String entry;
+        private final String problem;
+    }
+
+    private final String archive;
+    private final long lastModified;
+    private final long size;
+    private final int entries;
+    // Записи, сверенные с SHA-256 из манифеста
+    private final int verifiedDigests;
+    // Зашифрованные записи и неизвестные методы сжатия: проверить нечем
+    private final int skipped;
+    private final long verifiedAt;
+    private final long durationMs;
+    private final List<Failure> failures;
+    // Ответ взят из кеша, архив не перечитывался
+    private final boolean cached;
+
+    public boolean isOk() {
+        return failures.isEmpty();
+    }
+
+    VerificationReport fromCache() {
+        return new VerificationReport(archive, lastModified, size, entries, verifiedDigests, skipped,
+                verifiedAt, durationMs, failures, true);
+    }
+}
@@ -0,0 +1,463 @@
+package com.example.cloud_spring_load_zip.lifecycle;
+
+import com.example.cloud_spring_load_zip.integrity.ArchiveManifest;
+import com.example.cloud_spring_load_zip.model.FileEntry;
+import com.example.cloud_spring_load_zip.service.AppFileProperties;
+import com.example.cloud_spring_load_zip.service.ArchiveAppendedEvent;
+import com.example.cloud_spring_load_zip.service.DeltaArchiveService;
+import com.example.cloud_spring_load_zip.service.FileCatalog;
+import com.example.cloud_spring_load_zip.service.FileStorageService;
+import com.example.cloud_spring_load_zip.service.FileStoredEvent;
+import com.example.cloud_spring_load_zip.service.GeneratedFileEvent;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Жизненный цикл файлов, которые приложение генерирует само: архивы (/compress, /items,
+ * /merge, /delta) и каталоги *_extracted и *_restored. Они отмечаются {@link GeneratedFileEvent};
+ * загрузки пользователей под уборку не попадают.
+ * <p>
+ * У каждого артефакта есть время последнего доступа: создание, скачивание, повторная распаковка.
+ * Фоновая уборка удаляет артефакты, к которым не обращались дольше TTL, а если их общий объем
+ * больше квоты - давно не использованные (LRU). Удаление идет пачками с паузами. Базу разностного
+ * архива уборка не трогает, пока жив зависимый архив: цепочка освобождается с конца,
+ * по звену за проход. Время доступа сохраняется в state-file и переживает рестарт.
+ */
+@Component
+public class ArtifactLifecycleManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArtifactLifecycleManager.class);
+
+    private final StorageBackend storageBackend;
+    private final FileCatalog fileCatalog;
+    private final FileStorageService fileStorageService;
+    private final DeltaArchiveService deltaArchiveService;
+    private final AppFileProperties.Lifecycle properties;
+    private final LongSupplier clock;
+    private final Path stateFile;
+    private final ConcurrentMap<String, Artifact> artifacts = new ConcurrentHashMap<>();
+    private final Counter reclaimedByTtl;
+    private final Counter reclaimedByQuota;
+    private final Counter deletedByTtl;
+    private final Counter deletedByQuota;
+
+    private ScheduledExecutorService executor;
+    private volatile boolean stateDirty;
+    private volatile long lastSweep;
+
+    private static final class Artifact {
+        private final String key;
+        private final boolean directory;
+        private volatile long lastAccess;
+        private volatile long size;
+        // Ключ базы, если это разностный архив
+        private volatile String base;
+        // Размер и база пересчитываются уборкой после записи
+        private volatile boolean stale = true;
+
+        Artifact(String key, long lastAccess) {
+            this.key = key;
+            this.directory = isDirectoryName(key);
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private record Deletion(Artifact artifact, long lastAccess, boolean expired) {
+    }
+
+    @Autowired
+    public ArtifactLifecycleManager(StorageBackend storageBackend, FileCatalog fileCatalog,
+                                    FileStorageService fileStorageService, DeltaArchiveService deltaArchiveService,
+                                    AppFileProperties appFileProperties, MeterRegistry registry) {
+        this(storageBackend, fileCatalog, fileStorageService, deltaArchiveService, appFileProperties, registry,
+                System::currentTimeMillis);
+    }
+
+    ArtifactLifecycleManager(StorageBackend storageBackend, FileCatalog fileCatalog,
+                             FileStorageService fileStorageService, DeltaArchiveService deltaArchiveService,
+                             AppFileProperties appFileProperties, MeterRegistry registry, LongSupplier clock) {
+        this.storageBackend = storageBackend;
+        this.fileCatalog = fileCatalog;
+        this.fileStorageService = fileStorageService;
+        this.deltaArchiveService = deltaArchiveService;
+        this.properties = appFileProperties.getLifecycle();
+        this.clock = clock;
+        this.stateFile = Paths.get(properties.getStateFile());
+
+        this.reclaimedByTtl = reclaimedCounter(registry, "ttl");
+        this.reclaimedByQuota = reclaimedCounter(registry, "quota");
+        this.deletedByTtl = deletedCounter(registry, "ttl");
+        this.deletedByQuota = deletedCounter(registry, "quota");
+        Gauge.builder("files.artifacts.bytes", this, ArtifactLifecycleManager::totalBytes)
+                .description("Disk space used by generated archives and directories")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("files.artifacts.count", artifacts, Map::size)
+                .description("Generated archives and directories tracked for cleanup")
+                .register(registry);
+    }
+
+    private static Counter reclaimedCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("files.artifacts.reclaimed")
+                .description("Bytes freed by deleting generated artifacts")
+                .baseUnit("bytes")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    private static Counter deletedCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("files.artifacts.deleted")
+                .description("Generated artifacts deleted by the lifecycle sweep")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        load();
+        long interval = Math.max(properties.getSweepInterval().toMillis(), 1000);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "artifact-lifecycle");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::sweepSafely, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        saveState();
+    }
+
+    @EventListener
+    public void onFileStored(FileStoredEvent event) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        String key = artifactKey(event.getKey());
+        if (key == null) {
+            return;
+        }
+        long now = clock.getAsLong();
+        if (event instanceof GeneratedFileEvent) {
+            artifacts.computeIfAbsent(key, k -> new Artifact(k, now));
+        } else if (!(event instanceof ArchiveAppendedEvent)) {
+            // Загрузка пользователя поверх артефакта (или в сгенерированный каталог) делает его
+            // файлом пользователя - уборка его больше не трогает
+            if (artifacts.remove(key) != null) {
+                stateDirty = true;
+            }
+            return;
+        }
+        // Дозапись в архив и повторная распаковка - тоже доступ; размер пересчитает уборка
+        Artifact artifact = artifacts.get(key);
+        if (artifact != null) {
+            artifact.lastAccess = now;
+            artifact.stale = true;
+            stateDirty = true;
+        }
+    }
+
+    /**
+     * Отмечает доступ к файлу; ключи внутри сгенерированного каталога продлевают весь каталог.
+     */
+    public void touch(String fileName) {
+        if (!properties.isEnabled() || fileName == null) {
+            return;
+        }
+        String key = artifactKey(fileName);
+        Artifact artifact = key == null ? null : artifacts.get(key);
+        if (artifact != null) {
+            artifact.lastAccess = clock.getAsLong();
+            stateDirty = true;
+        }
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", properties.isEnabled());
+        if (!properties.isEnabled()) {
+            return status;
+        }
+        status.put("artifacts", artifacts.size());
+        status.put("bytes", totalBytes());
+        status.put("maxBytes", properties.getMaxBytes().toBytes());
+        status.put("reclaimedBytes", (long) (reclaimedByTtl.count() + reclaimedByQuota.count()));
+        status.put("deleted", (long) (deletedByTtl.count() + deletedByQuota.count()));
+        status.put("lastSweep", lastSweep);
+        return status;
+    }
+
+    /**
+     * Запускает внеочередной проход уборки в ее потоке.
+     */
+    public boolean sweepNow() {
+        if (executor == null) {
+            return false;
+        }
+        executor.execute(this::sweepSafely);
+        return true;
+    }
+
+    private void sweepSafely() {
+        // Исключение остановило бы scheduleWithFixedDelay
+        try {
+            sweep();
+        } catch (RuntimeException ex) {
+            logger.warn("Artifact lifecycle sweep failed", ex);
+        }
+    }
+
+    /**
+     * Проход уборки: пересчитывает размеры, удаляет просроченные, затем LRU сверх квоты.
+     *
+     * @return удаленные ключи
+     */
+    synchronized List<String> sweep() {
+        long now = clock.getAsLong();
+        for (Artifact artifact : artifacts.values()) {
+            Optional<FileEntry> entry = fileCatalog.get(artifact.key);
+            if (entry.isEmpty()) {
+                // Удален в обход уборки
+                artifacts.remove(artifact.key, artifact);
+                stateDirty = true;
+            } else if (artifact.stale) {
+                refresh(artifact, entry.get());
+            }
+        }
+
+        List<Deletion> plan = plan(now);
+        List<String> deleted = new ArrayList<>();
+        int inBatch = 0;
+        for (Deletion deletion : plan) {
+            if (inBatch == Math.max(1, properties.getBatchSize())) {
+                inBatch = 0;
+                try {
+                    Thread.sleep(properties.getBatchPause().toMillis());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            Artifact artifact = deletion.artifact();
+            // За время паузы к артефакту могли обратиться
+            if (artifacts.get(artifact.key) != artifact || artifact.lastAccess != deletion.lastAccess()) {
+                continue;
+            }
+            if (delete(artifact, deletion.expired())) {
+                deleted.add(artifact.key);
+                inBatch++;
+            }
+        }
+        if (!deleted.isEmpty()) {
+            logger.info("Artifact lifecycle sweep deleted {} artifacts, {} tracked, {} bytes in use",
+                    deleted.size(), artifacts.size(), totalBytes());
+        }
+        lastSweep = now;
+        saveState();
+        return deleted;
+    }
+
+    private List<Deletion> plan(long now) {
+        Set<String> bases = artifacts.values().stream()
+                .map(artifact -> artifact.base)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        List<Artifact> byAge = new ArrayList<>(artifacts.values());
+        byAge.sort(Comparator.comparingLong(artifact -> artifact.lastAccess));
+
+        long remaining = totalBytes();
+        long maxBytes = properties.getMaxBytes().toBytes();
+        long minIdle = properties.getMinIdle().toMillis();
+        List<Deletion> plan = new ArrayList<>();
+        for (Artifact artifact : byAge) {
+            if (bases.contains(artifact.key)) {
+                continue;
+            }
+            long idle = now - artifact.lastAccess;
+            boolean expired = idle > ttl(artifact).toMillis();
+            if (expired || (remaining > maxBytes && idle >= minIdle)) {
+                plan.add(new Deletion(artifact, artifact.lastAccess, expired));
+                remaining -= artifact.size;
+            }
+        }
+        return plan;
+    }
+
+    private boolean delete(Artifact artifact, boolean expired) {
+        try {
+            fileStorageService.deleteFile(artifact.key);
+        } catch (RuntimeException ex) {
+            logger.warn("Could not delete artifact {}", artifact.key, ex);
+            return false;
+        }
+        artifacts.remove(artifact.key, artifact);
+        stateDirty = true;
+        (expired ? reclaimedByTtl : reclaimedByQuota).increment(artifact.size);
+        (expired ? deletedByTtl : deletedByQuota).increment();
+        logger.debug("Deleted artifact {} ({} bytes, {})", artifact.key, artifact.size, expired ? "ttl" : "quota");
+        return true;
+    }
+
+    private void refresh(Artifact artifact, FileEntry entry) {
+        // Сброс до пересчета: запись во время пересчета снова пометит артефакт
+        artifact.stale = false;
+        try {
+            if (artifact.directory) {
+                long[] size = {0};
+                storageBackend.walk(artifact.key, blob -> size[0] += blob.getSize());
+                artifact.size = size[0];
+            } else {
+                artifact.size = entry.getSize();
+                artifact.base = deltaArchiveService.baseOf(artifact.key).orElse(null);
+            }
+        } catch (IOException | RuntimeException ex) {
+            artifact.stale = true;
+            logger.warn("Could not inspect artifact {}", artifact.key, ex);
+        }
+    }
+
+    // Артефакты из state-file и найденные при первом запуске: архивы с манифестом
+    // (его пишет только упаковка) и каталоги распаковки. Возраст найденных впервые
+    // отсчитывается от старта, чтобы обновление не удалило все разом
+    private void load() {
+        Properties state = readState();
+        long now = clock.getAsLong();
+        int adopted = 0;
+        for (FileEntry entry : fileCatalog.all()) {
+            String key = entry.getName();
+            if (!key.equals(artifactKey(key))) {
+                continue;
+            }
+            String saved = state.getProperty(key);
+            if (saved != null) {
+                artifacts.put(key, new Artifact(key, parseTime(saved, now)));
+            } else if (isDirectoryName(key) ? FileEntry.DIRECTORY_TYPE.equals(entry.getType()) : hasManifest(key)) {
+                artifacts.put(key, new Artifact(key, now));
+                adopted++;
+            }
+        }
+        stateDirty = true;
+        logger.info("Tracking {} generated artifacts ({} found for the first time)", artifacts.size(), adopted);
+    }
+
+    private boolean hasManifest(String zipFileName) {
+        try {
+            return storageBackend.stat(ArchiveManifest.key(zipFileName)).isPresent();
+        } catch (IOException | RuntimeException ex) {
+            return false;
+        }
+    }
+
+    private Properties readState() {
+        Properties state = new Properties();
+        try (InputStream in = Files.newInputStream(stateFile)) {
+            state.load(in);
+        } catch (NoSuchFileException ex) {
+            // Первый запуск
+        } catch (IOException | IllegalArgumentException ex) {
+            logger.warn("Could not read artifact state {}, starting fresh", stateFile, ex);
+        }
+        return state;
+    }
+
+    private synchronized void saveState() {
+        if (!stateDirty) {
+            return;
+        }
+        stateDirty = false;
+        Properties state = new Properties();
+        artifacts.values().forEach(artifact -> state.setProperty(artifact.key, Long.toString(artifact.lastAccess)));
+        Path temp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(stateFile.toAbsolutePath().getParent());
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                state.store(out, "Generated artifacts: key=last access (epoch ms)");
+            }
+            Files.move(temp, stateFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            stateDirty = true;
+            logger.warn("Could not save artifact state {}", stateFile, ex);
+        }
+    }
+
+    private Duration ttl(Artifact artifact) {
+        return artifact.directory ? properties.getDirectoryTtl() : properties.getArchiveTtl();
+    }
+
+    private long totalBytes() {
+        return artifacts.values().stream().mapToLong(artifact -> artifact.size).sum();
+    }
+
+    private static long parseTime(String value, long fallback) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Ключ артефакта, к которому относится файл: сам архив верхнего уровня или
+     * сгенерированный каталог для вложенных ключей; null, если файл не сгенерирован.
+     */
+    static String artifactKey(String fileName) {
+        int slash = fileName.indexOf('/');
+        if (slash > 0) {
+            String top = fileName.substring(0, slash);
+            return isDirectoryName(top) ? top : null;
+        }
+        return fileName.endsWith(".zip") || isDirectoryName(fileName) ? fileName : null;
+    }
+
+    private static boolean isDirectoryName(String name) {
+        return name.endsWith("_extracted") || name.endsWith("_restored");
+    }
+}
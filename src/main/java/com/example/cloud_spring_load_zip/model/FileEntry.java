@@ -0,0 +1,26 @@
+package com.example.cloud_spring_load_zip.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "Entry of the uploaded files catalog")
+public class FileEntry {
+    public static final String DIRECTORY_TYPE = "dir";
+
+    @Schema(description = "Logical file name", example = "archive1.zip")
+    private String name;
+
+    @Schema(description = "File size in bytes (0 for directories)", example = "2291510")
+    private long size;
+
+    @Schema(description = "Last modification time, epoch millis", example = "1760054400000")
+    private long lastModified;
+
+    @Schema(description = "Lower-case extension without dot, or \"dir\" for directories", example = "zip")
+    private String type;
+}
@@ -0,0 +1,26 @@
+package com.example.cloud_spring_load_zip.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "One page of a listing")
+public class FilePage<T> {
+    @Schema(description = "Items on the current page")
+    private List<T> items;
+
+    @Schema(description = "Number of items matching the filter", example = "42")
+    private long total;
+
+    @Schema(description = "Zero-based page number", example = "0")
+    private int page;
+
+    @Schema(description = "Page size", example = "100")
+    private int size;
+}
@@ -1,5 +1,6 @@
 package com.example.cloud_spring_load_zip.model;
 
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.Positive;
@@ -13,6 +14,8 @@ import org.springframework.validation.annotation.Validated;
 @NoArgsConstructor
 @Validated
 @Schema(description = "Product entity")
+// Порядок полей задает номера полей protobuf-схемы - новые поля добавлять только в конец
+@JsonPropertyOrder({"id", "name", "quantity", "price", "imageURI"})
 public class Product implements AutoCloseable {
     @Schema(description = "Unique identifier of the product", example = "1")
     @Positive(message = "Price must be greater than 0")
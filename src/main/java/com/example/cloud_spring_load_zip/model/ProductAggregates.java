@@ -0,0 +1,63 @@
+package com.example.cloud_spring_load_zip.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@Schema(description = "Aggregates over the product catalog")
+public class ProductAggregates {
+
+    @Schema(description = "Number of products that matched the filter", example = "3")
+    private long count;
+
+    @Schema(description = "Number of distinct product names", example = "3")
+    private long distinctNames;
+
+    @Schema(description = "Sum of quantities", example = "60")
+    private long totalQuantity;
+
+    @Schema(description = "Sum of price * quantity", example = "140000.0")
+    private double totalStockValue;
+
+    @Schema(description = "Minimum price", example = "1000.0")
+    private double minPrice;
+
+    @Schema(description = "Maximum price", example = "3000.0")
+    private double maxPrice;
+
+    @Schema(description = "Average price", example = "2000.0")
+    private double avgPrice;
+
+    @Schema(description = "Products with quantity below the low-stock threshold", example = "1")
+    private long lowStockCount;
+
+    @Schema(description = "Equal-width price histogram between minPrice and maxPrice")
+    private List<Bucket> priceHistogram;
+
+    @Schema(description = "Average price per quantity band")
+    private List<Bucket> quantityBands;
+
+    @Schema(description = "Scan time in milliseconds", example = "3")
+    private long tookMs;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Bucket {
+        @Schema(description = "Lower bound, inclusive", example = "0")
+        private double from;
+
+        @Schema(description = "Upper bound, exclusive (null for the last open band)", example = "10")
+        private Double to;
+
+        private long count;
+
+        @Schema(description = "Average price of products in the bucket", example = "1000.0")
+        private double avgPrice;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.cloud_spring_load_zip.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "One page of a product query")
+public class ProductPage {
+
+    @Schema(description = "Products on the current page")
+    private List<Product> items;
+
+    @Schema(description = "Number of matching products; null when the plan stopped after the page was filled", example = "42")
+    private Long total;
+
+    @Schema(description = "Whether more matching products follow this page")
+    private boolean hasMore;
+
+    @Schema(description = "Zero-based page number", example = "0")
+    private int page;
+
+    @Schema(description = "Page size", example = "10")
+    private int size;
+
+    @Schema(description = "Chosen access path", example = "price-index ordered")
+    private String plan;
+}
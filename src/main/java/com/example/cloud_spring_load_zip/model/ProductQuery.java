@@ -0,0 +1,38 @@
+package com.example.cloud_spring_load_zip.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@Schema(description = "Range filter, sort order and page for a product query")
+public class ProductQuery {
+
+    @Schema(description = "Inclusive lower price bound", example = "100.0")
+    private Double minPrice;
+
+    @Schema(description = "Inclusive upper price bound", example = "2000.0")
+    private Double maxPrice;
+
+    @Schema(description = "Inclusive lower quantity bound", example = "0")
+    private Integer minQuantity;
+
+    @Schema(description = "Inclusive upper quantity bound", example = "10")
+    private Integer maxQuantity;
+
+    @Schema(description = "Name prefix", example = "bprod")
+    private String name;
+
+    @Schema(description = "Sort field: price | quantity | id | name", example = "price")
+    private String sort = "price";
+
+    @Schema(description = "Descending order")
+    private boolean descending;
+
+    @Schema(description = "Zero-based page number", example = "0")
+    private int page;
+
+    @Schema(description = "Page size", example = "10")
+    private int size = 20;
+}
@@ -0,0 +1,15 @@
+package com.example.cloud_spring_load_zip.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Результат сохранения файла: имя, фактический размер и SHA-256, посчитанные за один проход записи.
+ */
+@Data
+@AllArgsConstructor
+public class StoredFile {
+    private String name;
+    private long size;
+    private String sha256;
+}
@@ -0,0 +1,127 @@
+package com.example.cloud_spring_load_zip.repository;
+
+import com.example.cloud_spring_load_zip.model.Product;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Ограниченный кеш перед любым {@link ProductRepository}: findById читается через кеш
+ * и обновляется при записи, листинги и группировки кешируются по версии данных -
+ * любая запись увеличивает версию, старые записи вытесняются сами.
+ * Вытеснение - W-TinyLFU (Caffeine), попадания/промахи - метрики cache.gets.
+ */
+public class CachingProductRepository implements ProductRepository {
+
+    private final ProductRepository delegate;
+    private final Cache<Integer, Optional<Product>> byId;
+    private final Cache<String, Object> listings;
+    private final AtomicLong version = new AtomicLong();
+
+    public CachingProductRepository(ProductRepository delegate, ProductStorageProperties.Cache properties, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .recordStats()
+                .build();
+        this.listings = Caffeine.newBuilder()
+                .maximumSize(properties.getListingMaximumSize())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, byId, "products.by-id");
+        CaffeineCacheMetrics.monitor(registry, listings, "products.listings");
+    }
+
+    @Override
+    public Optional<Product> findById(int id) {
+        return byId.get(id, delegate::findById);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Optional<List<Product>> getAllProducts() {
+        return (Optional<List<Product>>) listing("all", delegate::getAllProducts);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Product> search(String name) {
+        return (List<Product>) listing("search:" + name, () -> delegate.search(name));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, List<Product>> getProductsByName() {
+        return (Map<String, List<Product>>) listing("byName", delegate::getProductsByName);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<Double, List<Product>> getProductsByPrice() {
+        return (Map<Double, List<Product>>) listing("byPrice", delegate::getProductsByPrice);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<Integer, List<Product>> getProductsByQuantity() {
+        return (Map<Integer, List<Product>>) listing("byQuantity", delegate::getProductsByQuantity);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<Integer, List<Product>> getProductsById() {
+        return (Map<Integer, List<Product>>) listing("byId", delegate::getProductsById);
+    }
+
+    @Override
+    public Product save(Product p) {
+        Product saved = delegate.save(p);
+        version.incrementAndGet();
+        // Новый продукт становится результатом findById, только если раньше такого id не было
+        byId.asMap().computeIfPresent(p.getId(), (id, cached) -> cached.isEmpty() ? Optional.of(saved) : cached);
+        return saved;
+    }
+
+    @Override
+    public String delete(Integer id) {
+        String result = delegate.delete(id);
+        version.incrementAndGet();
+        byId.asMap().compute(id, (key, cached) -> Optional.empty());
+        return result;
+    }
+
+    @Override
+    public Product update(int id, Product product) {
+        Product updated = delegate.update(id, product);
+        version.incrementAndGet();
+        // Обновление могло как изменить продукт id, так и добавить новый с product.getId()
+        byId.invalidate(id);
+        byId.invalidate(product.getId());
+        return updated;
+    }
+
+    @Override
+    public Product updateImage(int id, String imageURI) {
+        Product updated = delegate.updateImage(id, imageURI);
+        version.incrementAndGet();
+        byId.invalidate(id);
+        return updated;
+    }
+
+    private Object listing(String key, Supplier<Object> loader) {
+        return listings.get(key + "@" + version.get(), k -> loader.get());
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,395 @@
+package com.example.cloud_spring_load_zip.repository;
+
+import com.example.cloud_spring_load_zip.exception.ProductStorageException;
+import com.example.cloud_spring_load_zip.model.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Продукты хранятся в памяти; при app.product.storage.persistent каждое изменение
+ * сначала пишется в журнал {@link ProductLog}, а состояние периодически сбрасывается в снимок.
+ * fsync журнала выполняется вне блокировки репозитория, поэтому параллельные записи
+ * уходят на диск одной пачкой.
+ * <p>
+ * Поиск по id - через индекс id → первая позиция в списке. Удаление оставляет на месте
+ * продукта null, а список уплотняется, когда пустых мест становится больше половины:
+ * точечные изменения и их повтор из журнала не сдвигают список целиком.
+ */
+public class InMemoryProductRepository implements ProductRepository {
+    private static final int COMPACT_MIN_REMOVED = 1024;
+
+    private List<Product> list = new ArrayList<Product>();
+    private final Map<Integer, Integer> firstIndex = new HashMap<>();
+    // Число копий для id, сохраненных больше одного раза; обычно пусто
+    private final Map<Integer, Integer> duplicates = new HashMap<>();
+    private int removed;
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryProductRepository.class);
+
+    private final ProductLog log;
+    private final long snapshotEveryRecords;
+    private final ScheduledExecutorService snapshots;
+    private final AtomicBoolean snapshotRunning = new AtomicBoolean();
+
+    public InMemoryProductRepository() {
+        this.log = null;
+        this.snapshotEveryRecords = 0;
+        this.snapshots = null;
+        createProducts();
+    }
+
+    public InMemoryProductRepository(ProductStorageProperties properties) throws IOException {
+        if (!properties.isPersistent()) {
+            this.log = null;
+            this.snapshotEveryRecords = 0;
+            this.snapshots = null;
+            createProducts();
+            return;
+        }
+        this.log = new ProductLog(Paths.get(properties.getDir()).toAbsolutePath().normalize(),
+                !"async".equalsIgnoreCase(properties.getFsync()),
+                properties.getGroupCommitWindow().toNanos());
+        this.snapshotEveryRecords = properties.getSnapshotEveryRecords();
+
+        boolean existing = log.open(new ProductLog.Replayer() {
+            @Override
+            public void snapshot(Product product) {
+                append(product);
+            }
+
+            @Override
+            public void save(Product product) {
+                applySave(product);
+            }
+
+            @Override
+            public void update(int id, Product product) {
+                applyUpdate(id, product);
+            }
+
+            @Override
+            public void delete(int id) {
+                applyDelete(id);
+            }
+
+            @Override
+            public void updateImage(int id, String imageURI) {
+                applyImage(id, imageURI);
+            }
+        });
+
+        this.snapshots = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "product-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getSnapshotInterval().toMillis();
+        snapshots.scheduleWithFixedDelay(this::snapshotIfDirty, interval, interval, TimeUnit.MILLISECONDS);
+
+        if (!existing) {
+            // Первый запуск - демонстрационные продукты пишутся в журнал как обычные вставки
+            createProducts().forEach(this::save);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (log == null) {
+            return;
+        }
+        snapshots.shutdown();
+        try {
+            snapshots.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        // Финальный снимок ускоряет следующий старт
+        snapshotIfDirty();
+        log.close();
+    }
+
+    public List<Product> createProducts() {
+        logger.debug("Repository working on adding products");
+        List<Product> demo = List.of(
+                new Product(1, "aproduct 1", 10, 1000, ""),
+                new Product(2, "bproduct 2", 20, 2000, ""),
+                new Product(3, "cproduct 3", 30, 3000, "")
+        );
+        if (log == null) {
+            list = new ArrayList<>();
+            firstIndex.clear();
+            duplicates.clear();
+            removed = 0;
+            demo.forEach(this::append);
+        }
+        return demo;
+    }
+
+    @Override
+    public synchronized Optional<List<Product>> getAllProducts() {
+        List<Product> products = products().collect(Collectors.toCollection(ArrayList::new));
+        logger.debug("Repository returning list of products product {}", products);
+        if (products.isEmpty()) {
+            return Optional.empty();
+        }
+        else {
+            return Optional.of(products);
+        }
+    }
+
+    @Override
+    public synchronized Optional<Product> findById(int id){
+        Integer idx = firstIndex.get(id);
+        if (idx != null) {
+            logger.debug("Repository searching for item by id {}", id);
+            return Optional.ofNullable(list.get(idx));
+        }
+        logger.info("No item found by id {}", id);
+        return Optional.empty();
+    }
+
+    @Override
+    public synchronized List<Product> search(String name) {
+        logger.debug("Repository searching for item by name {}", name);
+        return products().filter(x -> x.getName().startsWith(name)).collect(Collectors.toList());
+    }
+
+    @Override
+    public Product save(Product p) {
+        long offset = 0;
+        Product product;
+        synchronized (this) {
+            if (log != null) {
+                offset = persist(() -> log.appendSave(p));
+            }
+            product = applySave(p);
+        }
+        sync(offset);
+        logger.debug("Repository adding new product {}", product);
+        return product;
+    }
+
+    @Override
+    public String delete(Integer id) {
+        logger.debug("Repository deleting product by id {}", id);
+        long offset = 0;
+        boolean deleted;
+        synchronized (this) {
+            deleted = firstIndex.containsKey(id);
+            if (deleted && log != null) {
+                offset = persist(() -> log.appendDelete(id));
+            }
+            applyDelete(id);
+        }
+        sync(offset);
+        if (deleted){
+            logger.info("Repository successfully deleted product by id {}", id);
+            return "Product with id " + id + " deleted";
+        }
+        else{
+            logger.info("Product with id {} not found", id);
+            return "Product with id " + id + " not found";
+        }
+    }
+
+    @Override
+    public Product update(int id, Product product) {
+        long offset = 0;
+        Product updated;
+        synchronized (this) {
+            if (log != null) {
+                offset = persist(() -> log.appendUpdate(id, product));
+            }
+            updated = applyUpdate(id, product);
+        }
+        sync(offset);
+        return updated;
+    }
+
+    @Override
+    public Product updateImage(int id, String imageURI) {
+        long offset = 0;
+        Product updated;
+        synchronized (this) {
+            if (!firstIndex.containsKey(id)) {
+                return null;
+            }
+            if (log != null) {
+                offset = persist(() -> log.appendImage(id, imageURI));
+            }
+            updated = applyImage(id, imageURI);
+        }
+        sync(offset);
+        return updated;
+    }
+
+    // Изменения списка - общие для запросов и восстановления из журнала
+
+    private Product applySave(Product p) {
+        Product product = new Product();
+        product.setId(p.getId());
+        product.setName(p.getName());
+        product.setQuantity(p.getQuantity());
+        product.setPrice(p.getPrice());
+        product.setImageURI(p.getImageURI());
+        append(product);
+        return product;
+    }
+
+    private void applyDelete(int id) {
+        Integer first = firstIndex.remove(id);
+        if (first == null) {
+            return;
+        }
+        int copies = duplicates.getOrDefault(id, 1);
+        duplicates.remove(id);
+        // Копии одного id встречаются только после первой позиции
+        for (int i = first; i < list.size() && copies > 0; i++) {
+            Product p = list.get(i);
+            if (p != null && p.getId() == id) {
+                list.set(i, null);
+                removed++;
+                copies--;
+            }
+        }
+        if (removed >= COMPACT_MIN_REMOVED && removed * 2 > list.size()) {
+            compact();
+        }
+    }
+
+    private Product applyUpdate(int id, Product product) {
+        Integer idx = firstIndex.get(id);
+        if (idx == null) { // если не нашли — добавляем новый
+            append(product);
+            logger.debug("Repository added new product {}", product);
+            return product;
+        }
+        logger.info("Repository successfully updated product {}", product);
+
+        Product updated = new Product();
+        updated.setId(id);
+        updated.setName(product.getName());
+        updated.setQuantity(product.getQuantity());
+        updated.setPrice(product.getPrice());
+        list.set(idx, updated);
+        logger.debug("Repository updated existing product {}", updated);
+        return updated;
+    }
+
+    private Product applyImage(int id, String imageURI) {
+        Integer idx = firstIndex.get(id);
+        if (idx == null) {
+            return null;
+        }
+        Product p = list.get(idx);
+        // Новый объект: списки, уже отданные из getAllProducts, не меняются
+        Product updated = new Product(p.getId(), p.getName(), p.getQuantity(), p.getPrice(), imageURI);
+        list.set(idx, updated);
+        return updated;
+    }
+
+    private void append(Product product) {
+        Integer previous = firstIndex.putIfAbsent(product.getId(), list.size());
+        if (previous != null) {
+            duplicates.merge(product.getId(), 2, (copies, two) -> copies + 1);
+        }
+        list.add(product);
+    }
+
+    // Убирает пустые места и пересобирает индекс - O(n), но не чаще чем раз на n/2 удалений
+    private void compact() {
+        List<Product> live = products().collect(Collectors.toCollection(ArrayList::new));
+        list = new ArrayList<>(live.size());
+        firstIndex.clear();
+        duplicates.clear();
+        removed = 0;
+        live.forEach(this::append);
+    }
+
+    private Stream<Product> products() {
+        return list.stream().filter(Objects::nonNull);
+    }
+
+    private interface LogAppend {
+        long append() throws IOException;
+    }
+
+    private long persist(LogAppend append) {
+        try {
+            return append.append();
+        } catch (IOException ex) {
+            throw new ProductStorageException("Could not write product change to the log", ex);
+        }
+    }
+
+    // Ожидание fsync вне блокировки: параллельные записи дожидаются одного общего force()
+    private void sync(long offset) {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.sync(offset);
+        } catch (IOException ex) {
+            throw new ProductStorageException("Could not sync product log", ex);
+        }
+        if (log.recordsSinceSnapshot() >= snapshotEveryRecords && snapshotRunning.compareAndSet(false, true)) {
+            snapshots.execute(() -> {
+                snapshotRunning.set(false);
+                snapshotIfDirty();
+            });
+        }
+    }
+
+    void snapshotIfDirty() {
+        if (log.recordsSinceSnapshot() == 0) {
+            return;
+        }
+        try {
+            long segment;
+            List<Product> state;
+            synchronized (this) {
+                // Граница сегмента и копия состояния берутся атомарно
+                segment = log.roll();
+                state = products().collect(Collectors.toCollection(ArrayList::new));
+            }
+            log.writeSnapshot(segment, state);
+        } catch (IOException ex) {
+            logger.error("Could not write product snapshot", ex);
+        }
+    }
+
+    @Override
+    public synchronized Map<String, List<Product>> getProductsByName() {
+        return products().collect(Collectors.groupingBy(Product::getName));
+    }
+
+    @Override
+    public synchronized Map<Double, List<Product>> getProductsByPrice() {
+        return products().collect(Collectors.groupingBy(Product::getPrice));
+    }
+
+    @Override
+    public synchronized Map<Integer, List<Product>> getProductsByQuantity() {
+        return products().collect(Collectors.groupingBy(Product::getQuantity));
+    }
+
+    @Override
+    public synchronized Map<Integer, List<Product>> getProductsById() {
+        return products().collect(Collectors.groupingBy(Product::getId));
+    }
+}
\ No newline at end of file
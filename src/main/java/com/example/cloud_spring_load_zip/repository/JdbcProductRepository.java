@@ -0,0 +1,427 @@
+package com.example.cloud_spring_load_zip.repository;
+
+import com.example.cloud_spring_load_zip.exception.ProductStorageException;
+import com.example.cloud_spring_load_zip.model.Product;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Продукты во встроенной SQL-базе (H2) через пул соединений HikariCP.
+ * Изменения от параллельных запросов собирает один поток-писатель: подряд идущие
+ * однотипные операции уходят одним executeBatch, вся пачка - одной транзакцией.
+ * Запрос возвращается после коммита своей пачки.
+ */
+public class JdbcProductRepository implements ProductRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcProductRepository.class);
+
+    private static final String COLUMNS = "id, name, quantity, price, image_uri";
+    private static final String INSERT = "INSERT INTO products (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?)";
+    // Как в списке: обновляется только первый продукт с данным id, image_uri сбрасывается
+    private static final String UPDATE = "UPDATE products SET name = ?, quantity = ?, price = ?, image_uri = NULL "
+            + "WHERE seq = (SELECT MIN(seq) FROM products WHERE id = ?)";
+    private static final String DELETE = "DELETE FROM products WHERE id = ?";
+    private static final String UPDATE_IMAGE = "UPDATE products SET image_uri = ? "
+            + "WHERE seq = (SELECT MIN(seq) FROM products WHERE id = ?)";
+    private static final String SELECT_FIRST = "SELECT " + COLUMNS + " FROM products "
+            + "WHERE seq = (SELECT MIN(seq) FROM products WHERE id = ?)";
+
+    private enum Op { SAVE, UPDATE, DELETE, IMAGE }
+
+    private static class PendingWrite {
+        final Op op;
+        final int id;
+        final Product product;
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        PendingWrite(Op op, int id, Product product) {
+            this.op = op;
+            this.id = id;
+            this.product = product;
+        }
+    }
+
+    private final HikariDataSource dataSource;
+    private final int batchSize;
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public JdbcProductRepository(ProductStorageProperties.Jdbc properties, MeterRegistry registry) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("products");
+        config.setJdbcUrl(properties.getUrl());
+        config.setUsername(properties.getUsername());
+        config.setPassword(properties.getPassword());
+        config.setMaximumPoolSize(properties.getMaxPoolSize());
+        config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+        this.dataSource = new HikariDataSource(config);
+        this.batchSize = Math.max(1, properties.getBatchSize());
+
+        try {
+            initSchema();
+        } catch (SQLException ex) {
+            dataSource.close();
+            throw new ProductStorageException("Could not initialize product tables", ex);
+        }
+
+        this.writer = new Thread(this::writeLoop, "product-jdbc-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private void initSchema() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            boolean exists;
+            try (ResultSet tables = connection.getMetaData().getTables(null, null, "PRODUCTS", null)) {
+                exists = tables.next();
+            }
+            statement.execute("CREATE TABLE IF NOT EXISTS products ("
+                    + "seq BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                    + "id INT NOT NULL, "
+                    + "name VARCHAR(1024), "
+                    + "quantity INT NOT NULL, "
+                    + "price DOUBLE PRECISION NOT NULL, "
+                    + "image_uri VARCHAR(4096))");
+            statement.execute("CREATE INDEX IF NOT EXISTS products_id ON products (id)");
+            statement.execute("CREATE INDEX IF NOT EXISTS products_name ON products (name)");
+            if (!exists) {
+                // Первый запуск - те же демонстрационные продукты, что и в памяти
+                try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                    for (Product product : new InMemoryProductRepository().getAllProducts().orElseThrow()) {
+                        bindInsert(insert, product);
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                }
+            }
+        }
+    }
+
+    @Override
+    public Optional<List<Product>> getAllProducts() {
+        List<Product> products = query("SELECT " + COLUMNS + " FROM products ORDER BY seq", null);
+        return products.isEmpty() ? Optional.empty() : Optional.of(products);
+    }
+
+    @Override
+    public Optional<Product> findById(int id) {
+        List<Product> products = query("SELECT " + COLUMNS + " FROM products WHERE id = ? ORDER BY seq LIMIT 1",
+                statement -> statement.setInt(1, id));
+        if (products.isEmpty()) {
+            logger.info("No item found by id {}", id);
+        }
+        return products.stream().findFirst();
+    }
+
+    @Override
+    public List<Product> search(String name) {
+        String pattern = name.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return query("SELECT " + COLUMNS + " FROM products WHERE name LIKE ? ESCAPE '\\' ORDER BY seq",
+                statement -> statement.setString(1, pattern));
+    }
+
+    @Override
+    public Product save(Product p) {
+        return (Product) submit(new PendingWrite(Op.SAVE, p.getId(), p));
+    }
+
+    @Override
+    public String delete(Integer id) {
+        boolean deleted = (Boolean) submit(new PendingWrite(Op.DELETE, id, null));
+        if (deleted) {
+            logger.info("Repository successfully deleted product by id {}", id);
+            return "Product with id " + id + " deleted";
+        } else {
+            logger.info("Product with id {} not found", id);
+            return "Product with id " + id + " not found";
+        }
+    }
+
+    @Override
+    public Product update(int id, Product product) {
+        return (Product) submit(new PendingWrite(Op.UPDATE, id, product));
+    }
+
+    @Override
+    public Product updateImage(int id, String imageURI) {
+        return (Product) submit(new PendingWrite(Op.IMAGE, id, new Product(id, null, 0, 0, imageURI)));
+    }
+
+    @Override
+    public Map<String, List<Product>> getProductsByName() {
+        return all().stream().collect(Collectors.groupingBy(Product::getName));
+    }
+
+    @Override
+    public Map<Double, List<Product>> getProductsByPrice() {
+        return all().stream().collect(Collectors.groupingBy(Product::getPrice));
+    }
+
+    @Override
+    public Map<Integer, List<Product>> getProductsByQuantity() {
+        return all().stream().collect(Collectors.groupingBy(Product::getQuantity));
+    }
+
+    @Override
+    public Map<Integer, List<Product>> getProductsById() {
+        return all().stream().collect(Collectors.groupingBy(Product::getId));
+    }
+
+    private List<Product> all() {
+        return getAllProducts().orElse(List.of());
+    }
+
+    private interface Binder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    private List<Product> query(String sql, Binder binder) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            if (binder != null) {
+                binder.bind(statement);
+            }
+            statement.setFetchSize(1000);
+            List<Product> products = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    products.add(new Product(rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getDouble(4), rs.getString(5)));
+                }
+            }
+            return products;
+        } catch (SQLException ex) {
+            throw new ProductStorageException("Could not query products", ex);
+        }
+    }
+
+    private Object submit(PendingWrite write) {
+        if (!running) {
+            throw new ProductStorageException("Product repository is closed", null);
+        }
+        queue.add(write);
+        if (!running && !writer.isAlive() && queue.remove(write)) {
+            // close() уже разобрал очередь - эту запись не выполнит никто
+            throw new ProductStorageException("Product repository is closed", null);
+        }
+        try {
+            return write.result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ProductStorageException("Interrupted while waiting for product write", ex);
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof ProductStorageException storage
+                    ? storage
+                    : new ProductStorageException("Could not write product change", ex.getCause());
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        // Без interrupt: прерывание потока посреди записи H2 закрыло бы файл базы
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException ex) {
+                return;
+            } catch (RuntimeException ex) {
+                // Поток записи должен пережить любую ошибку: иначе все следующие записи ждали бы вечно
+                logger.error("Product writer failed on a batch of {}", batch.size(), ex);
+                ProductStorageException failure = new ProductStorageException("Could not write product change", ex);
+                batch.forEach(write -> write.result.completeExceptionally(failure));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingWrite> batch) {
+        try {
+            List<Object> results = execute(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(results.get(i));
+            }
+        } catch (SQLException | RuntimeException ex) {
+            if (batch.size() == 1) {
+                batch.get(0).result.completeExceptionally(new ProductStorageException("Could not write product change", ex));
+                return;
+            }
+            // Пачка откатилась целиком - повторяем по одной, чтобы ошибка досталась только виновнику
+            logger.warn("Product batch of {} failed, retrying one by one: {}", batch.size(), ex.getMessage());
+            for (PendingWrite write : batch) {
+                writeBatch(List.of(write));
+            }
+        }
+    }
+
+    private List<Object> execute(List<PendingWrite> batch) throws SQLException {
+        List<Object> results = new ArrayList<>(batch.size());
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(INSERT);
+                 PreparedStatement update = connection.prepareStatement(UPDATE);
+                 PreparedStatement delete = connection.prepareStatement(DELETE)) {
+                int start = 0;
+                while (start < batch.size()) {
+                    // Подряд идущие однотипные операции - одним executeBatch, порядок между группами сохраняется
+                    Op op = batch.get(start).op;
+                    int end = start;
+                    while (end < batch.size() && batch.get(end).op == op) {
+                        end++;
+                    }
+                    List<PendingWrite> run = batch.subList(start, end);
+                    switch (op) {
+                        case SAVE -> saveRun(insert, run, results);
+                        case UPDATE -> updateRun(insert, update, run, results);
+                        case DELETE -> deleteRun(delete, run, results);
+                        case IMAGE -> imageRun(connection, run, results);
+                    }
+                    start = end;
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        return results;
+    }
+
+    private void saveRun(PreparedStatement insert, List<PendingWrite> run, List<Object> results) throws SQLException {
+        for (PendingWrite write : run) {
+            bindInsert(insert, write.product);
+            insert.addBatch();
+        }
+        insert.executeBatch();
+        for (PendingWrite write : run) {
+            Product p = write.product;
+            results.add(new Product(p.getId(), p.getName(), p.getQuantity(), p.getPrice(), p.getImageURI()));
+        }
+    }
+
+    private void updateRun(PreparedStatement insert, PreparedStatement update,
+                           List<PendingWrite> run, List<Object> results) throws SQLException {
+        for (PendingWrite write : run) {
+            bindUpdate(update, write);
+            update.addBatch();
+        }
+        int[] counts = update.executeBatch();
+        // Ненайденный продукт добавляется как есть; следующее обновление того же id в пачке
+        // должно попасть уже в добавленную строку
+        Set<Integer> inserted = new HashSet<>();
+        for (int i = 0; i < run.size(); i++) {
+            PendingWrite write = run.get(i);
+            boolean updated = counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO;
+            if (!updated && inserted.contains(write.id)) {
+                bindUpdate(update, write);
+                updated = update.executeUpdate() > 0;
+            }
+            if (updated) {
+                results.add(new Product(write.id, write.product.getName(), write.product.getQuantity(),
+                        write.product.getPrice(), null));
+            } else {
+                bindInsert(insert, write.product);
+                insert.executeUpdate();
+                inserted.add(write.product.getId());
+                results.add(write.product);
+            }
+        }
+    }
+
+    private void deleteRun(PreparedStatement delete, List<PendingWrite> run, List<Object> results) throws SQLException {
+        for (PendingWrite write : run) {
+            delete.setInt(1, write.id);
+            delete.addBatch();
+        }
+        int[] counts = delete.executeBatch();
+        for (int count : counts) {
+            results.add(count > 0);
+        }
+    }
+
+    private void imageRun(Connection connection, List<PendingWrite> run, List<Object> results) throws SQLException {
+        // Смена картинки редкая - без executeBatch, результат читается в той же транзакции
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_IMAGE);
+             PreparedStatement select = connection.prepareStatement(SELECT_FIRST)) {
+            for (PendingWrite write : run) {
+                update.setString(1, write.product.getImageURI());
+                update.setInt(2, write.id);
+                if (update.executeUpdate() == 0) {
+                    results.add(null);
+                    continue;
+                }
+                select.setInt(1, write.id);
+                try (ResultSet rs = select.executeQuery()) {
+                    rs.next();
+                    results.add(new Product(rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getDouble(4), rs.getString(5)));
+                }
+            }
+        }
+    }
+
+    private static void bindInsert(PreparedStatement insert, Product product) throws SQLException {
+        insert.setInt(1, product.getId());
+        insert.setString(2, product.getName());
+        insert.setInt(3, product.getQuantity());
+        insert.setDouble(4, product.getPrice());
+        if (product.getImageURI() == null) {
+            insert.setNull(5, Types.VARCHAR);
+        } else {
+            insert.setString(5, product.getImageURI());
+        }
+    }
+
+    private static void bindUpdate(PreparedStatement update, PendingWrite write) throws SQLException {
+        update.setString(1, write.product.getName());
+        update.setInt(2, write.product.getQuantity());
+        update.setDouble(3, write.product.getPrice());
+        update.setInt(4, write.id);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(10_000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        // Записи, которые поток не успел выполнить, завершаются ошибкой, а не висят
+        List<PendingWrite> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        ProductStorageException closed = new ProductStorageException("Product repository is closed", null);
+        pending.forEach(write -> write.result.completeExceptionally(closed));
+        dataSource.close();
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.cloud_spring_load_zip.repository;
+
+import com.example.cloud_spring_load_zip.model.Product;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Повторяет каждое успешное изменение репозитория в производных представлениях
+ * ({@link ProductColumns}, {@link ProductIndex}).
+ * Записи с одним id сериализуются полосой блокировок, чтобы колонки применяли их
+ * в том же порядке, что и хранилище; записи с разными id идут параллельно
+ * (групповой fsync журнала и пачки JDBC сохраняются).
+ */
+public class MirroringProductRepository implements ProductRepository {
+
+    private static final int STRIPES = 64;
+
+    private final ProductRepository delegate;
+    private final ProductMirror[] mirrors;
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    public MirroringProductRepository(ProductRepository delegate, ProductMirror... mirrors) {
+        this.delegate = delegate;
+        this.mirrors = mirrors;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        List<Product> products = delegate.getAllProducts().orElse(List.of());
+        for (ProductMirror mirror : mirrors) {
+            mirror.load(products);
+        }
+    }
+
+    @Override
+    public Product save(Product p) {
+        ReentrantLock stripe = stripe(p.getId());
+        stripe.lock();
+        try {
+            Product saved = delegate.save(p);
+            for (ProductMirror mirror : mirrors) {
+                mirror.save(saved);
+            }
+            return saved;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    @Override
+    public String delete(Integer id) {
+        ReentrantLock stripe = stripe(id);
+        stripe.lock();
+        try {
+            String result = delegate.delete(id);
+            for (ProductMirror mirror : mirrors) {
+                mirror.delete(id);
+            }
+            return result;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    @Override
+    public Product update(int id, Product product) {
+        // Обновление может добавить продукт с другим id - берем обе полосы в фиксированном порядке
+        ReentrantLock first = stripe(Math.min(id, product.getId()));
+        ReentrantLock second = stripe(Math.max(id, product.getId()));
+        first.lock();
+        second.lock();
+        try {
+            Product updated = delegate.update(id, product);
+            for (ProductMirror mirror : mirrors) {
+                mirror.update(id, product);
+            }
+            return updated;
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
+    }
+
+    @Override
+    public Product updateImage(int id, String imageURI) {
+        ReentrantLock stripe = stripe(id);
+        stripe.lock();
+        try {
+            Product updated = delegate.updateImage(id, imageURI);
+            if (updated != null) {
+                for (ProductMirror mirror : mirrors) {
+                    mirror.updateImage(id, imageURI);
+                }
+            }
+            return updated;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    private ReentrantLock stripe(int id) {
+        return stripes[Math.floorMod(id, STRIPES)];
+    }
+
+    @Override
+    public Optional<List<Product>> getAllProducts() {
+        return delegate.getAllProducts();
+    }
+
+    @Override
+    public Optional<Product> findById(int id) {
+        return delegate.findById(id);
+    }
+
+    @Override
+    public List<Product> search(String name) {
+        return delegate.search(name);
+    }
+
+    @Override
+    public Map<String, List<Product>> getProductsByName() {
+        return delegate.getProductsByName();
+    }
+
+    @Override
+    public Map<Double, List<Product>> getProductsByPrice() {
+        return delegate.getProductsByPrice();
+    }
+
+    @Override
+    public Map<Integer, List<Product>> getProductsByQuantity() {
+        return delegate.getProductsByQuantity();
+    }
+
+    @Override
+    public Map<Integer, List<Product>> getProductsById() {
+        return delegate.getProductsById();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.cloud_spring_load_zip.repository;
+
+import com.example.cloud_spring_load_zip.model.Product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Колоночное представление каталога (struct-of-arrays): id, количество и цена лежат
+ * в примитивных массивах, имена - кодами словаря. Строки идут в порядке вставки,
+ * удаленные помечаются в битовой маске и вычищаются уплотнением.
+ * Синхронизируется с репозиторием через {@link MirroringProductRepository}.
+ */
+public class ProductColumns implements ProductMirror {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] quantities = new int[INITIAL_CAPACITY];
+    private double[] prices = new double[INITIAL_CAPACITY];
+    private int[] nameCodes = new int[INITIAL_CAPACITY];
+    private final BitSet deleted = new BitSet();
+    private int rows;
+    private int deletedRows;
+    private long version;
+
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Integer> codes = new HashMap<>();
+    // Живые строки каждого id в порядке вставки: запись находит свои строки без скана колонок
+    private final Map<Integer, List<Integer>> rowsById = new HashMap<>();
+
+    /**
+     * Срез колонок. Массивы не копируются, поэтому срез действителен только внутри {@link #read(Consumer)}.
+     */
+    public static class Snapshot {
+        public final int rows;
+        public final int[] ids;
+        public final int[] quantities;
+        public final double[] prices;
+        public final int[] nameCodes;
+        public final BitSet deleted;
+        public final List<String> dictionary;
+        public final long version;
+
+        Snapshot(ProductColumns columns) {
+            this.rows = columns.rows;
+            this.ids = columns.ids;
+            this.quantities = columns.quantities;
+            this.prices = columns.prices;
+            this.nameCodes = columns.nameCodes;
+            this.deleted = columns.deleted;
+            this.dictionary = columns.dictionary;
+            this.version = columns.version;
+        }
+
+        public boolean isLive(int row) {
+            return !deleted.get(row);
+        }
+    }
+
+    /**
+     * Выполняет чтение под разделяемой блокировкой: записи ждут, сканы идут параллельно.
+     */
+    public void read(Consumer<Snapshot> reader) {
+        lock.readLock().lock();
+        try {
+            reader.accept(new Snapshot(this));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long version() {
+        lock.readLock().lock();
+        try {
+            return version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows - deletedRows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void load(List<Product> products) {
+        lock.writeLock().lock();
+        try {
+            rows = 0;
+            deletedRows = 0;
+            deleted.clear();
+            rowsById.clear();
+            ensureCapacity(products.size());
+            for (Product product : products) {
+                appendRow(product);
+            }
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void save(Product product) {
+        lock.writeLock().lock();
+        try {
+            appendRow(product);
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Как в репозитории: меняется первая строка с id, иначе продукт добавляется как есть
+    @Override
+    public void update(int id, Product product) {
+        lock.writeLock().lock();
+        try {
+            int row = firstRow(id);
+            if (row < 0) {
+                appendRow(product);
+            } else {
+                quantities[row] = product.getQuantity();
+                prices[row] = product.getPrice();
+                nameCodes[row] = code(product.getName());
+            }
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Ссылки на картинки в колонках не хранятся - аналитике они не нужны
+    @Override
+    public void updateImage(int id, String imageURI) {
+    }
+
+    @Override
+    public void delete(int id) {
+        lock.writeLock().lock();
+        try {
+            List<Integer> idRows = rowsById.remove(id);
+            if (idRows != null) {
+                for (int row : idRows) {
+                    deleted.set(row);
+                }
+                deletedRows += idRows.size();
+            }
+            // Уплотнение, когда удаленных строк стало больше четверти
+            if (deletedRows > INITIAL_CAPACITY && deletedRows * 4 > rows) {
+                compact();
+            }
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int firstRow(int id) {
+        List<Integer> idRows = rowsById.get(id);
+        return idRows == null ? -1 : idRows.get(0);
+    }
+
+    private void appendRow(Product product) {
+        ensureCapacity(rows + 1);
+        ids[rows] = product.getId();
+        quantities[rows] = product.getQuantity();
+        prices[rows] = product.getPrice();
+        nameCodes[rows] = code(product.getName());
+        rowsById.computeIfAbsent(product.getId(), k -> new ArrayList<>(1)).add(rows);
+        rows++;
+    }
+
+    private int code(String name) {
+        String key = name == null ? "" : name;
+        Integer code = codes.get(key);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(key);
+            codes.put(key, code);
+        }
+        return code;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(required, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        nameCodes = Arrays.copyOf(nameCodes, capacity);
+    }
+
+    private void compact() {
+        // Новые массивы, а не сдвиг на месте: срезы, взятые раньше, не должны меняться
+        int capacity = Math.max(INITIAL_CAPACITY, rows - deletedRows);
+        int[] newIds = new int[capacity];
+        int[] newQuantities = new int[capacity];
+        double[] newPrices = new double[capacity];
+        int[] newNameCodes = new int[capacity];
+        int target = 0;
+        rowsById.clear();
+        for (int row = 0; row < rows; row++) {
+            if (!deleted.get(row)) {
+                rowsById.computeIfAbsent(ids[row], k -> new ArrayList<>(1)).add(target);
+                newIds[target] = ids[row];
+                newQuantities[target] = quantities[row];
+                newPrices[target] = prices[row];
+                newNameCodes[target] = nameCodes[row];
+                target++;
+            }
+        }
+        ids = newIds;
+        quantities = newQuantities;
+        prices = newPrices;
+        nameCodes = newNameCodes;
+        rows = target;
+        deleted.clear();
+        deletedRows = 0;
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.cloud_spring_load_zip.repository;
+
+import com.example.cloud_spring_load_zip.model.Product;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Отсортированные индексы каталога по цене и количеству для диапазонных запросов и top-N.
+ * Каждая строка получает порядковый номер вставки: он делает ключи индекса уникальными
+ * при одинаковых ценах и сохраняет порядок строк репозитория.
+ * Синхронизируется с репозиторием через {@link MirroringProductRepository}.
+ */
+public class ProductIndex implements ProductMirror {
+
+    /**
+     * Строка индекса. Продукт - собственная копия индекса, наружу ее отдавать нельзя.
+     */
+    public static final class Row {
+        private final long seq;
+        private final Product product;
+
+        Row(long seq, Product product) {
+            this.seq = seq;
+            this.product = product;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public int getId() {
+            return product.getId();
+        }
+
+        public String getName() {
+            return product.getName();
+        }
+
+        public int getQuantity() {
+            return product.getQuantity();
+        }
+
+        public double getPrice() {
+            return product.getPrice();
+        }
+
+        public Product toProduct() {
+            return copy(product);
+        }
+    }
+
+    public static final Comparator<Row> BY_PRICE =
+            Comparator.comparingDouble(Row::getPrice).thenComparingLong(Row::getSeq);
+    public static final Comparator<Row> BY_QUANTITY =
+            Comparator.comparingInt(Row::getQuantity).thenComparingLong(Row::getSeq);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final TreeSet<Row> byPrice = new TreeSet<>(BY_PRICE);
+    private final TreeSet<Row> byQuantity = new TreeSet<>(BY_QUANTITY);
+    // Строки с одинаковым id в порядке вставки - для update/delete
+    private final Map<Integer, List<Row>> byId = new HashMap<>();
+    private long nextSeq;
+
+    /**
+     * Индексы под разделяемой блокировкой. Действительны только внутри {@link #read(Function)}.
+     */
+    public interface View {
+        NavigableSet<Row> byPrice();
+
+        NavigableSet<Row> byQuantity();
+
+        int size();
+    }
+
+    public <T> T read(Function<View, T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.apply(new View() {
+                @Override
+                public NavigableSet<Row> byPrice() {
+                    return byPrice;
+                }
+
+                @Override
+                public NavigableSet<Row> byQuantity() {
+                    return byQuantity;
+                }
+
+                @Override
+                public int size() {
+                    return byPrice.size();
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Граница диапазона для {@link NavigableSet#subSet}: строка с ценой/количеством
+     * и крайним номером, чтобы в диапазон попали все строки с этим значением.
+     */
+    public static Row bound(double price, int quantity, boolean lowest) {
+        Product probe = new Product();
+        probe.setPrice(price);
+        probe.setQuantity(quantity);
+        return new Row(lowest ? Long.MIN_VALUE : Long.MAX_VALUE, probe);
+    }
+
+    public int size() {
+        return read(View::size);
+    }
+
+    @Override
+    public void load(List<Product> products) {
+        lock.writeLock().lock();
+        try {
+            byPrice.clear();
+            byQuantity.clear();
+            byId.clear();
+            for (Product product : products) {
+                insert(copy(product));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void save(Product product) {
+        lock.writeLock().lock();
+        try {
+            insert(copy(product));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Как в репозитории: первая строка с id заменяется (id и порядок сохраняются, ссылка на картинку сбрасывается)
+    @Override
+    public void update(int id, Product product) {
+        lock.writeLock().lock();
+        try {
+            List<Row> rows = byId.get(id);
+            if (rows == null) {
+                insert(copy(product));
+                return;
+            }
+            Row old = rows.get(0);
+            byPrice.remove(old);
+            byQuantity.remove(old);
+            Product updated = copy(product);
+            updated.setId(id);
+            updated.setImageURI(null);
+            Row row = new Row(old.seq, updated);
+            rows.set(0, row);
+            byPrice.add(row);
+            byQuantity.add(row);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateImage(int id, String imageURI) {
+        lock.writeLock().lock();
+        try {
+            List<Row> rows = byId.get(id);
+            if (rows != null) {
+                // Картинка не входит в ключи индексов - строка остается на месте
+                rows.get(0).product.setImageURI(imageURI);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(int id) {
+        lock.writeLock().lock();
+        try {
+            List<Row> rows = byId.remove(id);
+            if (rows != null) {
+                for (Row row : rows) {
+                    byPrice.remove(row);
+                    byQuantity.remove(row);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(Product product) {
+        Row row = new Row(nextSeq++, product);
+        byPrice.add(row);
+        byQuantity.add(row);
+        byId.computeIfAbsent(product.getId(), k -> new ArrayList<>(1)).add(row);
+    }
+
+    private static Product copy(Product p) {
+        return new Product(p.getId(), p.getName(), p.getQuantity(), p.getPrice(), p.getImageURI());
+    }
+}
@@ -0,0 +1,533 @@
+package com.example.cloud_spring_load_zip.repository;
+
+import com.example.cloud_spring_load_zip.model.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Collection;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Журнал изменений продуктов (write-ahead log) и бинарные снимки.
+ * <p>
+ * Журнал разбит на сегменты wal-N.log; запись: [длина][crc32][операция][данные].
+ * Запись в канал идет сразу, а fsync делает отдельный поток пачками (group commit):
+ * все запросы, пришедшие за окно, ждут одного force().
+ * Снимок snapshot-N.bin содержит состояние на момент перехода на сегмент N,
+ * поэтому восстановление = снимок + сегменты начиная с N. Снимок читается через mmap.
+ */
+class ProductLog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductLog.class);
+
+    static final byte OP_SAVE = 1;
+    static final byte OP_UPDATE = 2;
+    static final byte OP_DELETE = 3;
+    static final byte OP_IMAGE = 4;
+
+    private static final int SNAPSHOT_MAGIC = 0x50534e50; // "PSNP"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int RECORD_HEADER = 8;
+    private static final int MAX_RECORD = 16 * 1024 * 1024;
+    private static final long MAP_WINDOW = 256L * 1024 * 1024;
+    private static final Pattern WAL_NAME = Pattern.compile("wal-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)\\.bin");
+
+    /**
+     * Получатель восстановленных данных: сначала продукты снимка, затем операции журнала.
+     */
+    interface Replayer {
+        void snapshot(Product product);
+
+        void save(Product product);
+
+        void update(int id, Product product);
+
+        void delete(int id);
+
+        void updateImage(int id, String imageURI);
+    }
+
+    private final Path dir;
+    private final boolean waitForSync;
+    private final long groupCommitWindowNanos;
+    private final Object lock = new Object();
+    private final Thread flusher;
+
+    private FileChannel channel;
+    private long segment;
+    // Логические смещения через все сегменты: сколько записано и сколько гарантированно на диске
+    private long written;
+    private long durable;
+    private long recordsSinceSnapshot;
+    private volatile boolean running = true;
+    private IOException flushFailure;
+
+    ProductLog(Path dir, boolean waitForSync, long groupCommitWindowNanos) throws IOException {
+        this.dir = dir;
+        this.waitForSync = waitForSync;
+        this.groupCommitWindowNanos = groupCommitWindowNanos;
+        Files.createDirectories(dir);
+        this.flusher = new Thread(this::flushLoop, "product-wal-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /**
+     * Восстанавливает состояние и открывает журнал на запись. Возвращает false, если данных еще нет.
+     */
+    boolean open(Replayer replayer) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().endsWith(".tmp")).forEach(p -> p.toFile().delete());
+        }
+        TreeMap<Long, Path> snapshots = list(SNAPSHOT_NAME);
+        TreeMap<Long, Path> segments = list(WAL_NAME);
+        boolean existing = !snapshots.isEmpty() || !segments.isEmpty();
+
+        long start = System.nanoTime();
+        long fromSegment = 0;
+        int loaded = 0;
+        if (!snapshots.isEmpty()) {
+            fromSegment = snapshots.lastKey();
+            loaded = loadSnapshot(snapshots.lastEntry().getValue(), replayer);
+        }
+        long replayed = 0;
+        long lastSegment = segments.isEmpty() ? fromSegment : Math.max(fromSegment, segments.lastKey());
+        for (var entry : segments.tailMap(fromSegment, true).entrySet()) {
+            replayed += replay(entry.getValue(), entry.getKey() == lastSegment, replayer);
+        }
+        recordsSinceSnapshot = replayed;
+        if (existing) {
+            logger.info("Products recovered in {} ms: {} from snapshot, {} log records",
+                    (System.nanoTime() - start) / 1_000_000, loaded, replayed);
+        }
+
+        segment = lastSegment;
+        channel = openSegment(segment);
+        flusher.start();
+        return existing;
+    }
+
+    long appendSave(Product product) throws IOException {
+        return append(OP_SAVE, 0, product);
+    }
+
+    long appendUpdate(int id, Product product) throws IOException {
+        return append(OP_UPDATE, id, product);
+    }
+
+    long appendDelete(int id) throws IOException {
+        return append(OP_DELETE, id, null);
+    }
+
+    // Запись в формате продукта, из которого при восстановлении берется только ссылка на картинку
+    long appendImage(int id, String imageURI) throws IOException {
+        return append(OP_IMAGE, id, new Product(id, null, 0, 0, imageURI));
+    }
+
+    private long append(byte op, int id, Product product) throws IOException {
+        ByteBuffer record = encodeRecord(op, id, product);
+        synchronized (lock) {
+            while (record.hasRemaining()) {
+                written += channel.write(record);
+            }
+            recordsSinceSnapshot++;
+            lock.notifyAll();
+            return written;
+        }
+    }
+
+    /**
+     * Ждет, пока запись с данным смещением попадет на диск (в режиме group).
+     */
+    void sync(long offset) throws IOException {
+        if (!waitForSync) {
+            return;
+        }
+        synchronized (lock) {
+            while (durable < offset) {
+                if (flushFailure != null) {
+                    throw new IOException("Product log fsync failed", flushFailure);
+                }
+                if (!running) {
+                    throw new IOException("Product log is closed");
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for product log fsync");
+                }
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (running) {
+            try {
+                synchronized (lock) {
+                    while (running && written == durable) {
+                        lock.wait();
+                    }
+                }
+                // Окно набора пачки: запросы, пришедшие за это время, уйдут одним fsync
+                if (groupCommitWindowNanos > 0) {
+                    Thread.sleep(groupCommitWindowNanos / 1_000_000, (int) (groupCommitWindowNanos % 1_000_000));
+                }
+                long target;
+                FileChannel current;
+                synchronized (lock) {
+                    target = written;
+                    current = channel;
+                }
+                try {
+                    current.force(false);
+                } catch (ClosedChannelException ex) {
+                    // Сегмент закрыт при переключении, он уже сброшен на диск
+                    continue;
+                }
+                synchronized (lock) {
+                    durable = Math.max(durable, target);
+                    flushFailure = null;
+                    lock.notifyAll();
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } catch (IOException ex) {
+                logger.error("Product log fsync failed", ex);
+                synchronized (lock) {
+                    flushFailure = ex;
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    long recordsSinceSnapshot() {
+        synchronized (lock) {
+            return recordsSinceSnapshot;
+        }
+    }
+
+    /**
+     * Переключает журнал на новый сегмент и возвращает его номер - под ним будет записан снимок.
+     * Вызывается под блокировкой репозитория, чтобы состояние и граница сегмента совпадали.
+     */
+    long roll() throws IOException {
+        synchronized (lock) {
+            channel.force(false);
+            channel.close();
+            durable = written;
+            segment++;
+            channel = openSegment(segment);
+            recordsSinceSnapshot = 0;
+            lock.notifyAll();
+            return segment;
+        }
+    }
+
+    /**
+     * Пишет снимок во временный файл и атомарно публикует его, затем удаляет устаревшие сегменты.
+     */
+    void writeSnapshot(long snapshotSegment, Collection<Product> products) throws IOException {
+        Path target = dir.resolve("snapshot-" + snapshotSegment + ".bin");
+        Path temp = dir.resolve("snapshot-" + snapshotSegment + ".bin.tmp");
+        long start = System.nanoTime();
+        CRC32 crc = new CRC32();
+        try (OutputStream file = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, crc), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(snapshotSegment);
+            out.writeInt(products.size());
+            for (Product product : products) {
+                out.writeInt(product.getId());
+                out.writeInt(product.getQuantity());
+                out.writeDouble(product.getPrice());
+                writeString(out, product.getName());
+                writeString(out, product.getImageURI());
+            }
+            out.flush();
+            // Контрольная сумма пишется в обход CheckedOutputStream
+            file.write(ByteBuffer.allocate(8).putLong(crc.getValue()).array());
+        }
+        try (FileChannel ch = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        logger.info("Product snapshot {} written in {} ms ({} products)",
+                snapshotSegment, (System.nanoTime() - start) / 1_000_000, products.size());
+
+        for (var entry : list(WAL_NAME).headMap(snapshotSegment, false).entrySet()) {
+            Files.deleteIfExists(entry.getValue());
+        }
+        for (var entry : list(SNAPSHOT_NAME).headMap(snapshotSegment, false).entrySet()) {
+            Files.deleteIfExists(entry.getValue());
+        }
+    }
+
+    private int loadSnapshot(Path path, Replayer replayer) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < 28) {
+                throw new IOException("Product snapshot is truncated: " + path);
+            }
+            // Проверка контрольной суммы по отображенным окнам, без копирования в heap
+            CRC32 crc = new CRC32();
+            for (long position = 0; position < size - 8; position += MAP_WINDOW) {
+                crc.update(ch.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - 8 - position)));
+            }
+            long stored = ch.map(FileChannel.MapMode.READ_ONLY, size - 8, 8).getLong();
+            if (stored != crc.getValue()) {
+                throw new IOException("Product snapshot checksum mismatch: " + path);
+            }
+
+            MappedReader reader = new MappedReader(ch, size - 8);
+            if (reader.getInt() != SNAPSHOT_MAGIC || reader.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported product snapshot format: " + path);
+            }
+            reader.getLong();
+            int count = reader.getInt();
+            for (int i = 0; i < count; i++) {
+                int id = reader.getInt();
+                int quantity = reader.getInt();
+                double price = reader.getDouble();
+                String name = reader.getString();
+                String imageUri = reader.getString();
+                replayer.snapshot(new Product(id, name, quantity, price, imageUri));
+            }
+            return count;
+        }
+    }
+
+    private long replay(Path path, boolean last, Replayer replayer) throws IOException {
+        long records = 0;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+            while (position < size) {
+                header.clear();
+                int length = -1;
+                long crcValue = 0;
+                if (size - position >= RECORD_HEADER) {
+                    ch.read(header, position);
+                    header.flip();
+                    length = header.getInt();
+                    crcValue = header.getInt() & 0xFFFFFFFFL;
+                }
+                if (length <= 0 || length > MAX_RECORD || position + RECORD_HEADER + length > size) {
+                    tornTail(ch, path, position, last);
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                ch.read(payload, position + RECORD_HEADER);
+                payload.flip();
+                CRC32 crc = new CRC32();
+                crc.update(payload.duplicate());
+                if (crc.getValue() != crcValue) {
+                    tornTail(ch, path, position, last);
+                    break;
+                }
+                apply(payload, replayer);
+                position += RECORD_HEADER + length;
+                records++;
+            }
+        }
+        return records;
+    }
+
+    private static void tornTail(FileChannel ch, Path path, long position, boolean last) throws IOException {
+        if (!last) {
+            throw new IOException("Product log segment is corrupted at offset " + position + ": " + path);
+        }
+        // Недописанная запись после сбоя - отбрасываем хвост
+        logger.warn("Truncating torn product log tail at offset {} in {}", position, path);
+        ch.truncate(position);
+        ch.force(false);
+    }
+
+    private static void apply(ByteBuffer payload, Replayer replayer) throws IOException {
+        byte op = payload.get();
+        switch (op) {
+            case OP_SAVE -> replayer.save(decodeProduct(payload));
+            case OP_UPDATE -> {
+                int id = payload.getInt();
+                replayer.update(id, decodeProduct(payload));
+            }
+            case OP_DELETE -> replayer.delete(payload.getInt());
+            case OP_IMAGE -> {
+                int id = payload.getInt();
+                replayer.updateImage(id, decodeProduct(payload).getImageURI());
+            }
+            default -> throw new IOException("Unknown product log operation: " + op);
+        }
+    }
+
+    private static ByteBuffer encodeRecord(byte op, int id, Product product) {
+        byte[] name = bytes(product == null ? null : product.getName());
+        byte[] image = bytes(product == null ? null : product.getImageURI());
+        int length = 1 + (op == OP_SAVE ? 0 : 4)
+                + (product == null ? 0 : 4 + 4 + 8 + 4 + (name == null ? 0 : name.length) + 4 + (image == null ? 0 : image.length));
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + length);
+        record.putInt(length).putInt(0).put(op);
+        if (op != OP_SAVE) {
+            record.putInt(id);
+        }
+        if (product != null) {
+            record.putInt(product.getId()).putInt(product.getQuantity()).putDouble(product.getPrice());
+            putBytes(record, name);
+            putBytes(record, image);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER, length);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private static Product decodeProduct(ByteBuffer buffer) {
+        int id = buffer.getInt();
+        int quantity = buffer.getInt();
+        double price = buffer.getDouble();
+        String name = getString(buffer);
+        String imageUri = getString(buffer);
+        return new Product(id, name, quantity, price, imageUri);
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length).put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        FileChannel ch = FileChannel.open(dir.resolve("wal-" + number + ".log"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        ch.position(ch.size());
+        return ch;
+    }
+
+    private TreeMap<Long, Path> list(Pattern pattern) throws IOException {
+        TreeMap<Long, Path> result = new TreeMap<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(path -> {
+                Matcher matcher = pattern.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    result.put(Long.parseLong(matcher.group(1)), path);
+                }
+            });
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        flusher.interrupt();
+        synchronized (lock) {
+            if (channel != null && channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+                durable = written;
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Последовательное чтение снимка через окна mmap (файл может быть больше 2 ГБ).
+     */
+    private static class MappedReader {
+        private final FileChannel channel;
+        private final long limit;
+        private long windowStart;
+        private MappedByteBuffer buffer;
+
+        MappedReader(FileChannel channel, long limit) throws IOException {
+            this.channel = channel;
+            this.limit = limit;
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(MAP_WINDOW, limit));
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            windowStart += buffer.position();
+            if (limit - windowStart < bytes) {
+                throw new IOException("Product snapshot is truncated");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                    Math.min(Math.max(MAP_WINDOW, bytes), limit - windowStart));
+        }
+
+        int getInt() throws IOException {
+            ensure(4);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(8);
+            return buffer.getLong();
+        }
+
+        double getDouble() throws IOException {
+            ensure(8);
+            return buffer.getDouble();
+        }
+
+        String getString() throws IOException {
+            int length = getInt();
+            if (length < 0) {
+                return null;
+            }
+            ensure(length);
+            byte[] value = new byte[length];
+            buffer.get(value);
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.cloud_spring_load_zip.repository;
+
+import com.example.cloud_spring_load_zip.model.Product;
+
+import java.util.List;
+
+/**
+ * Производное представление каталога, которое {@link MirroringProductRepository}
+ * обновляет после каждой успешной записи. Семантика методов та же, что у списка
+ * в репозитории: update меняет первую строку с id, delete удаляет все.
+ */
+public interface ProductMirror {
+
+    void load(List<Product> products);
+
+    void save(Product product);
+
+    void update(int id, Product product);
+
+    void updateImage(int id, String imageURI);
+
+    void delete(int id);
+}
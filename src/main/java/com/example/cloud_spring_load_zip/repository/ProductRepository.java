@@ -1,124 +1,47 @@
 package com.example.cloud_spring_load_zip.repository;
 
 import com.example.cloud_spring_load_zip.model.Product;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Repository;
 
-import java.util.ArrayList;
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
-@Repository
-public class ProductRepository {
-    private List<Product> list = new ArrayList<Product>();
+/**
+ * Хранилище продуктов. Реализация выбирается свойством app.product.storage.type
+ * (см. {@link ProductRepositoryConfiguration}); поведение у всех реализаций одинаковое:
+ * порядок вставки сохраняется, findById возвращает первый продукт с данным id.
+ */
+public interface ProductRepository extends Closeable {
 
-    private static final Logger logger = LoggerFactory.getLogger(ProductRepository.class);
+    Optional<List<Product>> getAllProducts();
 
-    public ProductRepository() {createProducts();}
+    Optional<Product> findById(int id);
 
+    List<Product> search(String name);
 
+    Product save(Product p);
 
-    public void createProducts() {
-        logger.debug("Repository working on adding products");
-        list = new ArrayList<>(List.of(
-                new Product(1, "aproduct 1", 10, 1000, ""),
-                new Product(2, "bproduct 2", 20, 2000, ""),
-                new Product(3, "cproduct 3", 30, 3000, "")
-        ));
-    }
-
-    public Optional<List<Product>> getAllProducts() {
-        logger.debug("Repository returning list of products product {}", list);
-        if (list.isEmpty()) {
-            return Optional.empty();
-        }
-        else {
-            return Optional.of(list);
-        }
-    }
-
-    public Optional<Product> findById(int id){
-        for (int i = 0; i < list.size(); i++) {
-            if (list.get(i).getId() == (id)) {
-                logger.debug("Repository searching for item by id {}", id);
-                return Optional.ofNullable(list.get(i));
-            }
-        }
-        logger.info("No item found by id {}", id);
-        return Optional.empty();
-    }
+    String delete(Integer id);
 
-    public List<Product> search(String name) {
-        logger.debug("Repository searching for item by name {}", name);
-        return list.stream().filter(x -> x.getName().startsWith(name)).collect(Collectors.toList());
-    }
+    Product update(int id, Product product);
 
-    public Product save(Product p) {
-        Product product = new Product();
-        product.setId(p.getId());
-        product.setName(p.getName());
-        product.setQuantity(p.getQuantity());
-        product.setPrice(p.getPrice());
-        product.setImageURI(p.getImageURI());
-        list.add(product);
-        logger.debug("Repository adding new product {}", product);
-        return product;
-    }
+    /**
+     * Меняет только imageURI первого продукта с данным id (update ссылку на картинку сбрасывает).
+     * Возвращает обновленный продукт или null, если продукта нет.
+     */
+    Product updateImage(int id, String imageURI);
 
-    public String delete(Integer id) {
-        logger.debug("Repository deleting product by id {}", id);
-        if (list.removeIf(x -> x.getId() == (id))){
-            logger.info("Repository successfully deleted product by id {}", id);
-            return "Product with id " + id + " deleted";
-        }
-        else{
-            logger.info("Product with id {} not found", id);
-            return "Product with id " + id + " not found";
-        }
-    }
+    Map<String, List<Product>> getProductsByName();
 
-    public Product update(int id, Product product) {
-        int idx = -1;
-        for (int i = 0; i < list.size(); i++) {
-            if (list.get(i).getId() == id) {
-                idx = i;
-                logger.info("Repository successfully updated product {}", product);
-                break;
-            }
-        }
+    Map<Double, List<Product>> getProductsByPrice();
 
-        if (idx == -1) { // если не нашли — добавляем новый
-            list.add(product);
-            logger.debug("Repository added new product {}", product);
-            return product;
-        }
+    Map<Integer, List<Product>> getProductsByQuantity();
 
-        Product updated = new Product();
-        updated.setId(id);
-        updated.setName(product.getName());
-        updated.setQuantity(product.getQuantity());
-        updated.setPrice(product.getPrice());
-        list.set(idx, updated);
-        logger.debug("Repository updated existing product {}", updated);
-        return updated;
-    }
-
-    public Map<String, List<Product>> getProductsByName() {
-        return list.stream().collect(Collectors.groupingBy(Product::getName));
-    }
-
-    public Map<Double, List<Product>> getProductsByPrice() {
-        return list.stream().collect(Collectors.groupingBy(Product::getPrice));
-    }
-
-    public Map<Integer, List<Product>> getProductsByQuantity() {
-        return list.stream().collect(Collectors.groupingBy(Product::getQuantity));
-    }
+    Map<Integer, List<Product>> getProductsById();
 
-    public Map<Integer, List<Product>> getProductsById() {
-        return list.stream().collect(Collectors.groupingBy(Product::getId));
+    @Override
+    default void close() throws IOException {
     }
-}
\ No newline at end of file
+}
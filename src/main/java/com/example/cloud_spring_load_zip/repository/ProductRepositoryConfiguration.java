@@ -0,0 +1,50 @@
+package com.example.cloud_spring_load_zip.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+@Configuration
+public class ProductRepositoryConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductRepositoryConfiguration.class);
+
+    @Bean
+    public ProductColumns productColumns() {
+        return new ProductColumns();
+    }
+
+    @Bean
+    public ProductIndex productIndex() {
+        return new ProductIndex();
+    }
+
+    // Реализация выбирается свойством app.product.storage.type: memory | jdbc
+    @Bean
+    public ProductRepository productRepository(ProductStorageProperties properties, ProductColumns productColumns,
+                                               ProductIndex productIndex, MeterRegistry registry) throws IOException {
+        String type = properties.getType();
+        logger.info("Using '{}' product repository", type);
+        ProductRepository repository;
+        switch (type) {
+            case "memory":
+                repository = new InMemoryProductRepository(properties);
+                break;
+            case "jdbc":
+                repository = new JdbcProductRepository(properties.getJdbc(), registry);
+                break;
+            default:
+                throw new IllegalStateException("Unknown app.product.storage.type: " + type);
+        }
+        // Колоночное представление для аналитики и индексы для диапазонных запросов повторяют все записи
+        repository = new MirroringProductRepository(repository, productColumns, productIndex);
+        if (properties.getCache().isEnabled()) {
+            repository = new CachingProductRepository(repository, properties.getCache(), registry);
+        }
+        return repository;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.cloud_spring_load_zip.repository;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.product.storage")
+public class ProductStorageProperties {
+
+    // memory - список в памяти (с журналом при persistent); jdbc - встроенная SQL-база
+    private String type = "memory";
+
+    // false - только память, как раньше (данные теряются при рестарте)
+    private boolean persistent = true;
+    private String dir = "./data/products";
+    // group - запрос ждет общего fsync пачки записей; async - fsync в фоне без ожидания
+    private String fsync = "group";
+    // Окно набора пачки перед fsync
+    private Duration groupCommitWindow = Duration.ofMillis(2);
+    // Снимок делается после стольких записей журнала или по интервалу
+    private long snapshotEveryRecords = 100_000;
+    private Duration snapshotInterval = Duration.ofMinutes(10);
+    private Jdbc jdbc = new Jdbc();
+    private Cache cache = new Cache();
+
+    @Getter
+    @Setter
+    public static class Jdbc {
+        private String url = "jdbc:h2:file:./data/products-db";
+        private String username = "sa";
+        private String password = "";
+        private int maxPoolSize = 8;
+        // Сколько накопившихся изменений уходит одним executeBatch/транзакцией
+        private int batchSize = 500;
+    }
+
+    @Getter
+    @Setter
+    public static class Cache {
+        private boolean enabled = true;
+        // Ограничение по числу продуктов в кеше findById (вытеснение W-TinyLFU)
+        private long maximumSize = 100_000;
+        // Листинги и группировки - по одной записи на версию данных
+        private long listingMaximumSize = 64;
+        // Готовые JSON-ответы: листинги и продукты по id
+        private long responseMaximumSize = 10_000;
+    }
+}
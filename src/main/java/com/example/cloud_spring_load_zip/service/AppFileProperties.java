@@ -0,0 +1,182 @@
+package com.example.cloud_spring_load_zip.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.file")
+public class AppFileProperties {
+
+    private int maxSizeMb = 10;
+    private List<String> allowedExtensions = new ArrayList<>();
+    private Storage storage = new Storage();
+    private Catalog catalog = new Catalog();
+    private Jobs jobs = new Jobs();
+    private Verify verify = new Verify();
+    private Streaming streaming = new Streaming();
+    private Batch batch = new Batch();
+    private HotCache hotCache = new HotCache();
+    private Derivatives derivatives = new Derivatives();
+    private Lifecycle lifecycle = new Lifecycle();
+
+    @Getter
+    @Setter
+    public static class Storage {
+        private String type = "local";
+        private boolean backupEnabled;
+        private Layout layout = new Layout();
+        private S3 s3 = new S3();
+        private Backup backup = new Backup();
+    }
+
+    @Getter
+    @Setter
+    public static class Backup {
+        // Куда копировать: local - во вторую директорию, s3 - в отдельный бакет
+        private String targetType = "local";
+        private String dir = "./backup";
+        private S3 s3 = new S3();
+        // Журнал очереди репликации переживает рестарт приложения
+        private String queueDir = "./backup/.queue";
+        private int batchSize = 100;
+        private Duration pollInterval = Duration.ofSeconds(1);
+        // Ограничение скорости копирования, 0 - без ограничения
+        private DataSize rateLimit = DataSize.ofMegabytes(50);
+        private int maxAttempts = 8;
+        private Duration retryBackoff = Duration.ofSeconds(2);
+        private boolean verifyChecksum = true;
+    }
+
+    @Getter
+    @Setter
+    public static class S3 {
+        // Адрес S3-совместимого сервиса (MinIO, Ceph RGW, AWS), path-style запросы
+        private String endpoint = "http://localhost:9000";
+        private String region = "us-east-1";
+        private String bucket = "uploads";
+        private String accessKey;
+        private String secretKey;
+        private String keyPrefix = "";
+        // Размер части multipart-загрузки (для AWS не меньше 5MB) и число частей в полете
+        private DataSize partSize = DataSize.ofMegabytes(8);
+        private int maxConcurrency = 4;
+        private Duration requestTimeout = Duration.ofMinutes(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Layout {
+        // Раскладывать файлы по подкаталогам ab/cd/ по хешу имени
+        private boolean sharded = true;
+        // Число уровней подкаталогов (по 256 каталогов на уровень)
+        private int shardDepth = 2;
+        // Запускать перенос плоской директории в фоне при старте
+        private boolean migrateOnStartup = false;
+        private int migrationBatchSize = 500;
+        private long migrationPauseMs = 50;
+    }
+
+    @Getter
+    @Setter
+    public static class Catalog {
+        // Следить за директорией через WatchService (изменения, сделанные в обход сервиса)
+        private boolean watchEnabled = true;
+        // Размер страницы по умолчанию и верхняя граница для листингов
+        private int defaultPageSize = 100;
+        private int maxPageSize = 1000;
+    }
+
+    @Getter
+    @Setter
+    public static class Jobs {
+        // Потоки и очередь - у пула архивации app.bulkheads.archive
+        // Загруженные части переносятся сюда до завершения задания
+        private String spoolDir = System.getProperty("java.io.tmpdir") + "/archive-jobs";
+        // Сколько хранится запись о завершенном задании; сам результат убирает app.file.lifecycle
+        private Duration resultTtl = Duration.ofHours(1);
+        private Duration progressInterval = Duration.ofMillis(250);
+        private Duration sseTimeout = Duration.ofMinutes(30);
+    }
+
+    @Getter
+    @Setter
+    public static class Verify {
+        // Фоновая проверка всех архивов по кругу
+        private boolean scrubEnabled = true;
+        private Duration scrubInitialDelay = Duration.ofMinutes(5);
+        private Duration scrubInterval = Duration.ofHours(6);
+        // Скорость чтения фоновой проверки, 0 - без ограничения
+        private DataSize scrubRateLimit = DataSize.ofMegabytes(20);
+        // Сколько результатов проверки держать в памяти
+        private int cacheMaximumSize = 10000;
+    }
+
+    @Getter
+    @Setter
+    public static class Streaming {
+        // Потоковые загрузки не проходят через лимиты spring.servlet.multipart - свой лимит на тело
+        private DataSize maxRequestSize = DataSize.ofGigabytes(1);
+        private int maxParts = 1000;
+        private DataSize maxHeaderSize = DataSize.ofKilobytes(8);
+    }
+
+    @Getter
+    @Setter
+    public static class Batch {
+        // Сколько файлов одного запроса пишется одновременно; на NVMe можно поднять до числа потоков file-io
+        private int parallelism = 8;
+        private int maxFiles = 100;
+    }
+
+    @Getter
+    @Setter
+    public static class HotCache {
+        private boolean enabled = true;
+        // Общий объем содержимого вне кучи; учитывайте его в -XX:MaxDirectMemorySize
+        private DataSize maxBytes = DataSize.ofMegabytes(64);
+        // Файлы больше порога отдаются из хранилища как раньше
+        private DataSize maxFileSize = DataSize.ofKilobytes(256);
+    }
+
+    @Getter
+    @Setter
+    public static class Derivatives {
+        // Локальный каталог кеша превью (и при хранилище S3)
+        private String dir = "./derivatives";
+        // Предел объема кеша на диске; сверх него удаляются давно не запрошенные превью
+        private DataSize maxBytes = DataSize.ofMegabytes(512);
+        private int maxDimension = 2048;
+        // Защита от "бомб": картинки с большим числом пикселей не декодируются
+        private long maxSourcePixels = 50_000_000;
+        private float jpegQuality = 0.85f;
+    }
+
+    @Getter
+    @Setter
+    public static class Lifecycle {
+        private boolean enabled = true;
+        // Сколько хранится архив, к которому не обращались
+        private Duration archiveTtl = Duration.ofDays(7);
+        // Распакованные и восстановленные каталоги дешево получить заново
+        private Duration directoryTtl = Duration.ofDays(1);
+        // Квота на все сгенерированные файлы; сверх нее удаляются давно не использованные
+        private DataSize maxBytes = DataSize.ofGigabytes(10);
+        // Квота не трогает свежие артефакты: ссылка на только что созданный архив должна успеть сработать
+        private Duration minIdle = Duration.ofMinutes(10);
+        private Duration sweepInterval = Duration.ofMinutes(5);
+        // Удаление пачками с паузой, чтобы уборка не отнимала диск у запросов
+        private int batchSize = 50;
+        private Duration batchPause = Duration.ofMillis(200);
+        // Время последнего доступа переживает рестарт
+        private String stateFile = "./data/artifacts.properties";
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.exception.FileValidationException;
+import com.example.cloud_spring_load_zip.model.FileEntry;
+import com.example.cloud_spring_load_zip.storage.BlobInfo;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import com.example.cloud_spring_load_zip.storage.StorageLayout;
+import com.example.cloud_spring_load_zip.zip.ZipDirectory;
+import com.example.cloud_spring_load_zip.zip.ZipWriter;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Дозапись файлов в существующий ZIP без пересжатия старых записей.
+ * <p>
+ * Новые записи пишутся на место центрального каталога (сразу после последней записи),
+ * за ними - новый каталог: старые записи каталога копируются байт в байт. Старые сжатые
+ * данные не читаются, поэтому стоимость дозаписи - размер новых файлов плюс каталог.
+ * <p>
+ * Локальный архив меняется на месте. Перед записью старый хвост (каталог и EOCD) и исходная
+ * длина сохраняются в журнал рядом с архивом; при ошибке или после падения процесса
+ * архив восстанавливается из журнала. В S3 дописать объект нельзя - архив собирается
+ * заново из старых байт до каталога (без распаковки) и новых записей.
+ */
+@Service
+public class ArchiveAppendService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveAppendService.class);
+
+    static final String JOURNAL_SUFFIX = ".append-journal";
+    private static final int JOURNAL_MAGIC = 0x5a41504a;
+    private static final int STRIPES = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final StorageBackend storageBackend;
+    private final StorageLayout layout;
+    private final FileCatalog fileCatalog;
+    private final ApplicationEventPublisher eventPublisher;
+    // Дозаписи одного архива идут по очереди; между процессами - блокировка файла
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    public ArchiveAppendService(StorageBackend storageBackend, StorageLayout layout, FileCatalog fileCatalog,
+                                ApplicationEventPublisher eventPublisher) {
+        this.storageBackend = storageBackend;
+        this.layout = layout;
+        this.fileCatalog = fileCatalog;
+        this.eventPublisher = eventPublisher;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Откат дозаписей, прерванных падением процесса.
+     */
+    @PostConstruct
+    public void recover() {
+        if (!"local".equals(storageBackend.getType()) || !Files.isDirectory(layout.getRoot())) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(layout.getRoot(), layout.getDepth() + 1)) {
+            for (Path journal : (Iterable<Path>) files.filter(ArchiveAppendService::isJournal)::iterator) {
+                Path archive = archiveOf(journal);
+                try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                     FileLock ignored = channel.lock()) {
+                    rollback(channel, journal);
+                    logger.warn("Rolled back interrupted append to {}", archive.getFileName());
+                } catch (IOException ex) {
+                    logger.error("Could not roll back interrupted append to {}", archive.getFileName(), ex);
+                }
+            }
+        } catch (IOException ex) {
+            logger.error("Could not scan for interrupted archive appends", ex);
+        }
+    }
+
+    /**
+     * Дописывает источники в архив zipFileName.
+     *
+     * @return число записей в архиве после дозаписи
+     */
+    public int append(String zipFileName, List<FileArchiveService.Source> sources) throws IOException {
+        for (FileArchiveService.Source source : sources) {
+            checkEntryName(source.getName());
+        }
+        ReentrantLock stripe = stripes[Math.floorMod(zipFileName.hashCode(), STRIPES)];
+        stripe.lock();
+        try {
+            BlobInfo archive = storageBackend.stat(zipFileName)
+                    .filter(info -> !info.isDirectory())
+                    .orElseThrow(() -> new FileNotFoundException("ZIP файл не найден: " + zipFileName));
+            Optional<Path> local = storageBackend.localPath(zipFileName).filter(Files::isRegularFile);
+            int entries = local.isPresent()
+                    ? appendInPlace(local.get(), sources)
+                    : appendByRewrite(zipFileName, archive.getSize(), sources);
+            fileCatalog.refresh(zipFileName);
+            long size = fileCatalog.get(zipFileName).map(FileEntry::getSize).orElse(0L);
+            eventPublisher.publishEvent(new ArchiveAppendedEvent(zipFileName, size));
+            return entries;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    private int appendInPlace(Path path, List<FileArchiveService.Source> sources) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            Path journal = journalOf(path);
+            if (Files.exists(journal)) {
+                rollback(channel, journal);
+            }
+            long length = channel.size();
+            ZipDirectory directory = ZipDirectory.read((offset, size) -> read(channel, offset, size), length);
+            checkConflicts(directory, sources);
+
+            long centralOffset = directory.getCentralOffset();
+            writeJournal(journal, length, centralOffset, read(channel, centralOffset, (int) (length - centralOffset)));
+            try {
+                channel.position(centralOffset);
+                // Канал не закрываем через поток - им владеет try-with-resources
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+                ZipWriter writer = new ZipWriter(out, centralOffset);
+                writeEntries(writer, directory, sources);
+                channel.truncate(writer.position());
+                channel.force(true);
+            } catch (IOException | RuntimeException ex) {
+                try {
+                    rollback(channel, journal);
+                } catch (IOException rollbackEx) {
+                    ex.addSuppressed(rollbackEx);
+                }
+                throw ex;
+            }
+            Files.delete(journal);
+            return directory.getEntries().size() + sources.size();
+        }
+    }
+
+    private int appendByRewrite(String zipFileName, long length, List<FileArchiveService.Source> sources)
+            throws IOException {
+        ZipDirectory directory = ZipDirectory.read((offset, size) -> readRange(zipFileName, offset, size), length);
+        checkConflicts(directory, sources);
+
+        long centralOffset = directory.getCentralOffset();
+        Path spool = Files.createTempFile("zip-append-", ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(spool), BUFFER_SIZE)) {
+                writeEntries(new ZipWriter(out, centralOffset), directory, sources);
+            }
+            long tailSize = Files.size(spool);
+            // Объект заменяется целиком только после успешной загрузки; сжатые данные копируются как есть
+            try (InputStream head = storageBackend.getRange(zipFileName, 0, centralOffset);
+                 InputStream tail = Files.newInputStream(spool)) {
+                storageBackend.put(zipFileName, new SequenceInputStream(head, tail), centralOffset + tailSize);
+            }
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+        return directory.getEntries().size() + sources.size();
+    }
+
+    private static void writeEntries(ZipWriter writer, ZipDirectory directory,
+                                     List<FileArchiveService.Source> sources) throws IOException {
+        // Старые записи остаются первыми в каталоге, новые - в порядке загрузки
+        for (ZipDirectory.Entry entry : directory.getEntries()) {
+            writer.keep(entry);
+        }
+        long now = System.currentTimeMillis();
+        for (FileArchiveService.Source source : sources) {
+            try (InputStream in = source.getContent().getInputStream()) {
+                writer.write(source.getName(), in, now);
+            }
+        }
+        writer.finish(directory.getComment());
+    }
+
+    private static void checkEntryName(String name) {
+        String cleaned = name == null ? "" : StringUtils.cleanPath(name);
+        if (cleaned.isEmpty() || !cleaned.equals(name) || cleaned.startsWith("/") || cleaned.contains("..")) {
+            throw new FileValidationException("Недопустимое имя записи: " + name, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    private static void checkConflicts(ZipDirectory directory, List<FileArchiveService.Source> sources) {
+        Set<String> names = directory.names();
+        Set<String> added = new HashSet<>();
+        for (FileArchiveService.Source source : sources) {
+            if (names.contains(source.getName()) || !added.add(source.getName())) {
+                throw new FileValidationException("Запись уже есть в архиве: " + source.getName(), HttpStatus.CONFLICT);
+            }
+        }
+    }
+
+    // Журнал пишется во временный файл и публикуется переименованием: он либо полный, либо его нет
+    private static void writeJournal(Path journal, long length, long centralOffset, byte[] tail) throws IOException {
+        Path temp = journal.resolveSibling(journal.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(JOURNAL_MAGIC);
+            out.writeLong(length);
+            out.writeLong(centralOffset);
+            out.writeInt(tail.length);
+            out.write(tail);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, journal, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Возвращает старый хвост на место и обрезает архив до исходной длины
+    private static void rollback(FileChannel channel, Path journal) throws IOException {
+        long length;
+        long centralOffset;
+        byte[] tail;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(journal))) {
+            if (in.readInt() != JOURNAL_MAGIC) {
+                throw new IOException("Corrupt append journal: " + journal);
+            }
+            length = in.readLong();
+            centralOffset = in.readLong();
+            tail = new byte[in.readInt()];
+            in.readFully(tail);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(tail);
+        long position = centralOffset;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        channel.truncate(length);
+        channel.force(true);
+        Files.delete(journal);
+    }
+
+    private static byte[] read(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of archive");
+            }
+        }
+        return buffer.array();
+    }
+
+    private byte[] readRange(String key, long offset, int length) throws IOException {
+        try (InputStream in = storageBackend.getRange(key, offset, length)) {
+            return in.readNBytes(length);
+        }
+    }
+
+    private static Path journalOf(Path archive) {
+        return archive.resolveSibling("." + archive.getFileName() + JOURNAL_SUFFIX);
+    }
+
+    private static boolean isJournal(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(".") && name.endsWith(JOURNAL_SUFFIX);
+    }
+
+    private static Path archiveOf(Path journal) {
+        String name = journal.getFileName().toString();
+        return journal.resolveSibling(name.substring(1, name.length() - JOURNAL_SUFFIX.length()));
+    }
+}
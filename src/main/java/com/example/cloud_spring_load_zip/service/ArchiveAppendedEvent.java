@@ -0,0 +1,17 @@
+package com.example.cloud_spring_load_zip.service;
+
+/**
+ * {@link FileStoredEvent} для дозаписи в существующий архив. Архив остается тем же файлом,
+ * поэтому его происхождение (загрузка пользователя или сгенерированный) не меняется.
+ */
+public class ArchiveAppendedEvent extends FileStoredEvent {
+
+    public ArchiveAppendedEvent(String key, long size) {
+        super(key, size);
+    }
+
+    @Override
+    public String toString() {
+        return "ArchiveAppendedEvent{key='" + getKey() + "', size=" + getSize() + "}";
+    }
+}
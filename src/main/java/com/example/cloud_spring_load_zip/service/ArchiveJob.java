@@ -0,0 +1,184 @@
+package com.example.cloud_spring_load_zip.service;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фоновое задание упаковки или распаковки. Счетчики обновляет рабочий поток,
+ * снимки читают HTTP-запросы и рассылка SSE.
+ */
+public class ArchiveJob implements ArchiveProgress {
+
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+
+        public boolean isTerminal() {
+            return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private final String id;
+    private final String type;
+    private final String target;
+    private final String baseUri;
+    private final long bytesTotal;
+    private final int entriesTotal;
+    private final long createdAt = System.currentTimeMillis();
+
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicInteger entriesDone = new AtomicInteger();
+    // Растет при любом изменении - по нему рассылка понимает, что есть новости
+    private final AtomicLong revision = new AtomicLong();
+    final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    long sentRevision = -1;
+
+    private volatile State state = State.QUEUED;
+    private volatile boolean cancelRequested;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String resultKey;
+    private volatile String error;
+    volatile Future<?> future;
+    volatile Path spoolDir;
+
+    ArchiveJob(String id, String type, String target, String baseUri, long bytesTotal, int entriesTotal) {
+        this.id = id;
+        this.type = type;
+        this.target = target;
+        this.baseUri = baseUri;
+        this.bytesTotal = bytesTotal;
+        this.entriesTotal = entriesTotal;
+    }
+
+    @Override
+    public void bytes(long count) throws IOException {
+        checkCancelled();
+        bytesDone.addAndGet(count);
+        revision.incrementAndGet();
+    }
+
+    @Override
+    public void entryDone(String name) throws IOException {
+        entriesDone.incrementAndGet();
+        revision.incrementAndGet();
+        checkCancelled();
+    }
+
+    private void checkCancelled() throws IOException {
+        if (cancelRequested) {
+            throw new InterruptedIOException("Задание отменено: " + id);
+        }
+    }
+
+    synchronized boolean start() {
+        if (state != State.QUEUED) {
+            return false;
+        }
+        startedAt = System.currentTimeMillis();
+        moveTo(State.RUNNING);
+        return true;
+    }
+
+    /**
+     * Снимает задание, которое еще не начало выполняться.
+     */
+    synchronized boolean cancelIfQueued() {
+        if (state != State.QUEUED) {
+            return false;
+        }
+        finish(State.CANCELLED);
+        return true;
+    }
+
+    synchronized void succeed(String key) {
+        resultKey = key;
+        finish(State.SUCCEEDED);
+    }
+
+    synchronized void fail(String message) {
+        error = message;
+        finish(State.FAILED);
+    }
+
+    synchronized void finish(State terminal) {
+        if (state.isTerminal()) {
+            return;
+        }
+        finishedAt = System.currentTimeMillis();
+        moveTo(terminal);
+    }
+
+    void requestCancel() {
+        cancelRequested = true;
+        revision.incrementAndGet();
+    }
+
+    private void moveTo(State next) {
+        state = next;
+        revision.incrementAndGet();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("id", id);
+        snapshot.put("type", type);
+        snapshot.put("target", target);
+        snapshot.put("state", state.name().toLowerCase());
+        snapshot.put("bytesDone", bytesDone.get());
+        snapshot.put("bytesTotal", bytesTotal);
+        snapshot.put("entriesDone", entriesDone.get());
+        // -1: число записей заранее неизвестно (распаковка читает архив потоком)
+        snapshot.put("entriesTotal", entriesTotal);
+        snapshot.put("createdAt", createdAt);
+        if (startedAt > 0) {
+            snapshot.put("startedAt", startedAt);
+        }
+        if (finishedAt > 0) {
+            snapshot.put("finishedAt", finishedAt);
+        }
+        if (cancelRequested && !state.isTerminal()) {
+            snapshot.put("cancelRequested", true);
+        }
+        if (resultKey != null) {
+            snapshot.put("resultUri", UriComponentsBuilder.fromUriString(baseUri)
+                    .path("/api/files/download/")
+                    .path(resultKey)
+                    .toUriString());
+        }
+        if (error != null) {
+            snapshot.put("error", error);
+        }
+        return snapshot;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    long getFinishedAt() {
+        return finishedAt;
+    }
+
+    long getRevision() {
+        return revision.get();
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.bulkhead.Bulkhead;
+import com.example.cloud_spring_load_zip.bulkhead.Bulkheads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Асинхронные задания упаковки/распаковки. POST только ставит задание в пул архивации
+ * ({@link Bulkheads#archive()}) с низким приоритетом и сразу отвечает id; прогресс рассылается по SSE отдельным потоком с фиксированным
+ * интервалом, чтобы медленный клиент не тормозил упаковку. Завершенные задания
+ * хранятся result-ttl и затем удаляются. Удаляется только запись о задании: результат -
+ * такой же сгенерированный файл, как у синхронных запросов, и его по времени последнего
+ * доступа убирает {@link com.example.cloud_spring_load_zip.lifecycle.ArtifactLifecycleManager}.
+ */
+@Service
+public class ArchiveJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveJobService.class);
+
+    private final FileArchiveService fileArchiveService;
+    private final AppFileProperties.Jobs properties;
+    private final Path spoolRoot;
+    private final Bulkhead bulkhead;
+    private final ScheduledExecutorService events;
+    private final Map<String, ArchiveJob> jobs = new ConcurrentHashMap<>();
+    private final MeterRegistry registry;
+
+    private interface JobTask {
+        String run(ArchiveJob job) throws IOException;
+    }
+
+    public ArchiveJobService(FileArchiveService fileArchiveService, AppFileProperties appFileProperties,
+                             Bulkheads bulkheads, MeterRegistry registry) {
+        this.fileArchiveService = fileArchiveService;
+        this.properties = appFileProperties.getJobs();
+        this.spoolRoot = Paths.get(properties.getSpoolDir()).toAbsolutePath().normalize();
+        this.registry = registry;
+
+        // Синхронные запросы архивации идут с обычным приоритетом и обгоняют фоновые задания
+        this.bulkhead = bulkheads.archive();
+        this.events = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "archive-job-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(properties.getProgressInterval().toMillis(), 10);
+        events.scheduleWithFixedDelay(this::tick, interval, interval, TimeUnit.MILLISECONDS);
+
+        Gauge.builder("archive.jobs.queued", jobs, j -> count(ArchiveJob.State.QUEUED))
+                .description("Archive jobs waiting for a worker")
+                .register(registry);
+        Gauge.builder("archive.jobs.running", jobs, j -> count(ArchiveJob.State.RUNNING))
+                .description("Archive jobs currently running")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        events.shutdownNow();
+    }
+
+    /**
+     * Ставит упаковку в очередь. Загруженные части переносятся в spool-каталог задания
+     * (переименование временного файла Tomcat), поэтому запрос освобождается сразу.
+     *
+     * @throws RejectedExecutionException очередь заданий заполнена
+     */
+    public ArchiveJob submitCompress(List<MultipartFile> files, String zipName, String baseUri) throws IOException {
+        String zipFileName = FileArchiveService.zipName(zipName);
+        String id = UUID.randomUUID().toString();
+        Path spoolDir = Files.createDirectories(spoolRoot.resolve(id));
+
+        List<FileArchiveService.Source> sources = new ArrayList<>(files.size());
+        long bytesTotal = 0;
+        try {
+            for (MultipartFile file : files) {
+                Path spooled = spoolDir.resolve(String.valueOf(sources.size()));
+                file.transferTo(spooled.toFile());
+                sources.add(new FileArchiveService.Source(file.getOriginalFilename(), new FileSystemResource(spooled), file.getSize()));
+                bytesTotal += file.getSize();
+            }
+        } catch (IOException | RuntimeException ex) {
+            FileSystemUtils.deleteRecursively(spoolDir);
+            throw ex;
+        }
+
+        ArchiveJob job = new ArchiveJob(id, "compress", zipFileName, baseUri, bytesTotal, sources.size());
+        job.spoolDir = spoolDir;
+        return submit(job, j -> {
+            fileArchiveService.compress(sources, zipFileName, j);
+            return zipFileName;
+        });
+    }
+
+    public ArchiveJob submitExtract(String zipFileName, String baseUri) {
+        ArchiveJob job = new ArchiveJob(UUID.randomUUID().toString(), "extract", zipFileName, baseUri,
+                fileArchiveService.sizeOf(zipFileName), -1);
+        return submit(job, j -> fileArchiveService.extract(zipFileName, j));
+    }
+
+    private ArchiveJob submit(ArchiveJob job, JobTask task) {
+        jobs.put(job.getId(), job);
+        try {
+            job.future = bulkhead.submit(Bulkhead.Priority.LOW, () -> run(job, task));
+        } catch (RejectedExecutionException ex) {
+            jobs.remove(job.getId());
+            cleanup(job);
+            outcome("rejected");
+            throw ex;
+        }
+        logger.debug("Archive job {} queued: {} {}", job.getId(), job.snapshot().get("type"), job.snapshot().get("target"));
+        return job;
+    }
+
+    private void run(ArchiveJob job, JobTask task) {
+        if (!job.start()) {
+            // Отменено, пока ждало в очереди
+            return;
+        }
+        String result = null;
+        Exception failure = null;
+        try {
+            result = task.run(job);
+        } catch (Exception ex) {
+            failure = ex;
+        } finally {
+            cleanup(job);
+        }
+        // Итог виден клиенту, когда части уже удалены и исход учтен
+        if (failure == null) {
+            outcome("succeeded");
+            job.succeed(result);
+        } else if (job.isCancelRequested()) {
+            outcome("cancelled");
+            job.finish(ArchiveJob.State.CANCELLED);
+        } else {
+            logger.warn("Archive job {} failed", job.getId(), failure);
+            outcome("failed");
+            job.fail(failure.getMessage());
+        }
+    }
+
+    private long count(ArchiveJob.State state) {
+        return jobs.values().stream().filter(job -> job.getState() == state).count();
+    }
+
+    public Optional<ArchiveJob> get(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Отмена: задание в очереди снимается сразу, выполняющееся останавливается на следующем блоке данных.
+     */
+    public Optional<ArchiveJob> cancel(String id) {
+        ArchiveJob job = jobs.get(id);
+        if (job == null || job.getState().isTerminal()) {
+            return Optional.ofNullable(job);
+        }
+        job.requestCancel();
+        if (job.cancelIfQueued()) {
+            if (job.future != null) {
+                bulkhead.remove(job.future);
+            }
+            cleanup(job);
+            outcome("cancelled");
+        }
+        return Optional.of(job);
+    }
+
+    public SseEmitter subscribe(ArchiveJob job) {
+        SseEmitter emitter = new SseEmitter(properties.getSseTimeout().toMillis());
+        emitter.onCompletion(() -> job.emitters.remove(emitter));
+        emitter.onTimeout(() -> job.emitters.remove(emitter));
+        emitter.onError(ex -> job.emitters.remove(emitter));
+        job.emitters.add(emitter);
+        // Текущее состояние - сразу, дальше изменения приходят от рассылки
+        synchronized (job) {
+            send(job, emitter, job.snapshot());
+        }
+        return emitter;
+    }
+
+    void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            for (ArchiveJob job : jobs.values()) {
+                publishProgress(job);
+                if (job.getState().isTerminal() && now - job.getFinishedAt() > properties.getResultTtl().toMillis()) {
+                    jobs.remove(job.getId());
+                    job.emitters.forEach(SseEmitter::complete);
+                }
+            }
+        } catch (RuntimeException ex) {
+            // Исключение остановило бы scheduleWithFixedDelay
+            logger.error("Archive job event dispatch failed", ex);
+        }
+    }
+
+    private void publishProgress(ArchiveJob job) {
+        if (job.emitters.isEmpty()) {
+            return;
+        }
+        synchronized (job) {
+            long revision = job.getRevision();
+            if (revision == job.sentRevision) {
+                return;
+            }
+            job.sentRevision = revision;
+            Map<String, Object> snapshot = job.snapshot();
+            for (SseEmitter emitter : job.emitters) {
+                send(job, emitter, snapshot);
+            }
+        }
+    }
+
+    private void send(ArchiveJob job, SseEmitter emitter, Map<String, Object> snapshot) {
+        ArchiveJob.State state = job.getState();
+        try {
+            emitter.send(SseEmitter.event()
+                    .name(state.isTerminal() ? state.name().toLowerCase() : "progress")
+                    .id(String.valueOf(job.getRevision()))
+                    .data(snapshot));
+            if (state.isTerminal()) {
+                emitter.complete();
+                job.emitters.remove(emitter);
+            }
+        } catch (IOException | IllegalStateException ex) {
+            // Клиент отключился
+            job.emitters.remove(emitter);
+        }
+    }
+
+    private void cleanup(ArchiveJob job) {
+        Path spoolDir = job.spoolDir;
+        if (spoolDir != null) {
+            try {
+                FileSystemUtils.deleteRecursively(spoolDir);
+            } catch (IOException ex) {
+                logger.warn("Could not delete spool directory {}", spoolDir, ex);
+            }
+            job.spoolDir = null;
+        }
+    }
+
+    private void outcome(String outcome) {
+        Counter.builder("archive.jobs.finished")
+                .description("Archive jobs by outcome")
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.exception.FileValidationException;
+import com.example.cloud_spring_load_zip.model.FileEntry;
+import com.example.cloud_spring_load_zip.storage.BlobInfo;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import com.example.cloud_spring_load_zip.storage.StorageOutputStream;
+import com.example.cloud_spring_load_zip.zip.ZipDirectory;
+import com.example.cloud_spring_load_zip.zip.ZipWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Слияние сохраненных архивов в один без распаковки: сжатые байты и CRC каждой записи
+ * копируются как есть, заново пишутся только заголовки. Скорость ограничена диском
+ * (или сетью для S3), а не процессором.
+ * <p>
+ * Сначала читаются только центральные каталоги источников и строится план с учетом
+ * конфликтов имен, затем данные копируются одним последовательным проходом.
+ */
+@Service
+public class ArchiveMergeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveMergeService.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Что делать с одинаковыми именами записей в разных архивах.
+     */
+    public enum ConflictPolicy {
+        // Ошибка 409, архив не создается
+        FAIL,
+        // Остается запись из архива, идущего раньше в списке
+        FIRST,
+        // Остается запись из архива, идущего позже
+        LAST,
+        // Обе записи остаются, у поздней к имени добавляется " (n)"
+        RENAME;
+
+        public static ConflictPolicy parse(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new FileValidationException("Неизвестная политика конфликтов: " + value, HttpStatus.BAD_REQUEST);
+            }
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class MergeResult {
+        private final String zipFileName;
+        private final int entryCount;
+        private final int conflicts;
+        private final long copiedBytes;
+    }
+
+    @AllArgsConstructor
+    private static class Planned {
+        private final String archive;
+        private final ZipDirectory.Entry entry;
+        private final String name;
+    }
+
+    private final StorageBackend storageBackend;
+    private final FileCatalog fileCatalog;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter copiedBytesCounter;
+
+    public ArchiveMergeService(StorageBackend storageBackend, FileCatalog fileCatalog,
+                               ApplicationEventPublisher eventPublisher, MeterRegistry registry) {
+        this.storageBackend = storageBackend;
+        this.fileCatalog = fileCatalog;
+        this.eventPublisher = eventPublisher;
+        this.copiedBytesCounter = Counter.builder("archive.merge.bytes")
+                .description("Compressed bytes copied into merged archives")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    public MergeResult merge(List<String> archives, String zipFileName, ConflictPolicy policy) throws IOException {
+        String target = FileArchiveService.zipName(zipFileName);
+        if (archives.contains(target)) {
+            // Источник читался бы по смещениям, пока на его место публикуется результат
+            throw new FileValidationException("Архив слияния не может совпадать с источником: " + target,
+                    HttpStatus.BAD_REQUEST);
+        }
+        List<Planned> plan = new ArrayList<>();
+        int conflicts = plan(archives, policy, plan);
+
+        long copied = 0;
+        StorageOutputStream output = storageBackend.openOutput(target);
+        try {
+            OutputStream out = new BufferedOutputStream(output, BUFFER_SIZE);
+            ZipWriter writer = new ZipWriter(out, 0);
+            for (Planned planned : plan) {
+                ZipDirectory.Entry entry = planned.entry;
+                long dataOffset = ZipDirectory.dataOffset((offset, length) -> readRange(planned.archive, offset, length), entry);
+                try (InputStream data = storageBackend.getRange(planned.archive, dataOffset, entry.getCompressedSize())) {
+                    writer.copy(entry, planned.name, data);
+                }
+                copied += entry.getCompressedSize();
+            }
+            writer.finish(new byte[0]);
+            out.close();
+        } catch (IOException | RuntimeException ex) {
+            // Как и при упаковке: недописанный архив отбрасывается, не затирая прежний
+            FileArchiveService.abort(output, ex);
+            throw ex;
+        }
+        copiedBytesCounter.increment(copied);
+        fileCatalog.refresh(target);
+        long size = fileCatalog.get(target).map(FileEntry::getSize).orElse(0L);
+        eventPublisher.publishEvent(new GeneratedFileEvent(target, size));
+        logger.debug("Merged {} archives into {}: {} entries, {} conflicts, {} bytes copied",
+                archives.size(), target, plan.size(), conflicts, copied);
+        return new MergeResult(target, plan.size(), conflicts, copied);
+    }
+
+    // План по центральным каталогам: какие записи и под какими именами попадут в архив
+    private int plan(List<String> archives, ConflictPolicy policy, List<Planned> plan) throws IOException {
+        Map<String, Integer> positions = new LinkedHashMap<>();
+        int conflicts = 0;
+        for (String archive : archives) {
+            BlobInfo info = storageBackend.stat(archive)
+                    .filter(blob -> !blob.isDirectory())
+                    .orElseThrow(() -> new FileNotFoundException("ZIP файл не найден: " + archive));
+            ZipDirectory directory = ZipDirectory.read((offset, length) -> readRange(archive, offset, length), info.getSize());
+            for (ZipDirectory.Entry entry : directory.getEntries()) {
+                Integer existing = positions.get(entry.getName());
+                if (existing == null) {
+                    positions.put(entry.getName(), plan.size());
+                    plan.add(new Planned(archive, entry, entry.getName()));
+                    continue;
+                }
+                // Одинаковые каталоги - не конфликт
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                conflicts++;
+                switch (policy) {
+                    case FAIL:
+                        throw new FileValidationException("Запись " + entry.getName() + " есть в "
+                                + plan.get(existing).archive + " и в " + archive, HttpStatus.CONFLICT);
+                    case FIRST:
+                        break;
+                    case LAST:
+                        // Позиция в архиве сохраняется, содержимое берется из более позднего
+                        plan.set(existing, new Planned(archive, entry, entry.getName()));
+                        break;
+                    case RENAME:
+                        String renamed = uniqueName(entry.getName(), positions);
+                        positions.put(renamed, plan.size());
+                        plan.add(new Planned(archive, entry, renamed));
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown policy " + policy);
+                }
+            }
+        }
+        return conflicts;
+    }
+
+    // "dir/report.pdf" -> "dir/report (1).pdf"
+    static String uniqueName(String name, Map<String, Integer> taken) {
+        int slash = name.lastIndexOf('/');
+        int dot = name.lastIndexOf('.');
+        String base = dot > slash + 1 ? name.substring(0, dot) : name;
+        String extension = dot > slash + 1 ? name.substring(dot) : "";
+        for (int i = 1; ; i++) {
+            String candidate = base + " (" + i + ")" + extension;
+            if (!taken.containsKey(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    private byte[] readRange(String key, long offset, int length) throws IOException {
+        try (InputStream in = storageBackend.getRange(key, offset, length)) {
+            return in.readNBytes(length);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.cloud_spring_load_zip.service;
+
+import java.io.IOException;
+
+/**
+ * Получатель прогресса упаковки/распаковки. Может прервать операцию, бросив исключение.
+ */
+public interface ArchiveProgress {
+
+    ArchiveProgress NONE = new ArchiveProgress() {
+        @Override
+        public void bytes(long count) {
+        }
+
+        @Override
+        public void entryDone(String name) {
+        }
+    };
+
+    void bytes(long count) throws IOException;
+
+    void entryDone(String name) throws IOException;
+}
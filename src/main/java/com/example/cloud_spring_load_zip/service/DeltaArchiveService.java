@@ -0,0 +1,450 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.exception.FileValidationException;
+import com.example.cloud_spring_load_zip.integrity.ArchiveManifest;
+import com.example.cloud_spring_load_zip.storage.BlobInfo;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import com.example.cloud_spring_load_zip.zip.ZipDirectory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Разностные архивы каталога хранилища. В архив попадают только файлы, изменившиеся
+ * с базового архива, и список удаленных (tombstones), поэтому время и место растут
+ * с объемом изменений, а не с размером каталога.
+ * <p>
+ * Кроме файлов архив содержит служебные записи {@value #META_PREFIX}: полное состояние
+ * каталога (SHA-256, размер и время изменения каждого файла), удаленные файлы и ссылку
+ * на базовый архив. Следующий разностный архив сравнивается с этим состоянием без чтения
+ * содержимого базы: файл перечитывается, только если у него изменилось время при том же
+ * размере. Базой может быть и обычный архив с манифестом ({@link ArchiveManifest}).
+ * <p>
+ * Восстановление идет по цепочке от нового архива к полному: каждый путь берется из самого
+ * нового архива, где он есть, если более новый архив не пометил его удаленным.
+ */
+@Service
+public class DeltaArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeltaArchiveService.class);
+
+    static final String META_PREFIX = ".delta/";
+    static final String STATE_ENTRY = META_PREFIX + "state";
+    static final String DELETED_ENTRY = META_PREFIX + "deleted";
+    static final String INFO_ENTRY = META_PREFIX + "info";
+    // Защита от циклов в ссылках на базу
+    static final int MAX_CHAIN = 1000;
+
+    @Getter
+    @AllArgsConstructor
+    public static class DeltaResult {
+        private final String zipFileName;
+        private final String base;
+        private final int changed;
+        private final int deleted;
+        private final int unchanged;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class RestoreResult {
+        private final String directory;
+        private final int files;
+        private final int chainLength;
+    }
+
+    /**
+     * Состояние файла в архиве; время изменения -1, если база - обычный архив с манифестом.
+     */
+    @AllArgsConstructor
+    static final class FileState {
+        private final String sha256;
+        private final long size;
+        private final long lastModified;
+    }
+
+    // Звено цепочки: архив, его каталог и удаленные в нем пути
+    @AllArgsConstructor
+    private static final class Link {
+        private final String archive;
+        private final ZipDirectory directory;
+        private final Set<String> deleted;
+    }
+
+    @AllArgsConstructor
+    private static final class Pick {
+        private final Link link;
+        private final ZipDirectory.Entry entry;
+        private final String name;
+    }
+
+    private final StorageBackend storageBackend;
+    private final FileArchiveService fileArchiveService;
+    private final FileCatalog fileCatalog;
+    private final HotFileCache hotFileCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter changedCounter;
+    private final Counter unchangedCounter;
+    private final Counter deletedCounter;
+
+    public DeltaArchiveService(StorageBackend storageBackend, FileArchiveService fileArchiveService,
+                               FileCatalog fileCatalog, HotFileCache hotFileCache,
+                               ApplicationEventPublisher eventPublisher, MeterRegistry registry) {
+        this.storageBackend = storageBackend;
+        this.fileArchiveService = fileArchiveService;
+        this.fileCatalog = fileCatalog;
+        this.hotFileCache = hotFileCache;
+        this.eventPublisher = eventPublisher;
+        this.changedCounter = filesCounter(registry, "changed");
+        this.unchangedCounter = filesCounter(registry, "unchanged");
+        this.deletedCounter = filesCounter(registry, "deleted");
+    }
+
+    private static Counter filesCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("archive.delta.files")
+                .description("Files compared while building delta archives, by outcome")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    /**
+     * Архив изменений каталога directory относительно base; без base - полный снимок,
+     * от которого можно строить следующие.
+     */
+    public DeltaResult create(String directory, String base, String zipFileName) throws IOException {
+        String dir = directoryKey(directory);
+        String target = FileArchiveService.zipName(zipFileName);
+        if (target.equals(base)) {
+            throw new FileValidationException("Разностный архив не может заменить свою базу: " + target,
+                    HttpStatus.BAD_REQUEST);
+        }
+        Map<String, FileState> baseState = base == null ? Map.of() : readBaseState(base);
+
+        Map<String, BlobInfo> current = new TreeMap<>();
+        storageBackend.walk(dir, info -> {
+            String name = info.getName().substring(dir.length() + 1);
+            // Служебные файлы (отметка распаковки и т.п.) не входят в дерево
+            if (!name.startsWith(".") && !name.contains("/.")) {
+                current.put(name, info);
+            }
+        });
+        if (current.isEmpty() && storageBackend.stat(dir).filter(BlobInfo::isDirectory).isEmpty()) {
+            throw new FileNotFoundException("Каталог не найден: " + dir);
+        }
+
+        Map<String, FileState> state = new TreeMap<>();
+        // Дайджесты измененных файлов заполняются при упаковке - файл читается один раз
+        Map<String, MessageDigest> pending = new LinkedHashMap<>();
+        List<FileArchiveService.Source> sources = new ArrayList<>();
+        int unchanged = 0;
+        for (Map.Entry<String, BlobInfo> file : current.entrySet()) {
+            String name = file.getKey();
+            BlobInfo info = file.getValue();
+            if (name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0) {
+                throw new FileValidationException("Недопустимое имя файла: " + name, HttpStatus.BAD_REQUEST);
+            }
+            FileState old = baseState.get(name);
+            if (old != null && old.size == info.getSize()) {
+                if (old.lastModified == info.getLastModified()) {
+                    state.put(name, old);
+                    unchanged++;
+                    continue;
+                }
+                // Время изменилось при том же размере - сравниваем содержимое
+                String sha256 = sha256(info.getName());
+                if (sha256.equals(old.sha256)) {
+                    state.put(name, new FileState(sha256, info.getSize(), info.getLastModified()));
+                    unchanged++;
+                    continue;
+                }
+            }
+            MessageDigest digest = sha256Digest();
+            pending.put(name, digest);
+            state.put(name, new FileState(null, info.getSize(), info.getLastModified()));
+            sources.add(new FileArchiveService.Source(name,
+                    () -> new DigestInputStream(storageBackend.get(info.getName()), digest), info.getSize()));
+        }
+        Set<String> deleted = new TreeSet<>(baseState.keySet());
+        deleted.removeAll(current.keySet());
+
+        byte[] deletedBytes = lines(deleted);
+        sources.add(new FileArchiveService.Source(DELETED_ENTRY, () -> new ByteArrayInputStream(deletedBytes),
+                deletedBytes.length));
+        // Состояние формируется, когда измененные файлы уже прочитаны и их хеши известны
+        sources.add(new FileArchiveService.Source(STATE_ENTRY, () -> {
+            pending.forEach((name, digest) -> {
+                FileState read = state.get(name);
+                state.put(name, new FileState(HexFormat.of().formatHex(digest.digest()), read.size, read.lastModified));
+            });
+            return new ByteArrayInputStream(formatState(state));
+        }, 0));
+        byte[] infoBytes = formatInfo(dir, base, pending.size(), deleted.size());
+        sources.add(new FileArchiveService.Source(INFO_ENTRY, () -> new ByteArrayInputStream(infoBytes),
+                infoBytes.length));
+
+        fileArchiveService.compress(sources, target, ArchiveProgress.NONE);
+        changedCounter.increment(pending.size());
+        unchangedCounter.increment(unchanged);
+        deletedCounter.increment(deleted.size());
+        logger.debug("Delta archive {} of {} against {}: {} changed, {} deleted, {} unchanged",
+                target, dir, base, pending.size(), deleted.size(), unchanged);
+        return new DeltaResult(target, base, pending.size(), deleted.size(), unchanged);
+    }
+
+    /**
+     * Восстанавливает полное дерево по цепочке архивов в каталог "<имя>_restored".
+     */
+    public RestoreResult restore(String zipFileName) throws IOException {
+        List<Link> chain = chain(zipFileName);
+
+        // От нового к старому: путь берется из первого архива, где он есть и не удален позже
+        Set<String> resolved = new HashSet<>();
+        List<Pick> picks = new ArrayList<>();
+        for (Link link : chain) {
+            for (ZipDirectory.Entry entry : link.directory.getEntries()) {
+                if (entry.isDirectory() || entry.getName().startsWith(META_PREFIX)) {
+                    continue;
+                }
+                String name = FileArchiveService.safeEntryName(entry.getName());
+                if (resolved.add(name)) {
+                    picks.add(new Pick(link, entry, name));
+                }
+            }
+            resolved.addAll(link.deleted);
+        }
+        // Чтение по архивам в порядке данных - последовательный проход по каждому файлу
+        picks.sort(Comparator.comparing((Pick pick) -> pick.link.archive)
+                .thenComparingLong(pick -> pick.entry.getLocalHeaderOffset()));
+
+        String restoredDirName = zipFileName.replace(".zip", "_restored");
+        String tempDirName = ".restore-" + UUID.randomUUID();
+        List<FileStoredEvent> stored = new ArrayList<>(picks.size());
+        try {
+            for (Pick pick : picks) {
+                ZipDirectory.Entry entry = pick.entry;
+                long dataOffset = ZipDirectory.dataOffset(
+                        (offset, length) -> readRange(pick.link.archive, offset, length), entry);
+                try (InputStream in = ZipDirectory.content(entry,
+                        storageBackend.getRange(pick.link.archive, dataOffset, entry.getCompressedSize()))) {
+                    storageBackend.put(tempDirName + "/" + pick.name, in, entry.getSize());
+                }
+                stored.add(new GeneratedFileEvent(restoredDirName + "/" + pick.name, entry.getSize()));
+            }
+            storageBackend.rename(tempDirName, restoredDirName);
+        } catch (IOException | RuntimeException ex) {
+            try {
+                storageBackend.delete(tempDirName);
+            } catch (IOException deleteEx) {
+                ex.addSuppressed(deleteEx);
+            }
+            throw ex;
+        }
+        fileCatalog.refresh(restoredDirName);
+        // Как и при распаковке: файлы прежнего восстановления, которых нет в новом, не должны отдаваться из памяти
+        hotFileCache.invalidateDirectory(restoredDirName);
+        stored.forEach(eventPublisher::publishEvent);
+        return new RestoreResult(restoredDirName, picks.size(), chain.size());
+    }
+
+    /**
+     * Базовый архив разностного архива; пусто для полного снимка и обычного архива.
+     * Читается только центральный каталог и служебная запись.
+     */
+    public Optional<String> baseOf(String zipFileName) throws IOException {
+        ZipDirectory directory = readDirectory(zipFileName);
+        Optional<ZipDirectory.Entry> info = find(directory, INFO_ENTRY);
+        if (info.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(parseBase(readEntry(zipFileName, info.get())));
+    }
+
+    // Цепочка от заданного архива до полного снимка (архива без базы)
+    private List<Link> chain(String zipFileName) throws IOException {
+        List<Link> chain = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        String current = zipFileName;
+        while (current != null) {
+            if (!seen.add(current) || chain.size() >= MAX_CHAIN) {
+                throw new FileValidationException("Цепочка разностных архивов зациклена или слишком длинная: "
+                        + zipFileName, HttpStatus.CONFLICT);
+            }
+            String archive = current;
+            ZipDirectory directory = readDirectory(archive);
+            Optional<ZipDirectory.Entry> info = find(directory, INFO_ENTRY);
+            Set<String> deleted = new HashSet<>();
+            Optional<ZipDirectory.Entry> tombstones = find(directory, DELETED_ENTRY);
+            if (tombstones.isPresent()) {
+                deleted.addAll(parseLines(readEntry(archive, tombstones.get())));
+            }
+            chain.add(new Link(archive, directory, deleted));
+            // Обычный архив (без служебных записей) - полный снимок, на нем цепочка заканчивается
+            current = info.isEmpty() ? null : parseBase(readEntry(archive, info.get()));
+        }
+        return chain;
+    }
+
+    private Map<String, FileState> readBaseState(String base) throws IOException {
+        ZipDirectory directory = readDirectory(base);
+        Optional<ZipDirectory.Entry> stateEntry = find(directory, STATE_ENTRY);
+        if (stateEntry.isPresent()) {
+            return parseState(readEntry(base, stateEntry.get()));
+        }
+        Optional<ArchiveManifest> manifest = readManifest(base);
+        if (manifest.isEmpty()) {
+            throw new FileValidationException("У базового архива нет ни состояния, ни манифеста: " + base,
+                    HttpStatus.BAD_REQUEST);
+        }
+        Map<String, FileState> state = new TreeMap<>();
+        manifest.get().getEntries().forEach((name, line) ->
+                state.put(name, new FileState(line.getSha256(), line.getSize(), -1)));
+        return state;
+    }
+
+    private Optional<ArchiveManifest> readManifest(String zipFileName) {
+        try (InputStream in = storageBackend.get(ArchiveManifest.key(zipFileName))) {
+            ArchiveManifest manifest = ArchiveManifest.parse(in.readAllBytes());
+            return manifest.isEmpty() ? Optional.empty() : Optional.of(manifest);
+        } catch (IOException | RuntimeException ex) {
+            return Optional.empty();
+        }
+    }
+
+    private ZipDirectory readDirectory(String archive) throws IOException {
+        BlobInfo info = storageBackend.stat(archive)
+                .filter(blob -> !blob.isDirectory())
+                .orElseThrow(() -> new FileNotFoundException("ZIP файл не найден: " + archive));
+        return ZipDirectory.read((offset, length) -> readRange(archive, offset, length), info.getSize());
+    }
+
+    private static Optional<ZipDirectory.Entry> find(ZipDirectory directory, String name) {
+        return directory.getEntries().stream().filter(entry -> entry.getName().equals(name)).findFirst();
+    }
+
+    // Служебные записи маленькие - читаются целиком
+    private byte[] readEntry(String archive, ZipDirectory.Entry entry) throws IOException {
+        long dataOffset = ZipDirectory.dataOffset((offset, length) -> readRange(archive, offset, length), entry);
+        try (InputStream in = ZipDirectory.content(entry,
+                storageBackend.getRange(archive, dataOffset, entry.getCompressedSize()))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private String sha256(String key) throws IOException {
+        try (DigestInputStream in = new DigestInputStream(storageBackend.get(key), sha256Digest())) {
+            in.transferTo(OutputStream.nullOutputStream());
+            return HexFormat.of().formatHex(in.getMessageDigest().digest());
+        }
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String directoryKey(String directory) {
+        String dir = directory == null ? "" : directory.replace('\\', '/');
+        while (dir.endsWith("/")) {
+            dir = dir.substring(0, dir.length() - 1);
+        }
+        if (dir.isBlank() || dir.startsWith("/") || dir.contains("..")) {
+            throw new FileValidationException("Недопустимый каталог: " + directory, HttpStatus.BAD_REQUEST);
+        }
+        return dir;
+    }
+
+    // Строка состояния: <sha256> <size> <lastModified> <name>
+    static byte[] formatState(Map<String, FileState> state) {
+        StringBuilder text = new StringBuilder();
+        state.forEach((name, file) -> text.append(file.sha256).append(' ').append(file.size).append(' ')
+                .append(file.lastModified).append(' ').append(name).append('\n'));
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static Map<String, FileState> parseState(byte[] bytes) throws IOException {
+        Map<String, FileState> state = new TreeMap<>();
+        for (String line : parseLines(bytes)) {
+            String[] parts = line.split(" ", 4);
+            try {
+                state.put(parts[3], new FileState(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+            } catch (RuntimeException ex) {
+                throw new IOException("Corrupt delta state line: " + line, ex);
+            }
+        }
+        return state;
+    }
+
+    private static byte[] lines(Set<String> names) {
+        StringBuilder text = new StringBuilder();
+        names.forEach(name -> text.append(name).append('\n'));
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> parseLines(byte[] bytes) {
+        List<String> lines = new ArrayList<>();
+        for (String line : new String(bytes, StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static byte[] formatInfo(String directory, String base, int changed, int deleted) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("directory", directory);
+        properties.setProperty("base", base == null ? "" : base);
+        properties.setProperty("created", Long.toString(System.currentTimeMillis()));
+        properties.setProperty("changed", Integer.toString(changed));
+        properties.setProperty("deleted", Integer.toString(deleted));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        properties.store(bytes, null);
+        return bytes.toByteArray();
+    }
+
+    private static String parseBase(byte[] bytes) throws IOException {
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(bytes));
+        String base = properties.getProperty("base", "");
+        return base.isEmpty() ? null : base;
+    }
+
+    private byte[] readRange(String key, long offset, int length) throws IOException {
+        try (InputStream in = storageBackend.getRange(key, offset, length)) {
+            return in.readNBytes(length);
+        }
+    }
+}
@@ -1,22 +1,51 @@
 package com.example.cloud_spring_load_zip.service;
 
+import com.example.cloud_spring_load_zip.exception.FileStorageException;
+import com.example.cloud_spring_load_zip.integrity.ArchiveManifest;
+import com.example.cloud_spring_load_zip.model.FileEntry;
+import com.example.cloud_spring_load_zip.model.FilePage;
+import com.example.cloud_spring_load_zip.storage.BlobInfo;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import com.example.cloud_spring_load_zip.storage.StorageLayout;
+import com.example.cloud_spring_load_zip.storage.StorageOutputStream;
+import com.example.cloud_spring_load_zip.storage.StorageStreams;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
-import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -24,123 +53,403 @@ import java.util.zip.ZipOutputStream;
 @Service
 public class FileArchiveService {
 
-    private final FileStorageProperties fileStorageProperties;
-    private final Path fileStorageLocation;
+    private static final Logger logger = LoggerFactory.getLogger(FileArchiveService.class);
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    // Отметка о распаковке внутри каталога: из какого содержимого архива он получен
+    static final String EXTRACTION_STAMP = ".extracted";
+
+    private final StorageBackend storageBackend;
+    private final FileCatalog fileCatalog;
+    private final HotFileCache hotFileCache;
+    private final ApplicationEventPublisher eventPublisher;
+    // Распаковки в процессе: параллельные запросы того же архива ждут одну и ту же
+    private final ConcurrentMap<String, CompletableFuture<String>> extractions = new ConcurrentHashMap<>();
+    private final Counter extractedCounter;
+    private final Counter reusedCounter;
+    private final Counter sharedCounter;
 
     @Autowired
-    public FileArchiveService(FileStorageProperties fileStorageProperties) {
-        this.fileStorageProperties = fileStorageProperties;
-        this.fileStorageLocation = Paths.get(fileStorageProperties.getUploadDir()).toAbsolutePath().normalize();
+    public FileArchiveService(StorageBackend storageBackend, FileCatalog fileCatalog, HotFileCache hotFileCache,
+                              ApplicationEventPublisher eventPublisher, MeterRegistry registry) {
+        this.storageBackend = storageBackend;
+        this.fileCatalog = fileCatalog;
+        this.hotFileCache = hotFileCache;
+        this.eventPublisher = eventPublisher;
+        this.extractedCounter = extractCounter(registry, "extracted");
+        this.reusedCounter = extractCounter(registry, "unchanged");
+        this.sharedCounter = extractCounter(registry, "shared");
+    }
 
-        try {
-            Files.createDirectories(this.fileStorageLocation);
-        } catch (IOException e) {
-            throw new RuntimeException("Не удалось создать директорию для загрузки файлов", e);
-        }
+    private static Counter extractCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("archive.extract")
+                .description("Archive extraction requests by outcome")
+                .tag("outcome", outcome)
+                .register(registry);
     }
 
     public String compressFileToZip(MultipartFile file) throws IOException {
         String originalFileName = file.getOriginalFilename();
         String zipFileName = originalFileName + ".zip";
-        Path zipFilePath = this.fileStorageLocation.resolve(zipFileName);
 
-        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFilePath.toFile()))) {
-            ZipEntry zipEntry = new ZipEntry(originalFileName);
-            zos.putNextEntry(zipEntry);
-            zos.write(file.getBytes());
-            zos.closeEntry();
-        }
+        compress(List.of(new Source(originalFileName, file, file.getSize())), zipFileName, ArchiveProgress.NONE);
 
         return generateFileUri(zipFileName);
     }
 
     public String compressMultipleFilesToZip(MultipartFile[] files, String zipFileName) throws IOException {
-        if (!zipFileName.endsWith(".zip")) {
-            zipFileName += ".zip";
+        zipFileName = zipName(zipFileName);
+
+        List<Source> sources = new ArrayList<>(files.length);
+        for (MultipartFile file : files) {
+            sources.add(new Source(file.getOriginalFilename(), file, file.getSize()));
         }
+        compress(sources, zipFileName, ArchiveProgress.NONE);
+
+        return generateFileUri(zipFileName);
+    }
 
-        Path zipFilePath = this.fileStorageLocation.resolve(zipFileName);
+    public String extractZipArchive(String zipFileName) throws IOException {
+        return generateFileUri(extract(zipFileName, ArchiveProgress.NONE));
+    }
 
-        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFilePath.toFile()))) {
-            for (MultipartFile file : files) {
-                ZipEntry zipEntry = new ZipEntry(file.getOriginalFilename());
-                zos.putNextEntry(zipEntry);
-                zos.write(file.getBytes());
+    public long sizeOf(String fileName) {
+        return fileCatalog.get(fileName).map(FileEntry::getSize).orElse(-1L);
+    }
+
+    /**
+     * Каталог, в который распаковывается архив.
+     */
+    public static String extractDirName(String zipFileName) {
+        return zipFileName.replace(".zip", "_extracted");
+    }
+
+    public static String zipName(String zipFileName) {
+        return zipFileName.endsWith(".zip") ? zipFileName : zipFileName + ".zip";
+    }
+
+    /**
+     * Упаковывает источники в архив zipFileName. Не зависит от контекста запроса,
+     * поэтому используется и фоновыми заданиями. Недописанный архив удаляется.
+     * Источники открываются по одному в порядке обхода, поэтому ими могут быть и части
+     * потокового multipart-запроса.
+     */
+    public void compress(Iterable<Source> sources, String zipFileName, ArchiveProgress progress) throws IOException {
+        // Архив пишется потоком прямо в хранилище (для S3 - параллельной multipart-загрузкой)
+        // SHA-256 записей считается в том же проходе и сохраняется манифестом для проверки целостности
+        ArchiveManifest manifest = new ArchiveManifest();
+        StorageOutputStream output = storageBackend.openOutput(zipFileName);
+        try {
+            ZipOutputStream zos = new ZipOutputStream(output);
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            for (Source source : sources) {
+                ZipEntry entry = new ZipEntry(source.getName());
+                zos.putNextEntry(entry);
+                MessageDigest digest = sha256Digest();
+                try (InputStream in = source.getContent().getInputStream()) {
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        zos.write(buffer, 0, n);
+                        digest.update(buffer, 0, n);
+                        progress.bytes(n);
+                    }
+                }
+                // CRC и размер записи известны только после closeEntry
                 zos.closeEntry();
+                manifest.add(entry.getName(), HexFormat.of().formatHex(digest.digest()), entry.getCrc(), entry.getSize());
+                progress.entryDone(source.getName());
             }
+            // Только успешное закрытие публикует архив
+            zos.close();
+        } catch (IOException | RuntimeException ex) {
+            // Недописанный архив отбрасывается, прежний архив с тем же именем остается
+            abort(output, ex);
+            throw ex;
         }
+        writeManifest(zipFileName, manifest);
+        fileCatalog.refresh(zipFileName);
+        publishStored(zipFileName);
+    }
 
-        return generateFileUri(zipFileName);
+    static void abort(StorageOutputStream output, Exception failure) {
+        try {
+            output.abort();
+        } catch (IOException abortEx) {
+            failure.addSuppressed(abortEx);
+        }
     }
 
-    public String extractZipArchive(String zipFileName) throws IOException {
-        Path zipFilePath = this.fileStorageLocation.resolve(zipFileName);
+    private void writeManifest(String zipFileName, ArchiveManifest manifest) {
+        byte[] bytes = manifest.format();
+        try {
+            storageBackend.put(ArchiveManifest.key(zipFileName), new ByteArrayInputStream(bytes), bytes.length);
+        } catch (IOException ex) {
+            // Архив уже опубликован; без манифеста проверка ограничится CRC
+            logger.warn("Could not write manifest for {}", zipFileName, ex);
+        }
+    }
+
+    /**
+     * Распаковывает архив в каталог "<имя>_extracted" и возвращает его ключ.
+     * <p>
+     * Одновременные вызовы для одного архива выполняют одну распаковку (single-flight).
+     * Если каталог уже получен из того же содержимого архива (SHA-256, проверяется по
+     * отметке {@value #EXTRACTION_STAMP}), распаковка не выполняется. Новая распаковка
+     * пишется во временный каталог и публикуется переименованием, поэтому читатели
+     * не видят смесь старых и новых файлов.
+     */
+    public String extract(String zipFileName, ArchiveProgress progress) throws IOException {
+        CompletableFuture<String> own = new CompletableFuture<>();
+        CompletableFuture<String> running = extractions.putIfAbsent(zipFileName, own);
+        if (running != null) {
+            sharedCounter.increment();
+            return await(running);
+        }
+        try {
+            String extractDirName = extractIfChanged(zipFileName, progress);
+            own.complete(extractDirName);
+            return extractDirName;
+        } catch (IOException | RuntimeException ex) {
+            own.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            extractions.remove(zipFileName, own);
+        }
+    }
 
-        if (!Files.exists(zipFilePath)) {
-            throw new FileNotFoundException("ZIP файл не найден: " + zipFilePath);
+    private String extractIfChanged(String zipFileName, ArchiveProgress progress) throws IOException {
+        String extractDirName = extractDirName(zipFileName);
+        BlobInfo archive = storageBackend.stat(zipFileName)
+                .filter(info -> !info.isDirectory())
+                .orElseThrow(() -> new FileNotFoundException("ZIP файл не найден: " + zipFileName));
+
+        Optional<ExtractionStamp> stamp = readStamp(extractDirName);
+        if (stamp.isPresent() && stamp.get().size == archive.getSize()) {
+            if (stamp.get().lastModified == archive.getLastModified()) {
+                reusedCounter.increment();
+                return extractDirName;
+            }
+            // Архив перезаписан, но размер тот же - сравниваем содержимое, не распаковывая
+            String sha256 = sha256(zipFileName);
+            if (sha256.equals(stamp.get().sha256)) {
+                writeStamp(extractDirName, new ExtractionStamp(sha256, archive.getLastModified(), archive.getSize()));
+                reusedCounter.increment();
+                return extractDirName;
+            }
         }
 
-        String extractDirName = zipFileName.replace(".zip", "_extracted");
-        Path extractPath = this.fileStorageLocation.resolve(extractDirName);
+        String tempDirName = ".extract-" + UUID.randomUUID();
+        List<FileStoredEvent> stored = new ArrayList<>();
+        String sha256;
+        try {
+            sha256 = unzip(zipFileName, tempDirName, extractDirName, stored, progress);
+            storageBackend.rename(tempDirName, extractDirName);
+        } catch (IOException | RuntimeException ex) {
+            try {
+                storageBackend.delete(tempDirName);
+            } catch (IOException deleteEx) {
+                ex.addSuppressed(deleteEx);
+            }
+            throw ex;
+        }
+        // Отметка пишется последней: каталог без нее при следующем вызове распакуется заново
+        writeStamp(extractDirName, new ExtractionStamp(sha256, archive.getLastModified(), archive.getSize()));
+        fileCatalog.refresh(extractDirName);
+        // События придут только по файлам нового архива - файлы старой версии сбрасываем все
+        hotFileCache.invalidateDirectory(extractDirName);
+        stored.forEach(eventPublisher::publishEvent);
+        extractedCounter.increment();
+        return extractDirName;
+    }
 
-        if (!Files.exists(extractPath)) {
-            Files.createDirectories(extractPath);
+    // Распаковка в tempDirName; события собираются под итоговыми ключами. Возвращает SHA-256 архива
+    private String unzip(String zipFileName, String tempDirName, String extractDirName,
+                         List<FileStoredEvent> stored, ArchiveProgress progress) throws IOException {
+        InputStream zipStream;
+        try {
+            zipStream = storageBackend.get(zipFileName);
+        } catch (NoSuchFileException ex) {
+            throw new FileNotFoundException("ZIP файл не найден: " + zipFileName);
         }
 
-        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFilePath.toFile()))) {
+        // Хеш считается в том же проходе; прогресс - по сжатым байтам, прочитанным из архива
+        DigestInputStream digest = new DigestInputStream(new ProgressInputStream(zipStream, progress), sha256Digest());
+        try (ZipInputStream zis = new ZipInputStream(digest)) {
             ZipEntry zipEntry;
             while ((zipEntry = zis.getNextEntry()) != null) {
-                Path filePath = extractPath.resolve(zipEntry.getName());
-
-                if (zipEntry.isDirectory()) {
-                    Files.createDirectories(filePath);
-                } else {
-                    Files.createDirectories(filePath.getParent());
-                    try (FileOutputStream fos = new FileOutputStream(filePath.toFile())) {
-                        byte[] buffer = new byte[1024];
-                        int length;
-                        while ((length = zis.read(buffer)) > 0) {
-                            fos.write(buffer, 0, length);
-                        }
-                    }
+                // Каталоги создаются хранилищем по мере записи файлов
+                if (!zipEntry.isDirectory()) {
+                    String entryName = safeEntryName(zipEntry.getName());
+                    storageBackend.put(tempDirName + "/" + entryName, StorageStreams.nonClosing(zis), zipEntry.getSize());
+                    stored.add(new GeneratedFileEvent(extractDirName + "/" + entryName, zipEntry.getSize()));
+                    progress.entryDone(entryName);
                 }
                 zis.closeEntry();
             }
+            // Центральный каталог ZipInputStream не читает - дочитываем для хеша
+            digest.transferTo(OutputStream.nullOutputStream());
         }
+        return HexFormat.of().formatHex(digest.getMessageDigest().digest());
+    }
 
-        return generateFileUri(extractDirName);
+    private String sha256(String key) throws IOException {
+        try (DigestInputStream in = new DigestInputStream(storageBackend.get(key), sha256Digest())) {
+            in.transferTo(OutputStream.nullOutputStream());
+            return HexFormat.of().formatHex(in.getMessageDigest().digest());
+        }
     }
 
-    public List<String> getFilesList() throws IOException {
-        List<String> fileUris = new ArrayList<>();
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
 
-        Files.list(this.fileStorageLocation)
-                .forEach(path -> {
-                    String fileName = path.getFileName().toString();
-                    if (fileName.endsWith(".zip")) {
-                        String fileUri = generateFileUri(fileName);
-                        fileUris.add(fileUri);
-                    }
-                });
+    private Optional<ExtractionStamp> readStamp(String extractDirName) {
+        String key = extractDirName + "/" + EXTRACTION_STAMP;
+        try (InputStream in = storageBackend.get(key)) {
+            return Optional.ofNullable(ExtractionStamp.parse(new String(in.readAllBytes(), StandardCharsets.UTF_8)));
+        } catch (IOException | FileStorageException ex) {
+            // Нет отметки (или каталога) - распаковываем
+            return Optional.empty();
+        }
+    }
+
+    private void writeStamp(String extractDirName, ExtractionStamp stamp) {
+        byte[] bytes = stamp.format().getBytes(StandardCharsets.UTF_8);
+        try {
+            storageBackend.put(extractDirName + "/" + EXTRACTION_STAMP, new ByteArrayInputStream(bytes), bytes.length);
+        } catch (IOException ex) {
+            // Каталог уже опубликован; без отметки следующий вызов просто распакует заново
+            logger.warn("Could not write extraction stamp for {}", extractDirName, ex);
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> running) throws IOException {
+        try {
+            return running.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for extraction");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Содержимое отметки {@value #EXTRACTION_STAMP}: хеш, время изменения и размер архива.
+     */
+    @AllArgsConstructor
+    static final class ExtractionStamp {
+        private final String sha256;
+        private final long lastModified;
+        private final long size;
+
+        String format() {
+            return "sha256=" + sha256 + "\nlastModified=" + lastModified + "\nsize=" + size + "\n";
+        }
+
+        static ExtractionStamp parse(String text) {
+            Properties properties = new Properties();
+            try {
+                properties.load(new StringReader(text));
+                return new ExtractionStamp(properties.getProperty("sha256"),
+                        Long.parseLong(properties.getProperty("lastModified")),
+                        Long.parseLong(properties.getProperty("size")));
+            } catch (IOException | RuntimeException ex) {
+                return null;
+            }
+        }
+    }
+
+    private void publishStored(String key) {
+        long size = fileCatalog.get(key).map(FileEntry::getSize).orElse(0L);
+        eventPublisher.publishEvent(new GeneratedFileEvent(key, size));
+    }
 
-        return fileUris;
+    // Защита от Zip Slip: имя записи не должно выходить за пределы каталога распаковки
+    static String safeEntryName(String name) throws IOException {
+        String normalized = name.replace('\\', '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+        for (String segment : normalized.split("/")) {
+            if (segment.equals("..")) {
+                throw new IOException("Недопустимое имя файла в архиве: " + name);
+            }
+        }
+        return normalized;
     }
 
-    private String generateFileUri(String fileName) {
+    public FilePage<String> getFilesList(String query, String sort, boolean descending, int page, int size) {
+        // Список архивов отдается из каталога, без сканирования директории
+        FilePage<FileEntry> entries = fileCatalog.list(query, "zip", sort, descending, page, size);
+        List<String> fileUris = new ArrayList<>(entries.getItems().size());
+        for (FileEntry entry : entries.getItems()) {
+            fileUris.add(generateFileUri(entry.getName()));
+        }
+        return new FilePage<>(fileUris, entries.getTotal(), entries.getPage(), entries.getSize());
+    }
+
+    public String generateFileUri(String fileName) {
         return ServletUriComponentsBuilder.fromCurrentContextPath()
                 .path("/api/files/download/")
                 .path(fileName)
                 .toUriString();
     }
 
-    public Resource loadFileAsResource(String fileName) throws MalformedURLException {
-        Path filePath = this.fileStorageLocation.resolve(fileName).normalize();
-        Resource resource = new UrlResource(filePath.toUri());
-
-        if (resource.exists()) {
-            return resource;
+    public Resource loadFileAsResource(String fileName) throws IOException {
+        if (!StorageLayout.isInternalKey(fileName) && storageBackend.stat(fileName).isPresent()) {
+            return storageBackend.resource(fileName);
         } else {
             throw new RuntimeException("Файл не найден: " + fileName);
         }
     }
+
+    /**
+     * Файл, который кладется в архив: имя записи и источник содержимого.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Source {
+        private final String name;
+        private final InputStreamSource content;
+        private final long size;
+    }
+
+    private static class ProgressInputStream extends FilterInputStream {
+        private final ArchiveProgress progress;
+
+        ProgressInputStream(InputStream in, ArchiveProgress progress) {
+            super(in);
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                progress.bytes(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                progress.bytes(n);
+            }
+            return n;
+        }
+    }
 }
@@ -0,0 +1,323 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.exception.FileStorageException;
+import com.example.cloud_spring_load_zip.model.FileEntry;
+import com.example.cloud_spring_load_zip.model.FilePage;
+import com.example.cloud_spring_load_zip.storage.BlobInfo;
+import com.example.cloud_spring_load_zip.storage.LocalStorageBackend;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import com.example.cloud_spring_load_zip.storage.StorageLayout;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Каталог директории загрузок в памяти. Строится один раз при старте, дальше поддерживается
+ * собственными записями сервисов и {@link WatchService} для изменений в обход приложения.
+ */
+@Service
+public class FileCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileCatalog.class);
+
+    private final Path root;
+    private final StorageLayout layout;
+    private final StorageBackend backend;
+    private final AppFileProperties.Catalog properties;
+    // Отсортировано по имени, поэтому сортировка по умолчанию ничего не стоит
+    private final ConcurrentSkipListMap<String, FileEntry> entries = new ConcurrentSkipListMap<>();
+    private final Counter rescanCounter;
+    // Точечные изменения и слияние полного перечитывания применяются под этой блокировкой
+    private final Object mutationLock = new Object();
+    // Ключи, измененные во время идущего перечитывания; null, если перечитывания нет
+    private Set<String> changedDuringScan;
+
+    private WatchService watchService;
+    private Thread watcherThread;
+
+    public FileCatalog(StorageBackend backend,
+                       StorageLayout layout,
+                       AppFileProperties appFileProperties,
+                       MeterRegistry registry) {
+        this.backend = backend;
+        this.layout = layout;
+        this.root = layout.getRoot();
+        this.properties = appFileProperties.getCatalog();
+
+        Gauge.builder("files.catalog.size", entries, Map::size)
+                .description("Number of entries in the upload directory catalog")
+                .register(registry);
+        this.rescanCounter = Counter.builder("files.catalog.rescans")
+                .description("Full rescans of the upload directory")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void init() {
+        rebuild();
+        // WatchService имеет смысл только для локального диска
+        if (properties.isWatchEnabled() && backend instanceof LocalStorageBackend) {
+            startWatcher();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (watcherThread != null) {
+            watcherThread.interrupt();
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ex) {
+                logger.warn("Could not close catalog watch service", ex);
+            }
+        }
+    }
+
+    /**
+     * Полностью перечитывает директорию. Используется при старте и при переполнении очереди событий.
+     * Записи, обновленные через {@link #refresh}/{@link #remove} во время обхода, листинг не перетирает.
+     */
+    public synchronized void rebuild() {
+        synchronized (mutationLock) {
+            changedDuringScan = new HashSet<>();
+        }
+        Map<String, FileEntry> fresh = new HashMap<>();
+        try {
+            backend.list("", blob -> fresh.put(blob.getName(), toEntry(blob)));
+        } catch (IOException | UncheckedIOException ex) {
+            synchronized (mutationLock) {
+                changedDuringScan = null;
+            }
+            throw new FileStorageException("Could not list uploaded files", ex);
+        }
+        synchronized (mutationLock) {
+            Set<String> changed = changedDuringScan;
+            changedDuringScan = null;
+            // Листинг устарел для ключей, тронутых во время обхода: для них верна точечная запись
+            entries.keySet().removeIf(name -> !fresh.containsKey(name) && !changed.contains(name));
+            fresh.forEach((name, entry) -> {
+                if (!changed.contains(name)) {
+                    entries.put(name, entry);
+                }
+            });
+        }
+        rescanCounter.increment();
+        logger.debug("File catalog rebuilt, {} entries", entries.size());
+    }
+
+    /**
+     * Перечитывает метаданные одного файла после записи или удаления.
+     */
+    public void refresh(String fileName) {
+        if (StorageLayout.isInternalKey(fileName)) {
+            return;
+        }
+        try {
+            Optional<BlobInfo> blob = backend.stat(fileName);
+            synchronized (mutationLock) {
+                markChanged(fileName);
+                if (blob.isEmpty()) {
+                    entries.remove(fileName);
+                } else {
+                    entries.put(fileName, toEntry(blob.get()));
+                }
+            }
+        } catch (IOException | FileStorageException ex) {
+            logger.warn("Could not refresh catalog entry {}", fileName, ex);
+        }
+    }
+
+    public void remove(String fileName) {
+        synchronized (mutationLock) {
+            markChanged(fileName);
+            entries.remove(fileName);
+        }
+    }
+
+    private void markChanged(String fileName) {
+        if (changedDuringScan != null) {
+            changedDuringScan.add(fileName);
+        }
+    }
+
+    public Optional<FileEntry> get(String fileName) {
+        return Optional.ofNullable(entries.get(fileName));
+    }
+
+    public List<FileEntry> all() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Листинг с фильтрацией и пагинацией.
+     *
+     * @param query      подстрока имени без учета регистра, может быть null
+     * @param type       расширение ("zip", "png") или "dir", может быть null
+     * @param sort       name | size | modified
+     * @param descending обратный порядок
+     */
+    public FilePage<FileEntry> list(String query, String type, String sort, boolean descending, int page, int size) {
+        int pageSize = size <= 0 ? properties.getDefaultPageSize() : Math.min(size, properties.getMaxPageSize());
+        int pageNumber = Math.max(page, 0);
+
+        List<FileEntry> matched = listAll(query, type, sort, descending);
+        int from = (int) Math.min((long) pageNumber * pageSize, matched.size());
+        int to = Math.min(from + pageSize, matched.size());
+        return new FilePage<>(new ArrayList<>(matched.subList(from, to)), matched.size(), pageNumber, pageSize);
+    }
+
+    /**
+     * Все записи, подходящие под фильтр, без пагинации (параметры - как у {@link #list}).
+     */
+    public List<FileEntry> listAll(String query, String type, String sort, boolean descending) {
+        Collection<FileEntry> source = descending && (sort == null || "name".equals(sort))
+                ? entries.descendingMap().values()
+                : entries.values();
+
+        Stream<FileEntry> stream = source.stream();
+        if (query != null && !query.isBlank()) {
+            String needle = query.toLowerCase(Locale.ROOT);
+            stream = stream.filter(e -> e.getName().toLowerCase(Locale.ROOT).contains(needle));
+        }
+        if (type != null && !type.isBlank()) {
+            String wanted = type.startsWith(".") ? type.substring(1) : type;
+            stream = stream.filter(e -> e.getType().equalsIgnoreCase(wanted));
+        }
+
+        Comparator<FileEntry> comparator = comparator(sort);
+        if (comparator != null) {
+            stream = stream.sorted(descending ? comparator.reversed() : comparator);
+        }
+
+        return stream.collect(Collectors.toList());
+    }
+
+    private static Comparator<FileEntry> comparator(String sort) {
+        if (sort == null) {
+            return null;
+        }
+        switch (sort) {
+            case "name":
+                return null;
+            case "size":
+                return Comparator.comparingLong(FileEntry::getSize).thenComparing(FileEntry::getName);
+            case "modified":
+                return Comparator.comparingLong(FileEntry::getLastModified).thenComparing(FileEntry::getName);
+            default:
+                // Неизвестное поле - порядок по имени
+                return null;
+        }
+    }
+
+    private static FileEntry toEntry(BlobInfo blob) {
+        return new FileEntry(blob.getName(),
+                blob.getSize(),
+                blob.getLastModified(),
+                blob.isDirectory() ? FileEntry.DIRECTORY_TYPE : typeOf(blob.getName()));
+    }
+
+    static String typeOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0 || dot == fileName.length() - 1) {
+            return "file";
+        }
+        return fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private void startWatcher() {
+        try {
+            watchService = root.getFileSystem().newWatchService();
+            registerTree(root);
+        } catch (IOException ex) {
+            logger.warn("WatchService unavailable for {}, catalog is updated only by own writes", root, ex);
+            return;
+        }
+        watcherThread = new Thread(this::watchLoop, "file-catalog-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    /**
+     * Регистрирует каталог и все вложенные каталоги шардов вплоть до листовых.
+     */
+    private void registerTree(Path dir) throws IOException {
+        dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        if (layout.levelOf(dir) >= layout.getDepth()) {
+            return;
+        }
+        try (Stream<Path> children = Files.list(dir)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                if (isShardDir(child)) {
+                    registerTree(child);
+                }
+            }
+        }
+    }
+
+    private boolean isShardDir(Path path) {
+        int level = layout.levelOf(path);
+        if (level == 1) {
+            return layout.isShardRoot(path);
+        }
+        return layout.isShardDirName(path.getFileName().toString())
+                && level <= layout.getDepth()
+                && Files.isDirectory(path);
+    }
+
+    private void watchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                return;
+            }
+            Path dir = (Path) key.watchable();
+            int level = layout.levelOf(dir);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    // События потеряны, доверять инкрементальному состоянию нельзя
+                    rebuild();
+                    continue;
+                }
+                Path child = dir.resolve((Path) event.context());
+                if (level < layout.getDepth() && isShardDir(child)) {
+                    // Новый каталог шарда: подписываемся и подбираем то, что успело в нем появиться
+                    try {
+                        registerTree(child);
+                        layout.walkShard(child, level + 1, path -> refresh(layout.logicalName(path)));
+                    } catch (IOException ex) {
+                        logger.warn("Could not watch shard directory {}", child, ex);
+                    }
+                } else if (level == layout.getDepth() || (level == 0 && !layout.isShardRoot(child))) {
+                    refresh(layout.logicalName(child));
+                }
+            }
+            if (!key.reset() && dir.equals(root)) {
+                logger.warn("Upload directory {} is no longer watchable", root);
+                return;
+            }
+        }
+    }
+}
@@ -4,6 +4,8 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 @Component
 @ConfigurationProperties(prefix = "file")
@@ -22,4 +24,8 @@ public class FileStorageProperties {
         return this.uploadDir.replace("/", File.separator)
                 .replace("\\", File.separator);
     }
+
+    public Path getUploadPath() {
+        return Paths.get(getNormalizedUploadDir()).toAbsolutePath().normalize();
+    }
 }
\ No newline at end of file
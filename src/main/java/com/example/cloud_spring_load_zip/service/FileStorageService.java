@@ -1,134 +1,194 @@
 package com.example.cloud_spring_load_zip.service;
 
 import com.example.cloud_spring_load_zip.exception.FileStorageException;
+import com.example.cloud_spring_load_zip.exception.FileValidationException;
 import com.example.cloud_spring_load_zip.exception.MyFileNotFoundException;
+import com.example.cloud_spring_load_zip.image.ProductImageService;
+import com.example.cloud_spring_load_zip.integrity.ArchiveManifest;
+import com.example.cloud_spring_load_zip.model.FileEntry;
+import com.example.cloud_spring_load_zip.model.FilePage;
+import com.example.cloud_spring_load_zip.model.StoredFile;
+import com.example.cloud_spring_load_zip.storage.BlobInfo;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import com.example.cloud_spring_load_zip.storage.StorageLayout;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.util.FileSystemUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.nio.file.*;
+import java.io.PushbackInputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Service
 public class FileStorageService {
 
-    private final Path fileStorageLocation;
+    private final StorageBackend storageBackend;
+    private final FileCatalog fileCatalog;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UploadValidator uploadValidator;
+    private final HotFileCache hotFileCache;
 
     @Autowired
-    public FileStorageService(FileStorageProperties fileStorageProperties) {
-        // Создаем путь к директории для хранения файлов
-        String originalPath = fileStorageProperties.getUploadDir();
-        String systemSeparator = FileSystems.getDefault().getSeparator();
+    public FileStorageService(StorageBackend storageBackend, FileCatalog fileCatalog,
+                              ApplicationEventPublisher eventPublisher, UploadValidator uploadValidator,
+                              HotFileCache hotFileCache) {
+        this.storageBackend = storageBackend;
+        this.fileCatalog = fileCatalog;
+        this.eventPublisher = eventPublisher;
+        this.uploadValidator = uploadValidator;
+        this.hotFileCache = hotFileCache;
+    }
 
-        // Нормализуем путь, заменяя все возможные разделители на системные
-        String normalizedPath = originalPath.replace("/", systemSeparator)
-                .replace("\\", systemSeparator);
+    public String storeFile(MultipartFile file) {
+        return store(file).getName();
+    }
 
-        this.fileStorageLocation = Paths.get(normalizedPath)
-                .toAbsolutePath()
-                .normalize();
+    public StoredFile store(MultipartFile file) {
+        // Нормализуем имя файла
+        String fileName = StringUtils.cleanPath(file.getOriginalFilename());
 
-        try {
-            Files.createDirectories(this.fileStorageLocation);
+        // Проверяем, не пустой ли файл
+        if (file.isEmpty()) {
+            throw new FileStorageException("Cannot store empty file: " + fileName);
+        }
+        try (InputStream in = file.getInputStream()) {
+            return store(fileName, in, file.getSize());
         } catch (IOException ex) {
-            throw new FileStorageException("Could not create the directory where the uploaded files will be stored.", ex);
+            throw new FileStorageException("Could not store file " + fileName + ". Please try again!", ex);
         }
     }
 
-    public String storeFile(MultipartFile file) {
-        // Нормализуем имя файла
-        String fileName = StringUtils.cleanPath(file.getOriginalFilename());
+    /**
+     * Запись потока в хранилище; declaredSize -1, если размер заранее неизвестен
+     * (часть потокового multipart-запроса).
+     */
+    public StoredFile store(String originalFileName, InputStream in, long declaredSize) {
+        String fileName = StringUtils.cleanPath(originalFileName == null ? "" : originalFileName);
+        // Картинки продуктов неизменны по своему адресу - обычная загрузка их не подменяет
+        if (isContentAddressed(fileName)) {
+            throw new FileValidationException("Каталог " + ProductImageService.IMAGE_DIR
+                    + " доступен только для картинок продуктов: " + fileName, HttpStatus.FORBIDDEN);
+        }
+        return store(fileName, in, declaredSize, null);
+    }
+
+    /**
+     * Запись по адресу содержимого: байты сверяются с отпечатком sha256Prefix в том же проходе,
+     * и несовпадение (файл изменился после подсчета хеша) не публикуется.
+     */
+    public StoredFile storeContentAddressed(String key, InputStream in, long size, String sha256Prefix) {
+        return store(key, in, size, sha256Prefix);
+    }
 
+    private static boolean isContentAddressed(String fileName) {
+        String name = fileName.startsWith("/") ? fileName.substring(1) : fileName;
+        return name.equals(ProductImageService.IMAGE_DIR) || name.startsWith(ProductImageService.IMAGE_DIR + "/");
+    }
+
+    private StoredFile store(String fileName, InputStream in, long declaredSize, String sha256Prefix) {
         try {
             // Проверяем на наличие недопустимых символов в пути
             if (fileName.contains("..")) {
                 throw new FileStorageException("Sorry! Filename contains invalid path sequence " + fileName);
             }
-
-            // Проверяем, не пустой ли файл
-            if (file.isEmpty()) {
-                throw new FileStorageException("Cannot store empty file: " + fileName);
+            if (fileName.isEmpty()) {
+                throw new FileStorageException("Cannot store file without a name");
             }
-
-            // Дополнительная проверка безопасности - предотвращение Path Traversal
-            Path targetLocation = this.fileStorageLocation.resolve(fileName).normalize();
-            if (!targetLocation.startsWith(this.fileStorageLocation)) {
-                throw new FileStorageException("Cannot store file outside current directory.");
+            // Имена с точкой зарезервированы под служебные файлы: каталог и жизненный цикл их не видят
+            if (StorageLayout.isInternalKey(fileName)) {
+                throw new FileValidationException("Имя файла или каталога не может начинаться с точки: "
+                        + fileName, HttpStatus.BAD_REQUEST);
             }
 
-            // Копируем файл с правильной обработкой Stream
-            try (InputStream inputStream = file.getInputStream()) {
-                Files.copy(inputStream, targetLocation, StandardCopyOption.REPLACE_EXISTING);
+            // Расширение и заявленный размер проверяются до чтения тела
+            uploadValidator.checkHeader(fileName, declaredSize);
+
+            // Потоковая запись в хранилище; сигнатура, размер и SHA-256 проверяются в том же проходе.
+            // Локальное хранилище также предотвращает Path Traversal
+            if (declaredSize < 0) {
+                // Размер части потокового запроса неизвестен - пустоту проверяем по первому байту,
+                // иначе пустая часть заменила бы существующий файл
+                PushbackInputStream pushback = new PushbackInputStream(in, 1);
+                int first = pushback.read();
+                if (first < 0) {
+                    throw new FileStorageException("Cannot store empty file: " + fileName);
+                }
+                pushback.unread(first);
+                in = pushback;
+            }
+            UploadValidator.ValidatingInputStream inputStream = uploadValidator.wrap(in, fileName);
+            if (sha256Prefix != null) {
+                inputStream.expect(sha256Prefix, declaredSize);
             }
+            storageBackend.put(fileName, inputStream, declaredSize);
+            StoredFile stored = new StoredFile(fileName, inputStream.getCount(), inputStream.getSha256());
+            fileCatalog.refresh(fileName);
+            eventPublisher.publishEvent(new FileStoredEvent(fileName, stored.getSize()));
 
-            return fileName;
+            return stored;
         } catch (IOException ex) {
+            // HTTP-клиент S3 заворачивает исключение из потока тела в IOException
+            for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof FileValidationException validation) {
+                    throw validation;
+                }
+            }
             throw new FileStorageException("Could not store file " + fileName + ". Please try again!", ex);
         }
     }
 
     public Resource loadFileAsResource(String fileName) {
-        try {
-            // Проверка безопасности имени файла
-            if (fileName.contains("..")) {
-                throw new MyFileNotFoundException("Invalid file name: " + fileName);
-            }
-
-            Path filePath = this.fileStorageLocation.resolve(fileName).normalize();
-            
-            // Дополнительная проверка безопасности
-            if (!filePath.startsWith(this.fileStorageLocation)) {
-                throw new MyFileNotFoundException("Access denied: " + fileName);
-            }
+        // Проверка безопасности имени файла
+        if (fileName.contains("..")) {
+            throw new MyFileNotFoundException("Invalid file name: " + fileName);
+        }
+        // Служебные файлы (манифесты, журналы дозаписи) наружу не отдаются
+        if (StorageLayout.isInternalKey(fileName)) {
+            throw new MyFileNotFoundException("File not found: " + fileName);
+        }
 
-            Resource resource = new UrlResource(filePath.toUri());
-            
-            if (resource.exists() && resource.isReadable()) {
-                return resource;
-            } else {
-                throw new MyFileNotFoundException("File not found: " + fileName);
-            }
-        } catch (MalformedURLException ex) {
-            throw new MyFileNotFoundException("File not found: " + fileName, ex);
+        Optional<BlobInfo> info = stat(fileName);
+        if (info.isPresent() && !info.get().isDirectory()) {
+            return storageBackend.resource(fileName);
+        } else {
+            throw new MyFileNotFoundException("File not found: " + fileName);
         }
     }
 
     // Дополнительные методы для управления файлами
 
     public boolean deleteFile(String fileName) {
+        if (fileName.contains("..")) {
+            throw new SecurityException("Cannot delete file outside storage directory");
+        }
         try {
-            Path filePath = this.fileStorageLocation.resolve(fileName).normalize();
-            
-            // Проверка безопасности
-            if (!filePath.startsWith(this.fileStorageLocation)) {
-                throw new SecurityException("Cannot delete file outside storage directory");
+            boolean deleted = storageBackend.delete(fileName);
+            if (fileName.endsWith(".zip")) {
+                storageBackend.delete(ArchiveManifest.key(fileName));
             }
-
-            return Files.deleteIfExists(filePath);
+            fileCatalog.remove(fileName);
+            hotFileCache.invalidate(fileName);
+            hotFileCache.invalidateDirectory(fileName);
+            return deleted;
         } catch (IOException ex) {
             throw new FileStorageException("Could not delete file: " + fileName, ex);
+        } catch (FileStorageException ex) {
+            throw new SecurityException("Cannot delete file outside storage directory");
         }
     }
 
     public boolean fileExists(String fileName) {
         try {
-            Path filePath = this.fileStorageLocation.resolve(fileName).normalize();
-            
-            // Проверка безопасности
-            if (!filePath.startsWith(this.fileStorageLocation)) {
-                return false;
-            }
-
-            return Files.exists(filePath) && Files.isRegularFile(filePath);
+            return stat(fileName).filter(info -> !info.isDirectory()).isPresent();
         } catch (Exception ex) {
             return false;
         }
@@ -136,36 +196,47 @@ public class FileStorageService {
 
     // Получение размера файла
     public long getFileSize(String fileName) {
-        try {
-            Path filePath = this.fileStorageLocation.resolve(fileName).normalize();
-            
-            if (!filePath.startsWith(this.fileStorageLocation)) {
-                throw new SecurityException("Access denied");
-            }
+        return stat(fileName)
+                .map(BlobInfo::getSize)
+                .orElseThrow(() -> new MyFileNotFoundException("File not found: " + fileName));
+    }
 
-            if (Files.exists(filePath)) {
-                return Files.size(filePath);
-            } else {
-                throw new MyFileNotFoundException("File not found: " + fileName);
-            }
+    private Optional<BlobInfo> stat(String fileName) {
+        try {
+            return storageBackend.stat(fileName);
         } catch (IOException ex) {
-            throw new FileStorageException("Could not get file size: " + fileName, ex);
+            throw new FileStorageException("Could not read file attributes: " + fileName, ex);
+        } catch (FileStorageException ex) {
+            // Имя выходит за пределы хранилища
+            return Optional.empty();
         }
     }
 
     public void deleteAll() {
-        FileSystemUtils.deleteRecursively(this.fileStorageLocation.toFile());
+        for (FileEntry entry : fileCatalog.all()) {
+            try {
+                storageBackend.delete(entry.getName());
+            } catch (IOException ex) {
+                throw new FileStorageException("Could not delete file: " + entry.getName(), ex);
+            }
+        }
+        fileCatalog.rebuild();
+        hotFileCache.invalidateAll();
     }
 
 
     public List<Path> loadAll() {
-        try (Stream<Path> stream = Files.walk(this.fileStorageLocation, 1)) {
-            return stream
-                    .filter(path -> !path.equals(this.fileStorageLocation))
-                    .map(this.fileStorageLocation::relativize)
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            throw new RuntimeException("Could not load the files!", e);
-        }
+        // Листинг берется из каталога, а не из обхода директории
+        return fileCatalog.all().stream()
+                .map(entry -> Paths.get(entry.getName()))
+                .collect(Collectors.toList());
+    }
+
+    public FilePage<FileEntry> listFiles(String query, String type, String sort, boolean descending, int page, int size) {
+        return fileCatalog.list(query, type, sort, descending, page, size);
+    }
+
+    public List<FileEntry> listAllFiles(String query, String type, String sort, boolean descending) {
+        return fileCatalog.listAll(query, type, sort, descending);
     }
-}
\ No newline at end of file
+}
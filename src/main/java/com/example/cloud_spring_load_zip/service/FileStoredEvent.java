@@ -0,0 +1,28 @@
+package com.example.cloud_spring_load_zip.service;
+
+/**
+ * Публикуется после того, как в хранилище записан новый файл (загрузка, архив, распаковка).
+ */
+public class FileStoredEvent {
+
+    private final String key;
+    private final long size;
+
+    public FileStoredEvent(String key, long size) {
+        this.key = key;
+        this.size = size;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "FileStoredEvent{key='" + key + "', size=" + size + "}";
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.cloud_spring_load_zip.service;
+
+/**
+ * {@link FileStoredEvent} для файлов, которые приложение сгенерировало само: архивы,
+ * распакованные и восстановленные каталоги. Их жизненным циклом управляет
+ * ArtifactLifecycleManager; загрузки пользователей публикуются обычным событием.
+ */
+public class GeneratedFileEvent extends FileStoredEvent {
+
+    public GeneratedFileEvent(String key, long size) {
+        super(key, size);
+    }
+
+    @Override
+    public String toString() {
+        return "GeneratedFileEvent{key='" + getKey() + "', size=" + getSize() + "}";
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.exception.FileStorageException;
+import com.example.cloud_spring_load_zip.model.FileEntry;
+import com.example.cloud_spring_load_zip.storage.BlobInfo;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Optional;
+
+/**
+ * Кеш содержимого маленьких часто скачиваемых файлов вне кучи (direct ByteBuffer).
+ * Размер ограничен суммой байт; вытеснение и допуск новых записей - W-TinyLFU (Caffeine):
+ * разовые скачивания не вытесняют файлы, которые запрашивают постоянно.
+ * <p>
+ * Запись через сервисы сбрасывает ключ по {@link FileStoredEvent}, удаление - явно из
+ * {@link FileStorageService}. Изменения в обход приложения ловит сверка с каталогом при попадании.
+ * Вытесненный буфер освобождает GC, поэтому ответ, который его еще отдает, не ломается;
+ * за пределом maxBytes может временно жить память еще не собранных буферов.
+ */
+@Component
+public class HotFileCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotFileCache.class);
+    // Учет служебных полей записи в весе, чтобы тысячи крошечных файлов не обходили лимит
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final StorageBackend backend;
+    private final FileCatalog catalog;
+    private final AppFileProperties.HotCache properties;
+    private final Cache<String, Entry> entries;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bypassed;
+
+    /**
+     * Содержимое файла и его версия на момент чтения.
+     */
+    @Getter
+    public static final class Entry {
+        private final ByteBuffer content;
+        private final long size;
+        private final long lastModified;
+        private final String etag;
+
+        Entry(ByteBuffer content, long lastModified) {
+            this.content = content.asReadOnlyBuffer();
+            this.size = content.capacity();
+            this.lastModified = lastModified;
+            this.etag = etag(size, lastModified);
+        }
+
+        /**
+         * Resource для ответа: каждый ответ читает свою копию позиции, байты не копируются в кучу.
+         */
+        public AbstractResource resource(String fileName) {
+            return new BufferResource(content, fileName, lastModified);
+        }
+    }
+
+    public HotFileCache(StorageBackend backend, FileCatalog catalog, AppFileProperties appFileProperties,
+                        MeterRegistry registry) {
+        this.backend = backend;
+        this.catalog = catalog;
+        this.properties = appFileProperties.getHotCache();
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxBytes().toBytes())
+                .<String, Entry>weigher((key, entry) -> (int) entry.size + ENTRY_OVERHEAD)
+                .build();
+
+        this.hits = Counter.builder("files.hot.cache.requests")
+                .description("Downloads checked against the hot file cache")
+                .tag("result", "hit")
+                .register(registry);
+        this.misses = Counter.builder("files.hot.cache.requests")
+                .description("Downloads checked against the hot file cache")
+                .tag("result", "miss")
+                .register(registry);
+        this.bypassed = Counter.builder("files.hot.cache.requests")
+                .description("Downloads checked against the hot file cache")
+                .tag("result", "bypass")
+                .register(registry);
+        Gauge.builder("files.hot.cache.hit.ratio", this, HotFileCache::hitRatio)
+                .description("Share of cacheable downloads served from memory")
+                .register(registry);
+        Gauge.builder("files.hot.cache.bytes", entries,
+                        cache -> cache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L))
+                .description("Off-heap bytes held by cached files")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("files.hot.cache.entries", entries, Cache::estimatedSize)
+                .description("Files held in the hot file cache")
+                .register(registry);
+    }
+
+    /**
+     * Содержимое из кеша; при промахе маленький файл читается один раз в буфер и отдается из него.
+     * Пусто, если кеш выключен, файл большой, это каталог или файла нет - тогда отдаем из хранилища.
+     */
+    public Optional<Entry> get(String fileName) {
+        if (!properties.isEnabled()) {
+            return Optional.empty();
+        }
+        Entry cached = entries.getIfPresent(fileName);
+        if (cached != null) {
+            if (current(fileName, cached)) {
+                hits.increment();
+                return Optional.of(cached);
+            }
+            entries.asMap().remove(fileName, cached);
+        }
+        // Размер известен из каталога - большие файлы отсекаются без обращения к хранилищу
+        Optional<FileEntry> known = catalog.get(fileName);
+        if (known.isPresent() && (FileEntry.DIRECTORY_TYPE.equals(known.get().getType())
+                || known.get().getSize() > properties.getMaxFileSize().toBytes())) {
+            bypassed.increment();
+            return Optional.empty();
+        }
+        // Параллельные промахи по одному ключу читают файл один раз
+        Entry loaded = entries.get(fileName, this::load);
+        if (loaded == null) {
+            bypassed.increment();
+            return Optional.empty();
+        }
+        misses.increment();
+        return Optional.of(loaded);
+    }
+
+    public void invalidate(String fileName) {
+        entries.invalidate(fileName);
+    }
+
+    /**
+     * Сбрасывает вложенные ключи каталога: у них нет записей в каталоге, и сверка при попадании
+     * не заметила бы, что каталог удален целиком.
+     */
+    public void invalidateDirectory(String dirName) {
+        String prefix = dirName + "/";
+        entries.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    @EventListener
+    public void onFileStored(FileStoredEvent event) {
+        entries.invalidate(event.getKey());
+    }
+
+    /**
+     * ETag из размера и времени изменения: одинаков для ответа из кеша и из хранилища.
+     */
+    public static String etag(long size, long lastModified) {
+        return "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(size) + "\"";
+    }
+
+    double hitRatio() {
+        double h = hits.count();
+        double total = h + misses.count();
+        return total == 0 ? 0 : h / total;
+    }
+
+    // Файл, измененный в обход приложения, каталог видит через WatchService. В каталоге только
+    // верхний уровень: вложенные файлы (распакованные архивы) сбрасываются событиями записи
+    // и invalidateDirectory при замене или удалении каталога целиком
+    private boolean current(String fileName, Entry entry) {
+        Optional<FileEntry> known = catalog.get(fileName);
+        if (known.isEmpty()) {
+            return fileName.indexOf('/') >= 0;
+        }
+        return known.get().getSize() == entry.size && known.get().getLastModified() == entry.lastModified;
+    }
+
+    private Entry load(String fileName) {
+        try {
+            Optional<BlobInfo> info = backend.stat(fileName);
+            if (info.isEmpty() || info.get().isDirectory()
+                    || info.get().getSize() > properties.getMaxFileSize().toBytes()) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) info.get().getSize());
+            try (InputStream in = backend.get(fileName); ReadableByteChannel channel = Channels.newChannel(in)) {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        // Файл укоротился между stat и чтением - не кешируем
+                        return null;
+                    }
+                }
+                if (in.read() >= 0) {
+                    return null;
+                }
+            }
+            buffer.flip();
+            return new Entry(buffer, info.get().getLastModified());
+        } catch (IOException | FileStorageException ex) {
+            logger.debug("Could not cache {}", fileName, ex);
+            return null;
+        }
+    }
+
+    private static final class BufferResource extends AbstractResource {
+        private final ByteBuffer content;
+        private final String fileName;
+        private final long lastModified;
+
+        BufferResource(ByteBuffer content, String fileName, long lastModified) {
+            this.content = content;
+            this.fileName = fileName;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public long contentLength() {
+            return content.capacity();
+        }
+
+        @Override
+        public long lastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public String getFilename() {
+            int slash = fileName.lastIndexOf('/');
+            return slash < 0 ? fileName : fileName.substring(slash + 1);
+        }
+
+        @Override
+        public String getDescription() {
+            return "cached file [" + fileName + "]";
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            ByteBuffer view = content.duplicate();
+            view.rewind();
+            return new InputStream() {
+                @Override
+                public int read() {
+                    return view.hasRemaining() ? view.get() & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    if (!view.hasRemaining()) {
+                        return -1;
+                    }
+                    int n = Math.min(len, view.remaining());
+                    view.get(b, off, n);
+                    return n;
+                }
+
+                @Override
+                public long skip(long n) {
+                    int skipped = (int) Math.max(0, Math.min(n, view.remaining()));
+                    view.position(view.position() + skipped);
+                    return skipped;
+                }
+
+                @Override
+                public int available() {
+                    return view.remaining();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.model.ProductAggregates;
+import com.example.cloud_spring_load_zip.repository.ProductColumns;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+/**
+ * Агрегаты по каталогу, посчитанные по колонкам {@link ProductColumns}.
+ * Строки делятся на блоки по {@value #CHUNK} и сканируются параллельно простыми циклами
+ * по примитивным массивам; частичные результаты блоков затем сливаются.
+ */
+@Service
+public class ProductAnalyticsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductAnalyticsService.class);
+
+    static final int CHUNK = 1 << 16;
+    private static final int MAX_BINS = 1000;
+
+    private final ProductColumns columns;
+
+    public ProductAnalyticsService(ProductColumns columns) {
+        this.columns = columns;
+    }
+
+    public ProductAggregates aggregate(String namePrefix, int lowStockThreshold, int bins, int[] bandBounds) {
+        long start = System.nanoTime();
+        int binCount = Math.max(0, Math.min(bins, MAX_BINS));
+        int[] bounds = bandBounds.clone();
+        Arrays.sort(bounds);
+
+        AtomicReference<ProductAggregates> result = new AtomicReference<>();
+        columns.read(snapshot -> {
+            // Фильтр по имени считается один раз на запись словаря, а не на строку
+            boolean[] nameMatches = null;
+            if (namePrefix != null && !namePrefix.isEmpty()) {
+                nameMatches = new boolean[snapshot.dictionary.size()];
+                for (int code = 0; code < nameMatches.length; code++) {
+                    nameMatches[code] = snapshot.dictionary.get(code).startsWith(namePrefix);
+                }
+            }
+            boolean[] filter = nameMatches;
+            int chunks = (snapshot.rows + CHUNK - 1) / CHUNK;
+            // Общий массив отметок имен: гонки безопасны, все потоки пишут только true
+            boolean[] seenNames = new boolean[snapshot.dictionary.size()];
+
+            Partial total = IntStream.range(0, chunks).parallel()
+                    .mapToObj(chunk -> scan(snapshot, filter, seenNames, chunk, lowStockThreshold, bounds))
+                    .reduce(new Partial(bounds.length), Partial::merge);
+            long distinctNames = 0;
+            for (boolean seen : seenNames) {
+                if (seen) {
+                    distinctNames++;
+                }
+            }
+
+            long[] histogram = new long[binCount];
+            double[] histogramPriceSum = new double[binCount];
+            if (total.count > 0 && binCount > 0) {
+                // Второй проход: границы гистограммы известны только после min/max
+                double width = (total.maxPrice - total.minPrice) / binCount;
+                List<double[]> partials = IntStream.range(0, chunks).parallel()
+                        .mapToObj(chunk -> histogram(snapshot, filter, chunk, total.minPrice, width, binCount))
+                        .toList();
+                for (double[] partial : partials) {
+                    for (int bin = 0; bin < binCount; bin++) {
+                        histogram[bin] += (long) partial[bin];
+                        histogramPriceSum[bin] += partial[binCount + bin];
+                    }
+                }
+            }
+            ProductAggregates aggregates = toAggregates(total, bounds, histogram, histogramPriceSum, binCount);
+            aggregates.setDistinctNames(distinctNames);
+            result.set(aggregates);
+        });
+
+        ProductAggregates aggregates = result.get();
+        aggregates.setTookMs((System.nanoTime() - start) / 1_000_000);
+        logger.debug("Product aggregates over {} rows computed in {} ms", aggregates.getCount(), aggregates.getTookMs());
+        return aggregates;
+    }
+
+    private static Partial scan(ProductColumns.Snapshot s, boolean[] filter, boolean[] seenNames, int chunk,
+                                int lowStockThreshold, int[] bounds) {
+        Partial partial = new Partial(bounds.length);
+        int from = chunk * CHUNK;
+        int to = Math.min(s.rows, from + CHUNK);
+        int[] quantities = s.quantities;
+        double[] prices = s.prices;
+        int[] nameCodes = s.nameCodes;
+        for (int row = from; row < to; row++) {
+            if (s.deleted.get(row) || (filter != null && !filter[nameCodes[row]])) {
+                continue;
+            }
+            int quantity = quantities[row];
+            double price = prices[row];
+            partial.count++;
+            partial.totalQuantity += quantity;
+            partial.stockValue += price * quantity;
+            partial.priceSum += price;
+            if (price < partial.minPrice) {
+                partial.minPrice = price;
+            }
+            if (price > partial.maxPrice) {
+                partial.maxPrice = price;
+            }
+            if (quantity < lowStockThreshold) {
+                partial.lowStock++;
+            }
+            seenNames[nameCodes[row]] = true;
+            int band = band(bounds, quantity);
+            if (band >= 0) {
+                partial.bandCount[band]++;
+                partial.bandPriceSum[band] += price;
+            }
+        }
+        return partial;
+    }
+
+    // Счетчики и суммы цен бинов в одном массиве: [0, bins) - count, [bins, 2*bins) - сумма цен
+    private static double[] histogram(ProductColumns.Snapshot s, boolean[] filter, int chunk,
+                                      double min, double width, int bins) {
+        double[] partial = new double[bins * 2];
+        int from = chunk * CHUNK;
+        int to = Math.min(s.rows, from + CHUNK);
+        for (int row = from; row < to; row++) {
+            if (s.deleted.get(row) || (filter != null && !filter[s.nameCodes[row]])) {
+                continue;
+            }
+            double price = s.prices[row];
+            int bin = width == 0 ? 0 : Math.min((int) ((price - min) / width), bins - 1);
+            partial[bin]++;
+            partial[bins + bin] += price;
+        }
+        return partial;
+    }
+
+    // Индекс полосы: последняя граница <= quantity; -1, если меньше первой границы
+    private static int band(int[] bounds, int quantity) {
+        int low = 0;
+        int high = bounds.length - 1;
+        int band = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (bounds[mid] <= quantity) {
+                band = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return band;
+    }
+
+    private static ProductAggregates toAggregates(Partial total, int[] bounds, long[] histogram,
+                                                  double[] histogramPriceSum, int bins) {
+        ProductAggregates aggregates = new ProductAggregates();
+        aggregates.setCount(total.count);
+        aggregates.setTotalQuantity(total.totalQuantity);
+        aggregates.setTotalStockValue(total.stockValue);
+        aggregates.setLowStockCount(total.lowStock);
+        if (total.count > 0) {
+            aggregates.setMinPrice(total.minPrice);
+            aggregates.setMaxPrice(total.maxPrice);
+            aggregates.setAvgPrice(total.priceSum / total.count);
+        }
+
+        List<ProductAggregates.Bucket> priceHistogram = new ArrayList<>(bins);
+        double width = bins == 0 ? 0 : (total.maxPrice - total.minPrice) / bins;
+        for (int bin = 0; bin < bins && total.count > 0; bin++) {
+            priceHistogram.add(new ProductAggregates.Bucket(
+                    total.minPrice + width * bin,
+                    bin == bins - 1 ? total.maxPrice : total.minPrice + width * (bin + 1),
+                    histogram[bin],
+                    histogram[bin] == 0 ? 0 : histogramPriceSum[bin] / histogram[bin]));
+        }
+        aggregates.setPriceHistogram(priceHistogram);
+
+        List<ProductAggregates.Bucket> bands = new ArrayList<>(bounds.length);
+        for (int band = 0; band < bounds.length; band++) {
+            bands.add(new ProductAggregates.Bucket(
+                    bounds[band],
+                    band == bounds.length - 1 ? null : (double) bounds[band + 1],
+                    total.bandCount[band],
+                    total.bandCount[band] == 0 ? 0 : total.bandPriceSum[band] / total.bandCount[band]));
+        }
+        aggregates.setQuantityBands(bands);
+        return aggregates;
+    }
+
+    private static class Partial {
+        long count;
+        long totalQuantity;
+        double stockValue;
+        double priceSum;
+        double minPrice = Double.POSITIVE_INFINITY;
+        double maxPrice = Double.NEGATIVE_INFINITY;
+        long lowStock;
+        final long[] bandCount;
+        final double[] bandPriceSum;
+
+        Partial(int bands) {
+            this.bandCount = new long[bands];
+            this.bandPriceSum = new double[bands];
+        }
+
+        Partial merge(Partial other) {
+            Partial merged = new Partial(bandCount.length);
+            merged.count = count + other.count;
+            merged.totalQuantity = totalQuantity + other.totalQuantity;
+            merged.stockValue = stockValue + other.stockValue;
+            merged.priceSum = priceSum + other.priceSum;
+            merged.minPrice = Math.min(minPrice, other.minPrice);
+            merged.maxPrice = Math.max(maxPrice, other.maxPrice);
+            merged.lowStock = lowStock + other.lowStock;
+            for (int i = 0; i < bandCount.length; i++) {
+                merged.bandCount[i] = bandCount[i] + other.bandCount[i];
+                merged.bandPriceSum[i] = bandPriceSum[i] + other.bandPriceSum[i];
+            }
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.model.Product;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufMapper;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchema;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Кодеки продуктов для всех {@link ProductFormat}. Smile и CBOR - те же модели Jackson
+ * в бинарной кодировке; для protobuf схема строится по {@link Product} и обертке
+ * {@link ProductList} (корнем сообщения не может быть массив).
+ */
+@Component
+public class ProductCodecs {
+
+    /**
+     * Корневое protobuf-сообщение для списка продуктов.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ProductList {
+        private List<Product> items;
+    }
+
+    private final Map<ProductFormat, ObjectWriter> writers = new EnumMap<>(ProductFormat.class);
+    private final Map<ProductFormat, ObjectMapper> mappers = new EnumMap<>(ProductFormat.class);
+    private final ProtobufSchema productSchema;
+    private final ProtobufSchema listSchema;
+
+    public ProductCodecs(ObjectMapper objectMapper) {
+        ProtobufMapper protobuf = new ProtobufMapper();
+        try {
+            this.productSchema = protobuf.generateSchemaFor(Product.class);
+            this.listSchema = protobuf.generateSchemaFor(ProductList.class);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Could not build protobuf schema for products", ex);
+        }
+        mappers.put(ProductFormat.JSON, objectMapper);
+        mappers.put(ProductFormat.SMILE, new SmileMapper());
+        mappers.put(ProductFormat.CBOR, new CBORMapper());
+        mappers.put(ProductFormat.PROTOBUF, protobuf);
+        // Writer создается один раз: сериализаторы типов кешируются внутри него
+        mappers.forEach((format, mapper) -> writers.put(format, mapper.writer()));
+    }
+
+    /**
+     * Выбор формата по заголовку Accept с учетом q-факторов. Пустой заголовок и *&#47;* - JSON.
+     *
+     * @throws ResponseStatusException 406, если ни один формат не подходит
+     */
+    public ProductFormat negotiate(String accept, boolean schemaBoundAllowed) {
+        if (accept == null || accept.isBlank()) {
+            return ProductFormat.JSON;
+        }
+        List<MediaType> requested;
+        try {
+            requested = MediaType.parseMediaTypes(accept);
+        } catch (IllegalArgumentException ex) {
+            return ProductFormat.JSON;
+        }
+        // Сортировка устойчивая: при равном q остается порядок по специфичности
+        MimeTypeUtils.sortBySpecificity(requested);
+        requested.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType mediaType : requested) {
+            if (mediaType.getQualityValue() <= 0) {
+                continue;
+            }
+            for (ProductFormat format : ProductFormat.values()) {
+                if (format.isSchemaBound() && !schemaBoundAllowed) {
+                    continue;
+                }
+                if (mediaType.isCompatibleWith(format.getMediaType())) {
+                    return format;
+                }
+            }
+        }
+        throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, "Unsupported Accept: " + accept);
+    }
+
+    /**
+     * Кодирует продукт, список продуктов или (кроме protobuf) любую модель ответа.
+     */
+    public byte[] encode(ProductFormat format, Object value) {
+        try {
+            if (format == ProductFormat.PROTOBUF) {
+                if (value instanceof Product) {
+                    return writers.get(format).with(productSchema).writeValueAsBytes(value);
+                }
+                return writers.get(format).with(listSchema).writeValueAsBytes(new ProductList(asProducts(value)));
+            }
+            return writers.get(format).writeValueAsBytes(value);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public <T> T decode(ProductFormat format, byte[] bytes, JavaType type) throws IOException {
+        ObjectMapper mapper = mappers.get(format);
+        if (format == ProductFormat.PROTOBUF) {
+            if (type.getRawClass() == Product.class) {
+                return mapper.readerFor(type).with(productSchema).readValue(bytes);
+            }
+            ProductList list = mapper.readerFor(ProductList.class).with(listSchema).readValue(bytes);
+            @SuppressWarnings("unchecked")
+            T items = (T) (list.getItems() == null ? List.of() : list.getItems());
+            return items;
+        }
+        ObjectReader reader = mapper.readerFor(type);
+        return reader.readValue(bytes);
+    }
+
+    public ObjectMapper mapper(ProductFormat format) {
+        return mappers.get(format);
+    }
+
+    /**
+     * Текст .proto для клиентов, которые генерируют классы из схемы.
+     */
+    public String protoSchema() {
+        return listSchema.getSource().toString();
+    }
+
+    private static List<Product> asProducts(Object value) {
+        if (value instanceof List<?> list && list.stream().allMatch(Product.class::isInstance)) {
+            @SuppressWarnings("unchecked")
+            List<Product> products = (List<Product>) list;
+            return products;
+        }
+        throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE,
+                "Protobuf encodes only products and product lists");
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.cloud_spring_load_zip.service;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Форматы тела запросов и ответов API продуктов. JSON - по умолчанию, остальные -
+ * компактные бинарные кодировки для межсервисных вызовов.
+ */
+public enum ProductFormat {
+    JSON(MediaType.APPLICATION_JSON),
+    SMILE(MediaType.parseMediaType("application/x-jackson-smile")),
+    CBOR(MediaType.APPLICATION_CBOR),
+    PROTOBUF(MediaType.parseMediaType("application/x-protobuf"));
+
+    private final MediaType mediaType;
+
+    ProductFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Protobuf описывает только продукт и список продуктов; группировки, страницы
+     * и агрегаты в нем не кодируются.
+     */
+    public boolean isSchemaBound() {
+        return this == PROTOBUF;
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.model.Product;
+import com.example.cloud_spring_load_zip.model.ProductPage;
+import com.example.cloud_spring_load_zip.model.ProductQuery;
+import com.example.cloud_spring_load_zip.repository.ProductIndex;
+import com.example.cloud_spring_load_zip.repository.ProductIndex.Row;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Диапазонные запросы и top-N по индексам {@link ProductIndex}.
+ * <p>
+ * Планировщик выбирает самый селективный из ограниченных диапазонов (цена или количество):
+ * оба диапазона обходятся параллельно, пока один не закончится, так что оценка стоит
+ * не больше меньшего из них. Дальше два пути:
+ * <ul>
+ *     <li>ordered - обход индекса поля сортировки по порядку с остановкой, как только
+ *     страница заполнена (top-N без сортировки);</li>
+ *     <li>heap - обход выбранного диапазона с остаточными фильтрами и ограниченной кучей
+ *     размером offset + size.</li>
+ * </ul>
+ */
+@Service
+public class ProductQueryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductQueryService.class);
+
+    public static final Set<String> SORT_FIELDS = Set.of("price", "quantity", "id", "name");
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private final ProductIndex index;
+
+    public ProductQueryService(ProductIndex index) {
+        this.index = index;
+    }
+
+    public ProductPage query(ProductQuery query) {
+        String sort = query.getSort() == null ? "price" : query.getSort();
+        if (!SORT_FIELDS.contains(sort)) {
+            throw new IllegalArgumentException("Unknown sort field: " + sort);
+        }
+        int size = Math.max(1, Math.min(query.getSize(), MAX_PAGE_SIZE));
+        int page = Math.max(0, query.getPage());
+        long offset = (long) page * size;
+
+        if (isEmptyRange(query)) {
+            return new ProductPage(List.of(), 0L, false, page, size, "empty-range");
+        }
+
+        return index.read(view -> {
+            NavigableSet<Row> priceRange = priceRange(view.byPrice(), query);
+            NavigableSet<Row> quantityRange = quantityRange(view.byQuantity(), query);
+            boolean priceBounded = query.getMinPrice() != null || query.getMaxPrice() != null;
+            boolean quantityBounded = query.getMinQuantity() != null || query.getMaxQuantity() != null;
+
+            boolean orderedSort = "price".equals(sort) || "quantity".equals(sort);
+            long needed = offset + size;
+
+            // Ведущий диапазон - самый узкий из ограниченных; без ограничений - весь индекс.
+            // -1 - размер не считался: он не влияет на выбор плана
+            String driving = "price";
+            long drivingRows = view.size();
+            if (priceBounded && quantityBounded) {
+                long[] counts = race(priceRange, quantityRange);
+                boolean priceWins = counts[0] <= counts[1];
+                driving = priceWins ? "price" : "quantity";
+                drivingRows = Math.min(counts[0], counts[1]);
+            } else if (priceBounded || quantityBounded) {
+                driving = priceBounded ? "price" : "quantity";
+                drivingRows = -1;
+                if (orderedSort && !sort.equals(driving)) {
+                    // Обход по порядку выгоднее, когда drivingRows^2 > needed * N - дальше порога не считаем
+                    long cutoff = (long) Math.sqrt((double) needed * view.size()) + 1;
+                    drivingRows = count(priceBounded ? priceRange : quantityRange, cutoff);
+                }
+            }
+
+            Predicate<Row> filter = filter(query);
+            Comparator<Row> order = comparator(sort, query.isDescending());
+
+            if (orderedSort) {
+                // Обход по порядку сортировки: при независимых фильтрах ожидается
+                // needed * N / drivingRows строк до заполнения страницы
+                boolean sortIsDriving = sort.equals(driving);
+                double orderedCost = sortIsDriving
+                        ? needed
+                        : (double) needed * view.size() / Math.max(1, drivingRows);
+                if (sortIsDriving || orderedCost < drivingRows) {
+                    NavigableSet<Row> range = "price".equals(sort) ? priceRange : quantityRange;
+                    NavigableSet<Row> ordered = query.isDescending() ? range.descendingSet() : range;
+                    return ordered(ordered, filter, offset, size, page, sort + "-index ordered");
+                }
+            }
+
+            NavigableSet<Row> range = "price".equals(driving) ? priceRange : quantityRange;
+            return heap(range, filter, order, offset, size, page, drivingRows < 0
+                    ? driving + "-index heap"
+                    : driving + "-index heap, " + drivingRows + " candidates");
+        });
+    }
+
+    private static boolean isEmptyRange(ProductQuery query) {
+        return (query.getMinPrice() != null && query.getMaxPrice() != null
+                && query.getMinPrice() > query.getMaxPrice())
+                || (query.getMinQuantity() != null && query.getMaxQuantity() != null
+                && query.getMinQuantity() > query.getMaxQuantity());
+    }
+
+    private static NavigableSet<Row> priceRange(NavigableSet<Row> byPrice, ProductQuery query) {
+        if (query.getMinPrice() == null && query.getMaxPrice() == null) {
+            return byPrice;
+        }
+        double from = query.getMinPrice() == null ? Double.NEGATIVE_INFINITY : query.getMinPrice();
+        double to = query.getMaxPrice() == null ? Double.POSITIVE_INFINITY : query.getMaxPrice();
+        return byPrice.subSet(ProductIndex.bound(from, 0, true), true, ProductIndex.bound(to, 0, false), true);
+    }
+
+    private static NavigableSet<Row> quantityRange(NavigableSet<Row> byQuantity, ProductQuery query) {
+        if (query.getMinQuantity() == null && query.getMaxQuantity() == null) {
+            return byQuantity;
+        }
+        int from = query.getMinQuantity() == null ? Integer.MIN_VALUE : query.getMinQuantity();
+        int to = query.getMaxQuantity() == null ? Integer.MAX_VALUE : query.getMaxQuantity();
+        return byQuantity.subSet(ProductIndex.bound(0, from, true), true, ProductIndex.bound(0, to, false), true);
+    }
+
+    // Параллельный обход двух диапазонов до конца меньшего; для большего возвращается нижняя оценка
+    private static long[] race(NavigableSet<Row> first, NavigableSet<Row> second) {
+        Iterator<Row> a = first.iterator();
+        Iterator<Row> b = second.iterator();
+        long countA = 0;
+        long countB = 0;
+        while (a.hasNext() && b.hasNext()) {
+            a.next();
+            b.next();
+            countA++;
+            countB++;
+        }
+        // Ничья на конце: второй мог закончиться одновременно
+        if (a.hasNext()) {
+            countA++;
+        } else if (b.hasNext()) {
+            countB++;
+        }
+        return new long[]{countA, countB};
+    }
+
+    // Размер диапазона, но не больше limit
+    private static long count(NavigableSet<Row> range, long limit) {
+        long count = 0;
+        for (Iterator<Row> it = range.iterator(); count < limit && it.hasNext(); it.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static Predicate<Row> filter(ProductQuery query) {
+        double minPrice = query.getMinPrice() == null ? Double.NEGATIVE_INFINITY : query.getMinPrice();
+        double maxPrice = query.getMaxPrice() == null ? Double.POSITIVE_INFINITY : query.getMaxPrice();
+        int minQuantity = query.getMinQuantity() == null ? Integer.MIN_VALUE : query.getMinQuantity();
+        int maxQuantity = query.getMaxQuantity() == null ? Integer.MAX_VALUE : query.getMaxQuantity();
+        String prefix = query.getName();
+        boolean byName = prefix != null && !prefix.isEmpty();
+        return row -> row.getPrice() >= minPrice && row.getPrice() <= maxPrice
+                && row.getQuantity() >= minQuantity && row.getQuantity() <= maxQuantity
+                && (!byName || (row.getName() != null && row.getName().startsWith(prefix)));
+    }
+
+    private static Comparator<Row> comparator(String sort, boolean descending) {
+        Comparator<Row> comparator;
+        switch (sort) {
+            case "quantity":
+                comparator = ProductIndex.BY_QUANTITY;
+                break;
+            case "id":
+                comparator = Comparator.comparingInt(Row::getId).thenComparingLong(Row::getSeq);
+                break;
+            case "name":
+                comparator = Comparator.comparing(Row::getName, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                        .thenComparingLong(Row::getSeq);
+                break;
+            default:
+                comparator = ProductIndex.BY_PRICE;
+        }
+        return descending ? comparator.reversed() : comparator;
+    }
+
+    private static ProductPage ordered(NavigableSet<Row> rows, Predicate<Row> filter,
+                                       long offset, int size, int page, String plan) {
+        List<Product> items = new ArrayList<>(size);
+        long matched = 0;
+        for (Row row : rows) {
+            if (!filter.test(row)) {
+                continue;
+            }
+            if (matched >= offset + size) {
+                // Следующая страница не пуста - дальше не идем
+                logger.debug("Product query plan: {}, stopped after {} matches", plan, matched);
+                return new ProductPage(items, null, true, page, size, plan);
+            }
+            if (matched >= offset) {
+                items.add(row.toProduct());
+            }
+            matched++;
+        }
+        logger.debug("Product query plan: {}, {} matches", plan, matched);
+        return new ProductPage(items, matched, false, page, size, plan);
+    }
+
+    private static ProductPage heap(NavigableSet<Row> rows, Predicate<Row> filter, Comparator<Row> order,
+                                    long offset, int size, int page, String plan) {
+        long needed = offset + size;
+        // В вершине кучи худшая из лучших needed строк
+        PriorityQueue<Row> top = new PriorityQueue<>(order.reversed());
+        long matched = 0;
+        for (Row row : rows) {
+            if (!filter.test(row)) {
+                continue;
+            }
+            matched++;
+            if (top.size() < needed) {
+                top.add(row);
+            } else if (order.compare(row, top.peek()) < 0) {
+                top.poll();
+                top.add(row);
+            }
+        }
+        List<Row> best = new ArrayList<>(top);
+        best.sort(order);
+        List<Product> items = new ArrayList<>(size);
+        for (int i = (int) Math.min(offset, best.size()); i < best.size(); i++) {
+            items.add(best.get(i).toProduct());
+        }
+        logger.debug("Product query plan: {}, {} matches", plan, matched);
+        return new ProductPage(items, matched, matched > needed, page, size, plan);
+    }
+}
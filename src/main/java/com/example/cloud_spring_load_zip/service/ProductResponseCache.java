@@ -0,0 +1,151 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.repository.ProductStorageProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Кеш готовых ответов для чтения продуктов. Тело хранится уже сериализованным
+ * отдельно для каждого {@link ProductFormat},
+ * ETag строится только из версии, поэтому If-None-Match проверяется без обращения
+ * к репозиторию и к кешу.
+ * <p>
+ * Версии: одна общая для листингов и группировок и по одной на каждый id. Запись
+ * увеличивает общую версию и версии затронутых id, так что чтение по другим id
+ * продолжает попадать в кеш. Версия берется до чтения данных: если запись случилась
+ * во время чтения, тело сохранится под старой версией и будет пересчитано.
+ */
+@Component
+public class ProductResponseCache {
+
+    private static final String LISTING = "list";
+    private static final String PRODUCT = "id";
+
+    // Версии живут в памяти - префикс запуска не дает ETag совпасть после рестарта
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong listingVersion = new AtomicLong();
+    private final Map<Integer, AtomicLong> productVersions = new ConcurrentHashMap<>();
+
+    private final ProductCodecs codecs;
+    private final Cache<String, Encoded> bodies;
+    private final Counter notModifiedCounter;
+
+    @Getter
+    public static final class Encoded {
+        private final long version;
+        private final String etag;
+        private final byte[] bytes;
+
+        Encoded(long version, String etag, byte[] bytes) {
+            this.version = version;
+            this.etag = etag;
+            this.bytes = bytes;
+        }
+    }
+
+    public ProductResponseCache(ProductCodecs codecs, ProductStorageProperties properties, MeterRegistry registry) {
+        this.codecs = codecs;
+        this.bodies = Caffeine.newBuilder()
+                .maximumSize(properties.getCache().getResponseMaximumSize())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, bodies, "products.responses");
+        this.notModifiedCounter = Counter.builder("products.responses.not.modified")
+                .description("Product reads answered with 304 Not Modified")
+                .register(registry);
+    }
+
+    /**
+     * Листинг или группировка ("all", "byName", ...).
+     */
+    public String listingEtag(String view, ProductFormat format) {
+        return etag(LISTING + "-" + view, listingVersion.get(), format);
+    }
+
+    public Encoded listing(String view, ProductFormat format, Supplier<Object> loader) {
+        return encoded(LISTING + "-" + view, format, listingVersion.get(), loader);
+    }
+
+    public String productEtag(int id, ProductFormat format) {
+        return etag(PRODUCT + "-" + id, currentVersion(id), format);
+    }
+
+    public Encoded product(int id, ProductFormat format, Supplier<Object> loader) {
+        return encoded(PRODUCT + "-" + id, format, currentVersion(id), loader);
+    }
+
+    /**
+     * Вызывается после успешной записи. update может затронуть два id: измененный и добавленный.
+     */
+    public void invalidate(int... ids) {
+        listingVersion.incrementAndGet();
+        for (int id : ids) {
+            productVersion(id).incrementAndGet();
+            for (ProductFormat format : ProductFormat.values()) {
+                bodies.invalidate(key(PRODUCT + "-" + id, format));
+            }
+        }
+    }
+
+    /**
+     * Разбор If-None-Match: список через запятую, слабые теги (W/) и "*".
+     */
+    public boolean notModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                notModifiedCounter.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Encoded encoded(String resource, ProductFormat format, long version, Supplier<Object> loader) {
+        String key = key(resource, format);
+        Encoded cached = bodies.getIfPresent(key);
+        if (cached != null && cached.version == version) {
+            return cached;
+        }
+        byte[] bytes = codecs.encode(format, loader.get());
+        Encoded fresh = new Encoded(version, etag(resource, version, format), bytes);
+        // Параллельное чтение могло успеть положить более новую версию - ее не затираем
+        bodies.asMap().merge(key, fresh, (old, neu) -> old.version >= neu.version ? old : neu);
+        return fresh;
+    }
+
+    // Чтение несуществующих id не должно разрастать карту версий
+    private long currentVersion(int id) {
+        AtomicLong version = productVersions.get(id);
+        return version == null ? 0 : version.get();
+    }
+
+    private AtomicLong productVersion(int id) {
+        return productVersions.computeIfAbsent(id, k -> new AtomicLong());
+    }
+
+    private static String key(String resource, ProductFormat format) {
+        return resource + ":" + format;
+    }
+
+    // Разные кодировки одного ресурса - разные представления, и ETag у них разный
+    private String etag(String resource, long version, ProductFormat format) {
+        return "\"" + epoch + "-" + resource + "-" + version + "-" + format.name().toLowerCase() + "\"";
+    }
+}
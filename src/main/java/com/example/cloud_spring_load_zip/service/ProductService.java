@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -17,6 +18,8 @@ public class ProductService {
     private static final Logger logger = LoggerFactory.getLogger(ProductService.class);
     @Autowired
     private ProductRepository repository;
+    @Autowired
+    private ProductResponseCache responseCache;
 
     public Optional<Product> saveProduct(Product product) {
         logger.debug("Service working on adding product {}", product);
@@ -36,7 +39,32 @@ public class ProductService {
 //            logger.error("Product id is null");
 //            return Optional.empty();
 //        }
-        return Optional.ofNullable(repository.save(product));
+        Product saved = repository.save(product);
+        responseCache.invalidate(product.getId());
+        return Optional.ofNullable(saved);
+    }
+
+    /**
+     * Сохраняет список целиком: если хотя бы один продукт некорректен, не сохраняется ничего.
+     */
+    public Optional<List<Product>> saveProducts(List<Product> products) {
+        logger.debug("Service working on adding {} products", products.size());
+        for (Product product : products) {
+            if (product == null || !isValid(product)) {
+                logger.error("Bulk request contains invalid product {}", product);
+                return Optional.empty();
+            }
+        }
+        List<Product> saved = new ArrayList<>(products.size());
+        for (Product product : products) {
+            saved.add(repository.save(product));
+            responseCache.invalidate(product.getId());
+        }
+        return Optional.of(saved);
+    }
+
+    private static boolean isValid(Product product) {
+        return product.getName() != null && product.getPrice() > 0 && product.getQuantity() >= 0;
     }
 
     public Optional<List<Product>> getProducts() {
@@ -51,6 +79,7 @@ public class ProductService {
 
     public boolean deleteProduct(int id) {
         String message = repository.delete(id);
+        responseCache.invalidate(id);
         logger.debug("Service deleting product {}", id);
         return message.equals("Product with id " + id + " deleted");
     }
@@ -71,7 +100,19 @@ public class ProductService {
             return Optional.empty();
         }
 
-        return Optional.ofNullable(repository.update(id, product));
+        Product updated = repository.update(id, product);
+        responseCache.invalidate(id, product.getId());
+        return Optional.ofNullable(updated);
+    }
+
+    /**
+     * Меняет только ссылку на картинку; пусто, если продукта с таким id нет.
+     */
+    public Optional<Product> updateImage(int id, String imageURI) {
+        logger.debug("Service updating image of product {} to {}", id, imageURI);
+        Product updated = repository.updateImage(id, imageURI);
+        responseCache.invalidate(id);
+        return Optional.ofNullable(updated);
     }
 
     public Map<String, List<Product>> getProductsByName() {
@@ -0,0 +1,176 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.storage.LocalStorageBackend;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import com.example.cloud_spring_load_zip.storage.StorageLayout;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фоновый перенос файлов из плоской директории загрузок в шардированную раскладку.
+ * Работает пачками с паузами, чтобы не забирать весь диск у обычных запросов.
+ * Пока перенос не закончен, чтение идет через {@link StorageLayout#locate(String)},
+ * поэтому URL файлов остаются рабочими.
+ */
+@Service
+public class StorageLayoutMigrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageLayoutMigrator.class);
+
+    private final StorageLayout layout;
+    private final StorageBackend backend;
+    private final FileCatalog fileCatalog;
+    private final AppFileProperties.Layout properties;
+    private final ExecutorService executor;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Counter migratedCounter;
+    private volatile String lastError;
+
+    public StorageLayoutMigrator(StorageLayout layout,
+                                 StorageBackend backend,
+                                 FileCatalog fileCatalog,
+                                 AppFileProperties appFileProperties,
+                                 MeterRegistry registry) {
+        this.layout = layout;
+        this.backend = backend;
+        this.fileCatalog = fileCatalog;
+        this.properties = appFileProperties.getStorage().getLayout();
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "storage-layout-migrator");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.migratedCounter = Counter.builder("files.layout.migrated")
+                .description("Entries moved from the flat upload directory into shards")
+                .register(registry);
+        Gauge.builder("files.layout.pending", pending, AtomicLong::get)
+                .description("Entries still waiting to be moved into shards")
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (properties.isMigrateOnStartup()) {
+            start();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Запускает перенос в фоне. Возвращает false, если перенос уже идет, раскладка плоская
+     * или файлы хранятся не на локальном диске.
+     */
+    public boolean start() {
+        if (!(backend instanceof LocalStorageBackend) || !layout.isSharded() || !running.compareAndSet(false, true)) {
+            return false;
+        }
+        executor.submit(() -> {
+            try {
+                migrate();
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("sharded", layout.isSharded());
+        status.put("running", running.get());
+        status.put("pending", pending.get());
+        status.put("migrated", (long) migratedCounter.count());
+        status.put("failed", failed.get());
+        if (lastError != null) {
+            status.put("lastError", lastError);
+        }
+        return status;
+    }
+
+    void migrate() {
+        List<Path> legacy;
+        try {
+            legacy = layout.legacyEntries();
+        } catch (IOException ex) {
+            lastError = ex.getMessage();
+            logger.error("Could not list legacy upload entries", ex);
+            return;
+        }
+        pending.set(legacy.size());
+        logger.info("Moving {} legacy upload entries into shards", legacy.size());
+
+        int inBatch = 0;
+        for (Path source : legacy) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            String name = layout.logicalName(source);
+            try {
+                moveIntoShard(source, name);
+                migratedCounter.increment();
+                fileCatalog.refresh(name);
+            } catch (IOException ex) {
+                failed.incrementAndGet();
+                lastError = name + ": " + ex.getMessage();
+                logger.warn("Could not move {} into shard", source, ex);
+            }
+            pending.decrementAndGet();
+
+            // Пауза между пачками, чтобы не создавать длинную очередь на диск
+            if (++inBatch >= properties.getMigrationBatchSize()) {
+                inBatch = 0;
+                try {
+                    Thread.sleep(properties.getMigrationPauseMs());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        logger.info("Legacy upload entries moved, {} failures", failed.get());
+    }
+
+    private void moveIntoShard(Path source, String name) throws IOException {
+        Path target = layout.prepareWrite(name);
+        if (Files.exists(target)) {
+            // Более новая версия уже записана в шард - плоская копия устарела
+            if (Files.isDirectory(source)) {
+                FileSystemUtils.deleteRecursively(source);
+            } else {
+                Files.deleteIfExists(source);
+            }
+            return;
+        }
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.exception.FileValidationException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Проверка загрузок по app.file.allowed-extensions и app.file.max-size-mb.
+ * Проверка встроена в поток копирования: сигнатура (magic bytes) смотрится по первым байтам,
+ * размер считается по мере чтения, SHA-256 обновляется на тех же буферах - без второго чтения
+ * и без буферизации всего файла.
+ */
+@Component
+public class UploadValidator {
+
+    static final int SNIFF_SIZE = 512;
+
+    private static final byte[] ZIP = {'P', 'K', 3, 4};
+    private static final byte[] OLE2 = {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1};
+
+    // Ожидаемые сигнатуры по расширению; расширения без записи (кроме текстовых) не сниффятся
+    private static final Map<String, List<byte[]>> SIGNATURES = Map.of(
+            ".pdf", List.of("%PDF-".getBytes(StandardCharsets.US_ASCII)),
+            ".png", List.of(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'}),
+            ".jpg", List.of(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}),
+            ".jpeg", List.of(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}),
+            ".gif", List.of("GIF87a".getBytes(StandardCharsets.US_ASCII), "GIF89a".getBytes(StandardCharsets.US_ASCII)),
+            ".doc", List.of(OLE2),
+            ".docx", List.of(ZIP),
+            ".zip", List.of(ZIP, new byte[]{'P', 'K', 5, 6})
+    );
+
+    private static final Set<String> TEXT_EXTENSIONS = Set.of(".txt", ".csv", ".json", ".xml", ".md", ".log");
+
+    private final Set<String> allowedExtensions;
+    private final long maxSizeBytes;
+    private final MeterRegistry registry;
+
+    public UploadValidator(AppFileProperties appFileProperties, MeterRegistry registry) {
+        this.allowedExtensions = appFileProperties.getAllowedExtensions().stream()
+                .map(ext -> ext.startsWith(".") ? ext : "." + ext)
+                .map(ext -> ext.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+        this.maxSizeBytes = appFileProperties.getMaxSizeMb() > 0 ? appFileProperties.getMaxSizeMb() * 1024L * 1024L : -1;
+        this.registry = registry;
+    }
+
+    /**
+     * Дешевые проверки до чтения тела: расширение и заявленный размер.
+     */
+    public void checkHeader(String fileName, long declaredSize) {
+        String extension = extensionOf(fileName);
+        if (!allowedExtensions.isEmpty() && !allowedExtensions.contains(extension)) {
+            throw reject("extension", "Недопустимый тип файла: " + fileName, HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+        }
+        if (maxSizeBytes > 0 && declaredSize > maxSizeBytes) {
+            throw tooLarge(fileName);
+        }
+    }
+
+    /**
+     * Оборачивает поток загрузки. Исключение {@link FileValidationException} бросается из read(),
+     * поэтому хранилище прерывает запись и не публикует файл.
+     */
+    public ValidatingInputStream wrap(InputStream in, String fileName) {
+        return new ValidatingInputStream(in, fileName);
+    }
+
+    static String extensionOf(String fileName) {
+        String base = fileName.substring(fileName.lastIndexOf('/') + 1);
+        int dot = base.lastIndexOf('.');
+        return dot <= 0 ? "" : base.substring(dot).toLowerCase(Locale.ROOT);
+    }
+
+    private void sniff(String fileName, byte[] header, int length) {
+        String extension = extensionOf(fileName);
+        List<byte[]> expected = SIGNATURES.get(extension);
+        if (expected != null) {
+            if (expected.stream().noneMatch(signature -> startsWith(header, length, signature))) {
+                throw reject("signature", "Содержимое файла не соответствует расширению: " + fileName, HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+            }
+        } else if (TEXT_EXTENSIONS.contains(extension) && looksBinary(header, length)) {
+            throw reject("signature", "Файл не является текстовым: " + fileName, HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+        }
+    }
+
+    private static boolean startsWith(byte[] header, int length, byte[] signature) {
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (header[i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean looksBinary(byte[] header, int length) {
+        // UTF-16 с BOM допускает нулевые байты
+        if (length >= 2 && ((header[0] == (byte) 0xFF && header[1] == (byte) 0xFE)
+                || (header[0] == (byte) 0xFE && header[1] == (byte) 0xFF))) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (header[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private FileValidationException tooLarge(String fileName) {
+        return reject("size", "Размер файла превышает " + (maxSizeBytes / (1024 * 1024)) + " МБ: " + fileName,
+                HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    private FileValidationException reject(String reason, String message, HttpStatus status) {
+        Counter.builder("files.upload.rejected")
+                .description("Uploads rejected by content validation")
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+        return new FileValidationException(message, status);
+    }
+
+    /**
+     * Поток, который проверяет сигнатуру по первым {@value #SNIFF_SIZE} байтам, считает размер
+     * и SHA-256 по мере чтения.
+     */
+    public class ValidatingInputStream extends FilterInputStream {
+        private final String fileName;
+        private final MessageDigest digest;
+        private byte[] header;
+        private int headerPos;
+        private int headerLength;
+        private long count;
+        private String expectedSha256;
+        private long expectedLength = -1;
+        private String sha256;
+
+        ValidatingInputStream(InputStream in, String fileName) {
+            super(in);
+            this.fileName = fileName;
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (header == null) {
+                header = new byte[SNIFF_SIZE];
+                headerLength = in.readNBytes(header, 0, SNIFF_SIZE);
+                sniff(fileName, header, headerLength);
+            }
+            int n;
+            if (headerPos < headerLength) {
+                n = Math.min(len, headerLength - headerPos);
+                System.arraycopy(header, headerPos, b, off, n);
+                headerPos += n;
+            } else {
+                n = in.read(b, off, len);
+                if (n < 0) {
+                    verify();
+                    return -1;
+                }
+            }
+            count += n;
+            if (maxSizeBytes > 0 && count > maxSizeBytes) {
+                throw tooLarge(fileName);
+            }
+            digest.update(b, off, n);
+            // Хранилище может не дочитывать до конца потока, если знает длину
+            if (count == expectedLength) {
+                verify();
+            }
+            return n;
+        }
+
+        /**
+         * Содержимое должно начинаться с отпечатка sha256Prefix (hex) и иметь длину length;
+         * иначе последний read() бросает исключение, и хранилище не публикует файл.
+         */
+        public ValidatingInputStream expect(String sha256Prefix, long length) {
+            this.expectedSha256 = sha256Prefix;
+            this.expectedLength = length;
+            return this;
+        }
+
+        private void verify() {
+            if (expectedSha256 != null && (count != expectedLength || !getSha256().startsWith(expectedSha256))) {
+                throw reject("digest", "Содержимое не совпадает с адресом " + fileName, HttpStatus.CONFLICT);
+            }
+        }
+
+        @Override
+        public long skip(long n) {
+            // Пропуск байт сломал бы контрольную сумму
+            return 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public String getSha256() {
+            if (sha256 == null) {
+                sha256 = HexFormat.of().formatHex(digest.digest());
+            }
+            return sha256;
+        }
+    }
+}
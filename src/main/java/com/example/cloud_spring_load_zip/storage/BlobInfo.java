@@ -0,0 +1,17 @@
+package com.example.cloud_spring_load_zip.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BlobInfo {
+    // Логическое имя (ключ) без префиксов шардов или бакета
+    private String name;
+    private long size;
+    private long lastModified;
+    // Каталог (распакованный архив) или общий префикс ключей в S3
+    private boolean directory;
+}
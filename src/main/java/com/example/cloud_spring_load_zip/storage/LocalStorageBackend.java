@@ -0,0 +1,357 @@
+package com.example.cloud_spring_load_zip.storage;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище на локальном диске с шардированной раскладкой {@link StorageLayout}.
+ * Запись идет во временный файл в том же каталоге и публикуется атомарным переименованием,
+ * поэтому читатели никогда не видят недописанный файл.
+ */
+public class LocalStorageBackend implements StorageBackend {
+
+    private static final String MULTIPART_DIR = ".multipart";
+
+    private final StorageLayout layout;
+    private final Path multipartRoot;
+
+    public LocalStorageBackend(StorageLayout layout) throws IOException {
+        this.layout = layout;
+        this.multipartRoot = layout.getRoot().resolve(MULTIPART_DIR);
+        Files.createDirectories(layout.getRoot());
+    }
+
+    @Override
+    public String getType() {
+        return "local";
+    }
+
+    public StorageLayout getLayout() {
+        return layout;
+    }
+
+    @Override
+    public void put(String key, InputStream in, long length) throws IOException {
+        Path target = layout.prepareWrite(key);
+        Path temp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+        try {
+            Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            publish(temp, target, key);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public StorageOutputStream openOutput(String key) throws IOException {
+        Path target = layout.prepareWrite(key);
+        Path temp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+        OutputStream out = Files.newOutputStream(temp);
+        return new StorageOutputStream() {
+            private boolean closed;
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    out.close();
+                    publish(temp, target, key);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+
+            @Override
+            public void abort() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    out.close();
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return Files.newInputStream(layout.locate(key));
+    }
+
+    @Override
+    public InputStream getRange(String key, long offset, long length) throws IOException {
+        FileChannel channel = FileChannel.open(layout.locate(key), StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        return StorageStreams.limited(Channels.newInputStream(channel), length);
+    }
+
+    @Override
+    public Optional<BlobInfo> stat(String key) throws IOException {
+        return stat(key, layout.locate(key));
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        Path path = layout.locate(key);
+        boolean deleted = Files.isDirectory(path)
+                ? FileSystemUtils.deleteRecursively(path)
+                : Files.deleteIfExists(path);
+        layout.dropLegacyCopy(key);
+        return deleted;
+    }
+
+    @Override
+    public void list(String prefix, Consumer<BlobInfo> consumer) throws IOException {
+        int slash = prefix == null ? -1 : prefix.lastIndexOf('/');
+        if (slash >= 0) {
+            listDirectory(prefix.substring(0, slash), prefix.substring(slash + 1), consumer);
+            return;
+        }
+        // Один и тот же файл может лежать и в шарде, и в старой плоской директории - актуален шард
+        Map<String, BlobInfo> legacy = new HashMap<>();
+        Set<String> seen = new HashSet<>();
+        layout.walk(path -> {
+            String name = layout.logicalName(path);
+            if (prefix != null && !name.startsWith(prefix)) {
+                return;
+            }
+            try {
+                Optional<BlobInfo> info = stat(name, path);
+                if (info.isEmpty()) {
+                    return;
+                }
+                if (layout.isSharded() && path.getParent().equals(layout.getRoot())) {
+                    legacy.put(name, info.get());
+                } else if (seen.add(name)) {
+                    consumer.accept(info.get());
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        legacy.forEach((name, info) -> {
+            if (!seen.contains(name)) {
+                consumer.accept(info);
+            }
+        });
+    }
+
+    // Вложенный каталог целиком лежит в шарде своего верхнего каталога
+    private void listDirectory(String dir, String namePrefix, Consumer<BlobInfo> consumer) throws IOException {
+        Path parent = layout.locate(dir);
+        if (!Files.isDirectory(parent)) {
+            return;
+        }
+        try (Stream<Path> children = Files.list(parent)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                String name = child.getFileName().toString();
+                if (!layout.isInternalName(name) && name.startsWith(namePrefix)) {
+                    stat(dir + "/" + name, child).ifPresent(consumer);
+                }
+            }
+        }
+    }
+
+    @Override
+    public MultipartUpload startMultipart(String key) throws IOException {
+        layout.resolve(key);
+        String uploadId = UUID.randomUUID().toString();
+        Path partsDir = multipartRoot.resolve(uploadId);
+        Files.createDirectories(partsDir);
+        return new LocalMultipartUpload(key, uploadId, partsDir);
+    }
+
+    // Каталог распаковки публикуется одним переименованием; старая версия уходит во временное имя
+    @Override
+    public void rename(String from, String to) throws IOException {
+        Path source = layout.locate(from);
+        if (!Files.exists(source)) {
+            throw new NoSuchFileException(from);
+        }
+        Path target = layout.prepareWrite(to);
+        if (!Files.isDirectory(target)) {
+            publish(source, target, to);
+            return;
+        }
+        Path old = target.resolveSibling(".replaced-" + UUID.randomUUID());
+        move(target, old);
+        try {
+            move(source, target);
+        } catch (IOException | RuntimeException ex) {
+            // Новая версия не встала на место - возвращаем прежнюю, а не оставляем пустоту
+            try {
+                move(old, target);
+            } catch (IOException restoreEx) {
+                ex.addSuppressed(restoreEx);
+            }
+            throw ex;
+        }
+        FileSystemUtils.deleteRecursively(old);
+    }
+
+    // Каталог целиком лежит в одном шарде - обходим его на диске, а не через листинг корня
+    @Override
+    public void walk(String dir, Consumer<BlobInfo> consumer) throws IOException {
+        Path root = layout.locate(dir);
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                Path relative = root.relativize(path);
+                if (!Files.isRegularFile(path) || isInternal(relative)) {
+                    continue;
+                }
+                String key = dir + "/" + relative.toString().replace(path.getFileSystem().getSeparator(), "/");
+                stat(key, path).ifPresent(consumer);
+            }
+        }
+    }
+
+    private boolean isInternal(Path relative) {
+        for (Path segment : relative) {
+            if (layout.isInternalName(segment.toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        return Optional.of(layout.locate(key));
+    }
+
+    @Override
+    public Resource resource(String key) {
+        return new FileSystemResource(layout.locate(key));
+    }
+
+    private void publish(Path temp, Path target, String key) throws IOException {
+        move(temp, target);
+        layout.dropLegacyCopy(key);
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Optional<BlobInfo> stat(String key, Path path) throws IOException {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return Optional.of(new BlobInfo(key,
+                    attrs.isDirectory() ? 0 : attrs.size(),
+                    attrs.lastModifiedTime().toMillis(),
+                    attrs.isDirectory()));
+        } catch (NoSuchFileException ex) {
+            return Optional.empty();
+        }
+    }
+
+    private class LocalMultipartUpload implements MultipartUpload {
+        private final String key;
+        private final String uploadId;
+        private final Path partsDir;
+
+        LocalMultipartUpload(String key, String uploadId, Path partsDir) {
+            this.key = key;
+            this.uploadId = uploadId;
+            this.partsDir = partsDir;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public String getUploadId() {
+            return uploadId;
+        }
+
+        @Override
+        public void uploadPart(int partNumber, InputStream in, long length) throws IOException {
+            Files.copy(in, partsDir.resolve(partName(partNumber)), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        @Override
+        public void complete() throws IOException {
+            List<Path> parts;
+            try (Stream<Path> stream = Files.list(partsDir)) {
+                parts = stream.sorted().toList();
+            }
+            Path target = layout.prepareWrite(key);
+            Path temp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+            try {
+                // Склейка частей без копирования через heap
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    for (Path part : parts) {
+                        try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                            long position = 0;
+                            long size = in.size();
+                            while (position < size) {
+                                position += in.transferTo(position, size - position, out);
+                            }
+                        }
+                    }
+                }
+                publish(temp, target, key);
+            } finally {
+                Files.deleteIfExists(temp);
+                abort();
+            }
+        }
+
+        @Override
+        public void abort() throws IOException {
+            FileSystemUtils.deleteRecursively(partsDir);
+        }
+
+        private String partName(int partNumber) {
+            return String.format("part-%05d", partNumber);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.cloud_spring_load_zip.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Загрузка объекта по частям. Части можно отправлять параллельно и в любом порядке,
+ * объект становится видимым только после {@link #complete()}.
+ */
+public interface MultipartUpload {
+
+    String getKey();
+
+    String getUploadId();
+
+    /**
+     * @param partNumber номер части, начиная с 1
+     * @param in         содержимое части, поток не закрывается
+     * @param length     точная длина части
+     */
+    void uploadPart(int partNumber, InputStream in, long length) throws IOException;
+
+    void complete() throws IOException;
+
+    void abort() throws IOException;
+}
@@ -0,0 +1,594 @@
+package com.example.cloud_spring_load_zip.storage;
+
+import com.example.cloud_spring_load_zip.service.AppFileProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище в S3-совместимом сервисе (AWS S3, MinIO, Ceph RGW) через REST API с подписью SigV4.
+ * Используются path-style адреса: {endpoint}/{bucket}/{key}.
+ * Большие объекты и потоки неизвестной длины (архивы) отправляются multipart-загрузкой:
+ * части уходят параллельно на пуле transfer-потоков, в памяти держится не больше
+ * max-concurrency + 1 буферов размера part-size.
+ */
+public class S3StorageBackend implements StorageBackend {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3StorageBackend.class);
+
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    private static final String EMPTY_SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+    private static final DateTimeFormatter AMZ_DATE =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+    private static final int INITIAL_BUFFER = 64 * 1024;
+
+    private final HttpClient http;
+    private final URI endpoint;
+    private final String region;
+    private final String bucket;
+    private final String accessKey;
+    private final String secretKey;
+    private final String keyPrefix;
+    private final int partSize;
+    private final int maxConcurrency;
+    private final Duration timeout;
+    private final ExecutorService transferExecutor;
+
+    public S3StorageBackend(AppFileProperties.S3 properties) {
+        String url = properties.getEndpoint();
+        this.endpoint = URI.create(url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+        this.region = properties.getRegion();
+        this.bucket = properties.getBucket();
+        this.accessKey = properties.getAccessKey();
+        this.secretKey = properties.getSecretKey();
+        this.keyPrefix = properties.getKeyPrefix() == null ? "" : properties.getKeyPrefix();
+        this.partSize = (int) Math.min(properties.getPartSize().toBytes(), Integer.MAX_VALUE - 8);
+        this.maxConcurrency = Math.max(1, properties.getMaxConcurrency());
+        this.timeout = properties.getRequestTimeout();
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.transferExecutor = Executors.newFixedThreadPool(maxConcurrency, r -> {
+            Thread thread = new Thread(r, "s3-transfer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public String getType() {
+        return "s3";
+    }
+
+    @Override
+    public void put(String key, InputStream in, long length) throws IOException {
+        if (length >= 0 && length <= partSize) {
+            HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.fromPublisher(
+                    HttpRequest.BodyPublishers.ofInputStream(() -> StorageStreams.nonClosing(in)), length);
+            expectOk(send("PUT", key, Map.of(), Map.of(), body, UNSIGNED_PAYLOAD,
+                    HttpResponse.BodyHandlers.ofString()), "PUT", key);
+            return;
+        }
+        // Большой объект или неизвестная длина - параллельная multipart-загрузка
+        MultipartOutputStream out = new MultipartOutputStream(key);
+        try {
+            in.transferTo(out);
+        } catch (IOException | RuntimeException ex) {
+            // Ошибка чтения источника (в т.ч. отказ валидации) не должна публиковать недописанный объект
+            out.abort();
+            throw ex;
+        }
+        out.close();
+    }
+
+    @Override
+    public StorageOutputStream openOutput(String key) {
+        return new MultipartOutputStream(key);
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        HttpResponse<InputStream> response = send("GET", key, Map.of(), Map.of(),
+                HttpRequest.BodyPublishers.noBody(), EMPTY_SHA256, HttpResponse.BodyHandlers.ofInputStream());
+        return expectStream(response, "GET", key);
+    }
+
+    @Override
+    public InputStream getRange(String key, long offset, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        String range = "bytes=" + offset + "-" + (offset + length - 1);
+        HttpResponse<InputStream> response = send("GET", key, Map.of(), Map.of("Range", range),
+                HttpRequest.BodyPublishers.noBody(), EMPTY_SHA256, HttpResponse.BodyHandlers.ofInputStream());
+        InputStream body = expectStream(response, "GET", key);
+        if (response.statusCode() == 200) {
+            // Сервер проигнорировал Range - отрезаем нужный кусок сами
+            body.skipNBytes(offset);
+        }
+        return StorageStreams.limited(body, length);
+    }
+
+    @Override
+    public Optional<BlobInfo> stat(String key) throws IOException {
+        HttpResponse<Void> response = send("HEAD", key, Map.of(), Map.of(),
+                HttpRequest.BodyPublishers.noBody(), EMPTY_SHA256, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() == 200) {
+            long size = response.headers().firstValueAsLong("Content-Length").orElse(0);
+            long modified = response.headers().firstValue("Last-Modified")
+                    .map(value -> ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli())
+                    .orElse(0L);
+            return Optional.of(new BlobInfo(key, size, modified, false));
+        }
+        if (response.statusCode() != 404) {
+            throw new IOException("S3 HEAD " + key + " failed with status " + response.statusCode());
+        }
+        // Объекта нет - возможно, это "каталог" (общий префикс распакованного архива)
+        List<BlobInfo> children = new ArrayList<>();
+        listPage(key + "/", null, 1, children::add, null);
+        if (children.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new BlobInfo(key, 0, children.get(0).getLastModified(), true));
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        Optional<BlobInfo> info = stat(key);
+        if (info.isEmpty()) {
+            return false;
+        }
+        if (info.get().isDirectory()) {
+            List<String> keys = new ArrayList<>();
+            String token = null;
+            do {
+                token = listPage(key + "/", null, 1000, blob -> keys.add(blob.getName()), token);
+            } while (token != null);
+            for (String child : keys) {
+                deleteObject(child);
+            }
+        } else {
+            deleteObject(key);
+        }
+        return true;
+    }
+
+    @Override
+    public void list(String prefix, Consumer<BlobInfo> consumer) throws IOException {
+        String token = null;
+        do {
+            token = listPage(prefix == null ? "" : prefix, "/", 1000, consumer, token);
+        } while (token != null);
+    }
+
+    @Override
+    public MultipartUpload startMultipart(String key) throws IOException {
+        byte[] empty = new byte[0];
+        HttpResponse<String> response = send("POST", key, Map.of("uploads", ""), Map.of(),
+                HttpRequest.BodyPublishers.ofByteArray(empty), EMPTY_SHA256, HttpResponse.BodyHandlers.ofString());
+        expectOk(response, "POST uploads", key);
+        Document document = parseXml(response.body());
+        String uploadId = text(document.getDocumentElement(), "UploadId");
+        if (uploadId == null) {
+            throw new IOException("S3 did not return UploadId for " + key);
+        }
+        return new S3MultipartUpload(key, uploadId);
+    }
+
+    @Override
+    public void close() {
+        transferExecutor.shutdown();
+    }
+
+    private void deleteObject(String key) throws IOException {
+        HttpResponse<String> response = send("DELETE", key, Map.of(), Map.of(),
+                HttpRequest.BodyPublishers.noBody(), EMPTY_SHA256, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 404) {
+            expectOk(response, "DELETE", key);
+        }
+    }
+
+    /**
+     * Одна страница ListObjectsV2. Возвращает токен продолжения или null.
+     */
+    private String listPage(String prefix, String delimiter, int maxKeys, Consumer<BlobInfo> consumer,
+                            String continuationToken) throws IOException {
+        Map<String, String> query = new TreeMap<>();
+        query.put("list-type", "2");
+        query.put("prefix", keyPrefix + prefix);
+        query.put("max-keys", String.valueOf(maxKeys));
+        if (delimiter != null) {
+            query.put("delimiter", delimiter);
+        }
+        if (continuationToken != null) {
+            query.put("continuation-token", continuationToken);
+        }
+        HttpResponse<String> response = send("GET", null, query, Map.of(),
+                HttpRequest.BodyPublishers.noBody(), EMPTY_SHA256, HttpResponse.BodyHandlers.ofString());
+        expectOk(response, "LIST", prefix);
+
+        Element root = parseXml(response.body()).getDocumentElement();
+        NodeList contents = root.getElementsByTagName("Contents");
+        for (int i = 0; i < contents.getLength(); i++) {
+            Element item = (Element) contents.item(i);
+            String key = stripPrefix(text(item, "Key"));
+            String modified = text(item, "LastModified");
+            consumer.accept(new BlobInfo(key,
+                    Long.parseLong(Objects.requireNonNullElse(text(item, "Size"), "0")),
+                    modified == null ? 0 : Instant.parse(modified).toEpochMilli(),
+                    false));
+        }
+        NodeList prefixes = root.getElementsByTagName("CommonPrefixes");
+        for (int i = 0; i < prefixes.getLength(); i++) {
+            String dir = stripPrefix(text((Element) prefixes.item(i), "Prefix"));
+            consumer.accept(new BlobInfo(dir.endsWith("/") ? dir.substring(0, dir.length() - 1) : dir, 0, 0, true));
+        }
+        return "true".equals(text(root, "IsTruncated")) ? text(root, "NextContinuationToken") : null;
+    }
+
+    private String stripPrefix(String key) {
+        return key != null && key.startsWith(keyPrefix) ? key.substring(keyPrefix.length()) : key;
+    }
+
+    // --- HTTP и подпись SigV4 ---
+
+    private <T> HttpResponse<T> send(String method, String key, Map<String, String> query, Map<String, String> headers,
+                                     HttpRequest.BodyPublisher body, String payloadHash,
+                                     HttpResponse.BodyHandler<T> handler) throws IOException {
+        String canonicalUri = "/" + uriEncode(bucket, false)
+                + (key == null ? "" : "/" + uriEncode(keyPrefix + key, true));
+        String canonicalQuery = canonicalQuery(query);
+        URI uri = URI.create(endpoint + canonicalUri + (canonicalQuery.isEmpty() ? "" : "?" + canonicalQuery));
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .method(method, body);
+        headers.forEach(request::header);
+
+        String amzDate = AMZ_DATE.format(Instant.now());
+        request.header("x-amz-date", amzDate);
+        request.header("x-amz-content-sha256", payloadHash);
+        if (accessKey != null && !accessKey.isEmpty()) {
+            request.header("Authorization", authorization(method, uri, canonicalUri, canonicalQuery, amzDate, payloadHash));
+        }
+
+        try {
+            return http.send(request.build(), handler);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("S3 request interrupted: " + method + " " + uri);
+        }
+    }
+
+    private String authorization(String method, URI uri, String canonicalUri, String canonicalQuery,
+                                 String amzDate, String payloadHash) {
+        String date = amzDate.substring(0, 8);
+        String host = uri.getHost() + (uri.getPort() == -1 ? "" : ":" + uri.getPort());
+        String signedHeaders = "host;x-amz-content-sha256;x-amz-date";
+        String canonicalRequest = method + "\n"
+                + canonicalUri + "\n"
+                + canonicalQuery + "\n"
+                + "host:" + host + "\n"
+                + "x-amz-content-sha256:" + payloadHash + "\n"
+                + "x-amz-date:" + amzDate + "\n"
+                + "\n"
+                + signedHeaders + "\n"
+                + payloadHash;
+        String scope = date + "/" + region + "/s3/aws4_request";
+        String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n"
+                + hex(sha256(canonicalRequest.getBytes(StandardCharsets.UTF_8)));
+
+        byte[] signingKey = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        signingKey = hmac(signingKey, region);
+        signingKey = hmac(signingKey, "s3");
+        signingKey = hmac(signingKey, "aws4_request");
+        String signature = hex(hmac(signingKey, stringToSign));
+
+        return "AWS4-HMAC-SHA256 Credential=" + accessKey + "/" + scope
+                + ", SignedHeaders=" + signedHeaders
+                + ", Signature=" + signature;
+    }
+
+    private static String canonicalQuery(Map<String, String> query) {
+        StringJoiner joiner = new StringJoiner("&");
+        new TreeMap<>(query).forEach((name, value) -> joiner.add(uriEncode(name, false) + "=" + uriEncode(value, false)));
+        return joiner.toString();
+    }
+
+    static String uriEncode(String value, boolean keepSlash) {
+        StringBuilder out = new StringBuilder(value.length() + 16);
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || (keepSlash && c == '/')) {
+                out.append(c);
+            } else {
+                out.append('%').append(Character.toUpperCase(Character.forDigit((c >> 4) & 0xF, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xF, 16)));
+            }
+        }
+        return out.toString();
+    }
+
+    private static void expectOk(HttpResponse<String> response, String operation, String key) throws IOException {
+        int status = response.statusCode();
+        if (status == 404) {
+            throw new NoSuchFileException(key);
+        }
+        if (status / 100 != 2 || (response.body() != null && response.body().contains("<Error>"))) {
+            throw new IOException("S3 " + operation + " " + key + " failed with status " + status + ": " + response.body());
+        }
+    }
+
+    private static InputStream expectStream(HttpResponse<InputStream> response, String operation, String key) throws IOException {
+        int status = response.statusCode();
+        if (status / 100 == 2) {
+            return response.body();
+        }
+        String error;
+        try (InputStream body = response.body()) {
+            error = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        if (status == 404) {
+            throw new NoSuchFileException(key);
+        }
+        throw new IOException("S3 " + operation + " " + key + " failed with status " + status + ": " + error);
+    }
+
+    private static Document parseXml(String xml) throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception ex) {
+            throw new IOException("Could not parse S3 response", ex);
+        }
+    }
+
+    private static String text(Element parent, String tag) {
+        NodeList nodes = parent.getElementsByTagName(tag);
+        return nodes.getLength() == 0 ? null : nodes.item(0).getTextContent();
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder out = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            out.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return out.toString();
+    }
+
+    // --- Multipart ---
+
+    private class S3MultipartUpload implements MultipartUpload {
+        private final String key;
+        private final String uploadId;
+        private final ConcurrentSkipListMap<Integer, String> etags = new ConcurrentSkipListMap<>();
+
+        S3MultipartUpload(String key, String uploadId) {
+            this.key = key;
+            this.uploadId = uploadId;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public String getUploadId() {
+            return uploadId;
+        }
+
+        @Override
+        public void uploadPart(int partNumber, InputStream in, long length) throws IOException {
+            HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.fromPublisher(
+                    HttpRequest.BodyPublishers.ofInputStream(() -> StorageStreams.nonClosing(in)), length);
+            HttpResponse<String> response = send("PUT", key,
+                    Map.of("partNumber", String.valueOf(partNumber), "uploadId", uploadId), Map.of(),
+                    body, UNSIGNED_PAYLOAD, HttpResponse.BodyHandlers.ofString());
+            expectOk(response, "PUT part " + partNumber, key);
+            etags.put(partNumber, response.headers().firstValue("ETag")
+                    .orElseThrow(() -> new IOException("S3 did not return ETag for part " + partNumber + " of " + key)));
+        }
+
+        @Override
+        public void complete() throws IOException {
+            StringBuilder xml = new StringBuilder("<CompleteMultipartUpload>");
+            etags.forEach((part, etag) -> xml.append("<Part><PartNumber>").append(part)
+                    .append("</PartNumber><ETag>").append(etag.replace("\"", "&quot;")).append("</ETag></Part>"));
+            xml.append("</CompleteMultipartUpload>");
+            byte[] payload = xml.toString().getBytes(StandardCharsets.UTF_8);
+
+            HttpResponse<String> response = send("POST", key, Map.of("uploadId", uploadId),
+                    Map.of("Content-Type", "application/xml"),
+                    HttpRequest.BodyPublishers.ofByteArray(payload), hex(sha256(payload)),
+                    HttpResponse.BodyHandlers.ofString());
+            expectOk(response, "POST complete", key);
+        }
+
+        @Override
+        public void abort() throws IOException {
+            HttpResponse<String> response = send("DELETE", key, Map.of("uploadId", uploadId), Map.of(),
+                    HttpRequest.BodyPublishers.noBody(), EMPTY_SHA256, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 404) {
+                expectOk(response, "DELETE upload", key);
+            }
+        }
+    }
+
+    /**
+     * Поток записи, который режет данные на части и отправляет их параллельно.
+     * Маленький объект (меньше одной части) уходит одним PUT без multipart.
+     */
+    private class MultipartOutputStream extends StorageOutputStream {
+        private final String key;
+        private final Semaphore inFlight = new Semaphore(maxConcurrency);
+        private final List<Future<?>> parts = new ArrayList<>();
+        private volatile IOException failure;
+
+        private byte[] buffer = new byte[Math.min(INITIAL_BUFFER, partSize)];
+        private int count;
+        private int nextPart = 1;
+        private S3MultipartUpload upload;
+        private boolean closed;
+
+        MultipartOutputStream(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkFailure();
+            while (len > 0) {
+                if (count == buffer.length) {
+                    if (buffer.length < partSize) {
+                        buffer = Arrays.copyOf(buffer, (int) Math.min((long) buffer.length * 2, partSize));
+                    } else {
+                        flushPart();
+                    }
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void flushPart() throws IOException {
+            if (upload == null) {
+                upload = (S3MultipartUpload) startMultipart(key);
+            }
+            byte[] data = buffer;
+            int length = count;
+            int partNumber = nextPart++;
+            buffer = new byte[partSize];
+            count = 0;
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a part upload slot");
+            }
+            parts.add(transferExecutor.submit(() -> {
+                try {
+                    upload.uploadPart(partNumber, new ByteArrayInputStream(data, 0, length), length);
+                } catch (IOException ex) {
+                    failure = ex;
+                } finally {
+                    inFlight.release();
+                }
+            }));
+        }
+
+        private void checkFailure() throws IOException {
+            if (failure != null) {
+                throw new IOException("Multipart upload of " + key + " failed", failure);
+            }
+        }
+
+        @Override
+        public void abort() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            parts.forEach(part -> part.cancel(true));
+            if (upload != null) {
+                try {
+                    upload.abort();
+                } catch (IOException ex) {
+                    logger.warn("Could not abort multipart upload of {}", key, ex);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (upload == null) {
+                put(key, new ByteArrayInputStream(buffer, 0, count), count);
+                return;
+            }
+            try {
+                if (count > 0) {
+                    flushPart();
+                }
+                for (Future<?> part : parts) {
+                    part.get();
+                }
+                checkFailure();
+                upload.complete();
+                logger.debug("Multipart upload of {} completed in {} parts", key, nextPart - 1);
+            } catch (IOException | ExecutionException | InterruptedException ex) {
+                if (ex instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                try {
+                    upload.abort();
+                } catch (IOException abortEx) {
+                    ex.addSuppressed(abortEx);
+                }
+                throw ex instanceof IOException io ? io : new IOException("Multipart upload of " + key + " failed", ex);
+            }
+        }
+    }
+}
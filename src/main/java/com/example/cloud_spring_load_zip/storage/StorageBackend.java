@@ -0,0 +1,131 @@
+package com.example.cloud_spring_load_zip.storage;
+
+import org.springframework.core.io.Resource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище файлов, с которым работают FileStorageService и FileArchiveService.
+ * Ключи - логические имена вида "photo.png" или "archive1_extracted/photo.png".
+ * Реализация выбирается свойством app.file.storage.type.
+ */
+public interface StorageBackend extends Closeable {
+
+    String getType();
+
+    /**
+     * Потоковая запись объекта. Поток не закрывается.
+     *
+     * @param length длина, если известна заранее, иначе -1
+     */
+    void put(String key, InputStream in, long length) throws IOException;
+
+    /**
+     * Поток для записи объекта, размер которого заранее неизвестен (например, ZIP).
+     * Объект становится видимым атомарно при закрытии потока; при ошибке запись
+     * нужно отменить через {@link StorageOutputStream#abort()}, не закрывая поток.
+     */
+    StorageOutputStream openOutput(String key) throws IOException;
+
+    InputStream get(String key) throws IOException;
+
+    /**
+     * Чтение диапазона байт [offset, offset + length).
+     */
+    InputStream getRange(String key, long offset, long length) throws IOException;
+
+    Optional<BlobInfo> stat(String key) throws IOException;
+
+    /**
+     * Удаляет объект; для каталога - все вложенные объекты.
+     */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * Перечисляет объекты уровня, на который указывает prefix: "" - корень, "dir/" - содержимое
+     * каталога dir, "dir/a" - его записи, начинающиеся с "a". Более глубокие ключи сворачиваются
+     * в каталоги; имена в BlobInfo - полные ключи.
+     */
+    void list(String prefix, Consumer<BlobInfo> consumer) throws IOException;
+
+    MultipartUpload startMultipart(String key) throws IOException;
+
+    /**
+     * Переносит объект или каталог под новый ключ, заменяя существующий.
+     * По умолчанию - копирование и удаление по одному объекту (атомарности нет);
+     * локальное хранилище переименовывает каталог целиком.
+     */
+    default void rename(String from, String to) throws IOException {
+        Optional<BlobInfo> source = stat(from);
+        if (source.isEmpty()) {
+            throw new NoSuchFileException(from);
+        }
+        delete(to);
+        if (!source.get().isDirectory()) {
+            copy(from, to);
+        } else {
+            copyTree(from, to);
+        }
+        delete(from);
+    }
+
+    private void copyTree(String from, String to) throws IOException {
+        for (BlobInfo child : list(from + "/")) {
+            String suffix = child.getName().substring(from.length());
+            if (child.isDirectory()) {
+                copyTree(child.getName(), to + suffix);
+            } else {
+                copy(child.getName(), to + suffix);
+            }
+        }
+    }
+
+    private void copy(String from, String to) throws IOException {
+        long size = stat(from).map(BlobInfo::getSize).orElse(-1L);
+        try (InputStream in = get(from)) {
+            put(to, in, size);
+        }
+    }
+
+    /**
+     * Путь к файлу на локальном диске, если хранилище локальное.
+     */
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+
+    default Resource resource(String key) {
+        return new StorageResource(this, key);
+    }
+
+    default List<BlobInfo> list(String prefix) throws IOException {
+        List<BlobInfo> result = new ArrayList<>();
+        list(prefix, result::add);
+        return result;
+    }
+
+    /**
+     * Рекурсивный обход каталога: только файлы, с полными ключами.
+     */
+    default void walk(String dir, Consumer<BlobInfo> consumer) throws IOException {
+        for (BlobInfo child : list(dir + "/")) {
+            if (child.isDirectory()) {
+                walk(child.getName(), consumer);
+            } else {
+                consumer.accept(child);
+            }
+        }
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+}
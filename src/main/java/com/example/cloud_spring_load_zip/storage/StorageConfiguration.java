@@ -0,0 +1,30 @@
+package com.example.cloud_spring_load_zip.storage;
+
+import com.example.cloud_spring_load_zip.service.AppFileProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+@Configuration
+public class StorageConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageConfiguration.class);
+
+    // Реализация хранилища выбирается свойством app.file.storage.type: local | s3
+    @Bean
+    public StorageBackend storageBackend(AppFileProperties appFileProperties, StorageLayout layout) throws IOException {
+        String type = appFileProperties.getStorage().getType();
+        logger.info("Using '{}' storage backend", type);
+        switch (type) {
+            case "local":
+                return new LocalStorageBackend(layout);
+            case "s3":
+                return new S3StorageBackend(appFileProperties.getStorage().getS3());
+            default:
+                throw new IllegalStateException("Unknown app.file.storage.type: " + type);
+        }
+    }
+}
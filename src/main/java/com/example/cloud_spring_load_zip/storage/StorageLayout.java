@@ -0,0 +1,341 @@
+package com.example.cloud_spring_load_zip.storage;
+
+import com.example.cloud_spring_load_zip.exception.FileStorageException;
+import com.example.cloud_spring_load_zip.service.AppFileProperties;
+import com.example.cloud_spring_load_zip.service.FileStorageProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Отображение логических имен файлов на физические пути в директории загрузок.
+ * В шардированном режиме файл "photo.png" лежит в uploads/ab/cd/photo.png, где ab/cd -
+ * первые байты SHA-256 от имени. Файлы, оставшиеся от плоской раскладки, продолжают
+ * находиться по старому пути, пока их не перенесет StorageLayoutMigrator.
+ * Для вложенных ключей ("archive1_extracted/photo.png") шард выбирается по первому
+ * сегменту, так что распакованный каталог целиком лежит в одном шарде.
+ * <p>
+ * Каталог шарда верхнего уровня помечается файлом {@value #SHARD_MARKER}: по одному имени
+ * нельзя отличить шард "ab" от пользовательского каталога "ab" из плоской раскладки.
+ * Шарды, созданные до появления отметки, распознаются по содержимому (имена файлов
+ * хешируются в этот же шард) и помечаются при первой проверке.
+ */
+@Component
+public class StorageLayout {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    static final String SHARD_MARKER = ".shard";
+    private static final String INTERNAL_PREFIX = ".";
+    // Сколько файлов шарда без отметки проверяется по хешу
+    private static final int SHARD_PROBE_FILES = 16;
+
+    private final Path root;
+    private final boolean sharded;
+    private final int depth;
+    // Подтвержденные шарды верхнего уровня, чтобы не проверять их на каждой записи
+    private final Set<String> shardRoots = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public StorageLayout(FileStorageProperties fileStorageProperties, AppFileProperties appFileProperties) {
+        this(fileStorageProperties.getUploadPath(),
+                appFileProperties.getStorage().getLayout().isSharded(),
+                appFileProperties.getStorage().getLayout().getShardDepth());
+    }
+
+    public StorageLayout(Path root, boolean sharded, int shardDepth) {
+        this.root = root.toAbsolutePath().normalize();
+        this.sharded = sharded;
+        this.depth = Math.max(1, Math.min(shardDepth, 4));
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    public int getDepth() {
+        return sharded ? depth : 0;
+    }
+
+    /**
+     * Каталог шарда для логического имени (root для плоской раскладки).
+     */
+    public Path shardDir(String logicalName) {
+        if (!sharded) {
+            return root;
+        }
+        int slash = logicalName.indexOf('/');
+        byte[] hash = sha256(slash < 0 ? logicalName : logicalName.substring(0, slash));
+        Path dir = root;
+        for (int i = 0; i < depth; i++) {
+            dir = dir.resolve(new String(new char[]{HEX[(hash[i] >> 4) & 0xF], HEX[hash[i] & 0xF]}));
+        }
+        return dir;
+    }
+
+    /**
+     * Путь, по которому файл должен быть записан.
+     */
+    public Path resolve(String logicalName) {
+        Path shard = shardDir(logicalName);
+        Path path = shard.resolve(logicalName).normalize();
+        if (!path.startsWith(shard)) {
+            throw new FileStorageException("Cannot store file outside current directory.");
+        }
+        return path;
+    }
+
+    /**
+     * Путь, по которому файл сейчас лежит: шардированный, а если его нет - старый плоский.
+     */
+    public Path locate(String logicalName) {
+        Path target = resolve(logicalName);
+        if (!sharded || Files.exists(target)) {
+            return target;
+        }
+        Path legacy = legacyPath(logicalName);
+        if (legacy != null && Files.exists(legacy)) {
+            return legacy;
+        }
+        return target;
+    }
+
+    /**
+     * Старый плоский путь, если он отличается от шардированного.
+     */
+    public Path legacyPath(String logicalName) {
+        if (!sharded) {
+            return null;
+        }
+        Path legacy = root.resolve(logicalName).normalize();
+        if (!legacy.startsWith(root) || legacy.equals(root)) {
+            return null;
+        }
+        return legacy;
+    }
+
+    /**
+     * Создает каталог шарда и возвращает путь для записи.
+     */
+    public Path prepareWrite(String logicalName) throws IOException {
+        Path target = resolve(logicalName);
+        if (sharded) {
+            String top = root.relativize(target).getName(0).toString();
+            if (!shardRoots.contains(top)) {
+                claimShardRoot(top);
+            }
+        }
+        Files.createDirectories(target.getParent());
+        return target;
+    }
+
+    /**
+     * Готовит каталог шарда верхнего уровня. Плоская запись с тем же именем ("ab" из старой
+     * раскладки) сначала переносится в свой шард, иначе файлы шарда оказались бы внутри нее.
+     */
+    private synchronized void claimShardRoot(String name) throws IOException {
+        if (shardRoots.contains(name)) {
+            return;
+        }
+        Path top = root.resolve(name);
+        if (Files.exists(top) && !isShardRoot(top)) {
+            // Через временное имя: шард записи "ab" может оказаться внутри нового каталога ab/
+            Path temp = root.resolve(".relocate-" + UUID.randomUUID());
+            Files.move(top, temp);
+            markShardRoot(top);
+            Path relocated = prepareWrite(name);
+            Files.move(temp, relocated);
+            return;
+        }
+        markShardRoot(top);
+    }
+
+    private void markShardRoot(Path top) throws IOException {
+        Files.createDirectories(top);
+        try {
+            Files.createFile(top.resolve(SHARD_MARKER));
+        } catch (FileAlreadyExistsException ex) {
+            // Уже помечен
+        }
+        shardRoots.add(top.getFileName().toString());
+    }
+
+    /**
+     * Является ли запись корня каталогом шарда верхнего уровня, а не плоским файлом или каталогом
+     * с похожим именем.
+     */
+    public boolean isShardRoot(Path path) {
+        String name = path.getFileName().toString();
+        if (!isShardDirName(name) || !path.getParent().equals(root) || !Files.isDirectory(path)) {
+            return false;
+        }
+        if (shardRoots.contains(name) || Files.exists(path.resolve(SHARD_MARKER))) {
+            shardRoots.add(name);
+            return true;
+        }
+        try {
+            if (!looksLikeShard(path, 1, new int[]{SHARD_PROBE_FILES})) {
+                return false;
+            }
+            markShardRoot(path);
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    // Шард без отметки: на промежуточных уровнях только каталоги шардов, файлы на нижнем
+    // уровне хешируются в этот же каталог. Пустой каталог считается шардом - переносить в нем нечего
+    private boolean looksLikeShard(Path dir, int level, int[] probes) throws IOException {
+        try (Stream<Path> children = Files.list(dir)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                String name = child.getFileName().toString();
+                if (isInternalName(name)) {
+                    continue;
+                }
+                if (probes[0] <= 0) {
+                    return true;
+                }
+                if (level < depth) {
+                    if (!isShardDirName(name) || !Files.isDirectory(child) || !looksLikeShard(child, level + 1, probes)) {
+                        return false;
+                    }
+                } else {
+                    probes[0]--;
+                    if (!shardDir(name).equals(dir)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Удаляет плоскую копию файла после того, как записана шардированная.
+     */
+    public void dropLegacyCopy(String logicalName) throws IOException {
+        Path legacy = legacyPath(logicalName);
+        if (legacy != null && Files.isRegularFile(legacy)) {
+            Files.deleteIfExists(legacy);
+        }
+    }
+
+    public String logicalName(Path physical) {
+        return physical.getFileName().toString();
+    }
+
+    /**
+     * Служебные файлы (временные файлы записи, части multipart-загрузок) начинаются с точки.
+     */
+    public boolean isInternalName(String name) {
+        return name.startsWith(INTERNAL_PREFIX);
+    }
+
+    /**
+     * Ключ служебный, если служебный хотя бы один его сегмент (журнал дозаписи или манифест
+     * архива внутри каталога). Такие ключи не принимаются на запись и не отдаются наружу.
+     */
+    public static boolean isInternalKey(String key) {
+        for (String segment : key.split("/")) {
+            if (segment.startsWith(INTERNAL_PREFIX)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isShardDirName(String name) {
+        if (!sharded || name.length() != 2) {
+            return false;
+        }
+        return Character.digit(name.charAt(0), 16) >= 0 && Character.digit(name.charAt(1), 16) >= 0
+                && name.equals(name.toLowerCase());
+    }
+
+    /**
+     * Уровень каталога относительно корня: 0 - root, depth - каталог с файлами.
+     */
+    public int levelOf(Path dir) {
+        return dir.equals(root) ? 0 : root.relativize(dir).getNameCount();
+    }
+
+    /**
+     * Обходит все логические записи: содержимое листовых шардов и оставшиеся плоские файлы.
+     */
+    public void walk(Consumer<Path> consumer) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (Stream<Path> top = Files.list(root)) {
+            for (Path path : (Iterable<Path>) top::iterator) {
+                if (isInternalName(path.getFileName().toString())) {
+                    continue;
+                }
+                if (isShardRoot(path)) {
+                    walkShard(path, 1, consumer);
+                } else {
+                    consumer.accept(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Обходит поддерево шарда, начиная с каталога заданного уровня.
+     */
+    public void walkShard(Path dir, int level, Consumer<Path> consumer) throws IOException {
+        try (Stream<Path> children = Files.list(dir)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                if (level < depth) {
+                    if (Files.isDirectory(child)) {
+                        walkShard(child, level + 1, consumer);
+                    }
+                } else if (!isInternalName(child.getFileName().toString())) {
+                    consumer.accept(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Записи, оставшиеся от плоской раскладки в корне.
+     */
+    public List<Path> legacyEntries() throws IOException {
+        List<Path> legacy = new ArrayList<>();
+        if (!sharded || !Files.isDirectory(root)) {
+            return legacy;
+        }
+        try (Stream<Path> top = Files.list(root)) {
+            top.filter(path -> !isShardRoot(path))
+                    .filter(path -> !isInternalName(path.getFileName().toString()))
+                    .forEach(legacy::add);
+        }
+        return legacy;
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.cloud_spring_load_zip.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Поток записи объекта хранилища. Объект публикуется только успешным {@link #close()};
+ * после {@link #abort()} записанное отбрасывается, а прежняя версия объекта остается на месте.
+ */
+public abstract class StorageOutputStream extends OutputStream {
+
+    /**
+     * Отменяет запись. После закрытия потока ничего не делает.
+     */
+    public abstract void abort() throws IOException;
+}
@@ -0,0 +1,63 @@
+package com.example.cloud_spring_load_zip.storage;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+
+/**
+ * Resource поверх {@link StorageBackend} для отдачи файлов из нелокальных хранилищ.
+ */
+public class StorageResource extends AbstractResource {
+
+    private final StorageBackend backend;
+    private final String key;
+
+    public StorageResource(StorageBackend backend, String key) {
+        this.backend = backend;
+        this.key = key;
+    }
+
+    @Override
+    public boolean exists() {
+        try {
+            return backend.stat(key).filter(info -> !info.isDirectory()).isPresent();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return info().getSize();
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+        return info().getLastModified();
+    }
+
+    @Override
+    public String getFilename() {
+        int slash = key.lastIndexOf('/');
+        return slash < 0 ? key : key.substring(slash + 1);
+    }
+
+    @Override
+    public String getDescription() {
+        return backend.getType() + " storage object [" + key + "]";
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return backend.get(key);
+    }
+
+    private BlobInfo info() throws IOException {
+        Optional<BlobInfo> info = backend.stat(key);
+        return info.orElseThrow(() -> new FileNotFoundException(getDescription() + " does not exist"));
+    }
+}
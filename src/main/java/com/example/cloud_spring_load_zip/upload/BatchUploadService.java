@@ -0,0 +1,168 @@
+package com.example.cloud_spring_load_zip.upload;
+
+import com.example.cloud_spring_load_zip.bulkhead.Bulkhead;
+import com.example.cloud_spring_load_zip.bulkhead.Bulkheads;
+import com.example.cloud_spring_load_zip.exception.FileStorageException;
+import com.example.cloud_spring_load_zip.exception.FileValidationException;
+import com.example.cloud_spring_load_zip.model.StoredFile;
+import com.example.cloud_spring_load_zip.service.AppFileProperties;
+import com.example.cloud_spring_load_zip.service.FileStorageService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пакетная загрузка: файлы одного запроса пишутся параллельно в пуле file-io.
+ * Запрос занимает не больше {@code parallelism} потоков пула - каждый поток забирает
+ * следующий файл из общего счетчика, поэтому очередь пула не забивается сотней задач.
+ * Ошибка одного файла попадает в его результат и не останавливает остальные.
+ */
+@Service
+public class BatchUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchUploadService.class);
+
+    private final FileStorageService fileStorageService;
+    private final Bulkheads bulkheads;
+    private final AppFileProperties.Batch properties;
+    private final Counter storedCounter;
+    private final Counter failedCounter;
+
+    /**
+     * Итог по одному файлу; для ошибки size и sha256 равны null.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class FileResult {
+        private final String name;
+        private final int status;
+        private final Long size;
+        private final String sha256;
+        private final String error;
+
+        public boolean isStored() {
+            return error == null;
+        }
+    }
+
+    public BatchUploadService(FileStorageService fileStorageService, Bulkheads bulkheads,
+                              AppFileProperties appFileProperties, MeterRegistry registry) {
+        this.fileStorageService = fileStorageService;
+        this.bulkheads = bulkheads;
+        this.properties = appFileProperties.getBatch();
+        this.storedCounter = Counter.builder("upload.batch.files")
+                .description("Files processed by batch uploads")
+                .tag("outcome", "stored")
+                .register(registry);
+        this.failedCounter = Counter.builder("upload.batch.files")
+                .description("Files processed by batch uploads")
+                .tag("outcome", "failed")
+                .register(registry);
+    }
+
+    /**
+     * Результаты идут в порядке файлов запроса. Future завершается, когда обработаны все файлы.
+     */
+    public CompletableFuture<List<FileResult>> upload(List<MultipartFile> files) {
+        if (files.isEmpty()) {
+            throw new FileValidationException("Необходимо загрузить хотя бы один файл", HttpStatus.BAD_REQUEST);
+        }
+        if (files.size() > properties.getMaxFiles()) {
+            throw new FileValidationException("Слишком много файлов в запросе: больше " + properties.getMaxFiles(),
+                    HttpStatus.BAD_REQUEST);
+        }
+
+        FileResult[] results = new FileResult[files.size()];
+        // Одноименные файлы писались бы в один ключ наперегонки - сохраняется первый
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < files.size(); i++) {
+            String name = name(files.get(i));
+            if (!name.isEmpty() && !names.add(name)) {
+                results[i] = failed(name, HttpStatus.CONFLICT, "Файл с таким именем уже есть в запросе");
+            }
+        }
+
+        CompletableFuture<List<FileResult>> done = new CompletableFuture<>();
+        Bulkhead pool = bulkheads.fileIo();
+        int workers = Math.max(1, Math.min(files.size(), Math.min(properties.getParallelism(), pool.getThreads())));
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger(workers);
+        Runnable worker = () -> {
+            try {
+                for (int i; (i = next.getAndIncrement()) < results.length; ) {
+                    if (results[i] == null) {
+                        results[i] = store(files.get(i));
+                    }
+                }
+            } finally {
+                if (running.decrementAndGet() == 0) {
+                    done.complete(new ArrayList<>(Arrays.asList(results)));
+                }
+            }
+        };
+
+        for (int w = 0; w < workers; w++) {
+            try {
+                pool.submit(Bulkhead.Priority.NORMAL, worker);
+            } catch (RejectedExecutionException ex) {
+                // Пул занят: запущенные потоки разберут все файлы сами. Если не запустился ни один -
+                // отклоняем запрос целиком (503)
+                int notStarted = workers - w;
+                if (running.addAndGet(-notStarted) == 0) {
+                    if (w == 0) {
+                        throw ex;
+                    }
+                    done.complete(new ArrayList<>(Arrays.asList(results)));
+                }
+                break;
+            }
+        }
+        return done;
+    }
+
+    private FileResult store(MultipartFile file) {
+        String name = name(file);
+        try {
+            StoredFile stored = fileStorageService.store(file);
+            storedCounter.increment();
+            return new FileResult(stored.getName(), HttpStatus.CREATED.value(), stored.getSize(), stored.getSha256(), null);
+        } catch (FileValidationException ex) {
+            return failed(name, ex.getStatus(), ex.getMessage());
+        } catch (FileStorageException ex) {
+            // Без причины - отказ по имени или пустому файлу, с причиной - ошибка записи
+            if (ex.getCause() == null) {
+                return failed(name, HttpStatus.BAD_REQUEST, ex.getMessage());
+            }
+            logger.warn("Batch upload of {} failed", name, ex);
+            return failed(name, HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage());
+        } catch (RuntimeException ex) {
+            logger.warn("Batch upload of {} failed", name, ex);
+            return failed(name, HttpStatus.INTERNAL_SERVER_ERROR, "Не удалось сохранить файл");
+        }
+    }
+
+    private FileResult failed(String name, HttpStatus status, String error) {
+        failedCounter.increment();
+        return new FileResult(name, status.value(), null, null, error);
+    }
+
+    private static String name(MultipartFile file) {
+        return StringUtils.cleanPath(file.getOriginalFilename() == null ? "" : file.getOriginalFilename());
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.cloud_spring_load_zip.upload;
+
+import com.example.cloud_spring_load_zip.exception.FileValidationException;
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Потоковый разбор тела multipart/form-data (RFC 7578) без промежуточных файлов.
+ * Части читаются по очереди: тело текущей части - поток, который заканчивается на
+ * разделителе; {@link #next()} дочитывает недочитанную часть и переходит к следующей.
+ * В памяти держится только буфер чтения.
+ */
+public class MultipartStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+
+    /**
+     * Часть формы: заголовки и тело, которое читается один раз до следующего {@link #next()}.
+     */
+    @Getter
+    public static final class Part {
+        private final String name;
+        // null для обычного поля формы
+        private final String fileName;
+        private final String contentType;
+        private final InputStream body;
+
+        Part(String name, String fileName, String contentType, InputStream body) {
+            this.name = name;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        public boolean isFile() {
+            return fileName != null;
+        }
+    }
+
+    private final InputStream in;
+    // "\r\n--" + boundary: разделитель всегда стоит после перевода строки
+    private final byte[] delimiter;
+    private final int maxHeaderSize;
+    private final byte[] buffer;
+    private int head;
+    private int tail;
+    private boolean eof;
+    // В [head, clean) разделитель точно не начинается - повторно не ищем
+    private int clean;
+    private PartInputStream current;
+    private boolean finished;
+
+    public MultipartStream(InputStream in, String boundary, int maxHeaderSize) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.maxHeaderSize = maxHeaderSize;
+        this.buffer = new byte[Math.max(BUFFER_SIZE, delimiter.length * 2 + maxHeaderSize)];
+        // Первому разделителю перевод строки не предшествует - подставляем его, преамбула
+        // читается как обычная часть и пропускается
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        this.tail = 2;
+        this.current = new PartInputStream();
+    }
+
+    /**
+     * Параметр boundary из Content-Type или null, если это не multipart/form-data.
+     */
+    public static String boundary(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")) {
+            return null;
+        }
+        String boundary = parameters(contentType).get("boundary");
+        return boundary == null || boundary.isEmpty() || boundary.length() > 70 ? null : boundary;
+    }
+
+    /**
+     * Следующая часть или null после закрывающего разделителя.
+     */
+    public Part next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        current.drain();
+        // head стоит на разделителе
+        head += delimiter.length;
+        require(2);
+        if (buffer[head] == '-' && buffer[head + 1] == '-') {
+            // Эпилог после закрывающего разделителя не нужен
+            finished = true;
+            return null;
+        }
+        skipLinearWhitespace();
+        require(2);
+        if (buffer[head] != '\r' || buffer[head + 1] != '\n') {
+            throw malformed("Expected CRLF after boundary");
+        }
+        head += 2;
+
+        Map<String, String> headers = readHeaders();
+        String disposition = headers.getOrDefault("content-disposition", "");
+        Map<String, String> params = parameters(disposition);
+        current = new PartInputStream();
+        return new Part(params.get("name"), params.get("filename"), headers.get("content-type"), current);
+    }
+
+    private Map<String, String> readHeaders() throws IOException {
+        int end;
+        while ((end = indexOf(HEADER_END, head, tail)) < 0) {
+            if (tail - head >= maxHeaderSize) {
+                throw malformed("Part headers exceed " + maxHeaderSize + " bytes");
+            }
+            if (!fill()) {
+                throw malformed("Unexpected end of part headers");
+            }
+        }
+        if (end - head > maxHeaderSize) {
+            throw malformed("Part headers exceed " + maxHeaderSize + " bytes");
+        }
+        // Браузеры пишут имена файлов в UTF-8 без кодирования
+        String block = new String(buffer, head, end - head, StandardCharsets.UTF_8);
+        head = end + HEADER_END.length;
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (String line : block.split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+        return headers;
+    }
+
+    private void skipLinearWhitespace() throws IOException {
+        while (true) {
+            require(1);
+            if (buffer[head] != ' ' && buffer[head] != '\t') {
+                return;
+            }
+            head++;
+        }
+    }
+
+    // Гарантирует count непрочитанных байт в буфере
+    private void require(int count) throws IOException {
+        while (tail - head < count) {
+            if (!fill()) {
+                throw malformed("Unexpected end of multipart body");
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (head > 0) {
+            System.arraycopy(buffer, head, buffer, 0, tail - head);
+            tail -= head;
+            clean = Math.max(0, clean - head);
+            head = 0;
+        }
+        int n = in.read(buffer, tail, buffer.length - tail);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        tail += n;
+        return true;
+    }
+
+    private static FileValidationException malformed(String message) {
+        return new FileValidationException("Некорректное тело multipart: " + message, HttpStatus.BAD_REQUEST);
+    }
+
+    private int indexOf(byte[] pattern, int from, int to) {
+        byte first = pattern[0];
+        for (int i = from; i <= to - pattern.length; i++) {
+            if (buffer[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < pattern.length && buffer[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // name="a; b"; filename="c" - значения в кавычках могут содержать ';'
+    static Map<String, String> parameters(String header) {
+        Map<String, String> params = new LinkedHashMap<>();
+        int i = header.indexOf(';');
+        while (i >= 0 && i < header.length()) {
+            i++;
+            int eq = header.indexOf('=', i);
+            if (eq < 0) {
+                break;
+            }
+            String key = header.substring(i, eq).trim().toLowerCase(Locale.ROOT);
+            int pos = eq + 1;
+            StringBuilder value = new StringBuilder();
+            if (pos < header.length() && header.charAt(pos) == '"') {
+                pos++;
+                while (pos < header.length() && header.charAt(pos) != '"') {
+                    char c = header.charAt(pos);
+                    // Экранирование кавычки; обратные слэши путей Windows оставляем как есть
+                    if (c == '\\' && pos + 1 < header.length() && header.charAt(pos + 1) == '"') {
+                        pos++;
+                        c = '"';
+                    }
+                    value.append(c);
+                    pos++;
+                }
+                pos++;
+            } else {
+                while (pos < header.length() && header.charAt(pos) != ';') {
+                    value.append(header.charAt(pos));
+                    pos++;
+                }
+            }
+            params.putIfAbsent(key, value.toString().trim());
+            i = header.indexOf(';', pos);
+        }
+        return params;
+    }
+
+    /**
+     * Тело части: отдает байты до разделителя. Хвост буфера длиной в разделитель без одного
+     * байта не отдается, пока не станет ясно, что это не начало разделителя.
+     */
+    private final class PartInputStream extends InputStream {
+        private boolean done;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (head < clean) {
+                    int n = Math.min(len, clean - head);
+                    System.arraycopy(buffer, head, b, off, n);
+                    head += n;
+                    return n;
+                }
+                int found = indexOf(delimiter, head, tail);
+                int available;
+                if (found >= 0) {
+                    available = found - head;
+                    if (available == 0) {
+                        done = true;
+                        return -1;
+                    }
+                } else {
+                    available = tail - head - (delimiter.length - 1);
+                    if (available <= 0) {
+                        if (!fill()) {
+                            throw malformed("Unexpected end of multipart body");
+                        }
+                        continue;
+                    }
+                }
+                clean = head + available;
+            }
+        }
+
+        @Override
+        public int available() {
+            return done ? 0 : Math.max(0, tail - head - delimiter.length);
+        }
+
+        void drain() throws IOException {
+            byte[] skip = new byte[8192];
+            while (read(skip, 0, skip.length) >= 0) {
+                // Пропускаем остаток части
+            }
+        }
+
+        // Закрытие не трогает тело запроса: за частью идут следующие
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.cloud_spring_load_zip.upload;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+import org.springframework.web.servlet.DispatcherServlet;
+
+/**
+ * Стандартный разбор multipart для всех путей, кроме потоковых: их тело контроллер читает сам,
+ * иначе контейнер сохранил бы части во временные файлы до вызова обработчика.
+ * Заменяет резолвер из автоконфигурации и берет из нее настройки spring.servlet.multipart.
+ */
+@Component(DispatcherServlet.MULTIPART_RESOLVER_BEAN_NAME)
+public class StreamingMultipartResolver extends StandardServletMultipartResolver {
+
+    public static final String STREAM_PATH = "/api/files/stream/";
+
+    public StreamingMultipartResolver(MultipartProperties properties) {
+        setResolveLazily(properties.isResolveLazily());
+        setStrictServletCompliance(properties.isStrictServletCompliance());
+    }
+
+    @Override
+    public boolean isMultipart(HttpServletRequest request) {
+        return !isStreaming(request) && super.isMultipart(request);
+    }
+
+    public static boolean isStreaming(HttpServletRequest request) {
+        return request.getRequestURI().startsWith(request.getContextPath() + STREAM_PATH);
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.cloud_spring_load_zip.upload;
+
+import com.example.cloud_spring_load_zip.exception.FileValidationException;
+import com.example.cloud_spring_load_zip.model.StoredFile;
+import com.example.cloud_spring_load_zip.service.AppFileProperties;
+import com.example.cloud_spring_load_zip.service.ArchiveProgress;
+import com.example.cloud_spring_load_zip.service.FileArchiveService;
+import com.example.cloud_spring_load_zip.service.FileStorageService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Загрузка и упаковка без промежуточных файлов: тело multipart-запроса разбирается
+ * потоком ({@link MultipartStream}), и каждая часть пишется сразу в итоговое место -
+ * в хранилище или в поток ZIP-архива. Проверка и SHA-256 считаются в том же проходе,
+ * поэтому каждый байт записывается на диск один раз.
+ */
+@Service
+public class StreamingUploadService {
+
+    private final FileStorageService fileStorageService;
+    private final FileArchiveService fileArchiveService;
+    private final AppFileProperties.Streaming properties;
+    private final Counter bytesCounter;
+    private final Counter partsCounter;
+
+    @Getter
+    @AllArgsConstructor
+    public static class CompressResult {
+        private final String zipFileName;
+        private final int fileCount;
+    }
+
+    public StreamingUploadService(FileStorageService fileStorageService, FileArchiveService fileArchiveService,
+                                  AppFileProperties appFileProperties, MeterRegistry registry) {
+        this.fileStorageService = fileStorageService;
+        this.fileArchiveService = fileArchiveService;
+        this.properties = appFileProperties.getStreaming();
+        this.bytesCounter = Counter.builder("upload.stream.bytes")
+                .description("Request bytes read by streaming multipart endpoints")
+                .baseUnit("bytes")
+                .register(registry);
+        this.partsCounter = Counter.builder("upload.stream.parts")
+                .description("File parts written straight to storage or into an archive")
+                .register(registry);
+    }
+
+    /**
+     * Каждая файловая часть сохраняется под своим именем; поля формы пропускаются.
+     */
+    public List<StoredFile> upload(InputStream body, String contentType, long contentLength) throws IOException {
+        Parts parts = open(body, contentType, contentLength);
+        List<StoredFile> stored = new ArrayList<>();
+        for (MultipartStream.Part part; (part = parts.nextFile()) != null; ) {
+            stored.add(fileStorageService.store(part.getFileName(), part.getBody(), -1));
+            partsCounter.increment();
+        }
+        if (stored.isEmpty()) {
+            throw new FileValidationException("Необходимо загрузить хотя бы один файл", HttpStatus.BAD_REQUEST);
+        }
+        return stored;
+    }
+
+    /**
+     * Файловые части упаковываются в архив по мере чтения запроса.
+     */
+    public CompressResult compress(InputStream body, String contentType, long contentLength, String zipName)
+            throws IOException {
+        Parts parts = open(body, contentType, contentLength);
+        String zipFileName = FileArchiveService.zipName(zipName);
+        // Первая часть читается до открытия архива: без файлов архив не создается
+        MultipartStream.Part first = parts.nextFile();
+        if (first == null) {
+            throw new FileValidationException("Необходимо загрузить хотя бы один файл", HttpStatus.BAD_REQUEST);
+        }
+        int[] count = {0};
+        Iterable<FileArchiveService.Source> sources = () -> new Iterator<>() {
+            private MultipartStream.Part next = first;
+            private boolean fetched = true;
+
+            @Override
+            public boolean hasNext() {
+                if (!fetched) {
+                    try {
+                        next = parts.nextFile();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    fetched = true;
+                }
+                return next != null;
+            }
+
+            @Override
+            public FileArchiveService.Source next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                MultipartStream.Part part = next;
+                fetched = false;
+                count[0]++;
+                partsCounter.increment();
+                return new FileArchiveService.Source(part.getFileName(), part::getBody, -1);
+            }
+        };
+        try {
+            fileArchiveService.compress(sources, zipFileName, ArchiveProgress.NONE);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        return new CompressResult(zipFileName, count[0]);
+    }
+
+    private Parts open(InputStream body, String contentType, long contentLength) {
+        String boundary = MultipartStream.boundary(contentType);
+        if (boundary == null) {
+            throw new FileValidationException("Ожидается multipart/form-data с параметром boundary",
+                    HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+        }
+        long maxBytes = properties.getMaxRequestSize().toBytes();
+        // Заявленная длина проверяется до чтения; без нее (chunked) - по мере чтения
+        if (contentLength > maxBytes) {
+            throw tooLarge();
+        }
+        InputStream limited = new FilterInputStream(body) {
+            private long count;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    counted(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    counted(n);
+                }
+                return n;
+            }
+
+            private void counted(int n) {
+                count += n;
+                bytesCounter.increment(n);
+                if (count > maxBytes) {
+                    throw tooLarge();
+                }
+            }
+        };
+        int maxHeaderSize = (int) Math.min(properties.getMaxHeaderSize().toBytes(), 1024 * 1024);
+        return new Parts(new MultipartStream(limited, boundary, maxHeaderSize), properties.getMaxParts());
+    }
+
+    private FileValidationException tooLarge() {
+        return new FileValidationException("Размер запроса превышает " + properties.getMaxRequestSize(),
+                HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    // Файловые части по порядку с ограничением на общее число частей
+    private static final class Parts {
+        private final MultipartStream stream;
+        private final int maxParts;
+        private int seen;
+
+        Parts(MultipartStream stream, int maxParts) {
+            this.stream = stream;
+            this.maxParts = maxParts;
+        }
+
+        MultipartStream.Part nextFile() throws IOException {
+            for (MultipartStream.Part part; (part = stream.next()) != null; ) {
+                if (++seen > maxParts) {
+                    throw new FileValidationException("Слишком много частей в запросе: больше " + maxParts,
+                            HttpStatus.BAD_REQUEST);
+                }
+                if (part.isFile() && !part.getFileName().isEmpty()) {
+                    return part;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.cloud_spring_load_zip.zip;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Центральный каталог ZIP-архива: читается с конца файла (EOCD и сам каталог),
+ * сжатые данные записей не читаются. Записи хранят исходные байты своей записи
+ * каталога, поэтому при дозаписи они переносятся в новый каталог без изменений.
+ * ZIP64 не поддерживается - такие архивы отклоняются.
+ */
+public final class ZipDirectory {
+
+    static final int EOCD_SIGNATURE = 0x06054b50;
+    static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    static final int CENTRAL_SIGNATURE = 0x02014b50;
+    static final int LOCAL_SIGNATURE = 0x04034b50;
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final int EOCD_SIZE = 22;
+    static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int MAX_COMMENT = 0xFFFF;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Чтение диапазона байт архива: локальный файл или хранилище.
+     */
+    @FunctionalInterface
+    public interface RangeReader {
+        byte[] read(long offset, int length) throws IOException;
+    }
+
+    public static final class Entry {
+        private final String name;
+        private final int flags;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+        private final byte[] record;
+
+        Entry(String name, int flags, int method, long crc, long compressedSize, long size,
+              long localHeaderOffset, byte[] record) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+            this.record = record;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        // Запись каталога как есть (с extra-полями и комментарием)
+        byte[] record() {
+            return record;
+        }
+    }
+
+    private final List<Entry> entries;
+    private final long centralOffset;
+    private final long centralSize;
+    private final byte[] comment;
+
+    private ZipDirectory(List<Entry> entries, long centralOffset, long centralSize, byte[] comment) {
+        this.entries = entries;
+        this.centralOffset = centralOffset;
+        this.centralSize = centralSize;
+        this.comment = comment;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Смещение центрального каталога - здесь заканчиваются данные записей.
+     */
+    public long getCentralOffset() {
+        return centralOffset;
+    }
+
+    public long getCentralSize() {
+        return centralSize;
+    }
+
+    public byte[] getComment() {
+        return comment.clone();
+    }
+
+    public Set<String> names() {
+        Set<String> names = new HashSet<>(entries.size() * 2);
+        for (Entry entry : entries) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Смещение сжатых данных записи: за локальным заголовком, длина имени и extra в котором
+     * могут отличаться от записи каталога.
+     */
+    public static long dataOffset(RangeReader reader, Entry entry) throws IOException {
+        ByteBuffer local = le(reader.read(entry.getLocalHeaderOffset(), LOCAL_HEADER_SIZE));
+        if (local.getInt(0) != LOCAL_SIGNATURE) {
+            throw new ZipException("No local header for " + entry.getName() + " at offset " + entry.getLocalHeaderOffset());
+        }
+        return entry.getLocalHeaderOffset() + LOCAL_HEADER_SIZE + u16(local, 26) + u16(local, 28);
+    }
+
+    /**
+     * Распакованное содержимое записи по ее сжатым данным (stored или deflate).
+     */
+    public static InputStream content(Entry entry, InputStream compressed) throws ZipException {
+        if (entry.getMethod() == METHOD_STORED) {
+            return compressed;
+        }
+        if (entry.getMethod() != METHOD_DEFLATED) {
+            throw new ZipException("Unsupported compression method " + entry.getMethod() + " for " + entry.getName());
+        }
+        Inflater inflater = new Inflater(true);
+        // Inflater без заголовка zlib может запросить лишний байт после конца данных
+        return new InflaterInputStream(new SequenceInputStream(compressed, new ByteArrayInputStream(new byte[1])),
+                inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    public static ZipDirectory read(RangeReader reader, long length) throws IOException {
+        int tailLength = (int) Math.min(length, EOCD_SIZE + MAX_COMMENT);
+        if (tailLength < EOCD_SIZE) {
+            throw new ZipException("Not a ZIP archive: too short");
+        }
+        long tailStart = length - tailLength;
+        ByteBuffer tail = le(reader.read(tailStart, tailLength));
+
+        // Ищем EOCD с конца; длина комментария должна указывать ровно на конец файла
+        int eocd = -1;
+        for (int i = tailLength - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE && i + EOCD_SIZE + u16(tail, i + 20) == tailLength) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new ZipException("Not a ZIP archive: end of central directory not found");
+        }
+        if (eocd >= 20 && tail.getInt(eocd - 20) == ZIP64_LOCATOR_SIGNATURE) {
+            throw new ZipException("ZIP64 archives are not supported");
+        }
+        int count = u16(tail, eocd + 10);
+        long centralSize = u32(tail, eocd + 12);
+        long centralOffset = u32(tail, eocd + 16);
+        byte[] comment = Arrays.copyOfRange(tail.array(), eocd + EOCD_SIZE, tailLength);
+        if (centralOffset + centralSize != tailStart + eocd) {
+            // Данные перед архивом (самораспаковка) или мусор между каталогом и EOCD
+            throw new ZipException("Central directory does not end at the end of central directory record");
+        }
+        if (centralSize > Integer.MAX_VALUE) {
+            throw new ZipException("Central directory is too large");
+        }
+
+        ByteBuffer central = le(reader.read(centralOffset, (int) centralSize));
+        List<Entry> entries = new ArrayList<>(count);
+        int pos = 0;
+        while (pos < centralSize) {
+            if (pos + CENTRAL_HEADER_SIZE > centralSize || central.getInt(pos) != CENTRAL_SIGNATURE) {
+                throw new ZipException("Corrupt central directory at offset " + (centralOffset + pos));
+            }
+            int flags = u16(central, pos + 8);
+            int nameLength = u16(central, pos + 28);
+            int recordLength = CENTRAL_HEADER_SIZE + nameLength + u16(central, pos + 30) + u16(central, pos + 32);
+            if (pos + recordLength > centralSize) {
+                throw new ZipException("Corrupt central directory at offset " + (centralOffset + pos));
+            }
+            // Бит 11 - имя в UTF-8, иначе CP437; для ASCII-имен разницы нет
+            Charset charset = (flags & ZipWriter.FLAG_UTF8) != 0 ? StandardCharsets.UTF_8 : Charset.forName("IBM437");
+            String name = new String(central.array(), pos + CENTRAL_HEADER_SIZE, nameLength, charset);
+            entries.add(new Entry(name, flags, u16(central, pos + 10), u32(central, pos + 16),
+                    u32(central, pos + 20), u32(central, pos + 24), u32(central, pos + 42),
+                    Arrays.copyOfRange(central.array(), pos, pos + recordLength)));
+            pos += recordLength;
+        }
+        if (entries.size() != count) {
+            throw new ZipException("Central directory lists " + entries.size() + " entries, expected " + count);
+        }
+        return new ZipDirectory(Collections.unmodifiableList(entries), centralOffset, centralSize, comment);
+    }
+
+    private static ByteBuffer le(byte[] bytes) {
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int u16(ByteBuffer buffer, int offset) {
+        return buffer.getShort(offset) & 0xFFFF;
+    }
+
+    private static long u32(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset) & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.cloud_spring_load_zip.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Пишет записи ZIP начиная с заданного смещения архива и в конце - центральный каталог с EOCD.
+ * Уже существующие записи добавляются в каталог по их исходным байтам ({@link #keep}),
+ * записи других архивов переносятся без распаковки ({@link #copy}), новые сжимаются потоком: CRC и размеры идут в data descriptor после данных (бит 3),
+ * так что поток не нужно перематывать.
+ */
+public final class ZipWriter {
+
+    static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    static final int FLAG_UTF8 = 1 << 11;
+    private static final int DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int VERSION = 20;
+    private static final int METHOD_DEFLATED = 8;
+    private static final long MAX_U32 = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    private final CountingOutputStream out;
+    private final ByteArrayOutputStream central = new ByteArrayOutputStream();
+    private final byte[] buffer = new byte[64 * 1024];
+    private int entryCount;
+
+    /**
+     * @param position смещение в архиве, с которого начнется запись (начало старого каталога при дозаписи)
+     */
+    public ZipWriter(OutputStream out, long position) {
+        this.out = new CountingOutputStream(out, position);
+    }
+
+    public long position() {
+        return out.position;
+    }
+
+    /**
+     * Оставляет существующую запись в каталоге без изменений - ее данные уже лежат в архиве.
+     */
+    public void keep(ZipDirectory.Entry entry) throws IOException {
+        countEntry();
+        central.write(entry.record());
+    }
+
+    /**
+     * Сжимает и записывает новую запись.
+     */
+    public void write(String name, InputStream content, long lastModified) throws IOException {
+        countEntry();
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int flags = FLAG_DATA_DESCRIPTOR | FLAG_UTF8;
+        int[] dos = dosTime(lastModified);
+        long offset = checkOffset(out.position);
+
+        ByteBuffer local = le(30 + nameBytes.length);
+        local.putInt(ZipDirectory.LOCAL_SIGNATURE).putShort((short) VERSION).putShort((short) flags)
+                .putShort((short) METHOD_DEFLATED).putShort((short) dos[0]).putShort((short) dos[1])
+                .putInt(0).putInt(0).putInt(0)
+                .putShort((short) nameBytes.length).putShort((short) 0).put(nameBytes);
+        out.write(local.array());
+
+        CRC32 crc = new CRC32();
+        long size = 0;
+        long dataStart = out.position;
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            DeflaterOutputStream deflated = new DeflaterOutputStream(nonClosing(out), deflater, buffer.length);
+            int n;
+            while ((n = content.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+                deflated.write(buffer, 0, n);
+                size += n;
+            }
+            deflated.finish();
+        } finally {
+            deflater.end();
+        }
+        long compressedSize = out.position - dataStart;
+        if (size > MAX_U32 || compressedSize > MAX_U32) {
+            throw new ZipException("Entry " + name + " needs ZIP64, which is not supported");
+        }
+
+        ByteBuffer descriptor = le(16);
+        descriptor.putInt(DESCRIPTOR_SIGNATURE).putInt((int) crc.getValue())
+                .putInt((int) compressedSize).putInt((int) size);
+        out.write(descriptor.array());
+
+        ByteBuffer record = le(ZipDirectory.CENTRAL_HEADER_SIZE + nameBytes.length);
+        record.putInt(ZipDirectory.CENTRAL_SIGNATURE).putShort((short) VERSION).putShort((short) VERSION)
+                .putShort((short) flags).putShort((short) METHOD_DEFLATED)
+                .putShort((short) dos[0]).putShort((short) dos[1])
+                .putInt((int) crc.getValue()).putInt((int) compressedSize).putInt((int) size)
+                .putShort((short) nameBytes.length).putShort((short) 0).putShort((short) 0)
+                .putShort((short) 0).putShort((short) 0).putInt(0).putInt((int) offset)
+                .put(nameBytes);
+        central.write(record.array());
+    }
+
+    /**
+     * Переносит запись другого архива без распаковки: сжатые байты и CRC копируются как есть,
+     * заголовки пишутся заново (новое смещение и, возможно, новое имя).
+     *
+     * @param compressed ровно {@link ZipDirectory.Entry#getCompressedSize()} байт данных записи
+     */
+    public void copy(ZipDirectory.Entry entry, String name, InputStream compressed) throws IOException {
+        countEntry();
+        ByteBuffer source = ByteBuffer.wrap(entry.record()).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int flags = entry.getFlags() | FLAG_UTF8;
+        boolean hasDescriptor = (flags & FLAG_DATA_DESCRIPTOR) != 0;
+        short versionNeeded = source.getShort(6);
+        short time = source.getShort(12);
+        short date = source.getShort(14);
+        long offset = checkOffset(out.position);
+
+        ByteBuffer local = le(30 + nameBytes.length);
+        local.putInt(ZipDirectory.LOCAL_SIGNATURE).putShort(versionNeeded).putShort((short) flags)
+                .putShort((short) entry.getMethod()).putShort(time).putShort(date);
+        if (hasDescriptor) {
+            local.putInt(0).putInt(0).putInt(0);
+        } else {
+            local.putInt((int) entry.getCrc()).putInt((int) entry.getCompressedSize()).putInt((int) entry.getSize());
+        }
+        local.putShort((short) nameBytes.length).putShort((short) 0).put(nameBytes);
+        out.write(local.array());
+
+        long remaining = entry.getCompressedSize();
+        while (remaining > 0) {
+            int n = compressed.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n < 0) {
+                throw new EOFException("Entry " + entry.getName() + " is truncated");
+            }
+            out.write(buffer, 0, n);
+            remaining -= n;
+        }
+        if (hasDescriptor) {
+            ByteBuffer descriptor = le(16);
+            descriptor.putInt(DESCRIPTOR_SIGNATURE).putInt((int) entry.getCrc())
+                    .putInt((int) entry.getCompressedSize()).putInt((int) entry.getSize());
+            out.write(descriptor.array());
+        }
+
+        // extra-поля и комментарий каталога переносятся без изменений
+        int oldNameLength = source.getShort(28) & 0xFFFF;
+        int tailLength = entry.record().length - ZipDirectory.CENTRAL_HEADER_SIZE - oldNameLength;
+        ByteBuffer record = le(ZipDirectory.CENTRAL_HEADER_SIZE + nameBytes.length + tailLength);
+        record.putInt(ZipDirectory.CENTRAL_SIGNATURE).putShort(source.getShort(4)).putShort(versionNeeded)
+                .putShort((short) flags).putShort((short) entry.getMethod()).putShort(time).putShort(date)
+                .putInt((int) entry.getCrc()).putInt((int) entry.getCompressedSize()).putInt((int) entry.getSize())
+                .putShort((short) nameBytes.length).putShort(source.getShort(30)).putShort(source.getShort(32))
+                .putShort((short) 0).putShort(source.getShort(36)).putInt(source.getInt(38)).putInt((int) offset)
+                .put(nameBytes)
+                .put(entry.record(), ZipDirectory.CENTRAL_HEADER_SIZE + oldNameLength, tailLength);
+        central.write(record.array());
+    }
+
+    /**
+     * Пишет центральный каталог и EOCD. Поток не закрывается.
+     */
+    public void finish(byte[] comment) throws IOException {
+        long centralOffset = checkOffset(out.position);
+        central.writeTo(out);
+        long centralSize = out.position - centralOffset;
+        checkOffset(out.position);
+
+        ByteBuffer eocd = le(ZipDirectory.EOCD_SIZE + comment.length);
+        eocd.putInt(ZipDirectory.EOCD_SIGNATURE).putShort((short) 0).putShort((short) 0)
+                .putShort((short) entryCount).putShort((short) entryCount)
+                .putInt((int) centralSize).putInt((int) centralOffset)
+                .putShort((short) comment.length).put(comment);
+        out.write(eocd.array());
+        out.flush();
+    }
+
+    private void countEntry() throws ZipException {
+        if (++entryCount > MAX_ENTRIES) {
+            throw new ZipException("More than " + MAX_ENTRIES + " entries need ZIP64, which is not supported");
+        }
+    }
+
+    private static long checkOffset(long offset) throws ZipException {
+        if (offset > MAX_U32) {
+            throw new ZipException("Archive larger than 4 GB needs ZIP64, which is not supported");
+        }
+        return offset;
+    }
+
+    // Время DOS: {время, дата} с точностью 2 секунды, годы с 1980
+    private static int[] dosTime(long millis) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            return new int[]{0, (1 << 5) | 1};
+        }
+        int dosTime = (time.getHour() << 11) | (time.getMinute() << 5) | (time.getSecond() >> 1);
+        int dosDate = ((time.getYear() - 1980) << 9) | (time.getMonthValue() << 5) | time.getDayOfMonth();
+        return new int[]{dosTime, dosDate};
+    }
+
+    private static ByteBuffer le(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static OutputStream nonClosing(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long position;
+
+        CountingOutputStream(OutputStream out, long position) {
+            super(out);
+            this.position = position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.cloud_spring_load_zip.admission;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveLimiterTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    void limitGrowsUnderLoadAndShrinksWhenLatencyRises() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 2, 100, 1.5, 0.2);
+
+        // Все слоты заняты, задержка стабильна - лимит растет
+        for (int i = 0; i < 50; i++) {
+            fill(limiter);
+            drain(limiter, 10 * MS);
+        }
+        int grown = limiter.getLimit();
+        assertTrue(grown > 10, "limit " + grown);
+
+        // Задержка выросла в 5 раз - очередь, лимит должен упасть
+        for (int i = 0; i < 5; i++) {
+            fill(limiter);
+            drain(limiter, 50 * MS);
+        }
+        assertTrue(limiter.getLimit() < grown / 2, "limit " + limiter.getLimit());
+        assertTrue(limiter.getLimit() >= 2);
+
+        fill(limiter);
+        assertFalse(limiter.tryAcquire());
+        assertEquals(limiter.getLimit(), limiter.getInFlight());
+    }
+
+    @Test
+    void bucketAllowsBurstThenReportsWait() {
+        RateBucket bucket = new RateBucket(2, 3);
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        long wait = bucket.tryAcquire();
+        assertTrue(wait > 0 && wait <= 500 * MS, "wait " + wait);
+    }
+
+    private static void fill(AdaptiveLimiter limiter) {
+        while (limiter.tryAcquire()) {
+            // занимаем все слоты
+        }
+    }
+
+    private static void drain(AdaptiveLimiter limiter, long rttNanos) {
+        while (limiter.getInFlight() > 0) {
+            limiter.release(rttNanos);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.cloud_spring_load_zip.admission;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionFilterTest {
+
+    @Test
+    void eventStreamsDoNotHoldReadSlots() throws Exception {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.getRead().setInitialLimit(1);
+        properties.getRead().setMinLimit(1);
+        properties.getRead().setMaxLimit(1);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AdmissionFilter filter = new AdmissionFilter(properties, new ObjectMapper(), registry);
+
+        // Пока открыт поток событий, единственный слот чтения свободен
+        MockHttpServletResponse read = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/files/jobs/42/events"), new MockHttpServletResponse(),
+                (request, response) -> filter.doFilter(new MockHttpServletRequest("GET", "/api/files/list"), read,
+                        (inner, innerResponse) -> { }));
+
+        assertEquals(200, read.getStatus());
+        assertEquals(0.0, registry.get("admission.rejected").tag("route", "read").tag("reason", "overload")
+                .counter().count());
+        assertEquals(0.0, registry.get("admission.inflight").tag("route", "read").gauge().value());
+    }
+
+    @Test
+    void clientHeaderCountsOnlyFromTrustedProxies() throws Exception {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.getRead().setRatePerClient(0.001);
+        properties.getRead().setBurst(2);
+        properties.setTrustedProxies(List.of("10.0.0.1"));
+        AdmissionFilter filter = new AdmissionFilter(properties, new ObjectMapper(), new SimpleMeterRegistry());
+
+        // Новый X-Client-Id на каждый запрос не дает новой корзины
+        assertEquals(200, read(filter, "192.168.0.7", "a"));
+        assertEquals(200, read(filter, "192.168.0.7", "b"));
+        assertEquals(429, read(filter, "192.168.0.7", "c"));
+
+        // За доверенным прокси клиенты различаются по заголовку
+        assertEquals(200, read(filter, "10.0.0.1", "a"));
+        assertEquals(200, read(filter, "10.0.0.1", "a"));
+        assertEquals(200, read(filter, "10.0.0.1", "b"));
+        assertEquals(429, read(filter, "10.0.0.1", "a"));
+    }
+
+    private static int read(AdmissionFilter filter, String address, String clientId) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/files/list");
+        request.setRemoteAddr(address);
+        request.addHeader("X-Client-Id", clientId);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, (inner, innerResponse) -> { });
+        return response.getStatus();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.cloud_spring_load_zip.backup;
+
+import com.example.cloud_spring_load_zip.service.AppFileProperties;
+import com.example.cloud_spring_load_zip.service.FileStoredEvent;
+import com.example.cloud_spring_load_zip.storage.LocalStorageBackend;
+import com.example.cloud_spring_load_zip.storage.StorageLayout;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackupReplicatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LocalStorageBackend primary;
+    private AppFileProperties appFileProperties;
+    private BackupReplicator replicator;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        primary = new LocalStorageBackend(new StorageLayout(tempDir.resolve("uploads"), true, 2));
+        appFileProperties = new AppFileProperties();
+        appFileProperties.getStorage().setBackupEnabled(true);
+        AppFileProperties.Backup backup = appFileProperties.getStorage().getBackup();
+        backup.setDir(tempDir.resolve("backup").toString());
+        backup.setQueueDir(tempDir.resolve("queue").toString());
+        // Воркер вызывается из теста напрямую
+        backup.setPollInterval(Duration.ofHours(1));
+        replicator = new BackupReplicator(primary, appFileProperties, new SimpleMeterRegistry());
+        replicator.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        replicator.shutdown();
+    }
+
+    @Test
+    void copiesStoredFilesToBackup() throws Exception {
+        put("report.txt", "hello");
+        replicator.onFileStored(new FileStoredEvent("report.txt", 5));
+        replicator.onFileStored(new FileStoredEvent("missing.txt", 1));
+
+        replicator.drain();
+
+        LocalStorageBackend target = new LocalStorageBackend(new StorageLayout(tempDir.resolve("backup"), true, 2));
+        try (InputStream in = target.get("report.txt")) {
+            assertEquals("hello", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(0, replicator.status().get("pending"));
+        assertEquals(1L, replicator.status().get("replicated"));
+    }
+
+    @Test
+    void pendingTasksSurviveRestart() throws Exception {
+        replicator.onFileStored(new FileStoredEvent("later.txt", 3));
+        replicator.shutdown();
+
+        BackupQueue queue = new BackupQueue(tempDir.resolve("queue"));
+        List<BackupQueue.Task> tasks = queue.poll(10, System.currentTimeMillis());
+        assertEquals(1, tasks.size());
+        assertEquals("later.txt", tasks.get(0).key);
+
+        // Повторная запись во время копирования не теряется при ack старой версии
+        queue.enqueue("later.txt");
+        queue.ack(tasks.get(0));
+        assertEquals(1, queue.size());
+        queue.close();
+    }
+
+    @Test
+    void journalIsCompactedWhileTheQueueNeverEmpties() throws Exception {
+        Path dir = tempDir.resolve("journal");
+        String padding = "x".repeat(200);
+        try (BackupQueue queue = new BackupQueue(dir)) {
+            queue.enqueue("pinned");
+            for (int i = 0; i < 10_000; i++) {
+                queue.enqueue("file-" + i + padding);
+                for (BackupQueue.Task task : queue.poll(10, Long.MAX_VALUE)) {
+                    if (!task.key.equals("pinned")) {
+                        queue.ack(task);
+                    }
+                }
+                if (i % 100 == 0) {
+                    queue.sync();
+                }
+            }
+            queue.sync();
+            assertEquals(1, queue.size());
+        }
+        assertTrue(Files.size(dir.resolve("journal.log")) < 2 * 1024 * 1024);
+        try (BackupQueue reopened = new BackupQueue(dir)) {
+            assertEquals(1, reopened.size());
+        }
+    }
+
+    private void put(String key, String content) throws Exception {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        primary.put(key, new ByteArrayInputStream(bytes), bytes.length);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.cloud_spring_load_zip.bulkhead;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkheadTest {
+
+    @Test
+    void runsHigherPriorityFirstAndRejectsWhenQueueIsFull() throws Exception {
+        BulkheadProperties.Pool pool = new BulkheadProperties.Pool();
+        pool.setThreads(1);
+        pool.setQueueCapacity(2);
+        Bulkhead bulkhead = new Bulkhead("test", pool, new SimpleMeterRegistry());
+        try {
+            // Единственный поток занят - остальные задачи ждут в очереди
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            bulkhead.submit(Bulkhead.Priority.NORMAL, () -> {
+                started.countDown();
+                await(release);
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            List<String> order = new CopyOnWriteArrayList<>();
+            CompletableFuture<String> low = bulkhead.supply(Bulkhead.Priority.LOW, () -> record(order, "low"));
+            CompletableFuture<String> high = bulkhead.supply(Bulkhead.Priority.HIGH, () -> record(order, "high"));
+            assertEquals(1.0, bulkhead.saturation());
+            assertThrows(RejectedExecutionException.class,
+                    () -> bulkhead.supply(Bulkhead.Priority.HIGH, () -> "overflow"));
+
+            release.countDown();
+            assertEquals("low", low.get(5, TimeUnit.SECONDS));
+            assertEquals("high", high.get(5, TimeUnit.SECONDS));
+            assertEquals(List.of("high", "low"), order);
+        } finally {
+            bulkhead.shutdown();
+        }
+    }
+
+    private static String record(List<String> order, String value) {
+        order.add(value);
+        return value;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
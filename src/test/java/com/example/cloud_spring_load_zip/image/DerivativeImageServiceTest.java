@@ -0,0 +1,135 @@
+package com.example.cloud_spring_load_zip.image;
+
+import com.example.cloud_spring_load_zip.bulkhead.BulkheadProperties;
+import com.example.cloud_spring_load_zip.bulkhead.Bulkheads;
+import com.example.cloud_spring_load_zip.exception.FileValidationException;
+import com.example.cloud_spring_load_zip.service.LocalStorageFixture;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DerivativeImageServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @TempDir
+    Path cacheDir;
+
+    private LocalStorageFixture storage;
+    private SimpleMeterRegistry registry;
+    private StorageBackend backend;
+    private Bulkheads bulkheads;
+    private DerivativeImageService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = LocalStorageFixture.create(uploadDir);
+        registry = storage.getRegistry();
+        backend = storage.getBackend();
+        bulkheads = new Bulkheads(new BulkheadProperties(), registry);
+        DerivativeCache cache = new DerivativeCache(cacheDir, 1 << 20, registry);
+        cache.init();
+        service = new DerivativeImageService(backend, cache, bulkheads, storage.getProperties(), registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bulkheads.shutdown();
+        storage.close();
+    }
+
+    @Test
+    void rendersEachThumbnailOnceAndServesItFromDisk() throws Exception {
+        BufferedImage source = new BufferedImage(400, 200, BufferedImage.TYPE_INT_ARGB);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(source, "png", png);
+        backend.put("photo.png", new ByteArrayInputStream(png.toByteArray()), png.size());
+
+        // Одновременные запросы одного превью ждут одну генерацию
+        List<CompletableFuture<DerivativeImageService.Derivative>> requests = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            requests.add(service.render("photo.png", 100, null, null));
+        }
+        DerivativeImageService.Derivative first = requests.get(0).get(10, TimeUnit.SECONDS);
+        // Каждый запрос отдает свой открытый файл
+        for (CompletableFuture<DerivativeImageService.Derivative> request : requests.subList(1, requests.size())) {
+            try (DerivativeImageService.Derivative derivative = request.get(10, TimeUnit.SECONDS)) {
+                assertEquals(first.getEtag(), derivative.getEtag());
+                assertNotSame(first.getResource(), derivative.getResource());
+            }
+        }
+        assertEquals(1.0, registry.get("images.derivatives.renders").tag("outcome", "generated").counter().count());
+
+        BufferedImage thumbnail = read(first);
+        assertEquals(100, thumbnail.getWidth());
+        assertEquals(50, thumbnail.getHeight());
+        assertTrue(thumbnail.getColorModel().hasAlpha());
+
+        // Без увеличения; JPEG - без прозрачности
+        DerivativeImageService.Derivative jpeg = service.render("photo.png", 1000, 1000, "jpg").get(10, TimeUnit.SECONDS);
+        assertEquals("image/jpeg", jpeg.getContentType());
+        BufferedImage full = read(jpeg);
+        assertEquals(400, full.getWidth());
+        assertFalse(full.getColorModel().hasAlpha());
+
+        byte[] text = "not an image".getBytes(StandardCharsets.UTF_8);
+        backend.put("notes.png", new ByteArrayInputStream(text), text.length);
+        CompletableFuture<DerivativeImageService.Derivative> broken = service.render("notes.png", 10, null, null);
+        Exception ex = assertThrows(Exception.class, () -> broken.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(FileValidationException.class, ex.getCause());
+        assertThrows(FileValidationException.class, () -> service.render("photo.png", 100, null, "webp"));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOverLimitAndReloadsAfterRestart() throws Exception {
+        Path dir = cacheDir.resolve("lru");
+        DerivativeCache cache = new DerivativeCache(dir, 250, registry);
+        cache.init();
+        cache.put("a.png", target -> Files.write(target, new byte[100]));
+        cache.put("b.png", target -> Files.write(target, new byte[100]));
+        cache.open("a.png").orElseThrow().close();
+        OpenedDerivative served = cache.open("b.png").orElseThrow();
+        cache.open("a.png").orElseThrow().close();
+        cache.put("c.png", target -> Files.write(target, new byte[100]));
+
+        assertTrue(cache.open("b.png").isEmpty());
+        assertFalse(Files.exists(dir.resolve("b.png")));
+        assertEquals(200, cache.totalBytes());
+        // Вытеснение не обрывает уже начатую отдачу
+        try (InputStream in = served.getInputStream()) {
+            assertEquals(100, in.readAllBytes().length);
+        }
+
+        DerivativeCache reopened = new DerivativeCache(dir, 250, new SimpleMeterRegistry());
+        reopened.init();
+        assertEquals(2, reopened.size());
+        reopened.open("a.png").orElseThrow().close();
+        reopened.open("c.png").orElseThrow().close();
+    }
+
+    private static BufferedImage read(DerivativeImageService.Derivative derivative) throws IOException {
+        try (InputStream in = derivative.getResource().getInputStream()) {
+            return ImageIO.read(in);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.cloud_spring_load_zip.integrity;
+
+import com.example.cloud_spring_load_zip.bulkhead.BulkheadProperties;
+import com.example.cloud_spring_load_zip.bulkhead.Bulkheads;
+import com.example.cloud_spring_load_zip.service.ArchiveProgress;
+import com.example.cloud_spring_load_zip.service.FileArchiveService;
+import com.example.cloud_spring_load_zip.service.LocalStorageFixture;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import com.example.cloud_spring_load_zip.zip.ZipDirectory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveVerifierTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private LocalStorageFixture storage;
+    private SimpleMeterRegistry registry;
+    private StorageBackend backend;
+    private Bulkheads bulkheads;
+    private FileArchiveService archiveService;
+    private ArchiveVerifier verifier;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = LocalStorageFixture.create(uploadDir);
+        registry = storage.getRegistry();
+        backend = storage.getBackend();
+        bulkheads = new Bulkheads(new BulkheadProperties(), registry);
+        archiveService = new FileArchiveService(backend, storage.getCatalog(), storage.newHotFileCache(),
+                event -> { }, registry);
+        verifier = new ArchiveVerifier(backend, bulkheads, storage.getProperties(), registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bulkheads.shutdown();
+        storage.close();
+    }
+
+    @Test
+    void detectsCorruptedEntryAndManifestMismatch() throws Exception {
+        // Несжимаемые данные больше порога - записи проверяются параллельно
+        byte[] big = new byte[(int) ArchiveVerifier.PARALLEL_THRESHOLD + 1024];
+        new Random(42).nextBytes(big);
+        byte[] small = "hello".getBytes(StandardCharsets.UTF_8);
+        archiveService.compress(List.of(
+                new FileArchiveService.Source("big.bin", new ByteArrayResource(big), big.length),
+                new FileArchiveService.Source("small.txt", new ByteArrayResource(small), small.length),
+                new FileArchiveService.Source("other.bin", new ByteArrayResource(big), big.length)
+        ), "a.zip", ArchiveProgress.NONE);
+
+        VerificationReport report = verifier.verify("a.zip", false);
+        assertTrue(report.isOk(), () -> report.getFailures().toString());
+        assertEquals(3, report.getEntries());
+        assertEquals(3, report.getVerifiedDigests());
+        assertTrue(verifier.verify("a.zip", false).isCached());
+
+        // Один байт в середине сжатых данных big.bin
+        Path zip = backend.localPath("a.zip").orElseThrow();
+        long dataOffset;
+        try (RandomAccessFile file = new RandomAccessFile(zip.toFile(), "rw")) {
+            ZipDirectory directory = ZipDirectory.read((offset, length) -> read(file, offset, length), file.length());
+            ZipDirectory.Entry entry = directory.getEntries().get(0);
+            dataOffset = ZipDirectory.dataOffset((offset, length) -> read(file, offset, length), entry);
+            long target = dataOffset + entry.getCompressedSize() / 2;
+            file.seek(target);
+            int b = file.read();
+            file.seek(target);
+            file.write(b ^ 0xFF);
+        }
+        VerificationReport corrupt = verifier.verify("a.zip", true);
+        assertFalse(corrupt.isOk());
+        assertEquals(1, corrupt.getFailures().size());
+        assertEquals("big.bin", corrupt.getFailures().get(0).getEntry());
+        assertEquals(List.of("a.zip"), verifier.corrupt().stream().map(VerificationReport::getArchive).toList());
+
+        // Манифест с чужим хешем при совпадающих CRC и размере - расхождение по SHA-256
+        String manifestKey = ArchiveManifest.key("a.zip");
+        ArchiveManifest manifest;
+        try (InputStream in = backend.get(manifestKey)) {
+            manifest = ArchiveManifest.parse(in.readAllBytes());
+        }
+        ArchiveManifest.Line line = manifest.getEntries().get("small.txt");
+        ArchiveManifest tampered = new ArchiveManifest();
+        tampered.add("small.txt", "0".repeat(64), line.getCrc(), line.getSize());
+        byte[] bytes = tampered.format();
+        backend.put(manifestKey, new ByteArrayInputStream(bytes), bytes.length);
+
+        VerificationReport mismatch = verifier.verify("a.zip", true);
+        assertTrue(mismatch.getFailures().stream()
+                .anyMatch(failure -> failure.getEntry().equals("small.txt") && failure.getProblem().startsWith("SHA-256")));
+    }
+
+    private static byte[] read(RandomAccessFile file, long offset, int length) throws java.io.IOException {
+        byte[] bytes = new byte[length];
+        file.seek(offset);
+        file.readFully(bytes);
+        return bytes;
+    }
+}
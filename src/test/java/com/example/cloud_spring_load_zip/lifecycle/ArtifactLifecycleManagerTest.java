@@ -0,0 +1,180 @@
+package com.example.cloud_spring_load_zip.lifecycle;
+
+import com.example.cloud_spring_load_zip.service.AppFileProperties;
+import com.example.cloud_spring_load_zip.service.ArchiveAppendService;
+import com.example.cloud_spring_load_zip.service.ArchiveProgress;
+import com.example.cloud_spring_load_zip.service.DeltaArchiveService;
+import com.example.cloud_spring_load_zip.service.FileArchiveService;
+import com.example.cloud_spring_load_zip.service.FileCatalog;
+import com.example.cloud_spring_load_zip.service.FileStorageService;
+import com.example.cloud_spring_load_zip.service.FileStoredEvent;
+import com.example.cloud_spring_load_zip.service.HotFileCache;
+import com.example.cloud_spring_load_zip.service.LocalStorageFixture;
+import com.example.cloud_spring_load_zip.service.UploadValidator;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArtifactLifecycleManagerTest {
+
+    private static final long MINUTE = 60_000;
+
+    @TempDir
+    Path uploadDir;
+
+    @TempDir
+    Path stateDir;
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private LocalStorageFixture storage;
+    private AppFileProperties appFileProperties;
+    private SimpleMeterRegistry registry;
+    private StorageBackend backend;
+    private FileCatalog catalog;
+    private FileArchiveService archiveService;
+    private DeltaArchiveService deltaService;
+    private FileStorageService storageService;
+    private ArtifactLifecycleManager manager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = LocalStorageFixture.create(uploadDir, properties -> {
+            AppFileProperties.Lifecycle lifecycle = properties.getLifecycle();
+            lifecycle.setArchiveTtl(Duration.ofHours(1));
+            lifecycle.setDirectoryTtl(Duration.ofMinutes(10));
+            lifecycle.setMinIdle(Duration.ZERO);
+            lifecycle.setBatchSize(1);
+            lifecycle.setBatchPause(Duration.ZERO);
+            lifecycle.setSweepInterval(Duration.ofHours(1));
+            lifecycle.setStateFile(stateDir.resolve("artifacts.properties").toString());
+        });
+        appFileProperties = storage.getProperties();
+        registry = storage.getRegistry();
+        backend = storage.getBackend();
+        catalog = storage.getCatalog();
+        // События сервисов доходят до текущего менеджера, как через контекст Spring
+        ApplicationEventPublisher publisher = event -> manager.onFileStored((FileStoredEvent) event);
+        HotFileCache hotFileCache = storage.newHotFileCache();
+        archiveService = new FileArchiveService(backend, catalog, hotFileCache, publisher, registry);
+        deltaService = new DeltaArchiveService(backend, archiveService, catalog, hotFileCache, publisher, registry);
+        storageService = new FileStorageService(backend, catalog, publisher,
+                new UploadValidator(appFileProperties, registry), hotFileCache);
+        manager = open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.shutdown();
+        storage.close();
+    }
+
+    private ArtifactLifecycleManager open() {
+        ArtifactLifecycleManager opened = new ArtifactLifecycleManager(backend, catalog, storageService, deltaService,
+                appFileProperties, registry, now::get);
+        opened.init();
+        return opened;
+    }
+
+    @Test
+    void expiresIdleArtifactsButKeepsUploadsAndDeltaBases() throws Exception {
+        // Загрузка пользователя с именем архива уборке не подлежит
+        byte[] upload = bytes("PK\5\6 user data");
+        storageService.store("user.zip", new ByteArrayInputStream(upload), upload.length);
+        compress("a.zip", "alpha");
+        archiveService.extract("a.zip", ArchiveProgress.NONE);
+        put("docs/x.txt", "x");
+        deltaService.create("docs", null, "full");
+        put("docs/y.txt", "y");
+        deltaService.create("docs", "full.zip", "d1");
+
+        now.addAndGet(20 * MINUTE);
+        manager.touch("a.zip");
+        assertEquals(List.of("a_extracted"), manager.sweep());
+        assertTrue(backend.stat("a_extracted").isEmpty());
+
+        // Через два часа истекли все архивы, но full.zip - база живого d1.zip
+        now.addAndGet(120 * MINUTE);
+        List<String> deleted = manager.sweep();
+        assertEquals(2, deleted.size());
+        assertTrue(deleted.containsAll(List.of("a.zip", "d1.zip")));
+        assertTrue(backend.stat("full.zip").isPresent());
+
+        assertEquals(List.of("full.zip"), manager.sweep());
+        assertTrue(backend.stat("user.zip").isPresent());
+        assertTrue(backend.stat("docs/x.txt").isPresent());
+        assertTrue(registry.get("files.artifacts.reclaimed").tag("reason", "ttl").counter().count() > 0);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOverQuotaAndRemembersAccessAcrossRestart() throws Exception {
+        compress("b1.zip", "same content");
+        now.addAndGet(MINUTE);
+        compress("b2.zip", "same content");
+        now.addAndGet(MINUTE);
+        compress("b3.zip", "same content");
+        now.addAndGet(MINUTE);
+        manager.touch("b1.zip");
+
+        long size = storageService.getFileSize("b1.zip");
+        appFileProperties.getLifecycle().setMaxBytes(DataSize.ofBytes(2 * size + size / 2));
+        assertEquals(List.of("b2.zip"), manager.sweep());
+        assertEquals(1.0, registry.get("files.artifacts.deleted").tag("reason", "quota").counter().count());
+
+        // После рестарта b3 по-прежнему старше b1
+        manager.shutdown();
+        manager = open();
+        assertEquals(2, manager.status().get("artifacts"));
+        compress("b4.zip", "same content");
+        now.addAndGet(MINUTE);
+        assertEquals(List.of("b3.zip"), manager.sweep());
+        assertTrue(backend.stat("b1.zip").isPresent());
+    }
+
+    @Test
+    void userUploadOverArtifactIsNoLongerReclaimedButAppendKeepsTracking() throws Exception {
+        compress("report.zip", "generated");
+        compress("log.zip", "generated");
+        byte[] upload = bytes("PK\5\6 user report");
+        storageService.store("report.zip", new ByteArrayInputStream(upload), upload.length);
+        ArchiveAppendService appendService = new ArchiveAppendService(backend, storage.getLayout(), catalog,
+                event -> manager.onFileStored((FileStoredEvent) event));
+        byte[] entry = bytes("more");
+        appendService.append("log.zip", List.of(new FileArchiveService.Source("more.txt",
+                () -> new ByteArrayInputStream(entry), entry.length)));
+
+        now.addAndGet(120 * MINUTE);
+        assertEquals(List.of("log.zip"), manager.sweep());
+        assertTrue(backend.stat("report.zip").isPresent());
+    }
+
+    private void compress(String zipFileName, String content) throws IOException {
+        byte[] data = bytes(content);
+        archiveService.compress(List.of(new FileArchiveService.Source("f.txt",
+                () -> new ByteArrayInputStream(data), data.length)), zipFileName, ArchiveProgress.NONE);
+    }
+
+    private void put(String key, String content) throws IOException {
+        byte[] data = bytes(content);
+        backend.put(key, new ByteArrayInputStream(data), data.length);
+        catalog.refresh(key.substring(0, key.indexOf('/')));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
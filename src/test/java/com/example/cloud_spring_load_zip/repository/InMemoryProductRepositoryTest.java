@@ -0,0 +1,102 @@
+package com.example.cloud_spring_load_zip.repository;
+
+import com.example.cloud_spring_load_zip.model.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryProductRepositoryTest {
+
+    @TempDir
+    Path dataDir;
+
+    private InMemoryProductRepository open() throws Exception {
+        ProductStorageProperties properties = new ProductStorageProperties();
+        properties.setDir(dataDir.toString());
+        properties.setSnapshotEveryRecords(5);
+        return new InMemoryProductRepository(properties);
+    }
+
+    @Test
+    void changesSurviveRestart() throws Exception {
+        InMemoryProductRepository repository = open();
+        assertEquals(3, repository.getAllProducts().orElseThrow().size());
+        repository.save(new Product(4, "dproduct 4", 40, 4000, "img"));
+        repository.update(1, new Product(1, "renamed", 11, 1100, ""));
+        repository.delete(2);
+        assertEquals("/api/files/images/ab.png", repository.updateImage(3, "/api/files/images/ab.png").getImageURI());
+        assertNull(repository.updateImage(2, "missing"));
+        repository.close();
+
+        InMemoryProductRepository reopened = open();
+        assertEquals(3, reopened.getAllProducts().orElseThrow().size());
+        assertEquals("renamed", reopened.findById(1).orElseThrow().getName());
+        assertEquals("/api/files/images/ab.png", reopened.findById(3).orElseThrow().getImageURI());
+        assertEquals("cproduct 3", reopened.findById(3).orElseThrow().getName());
+        assertTrue(reopened.findById(2).isEmpty());
+        assertEquals("img", reopened.findById(4).orElseThrow().getImageURI());
+        reopened.close();
+    }
+
+    @Test
+    void recoversFromSnapshotPlusLogAndDropsTornTail() throws Exception {
+        InMemoryProductRepository repository = open();
+        for (int i = 10; i < 30; i++) {
+            repository.save(new Product(i, "p" + i, i, i, null));
+        }
+        // Снимок по порогу пишется в фоне; закрытие дожидается его и пишет финальный
+        repository.close();
+        try (Stream<Path> files = Files.list(dataDir)) {
+            assertTrue(files.anyMatch(p -> p.getFileName().toString().startsWith("snapshot-")));
+        }
+
+        InMemoryProductRepository reopened = open();
+        reopened.save(new Product(99, "last", 1, 1, null));
+        reopened.close();
+        // Имитация сбоя посреди записи: мусор в конце последнего сегмента
+        Path lastSegment;
+        try (Stream<Path> files = Files.list(dataDir)) {
+            lastSegment = files.filter(p -> p.getFileName().toString().startsWith("wal-"))
+                    .max((a, b) -> Long.compare(segmentOf(a), segmentOf(b))).orElseThrow();
+        }
+        Files.write(lastSegment, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        InMemoryProductRepository recovered = open();
+        assertEquals(24, recovered.getAllProducts().orElseThrow().size());
+        assertTrue(recovered.findById(99).isPresent());
+        recovered.close();
+    }
+
+    @Test
+    void keepsIdIndexConsistentAcrossDeletesDuplicatesAndCompaction() {
+        InMemoryProductRepository repository = new InMemoryProductRepository();
+        for (int i = 10; i < 3010; i++) {
+            repository.save(new Product(i, "p" + i, i, i, null));
+        }
+        repository.save(new Product(20, "p20 copy", 1, 1, null));
+        repository.delete(20);
+        assertTrue(repository.findById(20).isEmpty());
+
+        // Больше половины списка удалено - уплотнение не должно сбить ни индекс, ни порядок
+        for (int i = 10; i < 2500; i++) {
+            repository.delete(i);
+        }
+        repository.update(2600, new Product(2600, "renamed", 1, 1, null));
+        assertEquals("renamed", repository.findById(2600).orElseThrow().getName());
+        assertEquals(3 + 510, repository.getAllProducts().orElseThrow().size());
+        assertEquals(2500, repository.getAllProducts().orElseThrow().get(3).getId());
+        assertTrue(repository.findById(100).isEmpty());
+        assertEquals(3009, repository.findById(3009).orElseThrow().getId());
+    }
+
+    private static long segmentOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(4, name.length() - 4));
+    }
+}
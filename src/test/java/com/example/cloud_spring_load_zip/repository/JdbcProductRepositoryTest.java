@@ -0,0 +1,94 @@
+package com.example.cloud_spring_load_zip.repository;
+
+import com.example.cloud_spring_load_zip.exception.ProductStorageException;
+import com.example.cloud_spring_load_zip.model.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JdbcProductRepositoryTest {
+
+    private SimpleMeterRegistry registry;
+    private ProductRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        ProductStorageProperties properties = new ProductStorageProperties();
+        properties.getJdbc().setUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        registry = new SimpleMeterRegistry();
+        repository = new CachingProductRepository(
+                new JdbcProductRepository(properties.getJdbc(), registry), properties.getCache(), registry);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        repository.close();
+    }
+
+    @Test
+    void behavesLikeInMemoryList() {
+        assertEquals(3, repository.getAllProducts().orElseThrow().size());
+        assertEquals("aproduct 1", repository.findById(1).orElseThrow().getName());
+
+        Product updated = repository.update(1, new Product(1, "renamed", 5, 50, "img"));
+        assertEquals("renamed", updated.getName());
+        assertNull(updated.getImageURI());
+        assertEquals("renamed", repository.findById(1).orElseThrow().getName());
+
+        // Картинка меняется отдельно и не трогает остальные поля
+        Product withImage = repository.updateImage(1, "img2");
+        assertEquals("img2", withImage.getImageURI());
+        assertEquals("renamed", withImage.getName());
+        assertEquals("img2", repository.findById(1).orElseThrow().getImageURI());
+        assertNull(repository.updateImage(404, "img"));
+
+        // Обновление отсутствующего id добавляет продукт как есть
+        repository.update(42, new Product(7, "seven", 1, 1, null));
+        assertTrue(repository.findById(7).isPresent());
+
+        assertEquals("Product with id 2 deleted", repository.delete(2));
+        assertEquals("Product with id 2 not found", repository.delete(2));
+        assertTrue(repository.findById(2).isEmpty());
+        assertTrue(repository.search("bpr").isEmpty());
+        assertEquals(1, repository.search("cpr").size());
+    }
+
+    @Test
+    void writerSurvivesUnexpectedErrorsAndFailsWritesAfterClose() throws Exception {
+        // NPE при привязке параметров не должна останавливать поток записи
+        assertThrows(ProductStorageException.class, () -> repository.update(1, null));
+        assertEquals("after", repository.save(new Product(9, "after", 1, 1, null)).getName());
+
+        repository.close();
+        assertThrows(ProductStorageException.class, () -> repository.save(new Product(10, "closed", 1, 1, null)));
+    }
+
+    @Test
+    void concurrentWritesAreBatched() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        List<Future<Product>> futures = new ArrayList<>();
+        for (int i = 100; i < 600; i++) {
+            int id = i;
+            futures.add(pool.submit(() -> repository.save(new Product(id, "bulk " + id, 1, 1, null))));
+        }
+        for (Future<Product> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        assertEquals(503, repository.getAllProducts().orElseThrow().size());
+        assertEquals("bulk 321", repository.findById(321).orElseThrow().getName());
+        assertEquals(500, repository.search("bulk").size());
+        assertTrue(registry.find("cache.gets").tag("cache", "products.by-id").tag("result", "miss").functionCounter().count() > 0);
+    }
+}
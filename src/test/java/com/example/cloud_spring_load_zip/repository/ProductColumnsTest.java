@@ -0,0 +1,53 @@
+package com.example.cloud_spring_load_zip.repository;
+
+import com.example.cloud_spring_load_zip.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductColumnsTest {
+
+    @Test
+    void writesFindRowsByIdAcrossCompaction() {
+        ProductColumns columns = new ProductColumns();
+        List<Product> products = new ArrayList<>();
+        for (int id = 1; id <= 3000; id++) {
+            products.add(new Product(id, "p" + id, id, id, ""));
+        }
+        columns.load(products);
+        // Дубликат id: удаление снимает обе строки
+        columns.save(new Product(7, "dup", 1, 1, ""));
+
+        // Больше четверти строк удалено - колонки уплотняются, номера строк сдвигаются
+        for (int id = 1; id <= 1200; id++) {
+            columns.delete(id);
+        }
+        columns.update(2000, new Product(2000, "renamed", 22, 220, ""));
+        columns.update(5000, new Product(5000, "new", 1, 1, ""));
+        columns.delete(2999);
+
+        columns.read(snapshot -> {
+            int live = 0;
+            for (int row = 0; row < snapshot.rows; row++) {
+                if (!snapshot.isLive(row)) {
+                    continue;
+                }
+                live++;
+                int id = snapshot.ids[row];
+                assertTrue(id > 1200, () -> "deleted id " + id);
+                assertNotEquals(2999, id);
+                if (id == 2000) {
+                    assertEquals(22, snapshot.quantities[row]);
+                    assertEquals("renamed", snapshot.dictionary.get(snapshot.nameCodes[row]));
+                }
+            }
+            assertEquals(1800, live);
+            // Удаленные строки вычищены уплотнением
+            assertTrue(snapshot.rows < 3000);
+        });
+        assertEquals(1800, columns.size());
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.exception.FileValidationException;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveAppendServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private LocalStorageFixture storage;
+    private StorageBackend backend;
+    private ArchiveAppendService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = LocalStorageFixture.create(uploadDir);
+        backend = storage.getBackend();
+        service = new ArchiveAppendService(backend, storage.getLayout(), storage.getCatalog(), event -> { });
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    void appendsWithoutTouchingExistingEntries() throws Exception {
+        ByteArrayOutputStream original = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(original)) {
+            zip.putNextEntry(new ZipEntry("old.txt"));
+            zip.write("old".repeat(1000).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            zip.setComment("keep me");
+        }
+        byte[] before = original.toByteArray();
+        backend.put("a.zip", new ByteArrayInputStream(before), before.length);
+
+        assertEquals(3, service.append("a.zip", List.of(source("new.txt", "new"), source("dir/more.txt", "more"))));
+
+        Path path = backend.localPath("a.zip").orElseThrow();
+        byte[] after = Files.readAllBytes(path);
+        // Локальная запись старого файла и его данные остались на месте
+        int dataEnd = indexOf(before, new byte[]{0x50, 0x4b, 0x01, 0x02});
+        assertArrayEquals(Arrays.copyOf(before, dataEnd), Arrays.copyOf(after, dataEnd));
+
+        try (ZipFile zip = new ZipFile(path.toFile())) {
+            assertEquals("keep me", zip.getComment());
+            assertEquals("old".repeat(1000), text(zip.getInputStream(zip.getEntry("old.txt"))));
+            assertEquals("more", text(zip.getInputStream(zip.getEntry("dir/more.txt"))));
+        }
+        // Потоковое чтение (как при распаковке) тоже видит новые записи
+        int streamed = 0;
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(path))) {
+            while (in.getNextEntry() != null) {
+                streamed++;
+            }
+        }
+        assertEquals(3, streamed);
+
+        assertThrows(FileValidationException.class, () -> service.append("a.zip", List.of(source("new.txt", "x"))));
+    }
+
+    @Test
+    void rollsBackInterruptedAppendOnStartup() throws Exception {
+        ByteArrayOutputStream original = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(original)) {
+            zip.putNextEntry(new ZipEntry("old.txt"));
+            zip.write(1);
+            zip.closeEntry();
+        }
+        byte[] before = original.toByteArray();
+        backend.put("b.zip", new ByteArrayInputStream(before), before.length);
+
+        // Источник падает посреди записи: архив откатывается сразу
+        InputStreamSource failing = () -> new InputStream() {
+            private int left = 100_000;
+
+            @Override
+            public int read() throws IOException {
+                if (--left < 0) {
+                    throw new IOException("client went away");
+                }
+                return 'x';
+            }
+        };
+        assertThrows(IOException.class, () -> service.append("b.zip",
+                List.of(new FileArchiveService.Source("big.txt", failing, -1))));
+        Path path = backend.localPath("b.zip").orElseThrow();
+        assertArrayEquals(before, Files.readAllBytes(path));
+
+        // Падение процесса: хвост затерт, журнал остался - откат при старте
+        int centralOffset = indexOf(before, new byte[]{0x50, 0x4b, 0x01, 0x02});
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(
+                path.resolveSibling(".b.zip" + ArchiveAppendService.JOURNAL_SUFFIX)))) {
+            out.writeInt(0x5a41504a);
+            out.writeLong(before.length);
+            out.writeLong(centralOffset);
+            out.writeInt(before.length - centralOffset);
+            out.write(before, centralOffset, before.length - centralOffset);
+        }
+        Files.write(path, new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, StandardOpenOption.APPEND);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{9, 9, 9, 9}), centralOffset);
+        }
+
+        service.recover();
+        assertArrayEquals(before, Files.readAllBytes(path));
+        assertFalse(Files.exists(path.resolveSibling(".b.zip" + ArchiveAppendService.JOURNAL_SUFFIX)));
+    }
+
+    private static FileArchiveService.Source source(String name, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return new FileArchiveService.Source(name, new ByteArrayResource(bytes), bytes.length);
+    }
+
+    private static String text(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
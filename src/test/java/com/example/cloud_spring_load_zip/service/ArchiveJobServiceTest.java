@@ -0,0 +1,132 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.bulkhead.Bulkhead;
+import com.example.cloud_spring_load_zip.bulkhead.BulkheadProperties;
+import com.example.cloud_spring_load_zip.bulkhead.Bulkheads;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveJobServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @TempDir
+    Path spoolDir;
+
+    private LocalStorageFixture storage;
+    private SimpleMeterRegistry registry;
+    private StorageBackend backend;
+    private Bulkheads bulkheads;
+    private ArchiveJobService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = LocalStorageFixture.create(uploadDir, properties -> {
+            properties.getJobs().setSpoolDir(spoolDir.toString());
+            // Рассылку и уборку тест вызывает сам через tick()
+            properties.getJobs().setProgressInterval(Duration.ofHours(1));
+            properties.getJobs().setResultTtl(Duration.ZERO);
+        });
+        registry = storage.getRegistry();
+        backend = storage.getBackend();
+        FileArchiveService fileArchiveService = new FileArchiveService(backend, storage.getCatalog(),
+                storage.newHotFileCache(), event -> { }, registry);
+
+        // Один поток архивации: задание можно удержать в очереди
+        BulkheadProperties bulkheadProperties = new BulkheadProperties();
+        bulkheadProperties.getArchive().setThreads(1);
+        bulkheads = new Bulkheads(bulkheadProperties, registry);
+        service = new ArchiveJobService(fileArchiveService, storage.getProperties(), bulkheads, registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+        bulkheads.shutdown();
+        storage.close();
+    }
+
+    @Test
+    void runsJobToCompletionAndExpiresOnlyItsRecord() throws Exception {
+        ArchiveJob job = service.submitCompress(List.of(file("a.txt", "alpha"), file("b.txt", "beta")),
+                "pack", "http://localhost");
+        assertEquals(job, service.get(job.getId()).orElseThrow());
+
+        Map<String, Object> done = await(job, ArchiveJob.State.SUCCEEDED);
+        assertEquals(9L, done.get("bytesDone"));
+        assertEquals(9L, done.get("bytesTotal"));
+        assertEquals(2, done.get("entriesDone"));
+        assertEquals(2, done.get("entriesTotal"));
+        assertEquals("http://localhost/api/files/download/pack.zip", done.get("resultUri"));
+        assertTrue(backend.stat("pack.zip").isPresent());
+        // Загруженные части удаляются сразу после упаковки
+        assertFalse(Files.exists(spoolDir.resolve(job.getId())));
+        assertEquals(1.0, registry.get("archive.jobs.finished").tag("outcome", "succeeded").counter().count());
+
+        // Отмена завершенного задания ничего не меняет
+        assertEquals(ArchiveJob.State.SUCCEEDED, service.cancel(job.getId()).orElseThrow().getState());
+
+        // По истечении result-ttl забывается задание, а архив остается до уборки жизненного цикла
+        Thread.sleep(5);
+        service.tick();
+        assertTrue(service.get(job.getId()).isEmpty());
+        assertTrue(backend.stat("pack.zip").isPresent());
+    }
+
+    @Test
+    void cancelsQueuedJobBeforeItStarts() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> busy = bulkheads.archive().supply(Bulkhead.Priority.NORMAL,
+                () -> release.await(10, TimeUnit.SECONDS));
+        try {
+            ArchiveJob job = service.submitCompress(List.of(file("c.txt", "gamma")), "queued", "http://localhost");
+            assertEquals(ArchiveJob.State.QUEUED, job.getState());
+            assertTrue(Files.exists(spoolDir.resolve(job.getId())));
+
+            assertEquals(ArchiveJob.State.CANCELLED, service.cancel(job.getId()).orElseThrow().getState());
+            assertFalse(Files.exists(spoolDir.resolve(job.getId())));
+            assertEquals(1.0, registry.get("archive.jobs.finished").tag("outcome", "cancelled").counter().count());
+        } finally {
+            release.countDown();
+        }
+        assertTrue(busy.get(10, TimeUnit.SECONDS));
+
+        // Снятое задание не запускается, когда поток освобождается
+        ArchiveJob next = service.submitCompress(List.of(file("d.txt", "delta")), "next", "http://localhost");
+        await(next, ArchiveJob.State.SUCCEEDED);
+        assertTrue(backend.stat("queued.zip").isEmpty());
+        assertTrue(service.cancel("missing").isEmpty());
+    }
+
+    private static Map<String, Object> await(ArchiveJob job, ArchiveJob.State state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!job.getState().isTerminal() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Map<String, Object> snapshot = job.snapshot();
+        assertEquals(state.name().toLowerCase(), snapshot.get("state"), () -> "snapshot " + snapshot);
+        return snapshot;
+    }
+
+    private static MockMultipartFile file(String name, String content) {
+        return new MockMultipartFile("files", name, "text/plain", content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.exception.FileValidationException;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveMergeServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private LocalStorageFixture storage;
+    private StorageBackend backend;
+    private ArchiveMergeService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = LocalStorageFixture.create(uploadDir);
+        backend = storage.getBackend();
+        service = new ArchiveMergeService(backend, storage.getCatalog(), event -> { }, storage.getRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    void copiesEntriesAndResolvesConflicts() throws Exception {
+        // Сжатые записи с data descriptor (как пишет ZipOutputStream) и несжатая без него
+        putZip("a.zip", false, Map.of("docs/", "", "docs/readme.txt", "from a", "a.txt", "aaa"));
+        putZip("b.zip", true, Map.of("docs/", "", "docs/readme.txt", "from b", "b.txt", "bbb"));
+
+        ArchiveMergeService.MergeResult renamed = service.merge(List.of("a.zip", "b.zip"), "bundle",
+                ArchiveMergeService.ConflictPolicy.RENAME);
+        assertEquals("bundle.zip", renamed.getZipFileName());
+        assertEquals(1, renamed.getConflicts());
+        Map<String, String> bundle = unzip("bundle.zip");
+        assertEquals("from a", bundle.get("docs/readme.txt"));
+        assertEquals("from b", bundle.get("docs/readme (1).txt"));
+        assertEquals(List.of("a.txt", "docs/", "docs/readme.txt", "b.txt", "docs/readme (1).txt"),
+                List.copyOf(bundle.keySet()));
+
+        service.merge(List.of("a.zip", "b.zip"), "last", ArchiveMergeService.ConflictPolicy.LAST);
+        assertEquals("from b", unzip("last.zip").get("docs/readme.txt"));
+        assertEquals(4, unzip("last.zip").size());
+
+        assertThrows(FileValidationException.class, () -> service.merge(List.of("a.zip", "b.zip"), "fail",
+                ArchiveMergeService.ConflictPolicy.FAIL));
+        assertTrue(backend.stat("fail.zip").isEmpty());
+    }
+
+    private void putZip(String name, boolean stored, Map<String, String> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, String> entry : new TreeMap<>(entries).entrySet()) {
+                byte[] data = entry.getValue().getBytes(StandardCharsets.UTF_8);
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                if (stored) {
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(data.length);
+                    zipEntry.setCrc(crc.getValue());
+                }
+                zip.putNextEntry(zipEntry);
+                zip.write(data);
+                zip.closeEntry();
+            }
+        }
+        backend.put(name, new ByteArrayInputStream(bytes.toByteArray()), bytes.size());
+    }
+
+    // Потоковое чтение проверяет и локальные заголовки, и CRC каждой записи
+    private Map<String, String> unzip(String name) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(backend.localPath(name).orElseThrow()))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                entries.put(entry.getName(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import com.example.cloud_spring_load_zip.zip.ZipDirectory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeltaArchiveServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private LocalStorageFixture storage;
+    private StorageBackend backend;
+    private DeltaArchiveService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = LocalStorageFixture.create(uploadDir);
+        backend = storage.getBackend();
+        FileCatalog catalog = storage.getCatalog();
+        SimpleMeterRegistry registry = storage.getRegistry();
+        HotFileCache hotFileCache = storage.newHotFileCache();
+        FileArchiveService archiveService = new FileArchiveService(backend, catalog, hotFileCache, event -> { }, registry);
+        service = new DeltaArchiveService(backend, archiveService, catalog, hotFileCache, event -> { }, registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    void storesOnlyChangesAndRestoresTreeFromChain() throws Exception {
+        put("docs/a.txt", "alpha");
+        put("docs/b.txt", "bravo");
+        put("docs/sub/c.txt", "charlie");
+        assertEquals(3, service.create("docs", null, "full").getChanged());
+
+        // b изменен, c удален, d добавлен; у a новое время, но то же содержимое
+        put("docs/b.txt", "BRAVO!");
+        backend.delete("docs/sub/c.txt");
+        put("docs/d.txt", "delta");
+        Path a = backend.localPath("docs/a.txt").orElseThrow();
+        Files.setLastModifiedTime(a, FileTime.fromMillis(Files.getLastModifiedTime(a).toMillis() - 60_000));
+
+        DeltaArchiveService.DeltaResult first = service.create("docs", "full.zip", "d1");
+        assertEquals(2, first.getChanged());
+        assertEquals(1, first.getDeleted());
+        assertEquals(1, first.getUnchanged());
+        assertEquals(Set.of("b.txt", "d.txt"), dataEntries("d1.zip"));
+
+        put("docs/a.txt", "ALPHA");
+        DeltaArchiveService.DeltaResult second = service.create("docs", "d1.zip", "d2");
+        assertEquals(1, second.getChanged());
+        assertEquals(Set.of("a.txt"), dataEntries("d2.zip"));
+
+        DeltaArchiveService.RestoreResult restored = service.restore("d2.zip");
+        assertEquals("d2_restored", restored.getDirectory());
+        assertEquals(3, restored.getChainLength());
+        assertEquals(3, restored.getFiles());
+        assertEquals("ALPHA", read("d2_restored/a.txt"));
+        assertEquals("BRAVO!", read("d2_restored/b.txt"));
+        assertEquals("delta", read("d2_restored/d.txt"));
+        assertTrue(backend.stat("d2_restored/sub/c.txt").isEmpty());
+    }
+
+    private Set<String> dataEntries(String zip) throws IOException {
+        long length = backend.stat(zip).orElseThrow().getSize();
+        ZipDirectory directory = ZipDirectory.read((offset, size) -> {
+            try (InputStream in = backend.getRange(zip, offset, size)) {
+                return in.readNBytes(size);
+            }
+        }, length);
+        Set<String> names = new TreeSet<>(directory.names());
+        names.removeIf(name -> name.startsWith(DeltaArchiveService.META_PREFIX));
+        return names;
+    }
+
+    private void put(String key, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        backend.put(key, new ByteArrayInputStream(bytes), bytes.length);
+    }
+
+    private String read(String key) throws IOException {
+        try (InputStream in = backend.get(key)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileArchiveServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private LocalStorageFixture storage;
+    private SimpleMeterRegistry registry;
+    private StorageBackend backend;
+    private HotFileCache hotFileCache;
+    private FileArchiveService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = LocalStorageFixture.create(uploadDir);
+        registry = storage.getRegistry();
+        backend = storage.getBackend();
+        hotFileCache = storage.newHotFileCache();
+        service = new FileArchiveService(backend, storage.getCatalog(), hotFileCache, event -> { }, registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    void reusesExtractionOfUnchangedArchiveAndReplacesItWhenContentChanges() throws Exception {
+        putZip("a.zip", Map.of("one.txt", "1", "dir/two.txt", "2"));
+        assertEquals("a_extracted", service.extract("a.zip", ArchiveProgress.NONE));
+        assertEquals("2", read("a_extracted/dir/two.txt"));
+
+        // Повторный вызов не распаковывает: удаленный файл не появляется снова
+        backend.delete("a_extracted/one.txt");
+        assertEquals("a_extracted", service.extract("a.zip", ArchiveProgress.NONE));
+        assertTrue(backend.stat("a_extracted/one.txt").isEmpty());
+        assertEquals(1.0, registry.get("archive.extract").tag("outcome", "unchanged").counter().count());
+
+        // Новое содержимое - каталог заменяется целиком, старые файлы не остаются ни на диске, ни в памяти
+        assertTrue(hotFileCache.get("a_extracted/dir/two.txt").isPresent());
+        putZip("a.zip", Map.of("three.txt", "333"));
+        service.extract("a.zip", ArchiveProgress.NONE);
+        assertEquals("333", read("a_extracted/three.txt"));
+        assertTrue(backend.stat("a_extracted/dir/two.txt").isEmpty());
+        assertTrue(hotFileCache.get("a_extracted/dir/two.txt").isEmpty());
+        assertEquals(2.0, registry.get("archive.extract").tag("outcome", "extracted").counter().count());
+    }
+
+    @Test
+    void failedCompressionKeepsPreviousArchive() throws Exception {
+        putZip("b.zip", Map.of("old.txt", "old"));
+        long size = backend.stat("b.zip").orElseThrow().getSize();
+
+        FileArchiveService.Source broken = new FileArchiveService.Source("new.txt", () -> {
+            throw new IOException("source is gone");
+        }, 10);
+        assertThrows(IOException.class, () -> service.compress(List.of(broken), "b.zip", ArchiveProgress.NONE));
+
+        assertEquals(size, backend.stat("b.zip").orElseThrow().getSize());
+        assertEquals("old", read(service.extract("b.zip", ArchiveProgress.NONE) + "/old.txt"));
+    }
+
+    private void putZip(String name, Map<String, String> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        backend.put(name, new ByteArrayInputStream(bytes.toByteArray()), bytes.size());
+    }
+
+    private String read(String key) throws IOException {
+        try (var in = backend.get(key)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.model.FileEntry;
+import com.example.cloud_spring_load_zip.model.FilePage;
+import com.example.cloud_spring_load_zip.storage.BlobInfo;
+import com.example.cloud_spring_load_zip.storage.LocalStorageBackend;
+import com.example.cloud_spring_load_zip.storage.StorageLayout;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileCatalogTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private LocalStorageFixture storage;
+    private StorageLayout layout;
+    private FileCatalog catalog;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.writeString(uploadDir.resolve("b.txt"), "bb");
+        Files.writeString(uploadDir.resolve("a.zip"), "aaaa");
+        Files.createDirectories(uploadDir.resolve("a_extracted"));
+
+        storage = LocalStorageFixture.create(uploadDir);
+        layout = storage.getLayout();
+        catalog = storage.getCatalog();
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    void buildsCatalogAtStartup() {
+        assertEquals(3, catalog.size());
+        assertEquals("dir", catalog.get("a_extracted").orElseThrow().getType());
+        assertEquals(4, catalog.get("a.zip").orElseThrow().getSize());
+    }
+
+    @Test
+    void filtersSortsAndPaginates() {
+        FilePage<FileEntry> zips = catalog.list(null, "zip", null, false, 0, 10);
+        assertEquals(1, zips.getTotal());
+        assertEquals("a.zip", zips.getItems().get(0).getName());
+
+        FilePage<FileEntry> bySize = catalog.list("", null, "size", true, 0, 1);
+        assertEquals(3, bySize.getTotal());
+        assertEquals(1, bySize.getItems().size());
+        assertEquals("a.zip", bySize.getItems().get(0).getName());
+
+        FilePage<FileEntry> secondPage = catalog.list(null, null, "name", false, 1, 2);
+        assertEquals("b.txt", secondPage.getItems().get(0).getName());
+
+        // Без пагинации - все подходящие записи в том же порядке
+        assertEquals(List.of("b.txt", "a_extracted", "a.zip"), catalog.listAll(null, null, "name", true).stream()
+                .map(FileEntry::getName).toList());
+    }
+
+    @Test
+    void refreshTracksOwnWrites() throws Exception {
+        Path sharded = layout.prepareWrite("c.png");
+        assertEquals(uploadDir.toAbsolutePath(), sharded.getParent().getParent().getParent());
+        Files.writeString(sharded, "c");
+        catalog.refresh("c.png");
+        assertTrue(catalog.get("c.png").isPresent());
+
+        catalog.rebuild();
+        assertEquals(4, catalog.size());
+
+        Files.delete(sharded);
+        catalog.refresh("c.png");
+        assertFalse(catalog.get("c.png").isPresent());
+    }
+
+    @Test
+    void rebuildKeepsChangesMadeDuringScan() throws Exception {
+        FileCatalog[] scanned = new FileCatalog[1];
+        LocalStorageBackend backend = new LocalStorageBackend(layout) {
+            @Override
+            public void list(String prefix, Consumer<BlobInfo> consumer) throws IOException {
+                super.list(prefix, consumer);
+                // Листинг уже собран: файл удаляют, а другой сохраняют, пока перечитывание не применено
+                Files.delete(uploadDir.resolve("b.txt"));
+                scanned[0].remove("b.txt");
+                Files.writeString(layout.prepareWrite("d.txt"), "d");
+                scanned[0].refresh("d.txt");
+            }
+        };
+        scanned[0] = new FileCatalog(backend, layout, storage.getProperties(), storage.getRegistry());
+
+        scanned[0].rebuild();
+        assertFalse(scanned[0].get("b.txt").isPresent());
+        assertTrue(scanned[0].get("d.txt").isPresent());
+        assertTrue(scanned[0].get("a.zip").isPresent());
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.exception.FileValidationException;
+import com.example.cloud_spring_load_zip.exception.MyFileNotFoundException;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileStorageServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private LocalStorageFixture storage;
+    private StorageBackend backend;
+    private FileStorageService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = LocalStorageFixture.create(uploadDir);
+        backend = storage.getBackend();
+        service = new FileStorageService(backend, storage.getCatalog(), event -> { },
+                new UploadValidator(storage.getProperties(), storage.getRegistry()), storage.newHotFileCache());
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    void genericUploadCannotReplaceContentAddressedImage() throws Exception {
+        byte[] image = "original image".getBytes(StandardCharsets.UTF_8);
+        String fingerprint = sha256(image).substring(0, 32);
+        String key = "images/" + fingerprint + ".txt";
+        service.storeContentAddressed(key, new ByteArrayInputStream(image), image.length, fingerprint);
+
+        byte[] forged = "forged".getBytes(StandardCharsets.UTF_8);
+        FileValidationException ex = assertThrows(FileValidationException.class,
+                () -> service.store(new MockMultipartFile("file", key, "text/plain", forged)));
+        assertEquals(HttpStatus.FORBIDDEN, ex.getStatus());
+        // Потоковая и пакетная загрузки идут через тот же store(name, stream, size)
+        assertThrows(FileValidationException.class,
+                () -> service.store("./" + key, new ByteArrayInputStream(forged), -1));
+
+        // Байты, не совпадающие с адресом, не публикуются
+        FileValidationException mismatch = assertThrows(FileValidationException.class,
+                () -> service.storeContentAddressed(key, new ByteArrayInputStream(forged), forged.length, fingerprint));
+        assertEquals(HttpStatus.CONFLICT, mismatch.getStatus());
+        assertEquals("original image", read(key));
+    }
+
+    @Test
+    void dotPrefixedNamesAreNeitherStoredNorServed() throws Exception {
+        byte[] content = "hidden".getBytes(StandardCharsets.UTF_8);
+        for (String name : new String[]{".a.txt", "dir/.journal/a.txt"}) {
+            FileValidationException ex = assertThrows(FileValidationException.class,
+                    () -> service.store(name, new ByteArrayInputStream(content), content.length));
+            assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+        }
+        assertTrue(storage.getCatalog().all().isEmpty());
+
+        // Служебный файл рядом с архивом есть в хранилище, но скачать его нельзя
+        backend.put("dir/.a.zip.sha256", new ByteArrayInputStream(content), content.length);
+        assertThrows(MyFileNotFoundException.class, () -> service.loadFileAsResource("dir/.a.zip.sha256"));
+        service.store("dir/a.txt", new ByteArrayInputStream(content), content.length);
+        assertTrue(service.loadFileAsResource("dir/a.txt").exists());
+    }
+
+    private String read(String key) throws IOException {
+        try (InputStream in = backend.get(key)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+}
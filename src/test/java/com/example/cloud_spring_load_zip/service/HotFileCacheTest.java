@@ -0,0 +1,86 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotFileCacheTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private LocalStorageFixture storage;
+    private SimpleMeterRegistry registry;
+    private StorageBackend backend;
+    private FileCatalog catalog;
+    private HotFileCache cache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = LocalStorageFixture.create(uploadDir,
+                properties -> properties.getHotCache().setMaxFileSize(DataSize.ofKilobytes(1)));
+        registry = storage.getRegistry();
+        backend = storage.getBackend();
+        catalog = storage.getCatalog();
+        cache = storage.newHotFileCache();
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    void servesSmallFilesFromMemoryUntilTheyChange() throws Exception {
+        put("logo.png", "v1");
+        put("big.bin", "x".repeat(2048));
+
+        HotFileCache.Entry first = cache.get("logo.png").orElseThrow();
+        assertEquals("v1", read(first));
+        assertTrue(first.getContent().isDirect());
+        assertSame(first, cache.get("logo.png").orElseThrow());
+        assertTrue(cache.get("big.bin").isEmpty());
+        assertTrue(cache.get("missing.png").isEmpty());
+        assertEquals(0.5, registry.get("files.hot.cache.hit.ratio").gauge().value());
+
+        // Запись через сервисы - событие сбрасывает ключ
+        put("logo.png", "v2!");
+        cache.onFileStored(new FileStoredEvent("logo.png", 3));
+        HotFileCache.Entry second = cache.get("logo.png").orElseThrow();
+        assertEquals("v2!", read(second));
+        assertNotEquals(first.getEtag(), second.getEtag());
+
+        // Изменение в обход приложения видно по каталогу
+        Path file = backend.localPath("logo.png").orElseThrow();
+        Files.writeString(file, "v3");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(second.getLastModified() + 5_000));
+        catalog.refresh("logo.png");
+        assertEquals("v3", read(cache.get("logo.png").orElseThrow()));
+    }
+
+    private void put(String key, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        backend.put(key, new ByteArrayInputStream(bytes), bytes.length);
+        catalog.refresh(key);
+    }
+
+    private static String read(HotFileCache.Entry entry) throws IOException {
+        try (InputStream in = entry.resource("f").getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.storage.LocalStorageBackend;
+import com.example.cloud_spring_load_zip.storage.StorageLayout;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Локальное хранилище для тестов сервисов: раскладка, бэкенд и загруженный каталог файлов
+ * поверх каталога загрузок. Наблюдение за диском выключено - тесты меняют файлы только через сервисы.
+ */
+public final class LocalStorageFixture implements AutoCloseable {
+
+    private final AppFileProperties properties;
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final StorageLayout layout;
+    private final LocalStorageBackend backend;
+    private final FileCatalog catalog;
+
+    private LocalStorageFixture(Path uploadDir, AppFileProperties properties) throws IOException {
+        FileStorageProperties fileStorageProperties = new FileStorageProperties();
+        fileStorageProperties.setUploadDir(uploadDir.toString());
+        this.properties = properties;
+        this.layout = new StorageLayout(fileStorageProperties, properties);
+        this.backend = new LocalStorageBackend(layout);
+        this.catalog = new FileCatalog(backend, layout, properties, registry);
+        catalog.init();
+    }
+
+    public static LocalStorageFixture create(Path uploadDir) throws IOException {
+        return create(uploadDir, properties -> { });
+    }
+
+    /**
+     * @param configure настройки, которые нужны тесту; применяются до создания хранилища
+     */
+    public static LocalStorageFixture create(Path uploadDir, Consumer<AppFileProperties> configure)
+            throws IOException {
+        AppFileProperties properties = new AppFileProperties();
+        properties.getCatalog().setWatchEnabled(false);
+        configure.accept(properties);
+        return new LocalStorageFixture(uploadDir, properties);
+    }
+
+    public AppFileProperties getProperties() {
+        return properties;
+    }
+
+    public SimpleMeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public StorageLayout getLayout() {
+        return layout;
+    }
+
+    public LocalStorageBackend getBackend() {
+        return backend;
+    }
+
+    public FileCatalog getCatalog() {
+        return catalog;
+    }
+
+    public HotFileCache newHotFileCache() {
+        return new HotFileCache(backend, catalog, properties, registry);
+    }
+
+    @Override
+    public void close() {
+        catalog.shutdown();
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.model.Product;
+import com.example.cloud_spring_load_zip.model.ProductAggregates;
+import com.example.cloud_spring_load_zip.repository.InMemoryProductRepository;
+import com.example.cloud_spring_load_zip.repository.MirroringProductRepository;
+import com.example.cloud_spring_load_zip.repository.ProductColumns;
+import com.example.cloud_spring_load_zip.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductAnalyticsServiceTest {
+
+    @Test
+    void aggregatesFollowRepositoryChanges() {
+        ProductColumns columns = new ProductColumns();
+        ProductRepository repository = new MirroringProductRepository(new InMemoryProductRepository(), columns);
+        ProductAnalyticsService analytics = new ProductAnalyticsService(columns);
+
+        // Демонстрационные продукты: (10 шт, 1000), (20, 2000), (30, 3000)
+        ProductAggregates initial = analytics.aggregate(null, 15, 2, new int[]{0, 25});
+        assertEquals(3, initial.getCount());
+        assertEquals(60, initial.getTotalQuantity());
+        assertEquals(10 * 1000 + 20 * 2000 + 30 * 3000, initial.getTotalStockValue(), 1e-9);
+        assertEquals(1, initial.getLowStockCount());
+        assertEquals(1, initial.getPriceHistogram().get(0).getCount());
+        assertEquals(2, initial.getPriceHistogram().get(1).getCount());
+        assertEquals(1500, initial.getQuantityBands().get(0).getAvgPrice(), 1e-9);
+
+        repository.delete(1);
+        repository.update(2, new Product(2, "bproduct 2", 5, 500, null));
+        repository.save(new Product(4, "other", 1, 100, null));
+
+        ProductAggregates changed = analytics.aggregate("bprod", 10, 1, new int[]{0});
+        assertEquals(1, changed.getCount());
+        assertEquals(500, changed.getMaxPrice(), 1e-9);
+        assertEquals(1, changed.getLowStockCount());
+        assertEquals(3, analytics.aggregate(null, 10, 0, new int[0]).getDistinctNames());
+    }
+}
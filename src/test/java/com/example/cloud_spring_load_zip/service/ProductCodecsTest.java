@@ -0,0 +1,99 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.model.Product;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductCodecsTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductCodecsTest.class);
+
+    private final ProductCodecs codecs = new ProductCodecs(new ObjectMapper());
+
+    @Test
+    void everyFormatRoundTripsProductsAndLists() throws Exception {
+        List<Product> products = products(100);
+        JavaType listType = codecs.mapper(ProductFormat.JSON).getTypeFactory()
+                .constructCollectionType(List.class, Product.class);
+        JavaType productType = codecs.mapper(ProductFormat.JSON).constructType(Product.class);
+        int jsonSize = codecs.encode(ProductFormat.JSON, products).length;
+
+        for (ProductFormat format : ProductFormat.values()) {
+            byte[] list = codecs.encode(format, products);
+            assertEquals(products, codecs.decode(format, list, listType), format.name());
+            byte[] single = codecs.encode(format, products.get(3));
+            assertEquals(products.get(3), codecs.decode(format, single, productType), format.name());
+            if (format != ProductFormat.JSON) {
+                assertTrue(list.length < jsonSize, format + " should be smaller than JSON");
+            }
+        }
+    }
+
+    @Test
+    void negotiatesByAcceptHeader() {
+        assertEquals(ProductFormat.JSON, codecs.negotiate(null, true));
+        assertEquals(ProductFormat.JSON, codecs.negotiate("*/*", true));
+        assertEquals(ProductFormat.PROTOBUF, codecs.negotiate("application/x-protobuf", true));
+        assertEquals(ProductFormat.CBOR, codecs.negotiate("application/json;q=0.5, application/cbor", true));
+        // Группировки не кодируются в protobuf - берется следующий приемлемый формат
+        assertEquals(ProductFormat.SMILE,
+                codecs.negotiate("application/x-protobuf, application/x-jackson-smile;q=0.8", false));
+        assertThrows(RuntimeException.class, () -> codecs.negotiate("application/x-protobuf", false));
+    }
+
+    /**
+     * Размер и скорость кодирования/декодирования по форматам.
+     * Запуск: mvn test -Dtest=ProductCodecsTest -Dbenchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmark() throws Exception {
+        List<Product> products = products(10_000);
+        JavaType listType = codecs.mapper(ProductFormat.JSON).getTypeFactory()
+                .constructCollectionType(List.class, Product.class);
+        Map<ProductFormat, String> report = new EnumMap<>(ProductFormat.class);
+        for (ProductFormat format : ProductFormat.values()) {
+            byte[] bytes = codecs.encode(format, products);
+            for (int i = 0; i < 20; i++) {
+                codecs.decode(format, codecs.encode(format, products), listType);
+            }
+            int rounds = 50;
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                codecs.encode(format, products);
+            }
+            long encodeNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                codecs.decode(format, bytes, listType);
+            }
+            long decodeNanos = System.nanoTime() - start;
+            // Пропускная способность в продуктах в секунду - байты у форматов разные
+            report.put(format, String.format("%8d bytes (%3d%% of JSON)  encode %6.2f M products/s  decode %6.2f M products/s",
+                    bytes.length,
+                    bytes.length * 100L / codecs.encode(ProductFormat.JSON, products).length,
+                    (double) products.size() * rounds / encodeNanos * 1000,
+                    (double) products.size() * rounds / decodeNanos * 1000));
+        }
+        report.forEach((format, line) -> logger.info("{} {}", String.format("%-9s", format), line));
+    }
+
+    private static List<Product> products(int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            products.add(new Product(i, "product " + i, i % 500, 10 + i * 0.25, i % 3 == 0 ? "img/" + i + ".png" : null));
+        }
+        return products;
+    }
+}
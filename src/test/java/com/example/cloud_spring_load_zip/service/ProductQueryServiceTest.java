@@ -0,0 +1,74 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.model.Product;
+import com.example.cloud_spring_load_zip.model.ProductPage;
+import com.example.cloud_spring_load_zip.model.ProductQuery;
+import com.example.cloud_spring_load_zip.repository.ProductIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductQueryServiceTest {
+
+    @Test
+    void pagesMatchFullScan() {
+        Random random = new Random(7);
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            products.add(new Product(i, "p" + (i % 50), random.nextInt(100), 1 + random.nextInt(500), null));
+        }
+        ProductIndex index = new ProductIndex();
+        index.load(products);
+        ProductQueryService service = new ProductQueryService(index);
+
+        // Узкий диапазон количества при широком по цене - ведущим должен стать индекс количества
+        ProductQuery query = query(10.0, 400.0, 3, 5, "price", 1, 7);
+        ProductPage page = service.query(query);
+        List<Integer> expected = products.stream()
+                .filter(p -> p.getPrice() >= 10 && p.getPrice() <= 400 && p.getQuantity() >= 3 && p.getQuantity() <= 5)
+                .sorted(Comparator.comparingDouble(Product::getPrice))
+                .skip(7).limit(7)
+                .map(Product::getId)
+                .collect(Collectors.toList());
+        assertEquals(expected, page.getItems().stream().map(Product::getId).collect(Collectors.toList()));
+        assertTrue(page.getPlan().startsWith("quantity-index heap"), page.getPlan());
+        assertTrue(page.isHasMore());
+
+        // Top-N без фильтров идет по индексу цены и останавливается на заполненной странице
+        ProductPage cheapest = service.query(query(null, null, null, null, "price", 0, 10));
+        assertEquals("price-index ordered", cheapest.getPlan());
+        assertNull(cheapest.getTotal());
+        assertEquals(products.stream().mapToDouble(Product::getPrice).min().getAsDouble(),
+                cheapest.getItems().get(0).getPrice());
+
+        // "10 самых дешевых дешевле X" - тоже обход по порядку, без подсчета диапазона
+        ProductPage cheapestUnder = service.query(query(null, 250.0, null, null, "price", 0, 10));
+        assertEquals("price-index ordered", cheapestUnder.getPlan());
+        assertNull(cheapestUnder.getTotal());
+        assertEquals(cheapest.getItems(), cheapestUnder.getItems());
+
+        index.delete(cheapest.getItems().get(0).getId());
+        assertEquals(1999, index.size());
+        assertNotEquals(cheapest.getItems().get(0).getId(),
+                service.query(query(null, null, null, null, "price", 0, 1)).getItems().get(0).getId());
+    }
+
+    private static ProductQuery query(Double minPrice, Double maxPrice, Integer minQuantity, Integer maxQuantity,
+                                      String sort, int page, int size) {
+        ProductQuery query = new ProductQuery();
+        query.setMinPrice(minPrice);
+        query.setMaxPrice(maxPrice);
+        query.setMinQuantity(minQuantity);
+        query.setMaxQuantity(maxQuantity);
+        query.setSort(sort);
+        query.setPage(page);
+        query.setSize(size);
+        return query;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.model.Product;
+import com.example.cloud_spring_load_zip.repository.ProductStorageProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductResponseCacheTest {
+
+    @Test
+    void writesInvalidateOnlyAffectedEntries() {
+        ProductResponseCache cache = new ProductResponseCache(new ProductCodecs(new ObjectMapper()), new ProductStorageProperties(),
+                new SimpleMeterRegistry());
+        AtomicInteger loads = new AtomicInteger();
+
+        ProductResponseCache.Encoded first = cache.product(1, ProductFormat.JSON, () -> {
+            loads.incrementAndGet();
+            return new Product(1, "a", 1, 10, null);
+        });
+        cache.product(2, ProductFormat.JSON, () -> {
+            loads.incrementAndGet();
+            return new Product(2, "b", 1, 10, null);
+        });
+        assertSame(first, cache.product(1, ProductFormat.JSON, () -> fail("served from cache")));
+        assertEquals(first.getEtag(), cache.productEtag(1, ProductFormat.JSON));
+        assertTrue(cache.notModified("W/\"x\", " + first.getEtag(), cache.productEtag(1, ProductFormat.JSON)));
+
+        String listing = cache.listingEtag("all", ProductFormat.JSON);
+        cache.invalidate(1);
+
+        assertNotEquals(listing, cache.listingEtag("all", ProductFormat.JSON));
+        assertFalse(cache.notModified(first.getEtag(), cache.productEtag(1, ProductFormat.JSON)));
+        // Запись в id 1 не трогает готовый ответ для id 2
+        cache.product(2, ProductFormat.JSON, () -> fail("id 2 was not modified"));
+        ProductResponseCache.Encoded reloaded = cache.product(1, ProductFormat.JSON, () -> {
+            loads.incrementAndGet();
+            return List.of();
+        });
+        assertEquals("[]", new String(reloaded.getBytes()));
+        assertEquals(3, loads.get());
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.cloud_spring_load_zip.service;
+
+import com.example.cloud_spring_load_zip.exception.FileValidationException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadValidatorTest {
+
+    private UploadValidator validator;
+
+    @BeforeEach
+    void setUp() {
+        AppFileProperties properties = new AppFileProperties();
+        properties.setMaxSizeMb(1);
+        properties.setAllowedExtensions(List.of(".txt", ".png"));
+        validator = new UploadValidator(properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void rejectsExtensionOutsideAllowedList() {
+        FileValidationException ex = assertThrows(FileValidationException.class,
+                () -> validator.checkHeader("run.exe", 10));
+        assertEquals(HttpStatus.UNSUPPORTED_MEDIA_TYPE, ex.getStatus());
+    }
+
+    @Test
+    void rejectsContentNotMatchingExtension() {
+        byte[] data = "not really a png".getBytes();
+        assertThrows(FileValidationException.class, () -> drain(validator.wrap(new ByteArrayInputStream(data), "image.png")));
+    }
+
+    @Test
+    void rejectsOversizedStreamWhileReading() {
+        byte[] data = new byte[1024 * 1024 + 1];
+        Arrays.fill(data, (byte) 'a');
+        FileValidationException ex = assertThrows(FileValidationException.class,
+                () -> drain(validator.wrap(new ByteArrayInputStream(data), "big.txt")));
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, ex.getStatus());
+    }
+
+    @Test
+    void countsBytesAndChecksumInSinglePass() throws Exception {
+        UploadValidator.ValidatingInputStream in = validator.wrap(new ByteArrayInputStream("hello".getBytes()), "note.txt");
+        drain(in);
+        assertEquals(5, in.getCount());
+        assertEquals("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824", in.getSha256());
+    }
+
+    private static void drain(InputStream in) throws Exception {
+        in.transferTo(OutputStream.nullOutputStream());
+    }
+}
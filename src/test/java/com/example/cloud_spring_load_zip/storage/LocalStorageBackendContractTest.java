@@ -0,0 +1,16 @@
+package com.example.cloud_spring_load_zip.storage;
+
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+class LocalStorageBackendContractTest extends StorageBackendContractTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @Override
+    protected StorageBackend createBackend() throws Exception {
+        return new LocalStorageBackend(new StorageLayout(uploadDir, true, 2));
+    }
+}
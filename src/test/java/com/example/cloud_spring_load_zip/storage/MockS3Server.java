@@ -0,0 +1,200 @@
+package com.example.cloud_spring_load_zip.storage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Минимальный S3-совместимый сервер в памяти для тестов S3StorageBackend:
+ * PUT/GET/HEAD/DELETE объектов, Range, ListObjectsV2 и multipart-загрузка.
+ */
+class MockS3Server implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+    private final String bucket;
+
+    final ConcurrentSkipListMap<String, byte[]> objects = new ConcurrentSkipListMap<>();
+    final Map<String, ConcurrentSkipListMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    final AtomicInteger uploadedParts = new AtomicInteger();
+    final AtomicInteger completedUploads = new AtomicInteger();
+    volatile String lastAuthorization;
+
+    MockS3Server(String bucket) throws IOException {
+        this.bucket = bucket;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            lastAuthorization = exchange.getRequestHeaders().getFirst("Authorization");
+            String path = exchange.getRequestURI().getPath();
+            String bucketPrefix = "/" + bucket;
+            if (!path.startsWith(bucketPrefix)) {
+                respond(exchange, 404, "<Error><Code>NoSuchBucket</Code></Error>");
+                return;
+            }
+            String key = path.length() > bucketPrefix.length() + 1 ? path.substring(bucketPrefix.length() + 1) : "";
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            byte[] body = exchange.getRequestBody().readAllBytes();
+
+            switch (exchange.getRequestMethod()) {
+                case "GET" -> {
+                    if (key.isEmpty()) {
+                        list(exchange, query);
+                    } else {
+                        get(exchange, key);
+                    }
+                }
+                case "HEAD" -> head(exchange, key);
+                case "PUT" -> {
+                    if (query.containsKey("uploadId")) {
+                        uploads.get(query.get("uploadId")).put(Integer.parseInt(query.get("partNumber")), body);
+                        uploadedParts.incrementAndGet();
+                        exchange.getResponseHeaders().add("ETag", "\"part-" + query.get("partNumber") + "\"");
+                    } else {
+                        objects.put(key, body);
+                    }
+                    respond(exchange, 200, "");
+                }
+                case "POST" -> {
+                    if (query.containsKey("uploads")) {
+                        String uploadId = UUID.randomUUID().toString();
+                        uploads.put(uploadId, new ConcurrentSkipListMap<>());
+                        respond(exchange, 200, "<InitiateMultipartUploadResult><UploadId>" + uploadId
+                                + "</UploadId></InitiateMultipartUploadResult>");
+                    } else {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        for (byte[] part : uploads.remove(query.get("uploadId")).values()) {
+                            out.write(part);
+                        }
+                        objects.put(key, out.toByteArray());
+                        completedUploads.incrementAndGet();
+                        respond(exchange, 200, "<CompleteMultipartUploadResult/>");
+                    }
+                }
+                case "DELETE" -> {
+                    if (query.containsKey("uploadId")) {
+                        uploads.remove(query.get("uploadId"));
+                    } else {
+                        objects.remove(key);
+                    }
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                default -> respond(exchange, 405, "");
+            }
+        }
+    }
+
+    private void get(HttpExchange exchange, String key) throws IOException {
+        byte[] data = objects.get(key);
+        if (data == null) {
+            respond(exchange, 404, "<Error><Code>NoSuchKey</Code></Error>");
+            return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range == null) {
+            respond(exchange, 200, data);
+            return;
+        }
+        String[] bounds = range.substring("bytes=".length()).split("-");
+        int from = Integer.parseInt(bounds[0]);
+        int to = Math.min(Integer.parseInt(bounds[1]), data.length - 1);
+        respond(exchange, 206, Arrays.copyOfRange(data, from, to + 1));
+    }
+
+    private void head(HttpExchange exchange, String key) throws IOException {
+        byte[] data = objects.get(key);
+        if (data == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        exchange.getResponseHeaders().add("Content-Length", String.valueOf(data.length));
+        exchange.getResponseHeaders().add("Last-Modified",
+                DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.now().atZone(ZoneOffset.UTC)));
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void list(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String prefix = query.getOrDefault("prefix", "");
+        String delimiter = query.get("delimiter");
+        int maxKeys = Integer.parseInt(query.getOrDefault("max-keys", "1000"));
+        StringBuilder xml = new StringBuilder("<ListBucketResult><IsTruncated>false</IsTruncated>");
+        Set<String> commonPrefixes = new TreeSet<>();
+        int count = 0;
+        for (Map.Entry<String, byte[]> entry : objects.tailMap(prefix).entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(prefix) || count >= maxKeys) {
+                break;
+            }
+            int cut = delimiter == null ? -1 : key.indexOf(delimiter, prefix.length());
+            if (cut >= 0) {
+                commonPrefixes.add(key.substring(0, cut + 1));
+                continue;
+            }
+            count++;
+            xml.append("<Contents><Key>").append(key).append("</Key><Size>").append(entry.getValue().length)
+                    .append("</Size><LastModified>").append(Instant.now()).append("</LastModified></Contents>");
+        }
+        for (String common : commonPrefixes) {
+            xml.append("<CommonPrefixes><Prefix>").append(common).append("</Prefix></CommonPrefixes>");
+        }
+        xml.append("</ListBucketResult>");
+        respond(exchange, 200, xml.toString());
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            query.put(name, value);
+        }
+        return query;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        respond(exchange, status, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.cloud_spring_load_zip.storage;
+
+import com.example.cloud_spring_load_zip.service.AppFileProperties;
+import org.junit.jupiter.api.AfterEach;
+
+class S3StorageBackendContractTest extends StorageBackendContractTest {
+
+    private MockS3Server server;
+
+    @Override
+    protected StorageBackend createBackend() throws Exception {
+        server = new MockS3Server("uploads");
+        AppFileProperties.S3 properties = new AppFileProperties.S3();
+        properties.setEndpoint(server.endpoint());
+        properties.setBucket("uploads");
+        properties.setAccessKey("test-key");
+        properties.setSecretKey("test-secret");
+        return new S3StorageBackend(properties);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+}
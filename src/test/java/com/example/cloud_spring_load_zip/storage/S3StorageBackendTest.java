@@ -0,0 +1,113 @@
+package com.example.cloud_spring_load_zip.storage;
+
+import com.example.cloud_spring_load_zip.service.AppFileProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class S3StorageBackendTest {
+
+    private MockS3Server server;
+    private S3StorageBackend backend;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockS3Server("uploads");
+        AppFileProperties.S3 properties = new AppFileProperties.S3();
+        properties.setEndpoint(server.endpoint());
+        properties.setBucket("uploads");
+        properties.setAccessKey("test-key");
+        properties.setSecretKey("test-secret");
+        properties.setPartSize(DataSize.ofKilobytes(64));
+        properties.setMaxConcurrency(3);
+        backend = new S3StorageBackend(properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        backend.close();
+        server.close();
+    }
+
+    @Test
+    void putGetStatAndRange() throws Exception {
+        byte[] data = "hello, storage backend".getBytes(StandardCharsets.UTF_8);
+        backend.put("ган.txt", new ByteArrayInputStream(data), data.length);
+
+        try (InputStream in = backend.get("ган.txt")) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+        try (InputStream in = backend.getRange("ган.txt", 7, 7)) {
+            assertEquals("storage", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(data.length, backend.stat("ган.txt").orElseThrow().getSize());
+        assertTrue(server.lastAuthorization.startsWith("AWS4-HMAC-SHA256 Credential=test-key/"));
+        assertThrows(NoSuchFileException.class, () -> backend.get("missing.txt"));
+    }
+
+    @Test
+    void largeStreamsUseParallelMultipartUpload() throws Exception {
+        byte[] data = new byte[300 * 1024 + 17];
+        new Random(42).nextBytes(data);
+
+        try (OutputStream out = backend.openOutput("archive.zip")) {
+            for (int off = 0; off < data.length; off += 10_000) {
+                out.write(data, off, Math.min(10_000, data.length - off));
+            }
+        }
+
+        assertEquals(1, server.completedUploads.get());
+        assertEquals(5, server.uploadedParts.get());
+        assertTrue(server.uploads.isEmpty());
+        assertArrayEquals(data, server.objects.get("archive.zip"));
+    }
+
+    @Test
+    void smallStreamsUseSinglePut() throws Exception {
+        try (OutputStream out = backend.openOutput("small.zip")) {
+            out.write(new byte[]{1, 2, 3});
+        }
+        assertEquals(0, server.completedUploads.get());
+        assertArrayEquals(new byte[]{1, 2, 3}, server.objects.get("small.zip"));
+    }
+
+    @Test
+    void listFoldsNestedKeysIntoDirectoriesAndDeletesThem() throws Exception {
+        backend.put("a.zip", new ByteArrayInputStream(new byte[]{1}), 1);
+        backend.put("a_extracted/one.txt", new ByteArrayInputStream(new byte[]{1}), 1);
+        backend.put("a_extracted/two.txt", new ByteArrayInputStream(new byte[]{2}), 1);
+
+        List<BlobInfo> listed = backend.list("");
+        assertEquals(2, listed.size());
+        BlobInfo dir = listed.stream().filter(BlobInfo::isDirectory).findFirst().orElseThrow();
+        assertEquals("a_extracted", dir.getName());
+        assertTrue(backend.stat("a_extracted").orElseThrow().isDirectory());
+
+        assertTrue(backend.delete("a_extracted"));
+        assertEquals(List.of("a.zip"), Arrays.asList(server.objects.keySet().toArray(new String[0])));
+    }
+
+    @Test
+    void renameCopiesNestedKeysAndReplacesTarget() throws Exception {
+        backend.put(".tmp/one.txt", new ByteArrayInputStream(new byte[]{1}), 1);
+        backend.put(".tmp/dir/two.txt", new ByteArrayInputStream(new byte[]{2}), 1);
+        backend.put("a_extracted/old.txt", new ByteArrayInputStream(new byte[]{3}), 1);
+
+        backend.rename(".tmp", "a_extracted");
+
+        assertEquals(List.of("a_extracted/dir/two.txt", "a_extracted/one.txt"),
+                Arrays.asList(server.objects.keySet().toArray(new String[0])));
+    }
+}
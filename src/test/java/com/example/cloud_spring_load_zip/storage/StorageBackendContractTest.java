@@ -0,0 +1,78 @@
+package com.example.cloud_spring_load_zip.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Общий контракт {@link StorageBackend}: один и тот же набор проверок для каждой реализации.
+ */
+abstract class StorageBackendContractTest {
+
+    protected StorageBackend backend;
+
+    protected abstract StorageBackend createBackend() throws Exception;
+
+    @BeforeEach
+    void setUpBackend() throws Exception {
+        backend = createBackend();
+        put("top.txt", "top");
+        put("dirty.txt", "dirty");
+        put("dir/a.txt", "a");
+        put("dir/sub/b.txt", "bb");
+    }
+
+    @AfterEach
+    void closeBackend() throws IOException {
+        backend.close();
+    }
+
+    @Test
+    void listsOneLevelUnderPrefix() throws Exception {
+        assertEquals(Map.of("dir", true, "dirty.txt", false, "top.txt", false), list(""));
+        assertEquals(Map.of("dir", true, "dirty.txt", false), list("dir"));
+        // Префикс с "/" - содержимое каталога, вложенные каталоги свернуты
+        assertEquals(Map.of("dir/a.txt", false, "dir/sub", true), list("dir/"));
+        assertEquals(Map.of("dir/sub", true), list("dir/s"));
+        assertEquals(Map.of("dir/sub/b.txt", false), list("dir/sub/"));
+        assertTrue(list("missing/").isEmpty());
+    }
+
+    @Test
+    void walksAndRenamesNestedTree() throws Exception {
+        assertEquals(List.of("dir/a.txt", "dir/sub/b.txt"), walk("dir"));
+
+        backend.rename("dir", "moved");
+        assertEquals(List.of("moved/a.txt", "moved/sub/b.txt"), walk("moved"));
+        assertTrue(backend.stat("dir").isEmpty());
+        assertEquals(2, backend.stat("moved/sub/b.txt").orElseThrow().getSize());
+    }
+
+    private void put(String key, String content) throws IOException {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        backend.put(key, new ByteArrayInputStream(data), data.length);
+    }
+
+    private Map<String, Boolean> list(String prefix) throws IOException {
+        Map<String, Boolean> result = new TreeMap<>();
+        backend.list(prefix, blob -> result.put(blob.getName(), blob.isDirectory()));
+        return result;
+    }
+
+    private List<String> walk(String dir) throws IOException {
+        List<String> keys = new ArrayList<>();
+        backend.walk(dir, blob -> keys.add(blob.getName()));
+        keys.sort(null);
+        return keys;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.cloud_spring_load_zip.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageLayoutTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @Test
+    void tellsShardsFromLegacyDirectoriesWithShardLikeNames() throws Exception {
+        StorageLayout layout = new StorageLayout(uploadDir, true, 2);
+        // Каталоги пользователя из плоской раскладки с именами, похожими на шарды
+        Files.createDirectories(uploadDir.resolve("12/x"));
+        Files.writeString(uploadDir.resolve("12/x/y.txt"), "y");
+        Files.createDirectories(uploadDir.resolve("ab"));
+        Files.writeString(uploadDir.resolve("ab/notes.txt"), "notes");
+        // Шард, записанный до появления отметки
+        Path old = layout.resolve("photo.png");
+        Files.createDirectories(old.getParent());
+        Files.writeString(old, "png");
+
+        Path oldShard = uploadDir.resolve(uploadDir.relativize(old).getName(0));
+        assertTrue(layout.isShardRoot(oldShard));
+        assertTrue(Files.exists(oldShard.resolve(StorageLayout.SHARD_MARKER)));
+        assertFalse(layout.isShardRoot(uploadDir.resolve("12")));
+        assertEquals(List.of("12", "ab"), layout.legacyEntries().stream()
+                .map(path -> path.getFileName().toString()).sorted().toList());
+
+        List<String> names = new ArrayList<>();
+        layout.walk(path -> names.add(layout.logicalName(path)));
+        assertEquals(List.of("12", "ab", "photo.png"), names.stream().sorted().toList());
+
+        // Запись в шард "ab" сначала переносит плоский каталог ab в его собственный шард
+        String name = nameInShard(layout, "ab");
+        Files.writeString(layout.prepareWrite(name), "new");
+        assertTrue(layout.isShardRoot(uploadDir.resolve("ab")));
+        assertEquals("notes", Files.readString(layout.locate("ab").resolve("notes.txt")));
+        assertFalse(layout.legacyEntries().stream().anyMatch(path -> path.endsWith("ab")));
+    }
+
+    private static String nameInShard(StorageLayout layout, String shard) {
+        for (int i = 0; ; i++) {
+            String name = "file" + i + ".txt";
+            if (layout.shardDir(name).getParent().getFileName().toString().equals(shard)) {
+                return name;
+            }
+        }
+    }
+}
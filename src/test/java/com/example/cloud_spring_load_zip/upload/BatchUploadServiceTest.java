@@ -0,0 +1,87 @@
+package com.example.cloud_spring_load_zip.upload;
+
+import com.example.cloud_spring_load_zip.bulkhead.BulkheadProperties;
+import com.example.cloud_spring_load_zip.bulkhead.Bulkheads;
+import com.example.cloud_spring_load_zip.service.FileStorageService;
+import com.example.cloud_spring_load_zip.service.LocalStorageFixture;
+import com.example.cloud_spring_load_zip.service.UploadValidator;
+import com.example.cloud_spring_load_zip.storage.StorageBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchUploadServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private LocalStorageFixture storage;
+    private StorageBackend backend;
+    private Bulkheads bulkheads;
+    private BatchUploadService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = LocalStorageFixture.create(uploadDir, properties -> {
+            properties.setAllowedExtensions(List.of(".txt"));
+            properties.getBatch().setParallelism(4);
+        });
+        backend = storage.getBackend();
+        SimpleMeterRegistry registry = storage.getRegistry();
+        bulkheads = new Bulkheads(new BulkheadProperties(), registry);
+        FileStorageService storageService = new FileStorageService(backend, storage.getCatalog(), event -> { },
+                new UploadValidator(storage.getProperties(), registry), storage.newHotFileCache());
+        service = new BatchUploadService(storageService, bulkheads, storage.getProperties(), registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bulkheads.shutdown();
+        storage.close();
+    }
+
+    @Test
+    void storesFilesConcurrentlyAndReportsFailuresPerFile() throws Exception {
+        List<MultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            files.add(file("f" + i + ".txt", "content " + i));
+        }
+        files.add(file("run.exe", "MZ"));
+        files.add(file("empty.txt", ""));
+        files.add(file("f3.txt", "duplicate"));
+
+        List<BatchUploadService.FileResult> results = service.upload(files).get(10, TimeUnit.SECONDS);
+
+        assertEquals(files.size(), results.size());
+        for (int i = 0; i < 20; i++) {
+            BatchUploadService.FileResult result = results.get(i);
+            assertTrue(result.isStored(), result.getError());
+            assertEquals("f" + i + ".txt", result.getName());
+            assertEquals(201, result.getStatus());
+            assertEquals(("content " + i).length(), result.getSize());
+            assertNotNull(result.getSha256());
+            assertTrue(backend.stat("f" + i + ".txt").isPresent());
+        }
+        assertEquals(415, results.get(20).getStatus());
+        assertEquals(400, results.get(21).getStatus());
+        assertEquals(409, results.get(22).getStatus());
+        assertFalse(results.get(22).isStored());
+        assertTrue(backend.stat("run.exe").isEmpty());
+    }
+
+    private static MockMultipartFile file(String name, String content) {
+        return new MockMultipartFile("files", name, "text/plain", content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.cloud_spring_load_zip.upload;
+
+import com.example.cloud_spring_load_zip.exception.FileValidationException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultipartStreamTest {
+
+    private static final String BOUNDARY = "----Boundary7MA4YWxkTrZu0gW";
+
+    @Test
+    void splitsPartsAcrossSmallReadsAndKeepsBoundaryLookalikes() throws Exception {
+        // Данные с почти-разделителем и CRLF на концах частей
+        byte[] binary = new byte[200_000];
+        new Random(7).nextBytes(binary);
+        String tricky = "line\r\n--" + BOUNDARY.substring(0, 10)
+                + "\r\n--" + BOUNDARY.substring(0, BOUNDARY.length() - 1) + "X\r\n";
+
+        byte[] body = concat(
+                "preamble to skip\r\n--" + BOUNDARY + "\r\n"
+                        + "Content-Disposition: form-data; name=\"zipName\"\r\n\r\n"
+                        + "docs\r\n--" + BOUNDARY + "\r\n"
+                        + "Content-Disposition: form-data; name=\"file\"; filename=\"отчет; v2.txt\"\r\n"
+                        + "Content-Type: text/plain\r\n\r\n" + tricky + "\r\n--" + BOUNDARY + "\r\n"
+                        + "Content-Disposition: form-data; name=\"file\"; filename=\"data.bin\"\r\n\r\n",
+                binary,
+                "\r\n--" + BOUNDARY + "--\r\nepilogue");
+
+        MultipartStream stream = new MultipartStream(trickle(body), BOUNDARY, 8192);
+
+        MultipartStream.Part field = stream.next();
+        assertFalse(field.isFile());
+        assertEquals("zipName", field.getName());
+        assertEquals("docs", new String(field.getBody().readAllBytes(), StandardCharsets.UTF_8));
+
+        MultipartStream.Part text = stream.next();
+        assertEquals("отчет; v2.txt", text.getFileName());
+        assertEquals("text/plain", text.getContentType());
+        assertEquals(tricky, new String(text.getBody().readAllBytes(), StandardCharsets.UTF_8));
+
+        // Недочитанная часть пропускается при переходе к следующей
+        MultipartStream.Part data = stream.next();
+        assertEquals("data.bin", data.getFileName());
+        data.getBody().readNBytes(1000);
+        assertNull(stream.next());
+        assertNull(stream.next());
+
+        // Повторный разбор с полным чтением бинарной части
+        stream = new MultipartStream(trickle(body), BOUNDARY, 8192);
+        stream.next();
+        stream.next();
+        assertArrayEquals(binary, stream.next().getBody().readAllBytes());
+    }
+
+    @Test
+    void rejectsTruncatedBody() throws Exception {
+        byte[] body = ("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"f\"; filename=\"a.txt\"\r\n\r\n"
+                + "no closing boundary").getBytes(StandardCharsets.UTF_8);
+        MultipartStream stream = new MultipartStream(new ByteArrayInputStream(body), BOUNDARY, 8192);
+        InputStream part = stream.next().getBody();
+        assertThrows(FileValidationException.class, part::readAllBytes);
+        assertEquals(BOUNDARY, MultipartStream.boundary("multipart/form-data; boundary=\"" + BOUNDARY + "\""));
+        assertNull(MultipartStream.boundary("application/json"));
+    }
+
+    // Отдает не больше 7 байт за вызов - разделители режутся на границах чтения
+    private static InputStream trickle(byte[] body) {
+        return new FilterInputStream(new ByteArrayInputStream(body)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+    }
+
+    private static byte[] concat(String head, byte[] middle, String tail) {
+        byte[] first = head.getBytes(StandardCharsets.UTF_8);
+        byte[] last = tail.getBytes(StandardCharsets.UTF_8);
+        byte[] all = new byte[first.length + middle.length + last.length];
+        System.arraycopy(first, 0, all, 0, first.length);
+        System.arraycopy(middle, 0, all, first.length, middle.length);
+        System.arraycopy(last, 0, all, first.length + middle.length, last.length);
+        return all;
+    }
+}